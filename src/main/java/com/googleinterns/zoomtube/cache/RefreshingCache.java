@@ -0,0 +1,353 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.cache;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.googleinterns.zoomtube.data.CacheStats;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A cache of values that are slow to load, such as responses from a remote API.
+ *
+ * <ul>
+ *   <li>Values are fresh for a time to live, after which they are loaded again.
+ *   <li>Concurrent requests for a key that isn't cached share a single load.
+ *   <li>Negative values, such as an empty list, are kept for a shorter time.
+ *   <li>For a while after a value expires, the next request reloads it while concurrent
+ *       requests still get the expired value, which is also kept if the reload fails.
+ *   <li>Once there are more values than the maximum size, the least recently used are evicted.
+ * </ul>
+ *
+ * <p>Load failures aren't cached. Values are always loaded on a request's thread, because
+ * loaders may need its environment, such as the datastore's.
+ */
+public final class RefreshingCache<K, V> {
+  /* Every cache by name, so that their stats can be reported. */
+  private static final Map<String, RefreshingCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+  private final String name;
+  private final Loader<K, V> loader;
+  private final long timeToLiveNanos;
+  private final long negativeTimeToLiveNanos;
+  private final long staleNanos;
+  private final Predicate<V> isNegative;
+  private final int maximumSize;
+  private final Ticker ticker;
+
+  private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final Map<K, CompletableFuture<V>> loads = new ConcurrentHashMap<>();
+  /*
+   * The cached keys, least recently used first, guarded by itself. A key can briefly be in
+   * only one of this and {@code entries} while they are updated.
+   */
+  private final LinkedHashMap<K, Boolean> usageOrder =
+      new LinkedHashMap<>(16, 0.75f, /* accessOrder= */ true);
+  /* Incremented on each invalidation, so a load that started before one isn't cached. */
+  private final AtomicLong invalidations = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder staleHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder coalescedLoads = new LongAdder();
+  private final LongAdder loadCount = new LongAdder();
+  private final LongAdder loadFailures = new LongAdder();
+  private final LongAdder totalLoadNanos = new LongAdder();
+  private final AtomicLong maxLoadNanos = new AtomicLong();
+
+  /** Loads the value for a key. */
+  public interface Loader<K, V> {
+    V load(K key) throws IOException;
+  }
+
+  private RefreshingCache(Builder<K, V> builder) {
+    name = builder.name;
+    loader = builder.loader;
+    timeToLiveNanos = builder.timeToLive.toNanos();
+    negativeTimeToLiveNanos = builder.negativeTimeToLive.toNanos();
+    staleNanos = builder.stale.toNanos();
+    isNegative = builder.isNegative;
+    maximumSize = builder.maximumSize;
+    ticker = builder.ticker;
+  }
+
+  public static <K, V> Builder<K, V> builder(String name, Loader<K, V> loader) {
+    return new Builder<>(name, loader);
+  }
+
+  /** Returns the stats of every cache by name. */
+  public static ImmutableMap<String, CacheStats> allStats() {
+    ImmutableMap.Builder<String, CacheStats> stats = ImmutableMap.builder();
+    for (Map.Entry<String, RefreshingCache<?, ?>> cache : caches.entrySet()) {
+      stats.put(cache.getKey(), cache.getValue().stats());
+    }
+    return stats.build();
+  }
+
+  /**
+   * Returns the value for {@code key}, loading it if it isn't cached.
+   *
+   * @throws IOException if the value had to be loaded and loading failed.
+   */
+  public V get(K key) throws IOException {
+    long now = ticker.read();
+    Entry<V> entry = entries.get(key);
+    if (entry != null) {
+      long age = now - entry.loadedAtNanos;
+      if (age < entry.timeToLiveNanos) {
+        hits.increment();
+        recordUse(key);
+        return entry.value;
+      }
+      if (age < entry.timeToLiveNanos + staleNanos) {
+        staleHits.increment();
+        recordUse(key);
+        return refresh(key, entry.value);
+      }
+    }
+    misses.increment();
+    CompletableFuture<V> load = new CompletableFuture<>();
+    CompletableFuture<V> existingLoad = loads.putIfAbsent(key, load);
+    if (existingLoad != null) {
+      coalescedLoads.increment();
+      return await(existingLoad);
+    }
+    // A load that finished since the entry was read may already have cached a fresh value.
+    Entry<V> loadedEntry = entries.get(key);
+    if (loadedEntry != null
+        && ticker.read() - loadedEntry.loadedAtNanos < loadedEntry.timeToLiveNanos) {
+      coalescedLoads.increment();
+      loads.remove(key, load);
+      load.complete(loadedEntry.value);
+      return loadedEntry.value;
+    }
+    return load(key, load);
+  }
+
+  /**
+   * Caches {@code value} for {@code key}, such as one that was just written, so the next
+   * request doesn't load it. A load already in progress for the key isn't cached.
+   */
+  public void put(K key, V value) {
+    invalidations.incrementAndGet();
+    long now = ticker.read();
+    long timeToLive = isNegative.test(value) ? negativeTimeToLiveNanos : timeToLiveNanos;
+    entries.put(key, new Entry<>(value, now, timeToLive));
+    recordUse(key);
+    evictIfFull();
+  }
+
+  /** Removes the value for {@code key}, so the next request loads it again. */
+  public void invalidate(K key) {
+    invalidations.incrementAndGet();
+    entries.remove(key);
+    synchronized (usageOrder) {
+      usageOrder.remove(key);
+    }
+  }
+
+  /** Removes every value, so the next request for each key loads it again. */
+  public void invalidateAll() {
+    invalidations.incrementAndGet();
+    entries.clear();
+    synchronized (usageOrder) {
+      usageOrder.clear();
+    }
+  }
+
+  public CacheStats stats() {
+    long loads = loadCount.sum();
+    long hitCount = hits.sum();
+    long staleHitCount = staleHits.sum();
+    long requests = hitCount + staleHitCount + misses.sum();
+    return CacheStats.builder()
+        .setHitCount(hitCount)
+        .setStaleHitCount(staleHitCount)
+        .setMissCount(requests - hitCount - staleHitCount)
+        .setCoalescedLoadCount(coalescedLoads.sum())
+        .setLoadCount(loads)
+        .setLoadFailureCount(loadFailures.sum())
+        .setAverageLoadMs(loads == 0 ? 0 : totalLoadNanos.sum() / 1e6 / loads)
+        .setMaxLoadMs(maxLoadNanos.get() / 1e6)
+        .setHitRate(requests == 0 ? 1 : (double) (hitCount + staleHitCount) / requests)
+        .build();
+  }
+
+  /**
+   * Reloads the value for {@code key} and returns it, or returns {@code staleValue} if another
+   * request is already reloading it or the reload fails.
+   */
+  private V refresh(K key, V staleValue) {
+    CompletableFuture<V> load = new CompletableFuture<>();
+    if (loads.putIfAbsent(key, load) != null) {
+      return staleValue;
+    }
+    try {
+      return load(key, load);
+    } catch (IOException | RuntimeException e) {
+      // The stale value is kept until it expires, and the next request retries.
+      return staleValue;
+    }
+  }
+
+  /** Loads the value for {@code key}, completing {@code load} for any waiting requests. */
+  private V load(K key, CompletableFuture<V> load) throws IOException {
+    long start = ticker.read();
+    long invalidationsAtStart = invalidations.get();
+    try {
+      V value = loader.load(key);
+      long loadedAt = ticker.read();
+      recordLoad(loadedAt - start);
+      // The value may have been loaded from data that has since changed. The waiting requests
+      // still get it, as they would have if they'd arrived just before the invalidation.
+      if (invalidations.get() == invalidationsAtStart) {
+        long timeToLive = isNegative.test(value) ? negativeTimeToLiveNanos : timeToLiveNanos;
+        entries.put(key, new Entry<>(value, loadedAt, timeToLive));
+        recordUse(key);
+        evictIfFull();
+      }
+      load.complete(value);
+      return value;
+    } catch (IOException | RuntimeException e) {
+      recordLoad(ticker.read() - start);
+      loadFailures.increment();
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      loads.remove(key, load);
+    }
+  }
+
+  private void recordLoad(long loadNanos) {
+    loadCount.increment();
+    totalLoadNanos.add(loadNanos);
+    maxLoadNanos.accumulateAndGet(loadNanos, Math::max);
+  }
+
+  /** Moves {@code key} to the end of the eviction order, adding it if it isn't there. */
+  private void recordUse(K key) {
+    synchronized (usageOrder) {
+      usageOrder.put(key, Boolean.TRUE);
+    }
+  }
+
+  /** Evicts the least recently used entries while there are more than the maximum size. */
+  private void evictIfFull() {
+    if (entries.size() <= maximumSize) {
+      return;
+    }
+    synchronized (usageOrder) {
+      Iterator<K> leastRecentlyUsedFirst = usageOrder.keySet().iterator();
+      // An invalidation can empty the order while entries are still being added.
+      while (entries.size() > maximumSize && leastRecentlyUsedFirst.hasNext()) {
+        entries.remove(leastRecentlyUsedFirst.next());
+        leastRecentlyUsedFirst.remove();
+      }
+    }
+  }
+
+  private static <V> V await(CompletableFuture<V> load) throws IOException {
+    try {
+      return load.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+  }
+
+  private static final class Entry<V> {
+    final V value;
+    final long loadedAtNanos;
+    final long timeToLiveNanos;
+
+    Entry(V value, long loadedAtNanos, long timeToLiveNanos) {
+      this.value = value;
+      this.loadedAtNanos = loadedAtNanos;
+      this.timeToLiveNanos = timeToLiveNanos;
+    }
+  }
+
+  /** Configures a {@code RefreshingCache}. */
+  public static final class Builder<K, V> {
+    private final String name;
+    private final Loader<K, V> loader;
+    private Duration timeToLive = Duration.ofMinutes(10);
+    private Duration negativeTimeToLive = Duration.ZERO;
+    private Duration stale = Duration.ZERO;
+    private Predicate<V> isNegative = value -> false;
+    private int maximumSize = 1000;
+    private Ticker ticker = Ticker.systemTicker();
+
+    private Builder(String name, Loader<K, V> loader) {
+      this.name = name;
+      this.loader = loader;
+    }
+
+    /** Sets how long a loaded value is fresh. */
+    public Builder<K, V> setTimeToLive(Duration timeToLive) {
+      this.timeToLive = timeToLive;
+      return this;
+    }
+
+    /** Sets how long a value matching {@code isNegative} is fresh. */
+    public Builder<K, V> setNegativeTimeToLive(
+        Duration negativeTimeToLive, Predicate<V> isNegative) {
+      this.negativeTimeToLive = negativeTimeToLive;
+      this.isNegative = isNegative;
+      return this;
+    }
+
+    /** Sets how long an expired value is still returned while it is reloaded. */
+    public Builder<K, V> setStale(Duration stale) {
+      this.stale = stale;
+      return this;
+    }
+
+    public Builder<K, V> setMaximumSize(int maximumSize) {
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    public Builder<K, V> setTicker(Ticker ticker) {
+      this.ticker = ticker;
+      return this;
+    }
+
+    /** Builds the cache, replacing any cache with the same name in {@link #allStats}. */
+    public RefreshingCache<K, V> build() {
+      RefreshingCache<K, V> cache = new RefreshingCache<>(this);
+      caches.put(name, cache);
+      return cache;
+    }
+  }
+}
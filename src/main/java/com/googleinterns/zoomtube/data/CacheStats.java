@@ -0,0 +1,74 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+
+/** Contains the hit rate and load latency of a cache since it was created. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class CacheStats {
+  /** Returns the number of requests served by a fresh value. */
+  public abstract long hitCount();
+
+  /** Returns the number of requests served by an expired value while it was refreshed. */
+  public abstract long staleHitCount();
+
+  /** Returns the number of requests that had to wait for a value to load. */
+  public abstract long missCount();
+
+  /** Returns the number of misses that shared a load already in progress. */
+  public abstract long coalescedLoadCount();
+
+  /** Returns the number of times a value was loaded, including refreshes of stale values. */
+  public abstract long loadCount();
+
+  /** Returns the number of loads that failed. */
+  public abstract long loadFailureCount();
+
+  /** Returns the average time taken by a load in milliseconds. */
+  public abstract double averageLoadMs();
+
+  /** Returns the longest time taken by a load in milliseconds. */
+  public abstract double maxLoadMs();
+
+  /** Returns the fraction of requests served without waiting for a load. */
+  public abstract double hitRate();
+
+  /**
+   * Returns a builder instance that can be used to create CacheStats.
+   */
+  public static Builder builder() {
+    return new AutoValue_CacheStats.Builder();
+  }
+
+  /**
+   * Returns a builder instance that can be used to create CacheStats.
+   */
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setHitCount(long hitCount);
+    public abstract Builder setStaleHitCount(long staleHitCount);
+    public abstract Builder setMissCount(long missCount);
+    public abstract Builder setCoalescedLoadCount(long coalescedLoadCount);
+    public abstract Builder setLoadCount(long loadCount);
+    public abstract Builder setLoadFailureCount(long loadFailureCount);
+    public abstract Builder setAverageLoadMs(double averageLoadMs);
+    public abstract Builder setMaxLoadMs(double maxLoadMs);
+    public abstract Builder setHitRate(double hitRate);
+    public abstract CacheStats build();
+  }
+}
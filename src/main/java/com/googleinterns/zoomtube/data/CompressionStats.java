@@ -0,0 +1,73 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+
+/** Contains how much responses were compressed, and the time it took, since startup. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class CompressionStats {
+  /** Returns the number of responses compressed as they were written. */
+  public abstract long compressedCount();
+
+  /** Returns the number of responses sent from bytes that were already compressed. */
+  public abstract long precompressedCount();
+
+  /**
+   * Returns the number of compressible responses sent as is, because they were small or the
+   * client doesn't accept compression.
+   */
+  public abstract long uncompressedCount();
+
+  /** Returns the size of every compressed response before compression. */
+  public abstract long uncompressedBytes();
+
+  /** Returns the size of every compressed response after compression. */
+  public abstract long compressedBytes();
+
+  /** Returns how many times smaller compressed responses were. */
+  public abstract double compressionRatio();
+
+  /** Returns the CPU time spent compressing in milliseconds. */
+  public abstract double totalCompressionMs();
+
+  /** Returns the average CPU time spent compressing a response in milliseconds. */
+  public abstract double averageCompressionMs();
+
+  /**
+   * Returns a builder instance that can be used to create CompressionStats.
+   */
+  public static Builder builder() {
+    return new AutoValue_CompressionStats.Builder();
+  }
+
+  /**
+   * Returns a builder instance that can be used to create CompressionStats.
+   */
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setCompressedCount(long compressedCount);
+    public abstract Builder setPrecompressedCount(long precompressedCount);
+    public abstract Builder setUncompressedCount(long uncompressedCount);
+    public abstract Builder setUncompressedBytes(long uncompressedBytes);
+    public abstract Builder setCompressedBytes(long compressedBytes);
+    public abstract Builder setCompressionRatio(double compressionRatio);
+    public abstract Builder setTotalCompressionMs(double totalCompressionMs);
+    public abstract Builder setAverageCompressionMs(double averageCompressionMs);
+    public abstract CompressionStats build();
+  }
+}
@@ -0,0 +1,38 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+
+/** Contains the lecture created from an export, and how many records it was given. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class ImportedLecture {
+  /** Returns the id of the newly created lecture. */
+  public abstract long lectureId();
+
+  public abstract int transcriptLineCount();
+
+  public abstract int commentCount();
+
+  public abstract int iconFeedbackCount();
+
+  public static ImportedLecture create(
+      long lectureId, int transcriptLineCount, int commentCount, int iconFeedbackCount) {
+    return new AutoValue_ImportedLecture(
+        lectureId, transcriptLineCount, commentCount, iconFeedbackCount);
+  }
+}
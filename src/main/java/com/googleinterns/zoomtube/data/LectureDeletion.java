@@ -0,0 +1,46 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+
+/** Contains the progress of a lecture deletion that may take several requests. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class LectureDeletion {
+  /** Returns the number of entities deleted by this request. */
+  public abstract int deletedCount();
+
+  /** Returns whether the lecture and all of its data have been deleted. */
+  public abstract boolean done();
+
+  /**
+   * Returns the stage to send with the next request to continue the deletion, or an empty
+   * string if it is done.
+   */
+  public abstract String stage();
+
+  /**
+   * Returns the cursor to send with the next request to continue the deletion, or an empty
+   * string if the next stage starts from the beginning.
+   */
+  public abstract String cursor();
+
+  public static LectureDeletion create(
+      int deletedCount, boolean done, String stage, String cursor) {
+    return new AutoValue_LectureDeletion(deletedCount, done, stage, cursor);
+  }
+}
@@ -0,0 +1,54 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.util.List;
+
+/** Contains the outcome of importing one lecture of a bulk import. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class LectureImportResult {
+  /** What happened to a lecture that was imported. */
+  public enum Status {
+    /** A new lecture was created. */
+    CREATED,
+    /** A lecture of the same video already existed, and was left as it is. */
+    EXISTING,
+    /** The video link isn't a link to a video, so no lecture was created. */
+    INVALID_LINK,
+  }
+
+  /** Returns the video link the lecture was imported from. */
+  public abstract String videoUrl();
+
+  public abstract Status status();
+
+  /** Returns the id of the created or existing lecture, or 0 if there is none. */
+  public abstract long lectureId();
+
+  /** Returns the languages whose transcripts were stored for a created lecture. */
+  public abstract List<String> transcriptLanguages();
+
+  /** Returns why the lecture or its transcript couldn't be imported, or an empty string. */
+  public abstract String error();
+
+  public static LectureImportResult create(String videoUrl, Status status, long lectureId,
+      List<String> transcriptLanguages, String error) {
+    return new AutoValue_LectureImportResult(
+        videoUrl, status, lectureId, transcriptLanguages, error);
+  }
+}
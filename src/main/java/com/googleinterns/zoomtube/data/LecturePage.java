@@ -0,0 +1,36 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.util.List;
+
+/** Contains one page of the list of lectures. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class LecturePage {
+  public abstract List<LectureSummary> lectures();
+
+  /**
+   * Returns the cursor to send with the next request to get the next page, or an empty string
+   * if this is the last page.
+   */
+  public abstract String cursor();
+
+  public static LecturePage create(List<LectureSummary> lectures, String cursor) {
+    return new AutoValue_LecturePage(lectures, cursor);
+  }
+}
@@ -0,0 +1,63 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+
+/** Contains a transcript line that matched a search across every lecture. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class LectureSearchHit {
+  /** Returns the key for the lecture the line is from. */
+  public abstract Key lectureKey();
+
+  /** Returns the name of the lecture the line is from. */
+  public abstract String lectureName();
+
+  /** Returns the key for the matching transcript line. */
+  public abstract Key transcriptKey();
+
+  /** Returns the starting timestamp for the transcript line in milliseconds. */
+  public abstract long startTimestampMs();
+
+  /**
+   * Returns the HTML escaped content of the line, with the words that matched the search
+   * wrapped in {@code <mark>} tags.
+   */
+  public abstract String snippet();
+
+  /** Returns how relevant the line is to the search, higher being more relevant. */
+  public abstract double score();
+
+  /**
+   * Returns a builder instance that can be used to create LectureSearchHits.
+   */
+  public static Builder builder() {
+    return new AutoValue_LectureSearchHit.Builder();
+  }
+
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setLectureKey(Key lectureKey);
+    public abstract Builder setLectureName(String lectureName);
+    public abstract Builder setTranscriptKey(Key transcriptKey);
+    public abstract Builder setStartTimestampMs(long startTimestampMs);
+    public abstract Builder setSnippet(String snippet);
+    public abstract Builder setScore(double score);
+    public abstract LectureSearchHit build();
+  }
+}
@@ -0,0 +1,37 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.util.List;
+
+/** Contains one page of the results of a search across every lecture. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class LectureSearchResults {
+  /** Returns the hits on this page, most relevant first. */
+  public abstract List<LectureSearchHit> hits();
+
+  /** Returns the number of hits across every page. */
+  public abstract int totalHits();
+
+  /** Returns the offset of the first hit on this page. */
+  public abstract int offset();
+
+  public static LectureSearchResults create(List<LectureSearchHit> hits, int totalHits, int offset) {
+    return new AutoValue_LectureSearchResults(hits, totalHits, offset);
+  }
+}
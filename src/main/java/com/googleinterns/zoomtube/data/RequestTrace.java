@@ -0,0 +1,37 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+
+/** Contains the spans recorded while serving a request. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class RequestTrace {
+  public abstract String requestId();
+  /** Returns when the request started, in milliseconds since the epoch. */
+  public abstract long startTimeMs();
+  public abstract double durationMs();
+  /** Returns the number of spans that weren't kept, since the request had too many. */
+  public abstract int droppedSpanCount();
+  /** Returns the span of the whole request. */
+  public abstract TraceSpan root();
+
+  public static RequestTrace create(String requestId, long startTimeMs, double durationMs,
+      int droppedSpanCount, TraceSpan root) {
+    return new AutoValue_RequestTrace(requestId, startTimeMs, durationMs, droppedSpanCount, root);
+  }
+}
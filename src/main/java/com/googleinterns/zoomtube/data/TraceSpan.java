@@ -0,0 +1,37 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.util.List;
+
+/** Contains a timed part of a request, and the parts it's made of. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class TraceSpan {
+  public abstract String name();
+  /** Returns when the span started, in milliseconds since the request started. */
+  public abstract double startMs();
+  /** Returns how long the span took, or -1 if it never ended. */
+  public abstract double durationMs();
+  public abstract String thread();
+  public abstract List<TraceSpan> children();
+
+  public static TraceSpan create(String name, double startMs, double durationMs, String thread,
+      List<TraceSpan> children) {
+    return new AutoValue_TraceSpan(name, startMs, durationMs, thread, children);
+  }
+}
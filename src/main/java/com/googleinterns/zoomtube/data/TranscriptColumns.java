@@ -0,0 +1,102 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contains a transcript as parallel arrays, one per field of its lines, instead of an object
+ * per line. Repeated keys and field names make up most of a transcript sent as objects.
+ *
+ * <p>The transcript is made of lines or of segments. For segments, {@code ids} are the ids of
+ * their first lines, and the lines in each segment are listed by {@code lineCounts} and
+ * {@code lineIds}, which are empty for lines.
+ */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class TranscriptColumns {
+  /** Returns the id of each line, or of the first line of each segment. */
+  public abstract List<Long> ids();
+
+  /**
+   * Returns the starting timestamp of each line in milliseconds, as the difference from the
+   * one before. The first is from zero.
+   */
+  public abstract List<Long> startDeltasMs();
+
+  /** Returns the duration of each line in milliseconds. */
+  public abstract List<Long> durationsMs();
+
+  /** Returns the text content of each line. */
+  public abstract List<String> contents();
+
+  /** Returns the number of lines in each segment, or nothing if these are lines. */
+  public abstract List<Integer> lineCounts();
+
+  /** Returns the ids of the lines in every segment in order, or nothing if these are lines. */
+  public abstract List<Long> lineIds();
+
+  /** Returns a builder that keeps lines and segments in the order they are added. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Collects transcript lines or segments and builds {@code TranscriptColumns} from them. */
+  public static final class Builder {
+    private final List<Long> ids = new ArrayList<>();
+    private final List<Long> startDeltasMs = new ArrayList<>();
+    private final List<Long> durationsMs = new ArrayList<>();
+    private final List<String> contents = new ArrayList<>();
+    private final List<Integer> lineCounts = new ArrayList<>();
+    private final List<Long> lineIds = new ArrayList<>();
+    private long previousStartMs = 0;
+
+    private Builder() {}
+
+    /** Adds the line with id {@code lineId} after every previously added line. */
+    public Builder addLine(long lineId, long startMs, long durationMs, String content) {
+      ids.add(lineId);
+      startDeltasMs.add(startMs - previousStartMs);
+      durationsMs.add(durationMs);
+      contents.add(content);
+      previousStartMs = startMs;
+      return this;
+    }
+
+    public Builder addLine(TranscriptLine line) {
+      return addLine(line.transcriptKey().getId(), line.startTimestampMs(), line.durationMs(),
+          line.content());
+    }
+
+    public Builder addSegment(TranscriptSegment segment) {
+      addLine(segment.transcriptKey().getId(), segment.startTimestampMs(), segment.durationMs(),
+          segment.content());
+      lineCounts.add(segment.lineIds().size());
+      lineIds.addAll(segment.lineIds());
+      return this;
+    }
+
+    public TranscriptColumns build() {
+      return new AutoValue_TranscriptColumns(ImmutableList.copyOf(ids),
+          ImmutableList.copyOf(startDeltasMs), ImmutableList.copyOf(durationsMs),
+          ImmutableList.copyOf(contents), ImmutableList.copyOf(lineCounts),
+          ImmutableList.copyOf(lineIds));
+    }
+  }
+}
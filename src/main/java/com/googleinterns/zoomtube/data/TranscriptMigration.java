@@ -0,0 +1,43 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+
+/** Contains the progress of moving transcripts into chunks, which may take several requests. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class TranscriptMigration {
+  /** Returns the number of lectures whose transcripts were moved by this request. */
+  public abstract int lectureCount();
+
+  /** Returns the number of transcript lines moved into chunks by this request. */
+  public abstract int lineCount();
+
+  /** Returns whether every lecture has been migrated. */
+  public abstract boolean done();
+
+  /**
+   * Returns the cursor to send with the next request to continue the migration, or an empty
+   * string if it is done.
+   */
+  public abstract String cursor();
+
+  public static TranscriptMigration create(
+      int lectureCount, int lineCount, boolean done, String cursor) {
+    return new AutoValue_TranscriptMigration(lectureCount, lineCount, done, cursor);
+  }
+}
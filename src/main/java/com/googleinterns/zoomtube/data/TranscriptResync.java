@@ -0,0 +1,41 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+
+/** Contains the number of transcript lines written when a transcript was fetched again. */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class TranscriptResync {
+  /** Returns the number of lines that are new in the fetched transcript. */
+  public abstract int insertedCount();
+
+  /** Returns the number of stored lines whose timing or content was updated in place. */
+  public abstract int changedCount();
+
+  /** Returns the number of stored lines that are no longer in the transcript. */
+  public abstract int removedCount();
+
+  /** Returns the number of stored lines that were left as they were. */
+  public abstract int unchangedCount();
+
+  public static TranscriptResync create(
+      int insertedCount, int changedCount, int removedCount, int unchangedCount) {
+    return new AutoValue_TranscriptResync(
+        insertedCount, changedCount, removedCount, unchangedCount);
+  }
+}
@@ -0,0 +1,74 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.data;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.auto.value.AutoValue;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.util.List;
+
+/**
+ * Contains a segment of transcript, made of consecutive transcript lines merged into a
+ * sentence or paragraph.
+ */
+@GenerateTypeAdapter
+@AutoValue
+public abstract class TranscriptSegment {
+  /**
+   * Returns the key of the first transcript line in the segment, which comments on the
+   * segment are attached to.
+   */
+  public abstract Key transcriptKey();
+
+  /** Returns the key for the lecture. */
+  public abstract Key lectureKey();
+
+  /** Returns the starting timestamp for the segment in milliseconds. */
+  public abstract long startTimestampMs();
+
+  /** Returns the duration of the segment in milliseconds. */
+  public abstract long durationMs();
+
+  /** Returns the ending timestamp for the segment in milliseconds. */
+  public abstract long endTimestampMs();
+
+  /** Returns the text content of the segment. */
+  public abstract String content();
+
+  /** Returns the ids of the transcript lines in the segment, in the order they are shown. */
+  public abstract List<Long> lineIds();
+
+  /**
+   * Returns a builder instance that can be used to create TranscriptSegments.
+   */
+  public static Builder builder() {
+    return new AutoValue_TranscriptSegment.Builder();
+  }
+
+  /**
+   * Returns a builder instance that can be used to create TranscriptSegments.
+   */
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setTranscriptKey(Key transcriptKey);
+    public abstract Builder setLectureKey(Key lectureKey);
+    public abstract Builder setStartTimestampMs(long startTimestampMs);
+    public abstract Builder setDurationMs(long durationMs);
+    public abstract Builder setEndTimestampMs(long endTimestampMs);
+    public abstract Builder setContent(String content);
+    public abstract Builder setLineIds(List<Long> lineIds);
+    public abstract TranscriptSegment build();
+  }
+}
@@ -0,0 +1,308 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.filters;
+
+import com.google.common.io.CountingOutputStream;
+import com.googleinterns.zoomtube.metrics.RequestMetrics;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * A response that holds back its first bytes until it knows whether to compress them, then
+ * compresses the rest as it is written.
+ */
+final class CompressingResponse extends HttpServletResponseWrapper {
+  private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+  private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+  private static final int GZIP_BUFFER_SIZE = 8192;
+
+  /** How the body is being sent. */
+  private enum Mode {
+    /* The body so far is held back, since it's still under the threshold. */
+    UNDECIDED,
+    IDENTITY,
+    GZIP
+  }
+
+  private final boolean acceptsGzip;
+  private final int thresholdBytes;
+  private final CompressionMetrics metrics;
+  private final ByteArrayOutputStream heldBytes = new ByteArrayOutputStream();
+
+  private Mode mode = Mode.UNDECIDED;
+  /* Where the body goes once the mode is decided. */
+  private OutputStream body;
+  private CountingOutputStream compressedBody;
+  private long uncompressedByteCount;
+  private long identityByteCount;
+  private long compressionNanos;
+  /* The length set by the servlet, which only holds if the body isn't compressed. */
+  private long contentLength = -1;
+  /* Set once the servlet sends an error or a redirect instead of a body. */
+  private boolean bodyReplaced;
+  private ServletOutputStream outputStream;
+  private PrintWriter writer;
+
+  CompressingResponse(HttpServletResponse response, boolean acceptsGzip, int thresholdBytes,
+      CompressionMetrics metrics) {
+    super(response);
+    this.acceptsGzip = acceptsGzip;
+    this.thresholdBytes = thresholdBytes;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (writer != null) {
+      throw new IllegalStateException("getWriter() has already been called.");
+    }
+    if (outputStream == null) {
+      outputStream = new CompressingOutputStream();
+    }
+    return outputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if (outputStream != null && writer == null) {
+      throw new IllegalStateException("getOutputStream() has already been called.");
+    }
+    if (writer == null) {
+      outputStream = new CompressingOutputStream();
+      writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+    }
+    return writer;
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    if (writer != null) {
+      writer.flush();
+    }
+    if (mode == Mode.UNDECIDED && heldBytes.size() > 0) {
+      // The servlet wants what it has written so far sent, so it can't be held back.
+      decide(/* complete= */ false);
+    }
+    if (body != null) {
+      body.flush();
+    }
+    super.flushBuffer();
+  }
+
+  @Override
+  public void resetBuffer() {
+    if (mode == Mode.UNDECIDED) {
+      heldBytes.reset();
+    }
+    super.resetBuffer();
+  }
+
+  @Override
+  public void reset() {
+    if (mode == Mode.UNDECIDED) {
+      heldBytes.reset();
+      contentLength = -1;
+    }
+    super.reset();
+  }
+
+  @Override
+  public void setContentLength(int length) {
+    setContentLengthLong(length);
+  }
+
+  @Override
+  public void setContentLengthLong(long length) {
+    if (mode == Mode.UNDECIDED && !hasContentEncoding()) {
+      contentLength = length;
+    } else if (mode != Mode.GZIP) {
+      super.setContentLengthLong(length);
+    }
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+    if (name.equalsIgnoreCase(HEADER_CONTENT_LENGTH)) {
+      setContentLengthLong(Long.parseLong(value));
+      return;
+    }
+    super.setHeader(name, value);
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+    if (name.equalsIgnoreCase(HEADER_CONTENT_LENGTH)) {
+      setContentLengthLong(Long.parseLong(value));
+      return;
+    }
+    super.addHeader(name, value);
+  }
+
+  @Override
+  public void setIntHeader(String name, int value) {
+    if (name.equalsIgnoreCase(HEADER_CONTENT_LENGTH)) {
+      setContentLengthLong(value);
+      return;
+    }
+    super.setIntHeader(name, value);
+  }
+
+  @Override
+  public void sendError(int status, String message) throws IOException {
+    bodyReplaced = true;
+    super.sendError(status, message);
+  }
+
+  @Override
+  public void sendError(int status) throws IOException {
+    bodyReplaced = true;
+    super.sendError(status);
+  }
+
+  @Override
+  public void sendRedirect(String location) throws IOException {
+    bodyReplaced = true;
+    super.sendRedirect(location);
+  }
+
+  /** Sends whatever is still held back, and ends the compressed body. */
+  void finish() throws IOException {
+    if (bodyReplaced) {
+      return;
+    }
+    if (writer != null) {
+      writer.flush();
+    }
+    if (mode == Mode.UNDECIDED) {
+      if (heldBytes.size() == 0) {
+        if (contentLength >= 0) {
+          super.setContentLengthLong(contentLength);
+        }
+        return;
+      }
+      decide(/* complete= */ true);
+    }
+    if (mode == Mode.GZIP) {
+      long start = CompressionMetrics.currentThreadTimeNanos();
+      ((GZIPOutputStream) body).finish();
+      compressionNanos += CompressionMetrics.currentThreadTimeNanos() - start;
+      metrics.recordCompressed(
+          uncompressedByteCount, compressedBody.getCount(), compressionNanos);
+    }
+    body.flush();
+    RequestMetrics.recordResponseBytes(
+        mode == Mode.GZIP ? compressedBody.getCount() : identityByteCount);
+  }
+
+  private boolean hasContentEncoding() {
+    return containsHeader(HEADER_CONTENT_ENCODING);
+  }
+
+  /**
+   * Decides whether to compress the body, then sends what was held back. If the body is
+   * {@code complete}, it is compressed only if it reached the threshold.
+   */
+  private void decide(boolean complete) throws IOException {
+    boolean compressible =
+        CompressionFilter.isCompressible(getContentType()) && !hasContentEncoding();
+    if (compressible) {
+      super.addHeader("Vary", "Accept-Encoding");
+    }
+    boolean large = !complete || heldBytes.size() >= thresholdBytes;
+    if (compressible && acceptsGzip && large) {
+      mode = Mode.GZIP;
+      super.setHeader(HEADER_CONTENT_ENCODING, CompressionFilter.ENCODING_GZIP);
+      compressedBody = new CountingOutputStream(super.getOutputStream());
+      // Syncs on flush, so a servlet that streams its response still sends it as it goes.
+      body = new GZIPOutputStream(compressedBody, GZIP_BUFFER_SIZE, /* syncFlush= */ true);
+    } else {
+      mode = Mode.IDENTITY;
+      if (compressible) {
+        metrics.recordUncompressed();
+      }
+      if (complete) {
+        super.setContentLengthLong(heldBytes.size());
+      } else if (contentLength >= 0) {
+        super.setContentLengthLong(contentLength);
+      }
+      body = super.getOutputStream();
+    }
+    byte[] bytes = heldBytes.toByteArray();
+    heldBytes.reset();
+    writeBody(bytes, 0, bytes.length);
+  }
+
+  private void writeBody(byte[] bytes, int offset, int length) throws IOException {
+    if (mode != Mode.GZIP) {
+      body.write(bytes, offset, length);
+      identityByteCount += length;
+      return;
+    }
+    long start = CompressionMetrics.currentThreadTimeNanos();
+    body.write(bytes, offset, length);
+    compressionNanos += CompressionMetrics.currentThreadTimeNanos() - start;
+    uncompressedByteCount += length;
+  }
+
+  /** Holds back, compresses or passes through what the servlet writes. */
+  private final class CompressingOutputStream extends ServletOutputStream {
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (bodyReplaced) {
+        return;
+      }
+      if (mode == Mode.UNDECIDED) {
+        if (heldBytes.size() + length < thresholdBytes) {
+          heldBytes.write(bytes, offset, length);
+          return;
+        }
+        decide(/* complete= */ false);
+      }
+      writeBody(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      // Held back bytes stay held back, since flushing a writer doesn't mean the servlet
+      // wants them sent before it writes more.
+      if (body != null) {
+        body.flush();
+      }
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      throw new UnsupportedOperationException("Asynchronous writes aren't supported.");
+    }
+  }
+}
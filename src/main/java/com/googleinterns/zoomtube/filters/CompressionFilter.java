@@ -0,0 +1,108 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.filters;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.googleinterns.zoomtube.data.CompressionStats;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Compresses Json responses with gzip for clients that accept it.
+ *
+ * <p>The first {@code threshold-bytes} of a response are held back. Responses that end
+ * before then are sent as is, since compressing them saves little. Past that, the response
+ * is compressed as it is written, so the whole body is never held in memory. A response
+ * that already has a Content-Encoding, such as one written by {@link PrecompressedBody}, is
+ * left alone.
+ */
+public class CompressionFilter implements Filter {
+  @VisibleForTesting static final String PARAM_THRESHOLD_BYTES = "threshold-bytes";
+  @VisibleForTesting static final int DEFAULT_THRESHOLD_BYTES = 1024;
+  static final String ENCODING_GZIP = "gzip";
+
+  private int thresholdBytes = DEFAULT_THRESHOLD_BYTES;
+
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {
+    String threshold = filterConfig.getInitParameter(PARAM_THRESHOLD_BYTES);
+    if (threshold != null) {
+      thresholdBytes = Integer.parseInt(threshold);
+    }
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)
+        || ((HttpServletRequest) request).getMethod().equals("HEAD")) {
+      chain.doFilter(request, response);
+      return;
+    }
+    CompressingResponse compressingResponse = new CompressingResponse(
+        (HttpServletResponse) response, acceptsGzip((HttpServletRequest) request),
+        thresholdBytes, CompressionMetrics.getMetrics());
+    chain.doFilter(request, compressingResponse);
+    compressingResponse.finish();
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** Returns how much responses have been compressed on this instance. */
+  public static CompressionStats stats() {
+    return CompressionMetrics.getMetrics().stats();
+  }
+
+  /** Returns whether the client that sent {@code request} accepts gzip. */
+  static boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : Splitter.on(',').trimResults().omitEmptyStrings().split(acceptEncoding)) {
+      List<String> parts = Splitter.on(';').trimResults().splitToList(coding);
+      String name = parts.get(0).toLowerCase(Locale.ROOT);
+      if (!name.equals(ENCODING_GZIP) && !name.equals("x-gzip") && !name.equals("*")) {
+        continue;
+      }
+      // "gzip;q=0" means the client doesn't accept gzip.
+      boolean refused = parts.stream().skip(1).anyMatch(
+          parameter -> parameter.replace(" ", "").matches("[qQ]=0(\\.0*)?"));
+      return !refused;
+    }
+    return false;
+  }
+
+  /** Returns whether a response of {@code contentType} is worth compressing. */
+  static boolean isCompressible(String contentType) {
+    if (contentType == null) {
+      return false;
+    }
+    String mediaType = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+    return mediaType.equals("application/json") || mediaType.equals("application/x-ndjson")
+        || mediaType.endsWith("+json");
+  }
+}
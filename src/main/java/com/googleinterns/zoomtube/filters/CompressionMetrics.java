@@ -0,0 +1,90 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.filters;
+
+import com.googleinterns.zoomtube.data.CompressionStats;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counts the responses compressed on this instance, and the time spent compressing them. */
+final class CompressionMetrics {
+  private static final CompressionMetrics metrics = new CompressionMetrics();
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private final LongAdder compressedCount = new LongAdder();
+  private final LongAdder precompressedCount = new LongAdder();
+  private final LongAdder uncompressedCount = new LongAdder();
+  private final LongAdder uncompressedBytes = new LongAdder();
+  private final LongAdder compressedBytes = new LongAdder();
+  private final LongAdder compressionNanos = new LongAdder();
+
+  static CompressionMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Returns the CPU time used by the current thread, or the wall time if the JVM can't
+   * measure it, in nanoseconds.
+   */
+  static long currentThreadTimeNanos() {
+    if (threads.isCurrentThreadCpuTimeSupported()) {
+      return threads.getCurrentThreadCpuTime();
+    }
+    return System.nanoTime();
+  }
+
+  /**
+   * Records a response of {@code uncompressedBytes} that was compressed to
+   * {@code compressedBytes} in {@code compressionNanos}.
+   */
+  void recordCompressed(long uncompressedBytes, long compressedBytes, long compressionNanos) {
+    compressedCount.increment();
+    this.uncompressedBytes.add(uncompressedBytes);
+    this.compressedBytes.add(compressedBytes);
+    this.compressionNanos.add(compressionNanos);
+  }
+
+  /** Records a response that was compressed before it was cached, so took no time now. */
+  void recordPrecompressed(long uncompressedBytes, long compressedBytes) {
+    precompressedCount.increment();
+    this.uncompressedBytes.add(uncompressedBytes);
+    this.compressedBytes.add(compressedBytes);
+  }
+
+  /** Records a compressible response that was sent as is. */
+  void recordUncompressed() {
+    uncompressedCount.increment();
+  }
+
+  CompressionStats stats() {
+    long compressed = compressedCount.sum();
+    long uncompressedByteCount = uncompressedBytes.sum();
+    long compressedByteCount = compressedBytes.sum();
+    long nanos = compressionNanos.sum();
+    return CompressionStats.builder()
+        .setCompressedCount(compressed)
+        .setPrecompressedCount(precompressedCount.sum())
+        .setUncompressedCount(uncompressedCount.sum())
+        .setUncompressedBytes(uncompressedByteCount)
+        .setCompressedBytes(compressedByteCount)
+        .setCompressionRatio(compressedByteCount == 0
+                ? 1
+                : (double) uncompressedByteCount / compressedByteCount)
+        .setTotalCompressionMs(nanos / 1e6)
+        .setAverageCompressionMs(compressed == 0 ? 0 : nanos / 1e6 / compressed)
+        .build();
+  }
+}
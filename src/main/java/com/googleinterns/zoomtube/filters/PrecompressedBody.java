@@ -0,0 +1,80 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.filters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A response body that is compressed once when it's created, so that a servlet that caches
+ * it doesn't compress it again for every request. {@link CompressionFilter} leaves the
+ * response alone once the body is written.
+ */
+public final class PrecompressedBody {
+  private final String contentType;
+  private final String text;
+  private final int textBytes;
+  private final Optional<byte[]> gzippedBytes;
+
+  private PrecompressedBody(
+      String contentType, String text, int textBytes, Optional<byte[]> gzippedBytes) {
+    this.contentType = contentType;
+    this.text = text;
+    this.textBytes = textBytes;
+    this.gzippedBytes = gzippedBytes;
+  }
+
+  /**
+   * Returns a body of {@code text}, which is compressed only if it's at least as long as the
+   * filter's default threshold.
+   */
+  public static PrecompressedBody create(String contentType, String text) {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length < CompressionFilter.DEFAULT_THRESHOLD_BYTES) {
+      return new PrecompressedBody(contentType, text, bytes.length, Optional.empty());
+    }
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+      gzip.write(bytes);
+    } catch (IOException e) {
+      // Only thrown by the underlying stream, which is in memory.
+      throw new UncheckedIOException(e);
+    }
+    return new PrecompressedBody(
+        contentType, text, bytes.length, Optional.of(gzipped.toByteArray()));
+  }
+
+  /** Writes the body, compressed if the client that sent {@code request} accepts gzip. */
+  public void write(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    response.setContentType(contentType + "; charset=UTF-8");
+    if (!gzippedBytes.isPresent() || !CompressionFilter.acceptsGzip(request)) {
+      response.getWriter().print(text);
+      return;
+    }
+    byte[] bytes = gzippedBytes.get();
+    response.setHeader("Content-Encoding", CompressionFilter.ENCODING_GZIP);
+    response.addHeader("Vary", "Accept-Encoding");
+    response.setContentLength(bytes.length);
+    response.getOutputStream().write(bytes);
+    CompressionMetrics.getMetrics().recordPrecompressed(textBytes, bytes.length);
+  }
+}
@@ -0,0 +1,91 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.http;
+
+import com.google.common.base.Ticker;
+import java.time.Duration;
+
+/**
+ * Stops requests to an upstream service while it is failing, so callers fail fast instead
+ * of waiting on timeouts.
+ *
+ * <p>The circuit opens after a number of consecutive failures. Once it has been open for a
+ * while, a single trial request is let through: if it succeeds the circuit closes, and if it
+ * fails the circuit stays open for another period.
+ */
+public final class CircuitBreaker {
+  /** The state of a circuit. */
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openNanos;
+  private final Ticker ticker;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures = 0;
+  private long openedAtNanos;
+
+  /**
+   * Creates a circuit breaker that opens after {@code failureThreshold} consecutive failures
+   * and stays open for {@code openDuration}.
+   */
+  public CircuitBreaker(int failureThreshold, Duration openDuration, Ticker ticker) {
+    this.failureThreshold = failureThreshold;
+    this.openNanos = openDuration.toNanos();
+    this.ticker = ticker;
+  }
+
+  /**
+   * Returns whether a request may be sent. A request that is allowed must be followed by a
+   * call to {@link #recordSuccess} or {@link #recordFailure}.
+   */
+  public synchronized boolean allowRequest() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (ticker.read() - openedAtNanos < openNanos) {
+          return false;
+        }
+        state = State.HALF_OPEN;
+        return true;
+      case HALF_OPEN:
+      default:
+        // Only the trial request is let through.
+        return false;
+    }
+  }
+
+  public synchronized void recordSuccess() {
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+  }
+
+  public synchronized void recordFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      state = State.OPEN;
+      openedAtNanos = ticker.read();
+    }
+  }
+
+  public synchronized State state() {
+    return state;
+  }
+}
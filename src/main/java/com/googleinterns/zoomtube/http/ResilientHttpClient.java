@@ -0,0 +1,288 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.http;
+
+import com.google.common.base.Ticker;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * An HTTP client for an upstream service that may be slow or unhealthy.
+ *
+ * <ul>
+ *   <li>Connections are pooled and kept alive between requests.
+ *   <li>Connecting, waiting for a pooled connection, and reading each have a timeout, and
+ *       a request including its retries has an overall deadline. No timeout of an attempt
+ *       is longer than what is left of the deadline.
+ *   <li>Server errors and IO errors are retried with jittered exponential backoff, as long
+ *       as the {@link RetryBudget} allows.
+ *   <li>A {@link CircuitBreaker} for each host fails requests fast while that host keeps
+ *       failing.
+ * </ul>
+ */
+public final class ResilientHttpClient {
+  private static final int STATUS_TOO_MANY_REQUESTS = 429;
+  /* Pooled connections are checked before reuse if they have been idle this long. */
+  private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+
+  private final CloseableHttpClient httpClient;
+  private final RequestConfig requestConfig;
+  private final int maxAttempts;
+  private final long baseBackoffMs;
+  private final long maxBackoffMs;
+  private final long deadlineNanos;
+  private final RetryBudget retryBudget;
+  private final int circuitFailureThreshold;
+  private final Duration circuitOpenDuration;
+  private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+  private final Ticker ticker;
+
+  private ResilientHttpClient(Builder builder) {
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(builder.maxConnections);
+    connectionManager.setDefaultMaxPerRoute(builder.maxConnections);
+    connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+    requestConfig =
+        RequestConfig.custom()
+            .setConnectTimeout((int) builder.connectTimeout.toMillis())
+            .setConnectionRequestTimeout((int) builder.connectionRequestTimeout.toMillis())
+            .setSocketTimeout((int) builder.readTimeout.toMillis())
+            .build();
+    httpClient = HttpClients.custom()
+                     .setConnectionManager(connectionManager)
+                     .setDefaultRequestConfig(requestConfig)
+                     // Retries are done here, within the budget.
+                     .disableAutomaticRetries()
+                     .build();
+    maxAttempts = builder.maxAttempts;
+    baseBackoffMs = builder.baseBackoff.toMillis();
+    maxBackoffMs = builder.maxBackoff.toMillis();
+    deadlineNanos = builder.deadline.toNanos();
+    retryBudget = new RetryBudget(builder.retryRatio, builder.maxRetries);
+    circuitFailureThreshold = builder.circuitFailureThreshold;
+    circuitOpenDuration = builder.circuitOpenDuration;
+    ticker = builder.ticker;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns the body of the response to a GET request for {@code uri}.
+   *
+   * @throws CircuitOpenException if the service has been failing, without sending a request.
+   * @throws HttpStatusException if the service responded with an error status.
+   * @throws IOException if the request failed or timed out.
+   */
+  public byte[] get(URI uri) throws IOException {
+    CircuitBreaker circuitBreaker = circuitBreaker(uri);
+    if (!circuitBreaker.allowRequest()) {
+      throw new CircuitOpenException(uri.toString());
+    }
+    retryBudget.recordRequest();
+    long start = ticker.read();
+    // The circuit learns how every request it allowed ended, even one ended by an unexpected
+    // exception or an interrupt, so a half-open circuit's trial request always settles it.
+    boolean serviceResponded = false;
+    try {
+      for (int attempt = 1;; attempt++) {
+        try {
+          byte[] body = attempt(uri, deadlineNanos - (ticker.read() - start));
+          serviceResponded = true;
+          return body;
+        } catch (IOException e) {
+          if (!isRetryable(e)) {
+            // The service is up, it just doesn't like the request.
+            serviceResponded = true;
+            throw e;
+          }
+          long backoffMs = backoffMs(attempt);
+          boolean beforeDeadline =
+              ticker.read() - start + Duration.ofMillis(backoffMs).toNanos() < deadlineNanos;
+          if (attempt >= maxAttempts || !beforeDeadline || !retryBudget.tryRetry()) {
+            throw e;
+          }
+          sleep(backoffMs);
+        }
+      }
+    } finally {
+      if (serviceResponded) {
+        circuitBreaker.recordSuccess();
+      } else {
+        circuitBreaker.recordFailure();
+      }
+    }
+  }
+
+  /** Returns the state of the circuit to the host of {@code uri}. */
+  public CircuitBreaker.State circuitState(URI uri) {
+    return circuitBreaker(uri).state();
+  }
+
+  private CircuitBreaker circuitBreaker(URI uri) {
+    return circuitBreakers.computeIfAbsent(uri.getHost() + ":" + uri.getPort(),
+        host -> new CircuitBreaker(circuitFailureThreshold, circuitOpenDuration, ticker));
+  }
+
+  /**
+   * Sends a single GET request for {@code uri}, with timeouts of at most
+   * {@code remainingNanos}, and returns the body of the response.
+   */
+  private byte[] attempt(URI uri, long remainingNanos) throws IOException {
+    // A timeout of 0 would be no timeout at all.
+    int remainingMs = (int) Math.max(1, Math.min(Integer.MAX_VALUE, remainingNanos / 1_000_000));
+    HttpGet request = new HttpGet(uri);
+    request.setConfig(
+        RequestConfig.copy(requestConfig)
+            .setConnectTimeout(Math.min(requestConfig.getConnectTimeout(), remainingMs))
+            .setConnectionRequestTimeout(
+                Math.min(requestConfig.getConnectionRequestTimeout(), remainingMs))
+            .setSocketTimeout(Math.min(requestConfig.getSocketTimeout(), remainingMs))
+            .build());
+    try (CloseableHttpResponse response = httpClient.execute(request)) {
+      int statusCode = response.getStatusLine().getStatusCode();
+      if (statusCode != HttpStatus.SC_OK) {
+        // Consumes the body so the connection can be reused.
+        EntityUtils.consume(response.getEntity());
+        throw new HttpStatusException(statusCode, uri.toString());
+      }
+      return response.getEntity() == null ? new byte[0]
+                                          : EntityUtils.toByteArray(response.getEntity());
+    }
+  }
+
+  private static boolean isRetryable(IOException e) {
+    if (!(e instanceof HttpStatusException)) {
+      return true;
+    }
+    int statusCode = ((HttpStatusException) e).statusCode();
+    return statusCode >= 500 || statusCode == STATUS_TOO_MANY_REQUESTS;
+  }
+
+  /**
+   * Returns a random backoff below a cap that doubles with each attempt, so that clients
+   * which failed together don't retry together.
+   */
+  private long backoffMs(int attempt) {
+    long maxForAttempt = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempt - 1, 20));
+    return ThreadLocalRandom.current().nextLong(maxForAttempt + 1);
+  }
+
+  private static void sleep(long millis) throws IOException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+  }
+
+  /** Configures a {@code ResilientHttpClient}. */
+  public static final class Builder {
+    private Duration connectTimeout = Duration.ofSeconds(2);
+    private Duration connectionRequestTimeout = Duration.ofSeconds(1);
+    private Duration readTimeout = Duration.ofSeconds(5);
+    private Duration deadline = Duration.ofSeconds(10);
+    private int maxConnections = 20;
+    private int maxAttempts = 3;
+    private Duration baseBackoff = Duration.ofMillis(100);
+    private Duration maxBackoff = Duration.ofSeconds(1);
+    private double retryRatio = 0.2;
+    private int maxRetries = 10;
+    private int circuitFailureThreshold = 5;
+    private Duration circuitOpenDuration = Duration.ofSeconds(30);
+    private Ticker ticker = Ticker.systemTicker();
+
+    private Builder() {}
+
+    /** Sets how long to wait for a connection to be established. */
+    public Builder setConnectTimeout(Duration connectTimeout) {
+      this.connectTimeout = connectTimeout;
+      return this;
+    }
+
+    /** Sets how long to wait for a connection from the pool. */
+    public Builder setConnectionRequestTimeout(Duration connectionRequestTimeout) {
+      this.connectionRequestTimeout = connectionRequestTimeout;
+      return this;
+    }
+
+    /** Sets how long to wait for data once connected. */
+    public Builder setReadTimeout(Duration readTimeout) {
+      this.readTimeout = readTimeout;
+      return this;
+    }
+
+    /** Sets the time after which a failed request isn't retried. */
+    public Builder setDeadline(Duration deadline) {
+      this.deadline = deadline;
+      return this;
+    }
+
+    public Builder setMaxConnections(int maxConnections) {
+      this.maxConnections = maxConnections;
+      return this;
+    }
+
+    /** Sets the number of attempts for a request, including the first one. */
+    public Builder setMaxAttempts(int maxAttempts) {
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    public Builder setBackoff(Duration baseBackoff, Duration maxBackoff) {
+      this.baseBackoff = baseBackoff;
+      this.maxBackoff = maxBackoff;
+      return this;
+    }
+
+    /** Allows {@code retryRatio} retries per request, with up to {@code maxRetries} saved. */
+    public Builder setRetryBudget(double retryRatio, int maxRetries) {
+      this.retryRatio = retryRatio;
+      this.maxRetries = maxRetries;
+      return this;
+    }
+
+    /** Opens the circuit for {@code openDuration} after {@code failureThreshold} failures. */
+    public Builder setCircuitBreaker(int failureThreshold, Duration openDuration) {
+      this.circuitFailureThreshold = failureThreshold;
+      this.circuitOpenDuration = openDuration;
+      return this;
+    }
+
+    public Builder setTicker(Ticker ticker) {
+      this.ticker = ticker;
+      return this;
+    }
+
+    public ResilientHttpClient build() {
+      return new ResilientHttpClient(this);
+    }
+  }
+}
@@ -0,0 +1,49 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.http;
+
+/**
+ * Limits retries to a fraction of requests, so that retries can't multiply the load on an
+ * upstream service that is already struggling.
+ *
+ * <p>Every request earns {@code ratio} of a retry, up to {@code maxRetries} saved up, and
+ * every retry spends one.
+ */
+public final class RetryBudget {
+  private final double ratio;
+  private final double maxRetries;
+  private double availableRetries;
+
+  public RetryBudget(double ratio, int maxRetries) {
+    this.ratio = ratio;
+    this.maxRetries = maxRetries;
+    // Starts full so that the first requests after startup can be retried.
+    this.availableRetries = maxRetries;
+  }
+
+  /** Records a request, adding to the budget. */
+  public synchronized void recordRequest() {
+    availableRetries = Math.min(maxRetries, availableRetries + ratio);
+  }
+
+  /** Returns whether a retry may be sent, spending from the budget if so. */
+  public synchronized boolean tryRetry() {
+    if (availableRetries < 1) {
+      return false;
+    }
+    availableRetries--;
+    return true;
+  }
+}
@@ -0,0 +1,44 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+/** The kinds of datastore call that are counted for each request. */
+public enum DatastoreOperation {
+  GET("get"),
+  PUT("put"),
+  DELETE("delete"),
+  QUERY("query");
+
+  /* values() copies the array each time, so this is kept for the hot path. */
+  static final DatastoreOperation[] ALL = values();
+
+  private final String label;
+  private final String spanName;
+
+  DatastoreOperation(String label) {
+    this.label = label;
+    spanName = "datastore." + label;
+  }
+
+  /** Returns the name of the operation as it's shown in metrics. */
+  String label() {
+    return label;
+  }
+
+  /** Returns the name of the trace span of a call. */
+  String spanName() {
+    return spanName;
+  }
+}
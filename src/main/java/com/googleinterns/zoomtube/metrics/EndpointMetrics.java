@@ -0,0 +1,82 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** The latency, response sizes and datastore calls of the requests served by one servlet. */
+final class EndpointMetrics {
+  private final String name;
+  private final Histogram latencyMicros = new Histogram();
+  private final Histogram responseBytes = new Histogram();
+  private final Histogram datastoreMicros = new Histogram();
+  private final LongAdder serverErrors = new LongAdder();
+  private final LongAdder[] datastoreCalls = new LongAdder[DatastoreOperation.ALL.length];
+  private final LongAdder[] datastoreNanos = new LongAdder[DatastoreOperation.ALL.length];
+
+  EndpointMetrics(String name) {
+    this.name = name;
+    for (int operation = 0; operation < DatastoreOperation.ALL.length; operation++) {
+      datastoreCalls[operation] = new LongAdder();
+      datastoreNanos[operation] = new LongAdder();
+    }
+  }
+
+  /** Records a request that took {@code latencyNanos} and ended with {@code status}. */
+  void record(RequestMetrics request, long latencyNanos, int status) {
+    latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    responseBytes.record(request.responseBytes());
+    if (status >= 500) {
+      serverErrors.increment();
+    }
+    long requestDatastoreNanos = 0;
+    for (DatastoreOperation operation : DatastoreOperation.ALL) {
+      datastoreCalls[operation.ordinal()].add(request.datastoreCalls(operation));
+      datastoreNanos[operation.ordinal()].add(request.datastoreNanos(operation));
+      requestDatastoreNanos += request.datastoreNanos(operation);
+    }
+    datastoreMicros.record(TimeUnit.NANOSECONDS.toMicros(requestDatastoreNanos));
+  }
+
+  String name() {
+    return name;
+  }
+
+  Histogram latencyMicros() {
+    return latencyMicros;
+  }
+
+  Histogram responseBytes() {
+    return responseBytes;
+  }
+
+  /** Returns the time each request spent waiting on the datastore. */
+  Histogram datastoreMicros() {
+    return datastoreMicros;
+  }
+
+  long serverErrors() {
+    return serverErrors.sum();
+  }
+
+  long datastoreCalls(DatastoreOperation operation) {
+    return datastoreCalls[operation.ordinal()].sum();
+  }
+
+  long datastoreNanos(DatastoreOperation operation) {
+    return datastoreNanos[operation.ordinal()].sum();
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts non-negative values in log-linear buckets, in the way of HdrHistogram. Each power of
+ * two is split into {@code 2^SUB_BUCKET_BITS} buckets, so a quantile is reported within 12.5%
+ * of the true value whatever its magnitude.
+ *
+ * <p>Recording a value allocates nothing and takes no lock, so it can be done on every
+ * request.
+ */
+public final class Histogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  /* Small values have a bucket each, then each power of two has SUB_BUCKET_COUNT. */
+  private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /** Records {@code value}, treating a negative value as zero. */
+  public void record(long value) {
+    value = Math.max(0, value);
+    counts.incrementAndGet(bucketIndex(value));
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  public long sum() {
+    return sum.sum();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  /**
+   * Returns the largest value in the bucket that holds the {@code quantile} of the recorded
+   * values, or zero if none are recorded.
+   */
+  public long valueAtQuantile(double quantile) {
+    long total = 0;
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      total += counts.get(bucket);
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      seen += counts.get(bucket);
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(bucket), max());
+      }
+    }
+    return max();
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /** Returns the largest value counted in {@code bucket}. */
+  static long bucketUpperBound(int bucket) {
+    if (bucket < SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+    int magnitude = bucket / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+    int subBucket = bucket % SUB_BUCKET_COUNT;
+    int shift = magnitude - SUB_BUCKET_BITS;
+    long lowerBound = (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,235 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreAttributes;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Index;
+import com.google.appengine.api.datastore.Index.IndexState;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An {@link AsyncDatastoreService} that records the gets, puts, deletes and queries of each
+ * request like {@link MeteredDatastoreService}. Every other call is passed on as is.
+ *
+ * <p>A get, put or delete is recorded from when it is started until its result is first
+ * waited for, so calls that run at once overlap in the trace. One whose result is never waited
+ * for isn't recorded.
+ */
+public final class MeteredAsyncDatastoreService implements AsyncDatastoreService {
+  private final AsyncDatastoreService datastore;
+
+  private MeteredAsyncDatastoreService(AsyncDatastoreService datastore) {
+    this.datastore = datastore;
+  }
+
+  /** Returns the app's asynchronous datastore, metered. */
+  public static AsyncDatastoreService getAsyncDatastoreService() {
+    return new MeteredAsyncDatastoreService(DatastoreServiceFactory.getAsyncDatastoreService());
+  }
+
+  @Override
+  public Future<Entity> get(Key key) {
+    return metered(DatastoreOperation.GET, datastore.get(key));
+  }
+
+  @Override
+  public Future<Entity> get(Transaction transaction, Key key) {
+    return metered(DatastoreOperation.GET, datastore.get(transaction, key));
+  }
+
+  @Override
+  public Future<Map<Key, Entity>> get(Iterable<Key> keys) {
+    return metered(DatastoreOperation.GET, datastore.get(keys));
+  }
+
+  @Override
+  public Future<Map<Key, Entity>> get(Transaction transaction, Iterable<Key> keys) {
+    return metered(DatastoreOperation.GET, datastore.get(transaction, keys));
+  }
+
+  @Override
+  public Future<Key> put(Entity entity) {
+    return metered(DatastoreOperation.PUT, datastore.put(entity));
+  }
+
+  @Override
+  public Future<Key> put(Transaction transaction, Entity entity) {
+    return metered(DatastoreOperation.PUT, datastore.put(transaction, entity));
+  }
+
+  @Override
+  public Future<List<Key>> put(Iterable<Entity> entities) {
+    return metered(DatastoreOperation.PUT, datastore.put(entities));
+  }
+
+  @Override
+  public Future<List<Key>> put(Transaction transaction, Iterable<Entity> entities) {
+    return metered(DatastoreOperation.PUT, datastore.put(transaction, entities));
+  }
+
+  @Override
+  public Future<Void> delete(Key... keys) {
+    return metered(DatastoreOperation.DELETE, datastore.delete(keys));
+  }
+
+  @Override
+  public Future<Void> delete(Transaction transaction, Key... keys) {
+    return metered(DatastoreOperation.DELETE, datastore.delete(transaction, keys));
+  }
+
+  @Override
+  public Future<Void> delete(Iterable<Key> keys) {
+    return metered(DatastoreOperation.DELETE, datastore.delete(keys));
+  }
+
+  @Override
+  public Future<Void> delete(Transaction transaction, Iterable<Key> keys) {
+    return metered(DatastoreOperation.DELETE, datastore.delete(transaction, keys));
+  }
+
+  @Override
+  public PreparedQuery prepare(Query query) {
+    return new MeteredPreparedQuery(datastore.prepare(query));
+  }
+
+  @Override
+  public PreparedQuery prepare(Transaction transaction, Query query) {
+    return new MeteredPreparedQuery(datastore.prepare(transaction, query));
+  }
+
+  @Override
+  public Future<Transaction> beginTransaction() {
+    return datastore.beginTransaction();
+  }
+
+  @Override
+  public Future<Transaction> beginTransaction(TransactionOptions options) {
+    return datastore.beginTransaction(options);
+  }
+
+  @Override
+  public Transaction getCurrentTransaction() {
+    return datastore.getCurrentTransaction();
+  }
+
+  @Override
+  public Transaction getCurrentTransaction(Transaction returnedIfNoTransaction) {
+    return datastore.getCurrentTransaction(returnedIfNoTransaction);
+  }
+
+  @Override
+  public Collection<Transaction> getActiveTransactions() {
+    return datastore.getActiveTransactions();
+  }
+
+  @Override
+  public Future<KeyRange> allocateIds(String kind, long num) {
+    return datastore.allocateIds(kind, num);
+  }
+
+  @Override
+  public Future<KeyRange> allocateIds(Key parent, String kind, long num) {
+    return datastore.allocateIds(parent, kind, num);
+  }
+
+  @Override
+  public Future<DatastoreAttributes> getDatastoreAttributes() {
+    return datastore.getDatastoreAttributes();
+  }
+
+  @Override
+  public Future<Map<Index, IndexState>> getIndexes() {
+    return datastore.getIndexes();
+  }
+
+  private static <V> Future<V> metered(DatastoreOperation operation, Future<V> result) {
+    return new MeteredFuture<>(operation, System.nanoTime(), result);
+  }
+
+  /** A call's result, which records the call the first time it is waited for. */
+  private static final class MeteredFuture<V> implements Future<V> {
+    private final DatastoreOperation operation;
+    private final long startNanos;
+    private final Future<V> result;
+    private final AtomicBoolean recorded = new AtomicBoolean();
+
+    MeteredFuture(DatastoreOperation operation, long startNanos, Future<V> result) {
+      this.operation = operation;
+      this.startNanos = startNanos;
+      this.result = result;
+    }
+
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+      try {
+        return result.get();
+      } finally {
+        // An interrupted wait isn't the end of the call.
+        if (result.isDone()) {
+          record();
+        }
+      }
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      try {
+        return result.get(timeout, unit);
+      } finally {
+        if (result.isDone()) {
+          record();
+        }
+      }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return result.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return result.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+      return result.isDone();
+    }
+
+    private void record() {
+      if (recorded.compareAndSet(false, true)) {
+        MeteredDatastoreService.record(operation, startNanos);
+      }
+    }
+  }
+}
@@ -0,0 +1,238 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+import com.google.appengine.api.datastore.DatastoreAttributes;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Index;
+import com.google.appengine.api.datastore.Index.IndexState;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.googleinterns.zoomtube.tracing.Tracer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DatastoreService} that records the gets, puts, deletes and queries of each request
+ * in its {@link RequestMetrics}, and as spans of its trace. Every other call is passed on as
+ * is.
+ */
+public final class MeteredDatastoreService implements DatastoreService {
+  private final DatastoreService datastore;
+
+  private MeteredDatastoreService(DatastoreService datastore) {
+    this.datastore = datastore;
+  }
+
+  /** Returns the app's datastore, metered. */
+  public static DatastoreService getDatastoreService() {
+    return new MeteredDatastoreService(DatastoreServiceFactory.getDatastoreService());
+  }
+
+  @Override
+  public Entity get(Key key) throws EntityNotFoundException {
+    long start = System.nanoTime();
+    try {
+      return datastore.get(key);
+    } finally {
+      record(DatastoreOperation.GET, start);
+    }
+  }
+
+  @Override
+  public Entity get(Transaction transaction, Key key) throws EntityNotFoundException {
+    long start = System.nanoTime();
+    try {
+      return datastore.get(transaction, key);
+    } finally {
+      record(DatastoreOperation.GET, start);
+    }
+  }
+
+  @Override
+  public Map<Key, Entity> get(Iterable<Key> keys) {
+    long start = System.nanoTime();
+    try {
+      return datastore.get(keys);
+    } finally {
+      record(DatastoreOperation.GET, start);
+    }
+  }
+
+  @Override
+  public Map<Key, Entity> get(Transaction transaction, Iterable<Key> keys) {
+    long start = System.nanoTime();
+    try {
+      return datastore.get(transaction, keys);
+    } finally {
+      record(DatastoreOperation.GET, start);
+    }
+  }
+
+  @Override
+  public Key put(Entity entity) {
+    long start = System.nanoTime();
+    try {
+      return datastore.put(entity);
+    } finally {
+      record(DatastoreOperation.PUT, start);
+    }
+  }
+
+  @Override
+  public Key put(Transaction transaction, Entity entity) {
+    long start = System.nanoTime();
+    try {
+      return datastore.put(transaction, entity);
+    } finally {
+      record(DatastoreOperation.PUT, start);
+    }
+  }
+
+  @Override
+  public List<Key> put(Iterable<Entity> entities) {
+    long start = System.nanoTime();
+    try {
+      return datastore.put(entities);
+    } finally {
+      record(DatastoreOperation.PUT, start);
+    }
+  }
+
+  @Override
+  public List<Key> put(Transaction transaction, Iterable<Entity> entities) {
+    long start = System.nanoTime();
+    try {
+      return datastore.put(transaction, entities);
+    } finally {
+      record(DatastoreOperation.PUT, start);
+    }
+  }
+
+  @Override
+  public void delete(Key... keys) {
+    long start = System.nanoTime();
+    try {
+      datastore.delete(keys);
+    } finally {
+      record(DatastoreOperation.DELETE, start);
+    }
+  }
+
+  @Override
+  public void delete(Transaction transaction, Key... keys) {
+    long start = System.nanoTime();
+    try {
+      datastore.delete(transaction, keys);
+    } finally {
+      record(DatastoreOperation.DELETE, start);
+    }
+  }
+
+  @Override
+  public void delete(Iterable<Key> keys) {
+    long start = System.nanoTime();
+    try {
+      datastore.delete(keys);
+    } finally {
+      record(DatastoreOperation.DELETE, start);
+    }
+  }
+
+  @Override
+  public void delete(Transaction transaction, Iterable<Key> keys) {
+    long start = System.nanoTime();
+    try {
+      datastore.delete(transaction, keys);
+    } finally {
+      record(DatastoreOperation.DELETE, start);
+    }
+  }
+
+  @Override
+  public PreparedQuery prepare(Query query) {
+    return new MeteredPreparedQuery(datastore.prepare(query));
+  }
+
+  @Override
+  public PreparedQuery prepare(Transaction transaction, Query query) {
+    return new MeteredPreparedQuery(datastore.prepare(transaction, query));
+  }
+
+  @Override
+  public Transaction beginTransaction() {
+    return datastore.beginTransaction();
+  }
+
+  @Override
+  public Transaction beginTransaction(TransactionOptions options) {
+    return datastore.beginTransaction(options);
+  }
+
+  @Override
+  public Transaction getCurrentTransaction() {
+    return datastore.getCurrentTransaction();
+  }
+
+  @Override
+  public Transaction getCurrentTransaction(Transaction returnedIfNoTransaction) {
+    return datastore.getCurrentTransaction(returnedIfNoTransaction);
+  }
+
+  @Override
+  public Collection<Transaction> getActiveTransactions() {
+    return datastore.getActiveTransactions();
+  }
+
+  @Override
+  public KeyRange allocateIds(String kind, long num) {
+    return datastore.allocateIds(kind, num);
+  }
+
+  @Override
+  public KeyRange allocateIds(Key parent, String kind, long num) {
+    return datastore.allocateIds(parent, kind, num);
+  }
+
+  @Override
+  public KeyRangeState allocateIdRange(KeyRange range) {
+    return datastore.allocateIdRange(range);
+  }
+
+  @Override
+  public DatastoreAttributes getDatastoreAttributes() {
+    return datastore.getDatastoreAttributes();
+  }
+
+  @Override
+  public Map<Index, IndexState> getIndexes() {
+    return datastore.getIndexes();
+  }
+
+  /** Records a call of {@code operation} that started at {@code startNanos} and just ended. */
+  static void record(DatastoreOperation operation, long startNanos) {
+    long endNanos = System.nanoTime();
+    RequestMetrics.recordDatastoreCall(operation, endNanos - startNanos);
+    Tracer.recordSpan(operation.spanName(), startNanos, endNanos);
+  }
+}
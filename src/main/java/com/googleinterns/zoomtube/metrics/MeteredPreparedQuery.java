@@ -0,0 +1,124 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.QueryResultIterable;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.datastore.QueryResultList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A {@link PreparedQuery} that records each run of the query as a datastore call.
+ *
+ * <p>The time recorded is that of the call that starts the query. Results that an iterable
+ * or iterator fetches in later batches, as it is read, aren't timed.
+ */
+final class MeteredPreparedQuery implements PreparedQuery {
+  private final PreparedQuery query;
+
+  MeteredPreparedQuery(PreparedQuery query) {
+    this.query = query;
+  }
+
+  @Override
+  public List<Entity> asList(FetchOptions fetchOptions) {
+    return run(() -> query.asList(fetchOptions));
+  }
+
+  @Override
+  public QueryResultList<Entity> asQueryResultList(FetchOptions fetchOptions) {
+    return run(() -> query.asQueryResultList(fetchOptions));
+  }
+
+  @Override
+  public Iterable<Entity> asIterable(FetchOptions fetchOptions) {
+    return run(() -> query.asIterable(fetchOptions));
+  }
+
+  @Override
+  public Iterable<Entity> asIterable() {
+    return run(query::asIterable);
+  }
+
+  @Override
+  public QueryResultIterable<Entity> asQueryResultIterable(FetchOptions fetchOptions) {
+    return run(() -> query.asQueryResultIterable(fetchOptions));
+  }
+
+  @Override
+  public QueryResultIterable<Entity> asQueryResultIterable() {
+    return run(query::asQueryResultIterable);
+  }
+
+  @Override
+  public Iterator<Entity> asIterator(FetchOptions fetchOptions) {
+    return run(() -> query.asIterator(fetchOptions));
+  }
+
+  @Override
+  public Iterator<Entity> asIterator() {
+    return run(query::asIterator);
+  }
+
+  @Override
+  public QueryResultIterator<Entity> asQueryResultIterator(FetchOptions fetchOptions) {
+    return run(() -> query.asQueryResultIterator(fetchOptions));
+  }
+
+  @Override
+  public QueryResultIterator<Entity> asQueryResultIterator() {
+    return run(query::asQueryResultIterator);
+  }
+
+  @Override
+  public Entity asSingleEntity() throws TooManyResultsException {
+    long start = System.nanoTime();
+    try {
+      return query.asSingleEntity();
+    } finally {
+      MeteredDatastoreService.record(DatastoreOperation.QUERY, start);
+    }
+  }
+
+  @Override
+  public int countEntities(FetchOptions fetchOptions) {
+    return run(() -> query.countEntities(fetchOptions));
+  }
+
+  @Override
+  @Deprecated
+  public int countEntities() {
+    return run(query::countEntities);
+  }
+
+  @Override
+  public String toString() {
+    return query.toString();
+  }
+
+  private static <T> T run(Supplier<T> runQuery) {
+    long start = System.nanoTime();
+    try {
+      return runQuery.get();
+    } finally {
+      MeteredDatastoreService.record(DatastoreOperation.QUERY, start);
+    }
+  }
+}
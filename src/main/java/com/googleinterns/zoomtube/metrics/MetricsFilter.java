@@ -0,0 +1,104 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRegistration;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Records the latency, response size and datastore calls of every request, by the servlet
+ * that served it. Requests that no servlet of the app serves, such as for static files, are
+ * counted together as {@value #OTHER_ENDPOINT}.
+ *
+ * <p>The servlet is found with a lookup by path that was built when the filter started, so
+ * that recording a request allocates nothing.
+ */
+public class MetricsFilter implements Filter {
+  @VisibleForTesting static final String OTHER_ENDPOINT = "other";
+
+  /* Shared by every instance of the filter, so that /metrics sees them all. */
+  private static final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+  private Map<String, EndpointMetrics> endpointsByPath = ImmutableMap.of();
+  private EndpointMetrics otherEndpoint;
+
+  @Override
+  public void init(FilterConfig filterConfig) {
+    Map<String, EndpointMetrics> byPath = new HashMap<>();
+    for (ServletRegistration servlet :
+        filterConfig.getServletContext().getServletRegistrations().values()) {
+      for (String mapping : servlet.getMappings()) {
+        // The servlet path of "/lecture/*" is "/lecture".
+        String path = mapping.endsWith("/*") ? mapping.substring(0, mapping.length() - 2)
+                                             : mapping;
+        byPath.put(path, getEndpoint(servlet.getName()));
+      }
+    }
+    endpointsByPath = ImmutableMap.copyOf(byPath);
+    otherEndpoint = getEndpoint(OTHER_ENDPOINT);
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+      chain.doFilter(request, response);
+      return;
+    }
+    EndpointMetrics endpoint = endpointsByPath.getOrDefault(
+        ((HttpServletRequest) request).getServletPath(), otherEndpoint);
+    RequestMetrics requestMetrics = RequestMetrics.start();
+    long start = System.nanoTime();
+    int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    try {
+      chain.doFilter(request, response);
+      status = ((HttpServletResponse) response).getStatus();
+    } finally {
+      endpoint.record(requestMetrics, System.nanoTime() - start, status);
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** Returns the metrics of every servlet that has served a request, sorted by name. */
+  static ImmutableList<EndpointMetrics> allEndpoints() {
+    return endpoints.values()
+        .stream()
+        .filter(endpoint -> endpoint.latencyMicros().count() > 0)
+        .sorted(Comparator.comparing(EndpointMetrics::name))
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  @VisibleForTesting
+  static EndpointMetrics getEndpoint(String name) {
+    return endpoints.computeIfAbsent(name, EndpointMetrics::new);
+  }
+}
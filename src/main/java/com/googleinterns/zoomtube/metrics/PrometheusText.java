@@ -0,0 +1,120 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes the metrics of this instance in the Prometheus text format.
+ *
+ * <p>Latencies and response sizes are written as summaries, with quantiles read from each
+ * servlet's {@link Histogram}. The quantiles cover every request since the instance started.
+ */
+public final class PrometheusText {
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+  private static final double SECONDS_PER_MICRO = 1e-6;
+  private static final double SECONDS_PER_NANO = 1e-9;
+
+  /** Writes every metric to {@code writer}. */
+  public static void write(PrintWriter writer) {
+    List<EndpointMetrics> endpoints = MetricsFilter.allEndpoints();
+
+    writeHeader(writer, "zoomtube_request_latency_seconds", "summary",
+        "Time taken to serve a request, by servlet.");
+    for (EndpointMetrics endpoint : endpoints) {
+      writeSummary(writer, "zoomtube_request_latency_seconds", endpoint,
+          endpoint.latencyMicros(), SECONDS_PER_MICRO);
+    }
+    writeHeader(writer, "zoomtube_response_size_bytes", "summary",
+        "Size of a response body as sent, after any compression, by servlet.");
+    for (EndpointMetrics endpoint : endpoints) {
+      writeSummary(writer, "zoomtube_response_size_bytes", endpoint, endpoint.responseBytes(), 1);
+    }
+    writeHeader(writer, "zoomtube_request_datastore_seconds", "summary",
+        "Time a request spent waiting on datastore calls, by servlet.");
+    for (EndpointMetrics endpoint : endpoints) {
+      writeSummary(writer, "zoomtube_request_datastore_seconds", endpoint,
+          endpoint.datastoreMicros(), SECONDS_PER_MICRO);
+    }
+    writeHeader(writer, "zoomtube_server_errors_total", "counter",
+        "Requests that ended with a 5xx status, by servlet.");
+    for (EndpointMetrics endpoint : endpoints) {
+      writeSample(writer, "zoomtube_server_errors_total", servletLabel(endpoint),
+          endpoint.serverErrors());
+    }
+    writeHeader(writer, "zoomtube_datastore_calls_total", "counter",
+        "Datastore calls, by servlet and operation.");
+    for (EndpointMetrics endpoint : endpoints) {
+      for (DatastoreOperation operation : DatastoreOperation.ALL) {
+        writeSample(writer, "zoomtube_datastore_calls_total",
+            operationLabels(endpoint, operation), endpoint.datastoreCalls(operation));
+      }
+    }
+    writeHeader(writer, "zoomtube_datastore_seconds_total", "counter",
+        "Time spent waiting on datastore calls, by servlet and operation.");
+    for (EndpointMetrics endpoint : endpoints) {
+      for (DatastoreOperation operation : DatastoreOperation.ALL) {
+        writeSample(writer, "zoomtube_datastore_seconds_total",
+            operationLabels(endpoint, operation),
+            endpoint.datastoreNanos(operation) * SECONDS_PER_NANO);
+      }
+    }
+  }
+
+  private static void writeHeader(PrintWriter writer, String name, String type, String help) {
+    writer.printf("# HELP %s %s\n", name, help);
+    writer.printf("# TYPE %s %s\n", name, type);
+  }
+
+  /** Writes {@code histogram} as a summary, with each value multiplied by {@code scale}. */
+  private static void writeSummary(PrintWriter writer, String name, EndpointMetrics endpoint,
+      Histogram histogram, double scale) {
+    for (double quantile : QUANTILES) {
+      writeSample(writer, name,
+          String.format(Locale.ROOT, "%s,quantile=\"%s\"", servletLabel(endpoint), quantile),
+          histogram.valueAtQuantile(quantile) * scale);
+    }
+    writeSample(writer, name + "_sum", servletLabel(endpoint), histogram.sum() * scale);
+    writeSample(writer, name + "_count", servletLabel(endpoint), histogram.count());
+  }
+
+  private static void writeSample(PrintWriter writer, String name, String labels, double value) {
+    writer.printf(Locale.ROOT, "%s{%s} %s\n", name, labels, formatValue(value));
+  }
+
+  private static String formatValue(double value) {
+    return value == Math.rint(value) && Math.abs(value) < 1e15
+        ? Long.toString((long) value)
+        : Double.toString(value);
+  }
+
+  private static String servletLabel(EndpointMetrics endpoint) {
+    return String.format("servlet=\"%s\"", escape(endpoint.name()));
+  }
+
+  private static String operationLabels(EndpointMetrics endpoint, DatastoreOperation operation) {
+    return String.format("%s,operation=\"%s\"", servletLabel(endpoint), operation.label());
+  }
+
+  private static String escape(String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private PrometheusText() {}
+}
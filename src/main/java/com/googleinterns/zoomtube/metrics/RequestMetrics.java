@@ -0,0 +1,69 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+/**
+ * Adds up the datastore calls and response bytes of the request being served on the current
+ * thread. {@link MetricsFilter} starts it before each request, and adds it to the servlet's
+ * {@link EndpointMetrics} after.
+ *
+ * <p>Each thread reuses one instance, so recording allocates nothing. Work done on other
+ * threads, such as transcripts fetched in parallel, isn't counted against the request.
+ */
+public final class RequestMetrics {
+  private static final ThreadLocal<RequestMetrics> current =
+      ThreadLocal.withInitial(RequestMetrics::new);
+
+  private final long[] datastoreCalls = new long[DatastoreOperation.ALL.length];
+  private final long[] datastoreNanos = new long[DatastoreOperation.ALL.length];
+  private long responseBytes;
+
+  private RequestMetrics() {}
+
+  /** Records a datastore call made by the current request, which took {@code nanos}. */
+  public static void recordDatastoreCall(DatastoreOperation operation, long nanos) {
+    RequestMetrics metrics = current.get();
+    metrics.datastoreCalls[operation.ordinal()]++;
+    metrics.datastoreNanos[operation.ordinal()] += nanos;
+  }
+
+  /** Records {@code bytes} of the current request's response body, as sent. */
+  public static void recordResponseBytes(long bytes) {
+    current.get().responseBytes += bytes;
+  }
+
+  /** Returns the metrics of the current thread's request, cleared for a new request. */
+  static RequestMetrics start() {
+    RequestMetrics metrics = current.get();
+    for (int operation = 0; operation < DatastoreOperation.ALL.length; operation++) {
+      metrics.datastoreCalls[operation] = 0;
+      metrics.datastoreNanos[operation] = 0;
+    }
+    metrics.responseBytes = 0;
+    return metrics;
+  }
+
+  long datastoreCalls(DatastoreOperation operation) {
+    return datastoreCalls[operation.ordinal()];
+  }
+
+  long datastoreNanos(DatastoreOperation operation) {
+    return datastoreNanos[operation.ordinal()];
+  }
+
+  long responseBytes() {
+    return responseBytes;
+  }
+}
@@ -0,0 +1,32 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import java.util.List;
+import java.util.Optional;
+
+/** Stores comment entities, as created by {@code CommentUtil}. */
+public interface CommentRepository {
+  /** Returns the comment with {@code commentId}, or empty if there's no such comment. */
+  Optional<Entity> get(long commentId);
+
+  /** Returns every comment on the lecture with {@code lectureKey}, in no particular order. */
+  List<Entity> getByLecture(Key lectureKey);
+
+  /** Stores {@code commentEntity} and returns its key, which is given an id if it has none. */
+  Key put(Entity commentEntity);
+}
@@ -0,0 +1,60 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/** Stores comments in datastore. */
+final class DatastoreCommentRepository implements CommentRepository {
+  private final DatastoreService datastore;
+
+  DatastoreCommentRepository(DatastoreService datastore) {
+    this.datastore = datastore;
+  }
+
+  @Override
+  public Optional<Entity> get(long commentId) {
+    try {
+      return Optional.of(datastore.get(KeyFactory.createKey(CommentUtil.KIND, commentId)));
+    } catch (EntityNotFoundException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public List<Entity> getByLecture(Key lectureKey) {
+    Query query = new Query(CommentUtil.KIND).setFilter(
+        new FilterPredicate(CommentUtil.LECTURE, FilterOperator.EQUAL, lectureKey));
+    List<Entity> commentEntities = new ArrayList<>();
+    datastore.prepare(query).asQueryResultIterable().forEach(commentEntities::add);
+    return commentEntities;
+  }
+
+  @Override
+  public Key put(Entity commentEntity) {
+    return datastore.put(commentEntity);
+  }
+}
@@ -0,0 +1,52 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.googleinterns.zoomtube.utils.IconFeedbackUtil;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Stores icon feedback in datastore. */
+final class DatastoreIconFeedbackRepository implements IconFeedbackRepository {
+  private final DatastoreService datastore;
+
+  DatastoreIconFeedbackRepository(DatastoreService datastore) {
+    this.datastore = datastore;
+  }
+
+  @Override
+  public List<Entity> getByLecture(Key lectureKey) {
+    Query query =
+        new Query(IconFeedbackUtil.KIND)
+            .setFilter(
+                new FilterPredicate(IconFeedbackUtil.LECTURE, FilterOperator.EQUAL, lectureKey))
+            .addSort(IconFeedbackUtil.TIMESTAMP_MS, SortDirection.ASCENDING);
+    List<Entity> iconFeedbackEntities = new ArrayList<>();
+    datastore.prepare(query).asQueryResultIterable().forEach(iconFeedbackEntities::add);
+    return iconFeedbackEntities;
+  }
+
+  @Override
+  public Key put(Entity iconFeedbackEntity) {
+    return datastore.put(iconFeedbackEntity);
+  }
+}
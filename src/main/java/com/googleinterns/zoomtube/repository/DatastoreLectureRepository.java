@@ -0,0 +1,141 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.common.collect.ImmutableList;
+import com.googleinterns.zoomtube.data.LecturePage;
+import com.googleinterns.zoomtube.data.LectureSummary;
+import com.googleinterns.zoomtube.utils.LectureIdentity;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/** Stores lectures in datastore. */
+final class DatastoreLectureRepository implements LectureRepository {
+  private final DatastoreService datastore;
+
+  DatastoreLectureRepository(DatastoreService datastore) {
+    this.datastore = datastore;
+  }
+
+  @Override
+  public Optional<Entity> get(long lectureId) {
+    try {
+      return Optional.of(datastore.get(KeyFactory.createKey(LectureUtil.KIND, lectureId)));
+    } catch (EntityNotFoundException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public Map<Key, Entity> getAll(Collection<Key> lectureKeys) {
+    return datastore.get(lectureKeys);
+  }
+
+  @Override
+  public LecturePage getPageByName(String sortNamePrefix, int limit, String cursor) {
+    Query query = createNamesQuery();
+    if (!sortNamePrefix.isEmpty()) {
+      // Every name with the prefix sorts before the prefix followed by the last character.
+      query.setFilter(CompositeFilterOperator.and(
+          new FilterPredicate(
+              LectureUtil.SORT_NAME, FilterOperator.GREATER_THAN_OR_EQUAL, sortNamePrefix),
+          new FilterPredicate(LectureUtil.SORT_NAME, FilterOperator.LESS_THAN,
+              sortNamePrefix + Character.MAX_VALUE)));
+    }
+    return getPage(query.addSort(LectureUtil.SORT_NAME), limit, cursor);
+  }
+
+  @Override
+  public LecturePage getNewestPage(int limit, String cursor) {
+    return getPage(
+        createNamesQuery().addSort(LectureUtil.CREATED, SortDirection.DESCENDING), limit, cursor);
+  }
+
+  @Override
+  public Key put(Entity lectureEntity) {
+    return datastore.put(lectureEntity);
+  }
+
+  @Override
+  public Optional<Entity> putIfAbsent(Entity lectureEntity) {
+    return Optional.ofNullable(
+        putAllIfAbsent(Collections.singletonList(lectureEntity))
+            .get((String) lectureEntity.getProperty(LectureUtil.VIDEO_ID)));
+  }
+
+  @Override
+  public Map<String, Entity> putAllIfAbsent(List<Entity> lectureEntities) {
+    return new LectureIdentity(datastore).putIfAbsent(lectureEntities);
+  }
+
+  @Override
+  public Key allocateKey() {
+    return datastore.allocateIds(LectureUtil.KIND, 1).getStart();
+  }
+
+  @Override
+  public List<Key> allocateKeys(int count) {
+    List<Key> keys = new ArrayList<>();
+    if (count > 0) {
+      datastore.allocateIds(LectureUtil.KIND, count).forEach(keys::add);
+    }
+    return keys;
+  }
+
+  /** Returns a query of every lecture that only reads their names. */
+  private static Query createNamesQuery() {
+    return new Query(LectureUtil.KIND).addProjection(
+        new PropertyProjection(LectureUtil.NAME, String.class));
+  }
+
+  /**
+   * Returns the page of at most {@code limit} lectures that {@code query} finds from
+   * {@code cursor}.
+   *
+   * @throws IllegalArgumentException if the cursor is invalid.
+   */
+  private LecturePage getPage(Query query, int limit, String cursor) {
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(limit);
+    if (!cursor.isEmpty()) {
+      fetchOptions.startCursor(Cursor.fromWebSafeString(cursor));
+    }
+    QueryResultList<Entity> results = datastore.prepare(query).asQueryResultList(fetchOptions);
+    ImmutableList.Builder<LectureSummary> lectures = ImmutableList.builder();
+    for (Entity lectureEntity : results) {
+      lectures.add(LectureUtil.createLectureSummary(lectureEntity));
+    }
+    String nextCursor = results.size() < limit ? "" : results.getCursor().toWebSafeString();
+    return LecturePage.create(lectures.build(), nextCursor);
+  }
+}
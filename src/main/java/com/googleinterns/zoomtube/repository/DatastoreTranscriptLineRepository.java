@@ -0,0 +1,222 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.googleinterns.zoomtube.utils.TranscriptChunkUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.googleinterns.zoomtube.utils.TranscriptSegmentUtil;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Stores transcript lines, chunks, segments and search indexes in datastore.
+ *
+ * <p>The queries are public so that a servlet that reads with {@code AsyncDatastoreService}
+ * can run the same ones.
+ */
+public final class DatastoreTranscriptLineRepository implements TranscriptLineRepository {
+  /* Datastore writes at most 500 entities in one call. */
+  private static final int WRITE_BATCH_SIZE = 500;
+
+  private final DatastoreService datastore;
+
+  DatastoreTranscriptLineRepository(DatastoreService datastore) {
+    this.datastore = datastore;
+  }
+
+  @Override
+  public List<Entity> getLines(Key lectureKey, Optional<String> language) {
+    if (!language.isPresent()) {
+      return getUnlabeledLines(getAllLines(lectureKey));
+    }
+    List<Entity> lineEntities = new ArrayList<>();
+    datastore.prepare(createLinesQuery(lectureKey, language))
+        .asQueryResultIterable()
+        .forEach(lineEntities::add);
+    return lineEntities;
+  }
+
+  @Override
+  public List<Entity> getAllLines(Key lectureKey) {
+    List<Entity> lineEntities = new ArrayList<>();
+    datastore.prepare(createLinesQuery(lectureKey, Optional.empty()))
+        .asQueryResultIterable()
+        .forEach(lineEntities::add);
+    return lineEntities;
+  }
+
+  @Override
+  public List<Entity> getChunks(Key lectureKey, String language) {
+    return sortChunks(datastore.prepare(createChunksQuery(lectureKey, language)).asIterable());
+  }
+
+  @Override
+  public List<Entity> getSegments(Key lectureKey, String language) {
+    Entity firstShardEntity;
+    try {
+      firstShardEntity = datastore.get(TranscriptSegmentUtil.createKey(lectureKey, language));
+    } catch (EntityNotFoundException e) {
+      return ImmutableList.of();
+    }
+    List<Key> otherShardKeys = TranscriptSegmentUtil.getOtherShardKeys(firstShardEntity);
+    return TranscriptSegmentUtil.getShards(firstShardEntity,
+        otherShardKeys.isEmpty() ? ImmutableMap.of() : datastore.get(otherShardKeys));
+  }
+
+  @Override
+  public Map<Key, Entity> getAll(Collection<Key> keys) {
+    return datastore.get(keys);
+  }
+
+  @Override
+  public Iterable<Entity> getIndexes() {
+    return datastore.prepare(new Query(TranscriptIndexUtil.KIND)).asIterable();
+  }
+
+  @Override
+  public Iterable<Entity> getIndexesUpdatedSince(long updatedFromMs) {
+    Query query = new Query(TranscriptIndexUtil.KIND)
+                      .setFilter(new FilterPredicate(TranscriptIndexUtil.UPDATED,
+                          FilterOperator.GREATER_THAN_OR_EQUAL, new Date(updatedFromMs)));
+    return datastore.prepare(query).asIterable();
+  }
+
+  @Override
+  public List<Key> putAll(List<Entity> entities) {
+    List<Key> keys = new ArrayList<>();
+    for (List<Entity> batch : Lists.partition(entities, WRITE_BATCH_SIZE)) {
+      keys.addAll(datastore.put(batch));
+    }
+    return keys;
+  }
+
+  @Override
+  public void deleteAll(List<Key> keys) {
+    for (List<Key> batch : Lists.partition(keys, WRITE_BATCH_SIZE)) {
+      datastore.delete(batch);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The new entities are written in batches before the old ones are deleted, rather than
+   * in one transaction, so a long transcript isn't limited by the size of a transaction.
+   * Chunks, segments and the search index are overwritten in place and are read before
+   * lines, so a transcript read from them is never missing or doubled. A transcript stored
+   * as lines has its old and new lines both readable until the old ones are deleted.
+   */
+  @Override
+  public void replaceTranscript(Key lectureKey, String language, List<Entity> entities) {
+    Set<Key> removals = new HashSet<>();
+    removals.addAll(getKeys(createLinesQuery(lectureKey, Optional.of(language))));
+    removals.addAll(getKeys(createChunksQuery(lectureKey, language)));
+    removals.addAll(getKeys(
+        new Query(TranscriptSegmentUtil.KIND)
+            .setAncestor(lectureKey)
+            .setFilter(new FilterPredicate(
+                TranscriptSegmentUtil.LANGUAGE, FilterOperator.EQUAL, language))));
+    // Entities that are written again, like chunks and segments, keep their keys.
+    removals.removeAll(putAll(entities));
+    deleteAll(new ArrayList<>(removals));
+  }
+
+  @Override
+  public List<Key> allocateLineKeys(Key lectureKey, int count) {
+    List<Key> keys = new ArrayList<>();
+    if (count > 0) {
+      datastore.allocateIds(lectureKey, TranscriptLineUtil.KIND, count).forEach(keys::add);
+    }
+    return keys;
+  }
+
+  /** Returns the keys of the entities that {@code query} finds. */
+  private List<Key> getKeys(Query query) {
+    List<Key> keys = new ArrayList<>();
+    for (Entity entity : datastore.prepare(query.setKeysOnly()).asIterable()) {
+      keys.add(entity.getKey());
+    }
+    return keys;
+  }
+
+  /**
+   * Returns the lines of {@code lineEntities} that were stored before transcripts had
+   * languages, in the same order. A missing property can't be queried for, so these are
+   * picked out of every line of a lecture.
+   */
+  public static List<Entity> getUnlabeledLines(Iterable<Entity> lineEntities) {
+    List<Entity> unlabeledLineEntities = new ArrayList<>();
+    for (Entity lineEntity : lineEntities) {
+      if (lineEntity.getProperty(TranscriptLineUtil.LANGUAGE) == null) {
+        unlabeledLineEntities.add(lineEntity);
+      }
+    }
+    return unlabeledLineEntities;
+  }
+
+  /**
+   * Returns the query for the lines of the transcript of the lecture with {@code lectureKey},
+   * in {@code language} if it is present and otherwise in every language, in the order they
+   * are shown. The lines are in the lecture's entity group, so the query sees every line
+   * already written.
+   */
+  public static Query createLinesQuery(Key lectureKey, Optional<String> language) {
+    Query query = new Query(TranscriptLineUtil.KIND).setAncestor(lectureKey);
+    if (language.isPresent()) {
+      query.setFilter(
+          new FilterPredicate(TranscriptLineUtil.LANGUAGE, FilterOperator.EQUAL, language.get()));
+    }
+    return query.addSort(TranscriptLineUtil.START_TIMESTAMP_MS, SortDirection.ASCENDING);
+  }
+
+  /**
+   * Returns the query for the chunks of the transcript in {@code language} of the lecture
+   * with {@code lectureKey}.
+   */
+  public static Query createChunksQuery(Key lectureKey, String language) {
+    return new Query(TranscriptChunkUtil.KIND)
+        .setAncestor(lectureKey)
+        .setFilter(
+            new FilterPredicate(TranscriptChunkUtil.LANGUAGE, FilterOperator.EQUAL, language));
+  }
+
+  /** Returns {@code chunkEntities} in the order they are shown. */
+  public static List<Entity> sortChunks(Iterable<Entity> chunkEntities) {
+    List<Entity> sortedChunkEntities = new ArrayList<>();
+    chunkEntities.forEach(sortedChunkEntities::add);
+    sortedChunkEntities.sort(Comparator.comparingLong(
+        chunkEntity -> (long) chunkEntity.getProperty(TranscriptChunkUtil.CHUNK_INDEX)));
+    return sortedChunkEntities;
+  }
+}
@@ -0,0 +1,28 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import java.util.List;
+
+/** Stores icon feedback entities, as created by {@code IconFeedbackUtil}. */
+public interface IconFeedbackRepository {
+  /** Returns the feedback on the lecture with {@code lectureKey}, in video order. */
+  List<Entity> getByLecture(Key lectureKey);
+
+  /** Stores {@code iconFeedbackEntity} and returns its key, which is given an id if it has none. */
+  Key put(Entity iconFeedbackEntity);
+}
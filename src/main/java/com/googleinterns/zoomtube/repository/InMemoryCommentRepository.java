@@ -0,0 +1,42 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import java.util.List;
+import java.util.Optional;
+
+/** Stores comments in memory. */
+final class InMemoryCommentRepository implements CommentRepository {
+  private final InMemoryEntities comments = new InMemoryEntities(CommentUtil.LECTURE);
+
+  @Override
+  public Optional<Entity> get(long commentId) {
+    return comments.get(KeyFactory.createKey(CommentUtil.KIND, commentId));
+  }
+
+  @Override
+  public List<Entity> getByLecture(Key lectureKey) {
+    return comments.getByLecture(lectureKey);
+  }
+
+  @Override
+  public Key put(Entity commentEntity) {
+    return comments.put(commentEntity);
+  }
+}
@@ -0,0 +1,124 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Entities held in memory by key, and grouped by the lecture they belong to so that a
+ * lecture's entities are found without looking at every other lecture's.
+ *
+ * <p>Entities are copied as they are stored and as they are read, like they would be by
+ * datastore, so a caller changing one doesn't change what is stored. Reads and writes can
+ * come from any number of threads.
+ */
+final class InMemoryEntities {
+  private final String lectureProperty;
+  private final AtomicLong lastId = new AtomicLong();
+  private final ConcurrentMap<Key, Entity> entities = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Key, Set<Key>> keysByLecture = new ConcurrentHashMap<>();
+
+  /** Creates an empty store of entities that don't belong to a lecture. */
+  InMemoryEntities() {
+    this(null);
+  }
+
+  /** Creates an empty store that groups entities by their {@code lectureProperty} key. */
+  InMemoryEntities(String lectureProperty) {
+    this.lectureProperty = lectureProperty;
+  }
+
+  /** Stores a copy of {@code entity} and returns its key, which is given an id if it has none. */
+  Key put(Entity entity) {
+    Key key = entity.getKey().isComplete()
+        ? entity.getKey()
+        : KeyFactory.createKey(entity.getParent(), entity.getKind(), lastId.incrementAndGet());
+    Entity storedEntity = new Entity(key);
+    storedEntity.setPropertiesFrom(entity);
+    Entity previousEntity = entities.put(key, storedEntity);
+    Key lectureKey = getLectureKey(storedEntity);
+    if (previousEntity != null) {
+      Key previousLectureKey = getLectureKey(previousEntity);
+      if (previousLectureKey != null && !previousLectureKey.equals(lectureKey)) {
+        keysByLecture.getOrDefault(previousLectureKey, Collections.emptySet()).remove(key);
+      }
+    }
+    if (lectureKey != null) {
+      keysByLecture.computeIfAbsent(lectureKey, unused -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+    return key;
+  }
+
+  /** Returns {@code count} new keys of {@code kind} under {@code parent}, for entities to come. */
+  List<Key> allocateKeys(Key parent, String kind, int count) {
+    long lastAllocatedId = lastId.addAndGet(count);
+    List<Key> keys = new ArrayList<>();
+    for (long id = lastAllocatedId - count + 1; id <= lastAllocatedId; id++) {
+      keys.add(KeyFactory.createKey(parent, kind, id));
+    }
+    return keys;
+  }
+
+  /** Removes the entity with {@code key}, if there is one. */
+  void delete(Key key) {
+    Entity entity = entities.remove(key);
+    if (entity != null) {
+      Key lectureKey = getLectureKey(entity);
+      if (lectureKey != null) {
+        keysByLecture.getOrDefault(lectureKey, Collections.emptySet()).remove(key);
+      }
+    }
+  }
+
+  /** Returns a copy of the entity with {@code key}, or empty if there's no such entity. */
+  Optional<Entity> get(Key key) {
+    return Optional.ofNullable(entities.get(key)).map(Entity::clone);
+  }
+
+  /** Returns copies of every entity, in no order. */
+  List<Entity> getAll() {
+    List<Entity> allEntities = new ArrayList<>();
+    for (Entity entity : entities.values()) {
+      allEntities.add(entity.clone());
+    }
+    return allEntities;
+  }
+
+  /** Returns copies of the entities of the lecture with {@code lectureKey}, in no order. */
+  List<Entity> getByLecture(Key lectureKey) {
+    List<Entity> lectureEntities = new ArrayList<>();
+    for (Key key : keysByLecture.getOrDefault(lectureKey, Collections.emptySet())) {
+      Entity entity = entities.get(key);
+      if (entity != null) {
+        lectureEntities.add(entity.clone());
+      }
+    }
+    return lectureEntities;
+  }
+
+  private Key getLectureKey(Entity entity) {
+    return lectureProperty == null ? null : (Key) entity.getProperty(lectureProperty);
+  }
+}
@@ -0,0 +1,39 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.googleinterns.zoomtube.utils.IconFeedbackUtil;
+import java.util.Comparator;
+import java.util.List;
+
+/** Stores icon feedback in memory. */
+final class InMemoryIconFeedbackRepository implements IconFeedbackRepository {
+  private final InMemoryEntities iconFeedback = new InMemoryEntities(IconFeedbackUtil.LECTURE);
+
+  @Override
+  public List<Entity> getByLecture(Key lectureKey) {
+    List<Entity> iconFeedbackEntities = iconFeedback.getByLecture(lectureKey);
+    iconFeedbackEntities.sort(Comparator.comparingLong(iconFeedbackEntity
+        -> (long) iconFeedbackEntity.getProperty(IconFeedbackUtil.TIMESTAMP_MS)));
+    return iconFeedbackEntities;
+  }
+
+  @Override
+  public Key put(Entity iconFeedbackEntity) {
+    return iconFeedback.put(iconFeedbackEntity);
+  }
+}
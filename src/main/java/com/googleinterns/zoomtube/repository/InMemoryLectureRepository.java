@@ -0,0 +1,144 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.common.collect.ImmutableList;
+import com.googleinterns.zoomtube.data.LecturePage;
+import com.googleinterns.zoomtube.data.LectureSummary;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Stores lectures in memory.
+ *
+ * <p>A page's cursor is the number of lectures before it, so a page sees lectures added
+ * since the previous one, and may repeat one, where datastore's cursors wouldn't.
+ */
+final class InMemoryLectureRepository implements LectureRepository {
+  private static final Comparator<Entity> NAME_ORDER =
+      Comparator.comparing((Entity lectureEntity)
+                               -> (String) lectureEntity.getProperty(LectureUtil.SORT_NAME))
+          .thenComparing(Entity::getKey);
+  private static final Comparator<Entity> NEWEST_ORDER =
+      Comparator.comparing((Entity lectureEntity)
+                               -> (Date) lectureEntity.getProperty(LectureUtil.CREATED))
+          .reversed()
+          .thenComparing(Entity::getKey);
+
+  private final InMemoryEntities lectures = new InMemoryEntities();
+  /* The key of each video's lecture, by video id, guarded by this repository's lock. */
+  private final Map<String, Key> lectureKeysByVideo = new HashMap<>();
+
+  @Override
+  public Optional<Entity> get(long lectureId) {
+    return lectures.get(KeyFactory.createKey(LectureUtil.KIND, lectureId));
+  }
+
+  @Override
+  public Map<Key, Entity> getAll(Collection<Key> lectureKeys) {
+    Map<Key, Entity> lectureEntities = new HashMap<>();
+    for (Key lectureKey : lectureKeys) {
+      lectures.get(lectureKey).ifPresent(
+          lectureEntity -> lectureEntities.put(lectureKey, lectureEntity));
+    }
+    return lectureEntities;
+  }
+
+  @Override
+  public LecturePage getPageByName(String sortNamePrefix, int limit, String cursor) {
+    return getPage(lectures.getAll()
+                       .stream()
+                       .filter(lectureEntity
+                           -> ((String) lectureEntity.getProperty(LectureUtil.SORT_NAME))
+                                  .startsWith(sortNamePrefix))
+                       .sorted(NAME_ORDER)
+                       .collect(Collectors.toList()),
+        limit, cursor);
+  }
+
+  @Override
+  public LecturePage getNewestPage(int limit, String cursor) {
+    List<Entity> lectureEntities = lectures.getAll();
+    lectureEntities.sort(NEWEST_ORDER);
+    return getPage(lectureEntities, limit, cursor);
+  }
+
+  @Override
+  public Key put(Entity lectureEntity) {
+    return lectures.put(lectureEntity);
+  }
+
+  @Override
+  public synchronized Optional<Entity> putIfAbsent(Entity lectureEntity) {
+    Key existingKey = lectureKeysByVideo.putIfAbsent(
+        (String) lectureEntity.getProperty(LectureUtil.VIDEO_ID), lectureEntity.getKey());
+    if (existingKey != null) {
+      return lectures.get(existingKey);
+    }
+    lectures.put(lectureEntity);
+    return Optional.empty();
+  }
+
+  @Override
+  public synchronized Map<String, Entity> putAllIfAbsent(List<Entity> lectureEntities) {
+    Map<String, Entity> existingLectures = new HashMap<>();
+    for (Entity lectureEntity : lectureEntities) {
+      putIfAbsent(lectureEntity).ifPresent(existingLecture
+          -> existingLectures.put(
+              (String) lectureEntity.getProperty(LectureUtil.VIDEO_ID), existingLecture));
+    }
+    return existingLectures;
+  }
+
+  @Override
+  public Key allocateKey() {
+    return allocateKeys(1).get(0);
+  }
+
+  @Override
+  public List<Key> allocateKeys(int count) {
+    return lectures.allocateKeys(/* parent= */ null, LectureUtil.KIND, count);
+  }
+
+  /**
+   * Returns the page of at most {@code limit} of the sorted {@code lectureEntities} that
+   * starts at {@code cursor}.
+   *
+   * @throws IllegalArgumentException if the cursor is invalid.
+   */
+  private static LecturePage getPage(List<Entity> lectureEntities, int limit, String cursor) {
+    int start = cursor.isEmpty() ? 0 : Integer.parseInt(cursor);
+    if (start < 0) {
+      throw new IllegalArgumentException("Negative cursor.");
+    }
+    int end = (int) Math.min(lectureEntities.size(), (long) start + limit);
+    ImmutableList.Builder<LectureSummary> lectures = ImmutableList.builder();
+    for (Entity lectureEntity : lectureEntities.subList(Math.min(start, end), end)) {
+      lectures.add(LectureUtil.createLectureSummary(lectureEntity));
+    }
+    String nextCursor = end - start < limit ? "" : Integer.toString(end);
+    return LecturePage.create(lectures.build(), nextCursor);
+  }
+}
@@ -0,0 +1,168 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.common.collect.ImmutableList;
+import com.googleinterns.zoomtube.utils.TranscriptChunkUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.googleinterns.zoomtube.utils.TranscriptSegmentUtil;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Stores transcript lines, chunks, segments and search indexes in memory.
+ *
+ * <p>Writes hold a lock so that a transcript being replaced isn't written to at the same time.
+ * Reads don't, and may see part of a transcript that is being replaced.
+ */
+final class InMemoryTranscriptLineRepository implements TranscriptLineRepository {
+  private final InMemoryEntities lines = new InMemoryEntities(TranscriptLineUtil.LECTURE);
+  private final InMemoryEntities chunks = new InMemoryEntities(TranscriptChunkUtil.LECTURE);
+  private final InMemoryEntities segments = new InMemoryEntities(TranscriptSegmentUtil.LECTURE);
+  private final InMemoryEntities indexes = new InMemoryEntities(TranscriptIndexUtil.LECTURE);
+
+  @Override
+  public List<Entity> getLines(Key lectureKey, Optional<String> language) {
+    return lines.getByLecture(lectureKey)
+        .stream()
+        .filter(lineEntity
+            -> Objects.equals(
+                language.orElse(null), lineEntity.getProperty(TranscriptLineUtil.LANGUAGE)))
+        .sorted(Comparator.comparingLong(
+            lineEntity -> (long) lineEntity.getProperty(TranscriptLineUtil.START_TIMESTAMP_MS)))
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public List<Entity> getAllLines(Key lectureKey) {
+    return lines.getByLecture(lectureKey)
+        .stream()
+        .sorted(Comparator.comparingLong(
+            lineEntity -> (long) lineEntity.getProperty(TranscriptLineUtil.START_TIMESTAMP_MS)))
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public List<Entity> getChunks(Key lectureKey, String language) {
+    return DatastoreTranscriptLineRepository.sortChunks(
+        chunks.getByLecture(lectureKey)
+            .stream()
+            .filter(chunkEntity
+                -> language.equals(chunkEntity.getProperty(TranscriptChunkUtil.LANGUAGE)))
+            .collect(Collectors.toList()));
+  }
+
+  @Override
+  public List<Entity> getSegments(Key lectureKey, String language) {
+    Optional<Entity> firstShardEntity =
+        segments.get(TranscriptSegmentUtil.createKey(lectureKey, language));
+    if (!firstShardEntity.isPresent()) {
+      return ImmutableList.of();
+    }
+    Map<Key, Entity> otherShardEntities = new HashMap<>();
+    for (Key shardKey : TranscriptSegmentUtil.getOtherShardKeys(firstShardEntity.get())) {
+      segments.get(shardKey).ifPresent(
+          shardEntity -> otherShardEntities.put(shardKey, shardEntity));
+    }
+    return TranscriptSegmentUtil.getShards(firstShardEntity.get(), otherShardEntities);
+  }
+
+  @Override
+  public Map<Key, Entity> getAll(Collection<Key> keys) {
+    Map<Key, Entity> entities = new HashMap<>();
+    for (Key key : keys) {
+      getEntities(key.getKind()).get(key).ifPresent(entity -> entities.put(key, entity));
+    }
+    return entities;
+  }
+
+  @Override
+  public Iterable<Entity> getIndexes() {
+    return getIndexesUpdatedSince(Long.MIN_VALUE);
+  }
+
+  @Override
+  public Iterable<Entity> getIndexesUpdatedSince(long updatedFromMs) {
+    return indexes.getAll()
+        .stream()
+        .filter(indexEntity
+            -> indexEntity.getKey().getKind().equals(TranscriptIndexUtil.KIND)
+                && TranscriptIndexUtil.getUpdatedMs(indexEntity) >= updatedFromMs)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public synchronized List<Key> putAll(List<Entity> entities) {
+    List<Key> keys = new ArrayList<>();
+    for (Entity entity : entities) {
+      keys.add(getEntities(entity.getKey().getKind()).put(entity));
+    }
+    return keys;
+  }
+
+  @Override
+  public synchronized void deleteAll(List<Key> keys) {
+    for (Key key : keys) {
+      getEntities(key.getKind()).delete(key);
+    }
+  }
+
+  @Override
+  public synchronized void replaceTranscript(
+      Key lectureKey, String language, List<Entity> entities) {
+    for (Entity lineEntity : getLines(lectureKey, Optional.of(language))) {
+      lines.delete(lineEntity.getKey());
+    }
+    for (Entity chunkEntity : getChunks(lectureKey, language)) {
+      chunks.delete(chunkEntity.getKey());
+    }
+    for (Entity segmentsEntity : segments.getByLecture(lectureKey)) {
+      if (language.equals(segmentsEntity.getProperty(TranscriptSegmentUtil.LANGUAGE))) {
+        segments.delete(segmentsEntity.getKey());
+      }
+    }
+    putAll(entities);
+  }
+
+  @Override
+  public List<Key> allocateLineKeys(Key lectureKey, int count) {
+    return lines.allocateKeys(lectureKey, TranscriptLineUtil.KIND, count);
+  }
+
+  /** Returns the entities that hold entities of {@code kind}. */
+  private InMemoryEntities getEntities(String kind) {
+    switch (kind) {
+      case TranscriptChunkUtil.KIND:
+        return chunks;
+      case TranscriptSegmentUtil.KIND:
+        return segments;
+      case TranscriptIndexUtil.KIND:
+      case TranscriptIndexUtil.SHARD_KIND:
+        return indexes;
+      default:
+        return lines;
+    }
+  }
+}
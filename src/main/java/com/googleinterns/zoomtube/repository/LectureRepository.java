@@ -0,0 +1,79 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.googleinterns.zoomtube.data.LecturePage;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/** Stores lecture entities, as created by {@code LectureUtil}. */
+public interface LectureRepository {
+  /** Returns the lecture with {@code lectureId}, or empty if there's no such lecture. */
+  Optional<Entity> get(long lectureId);
+
+  /** Returns the lectures with {@code lectureKeys} that exist, by key. */
+  Map<Key, Entity> getAll(Collection<Key> lectureKeys);
+
+  /**
+   * Returns a page of at most {@code limit} lectures whose sort name starts with
+   * {@code sortNamePrefix}, sorted by name. Only their names are read.
+   *
+   * @param cursor The next cursor of the previous page, or an empty string for the first.
+   * @throws IllegalArgumentException if the cursor is invalid.
+   */
+  LecturePage getPageByName(String sortNamePrefix, int limit, String cursor);
+
+  /**
+   * Returns a page of at most {@code limit} lectures, newest first. Only their names are
+   * read.
+   *
+   * @param cursor The next cursor of the previous page, or an empty string for the first.
+   * @throws IllegalArgumentException if the cursor is invalid.
+   */
+  LecturePage getNewestPage(int limit, String cursor);
+
+  /** Stores {@code lectureEntity} and returns its key, which is given an id if it has none. */
+  Key put(Entity lectureEntity);
+
+  /**
+   * Stores {@code lectureEntity} unless its video already has a lecture, so that each video
+   * has one. See {@code LectureIdentity}.
+   *
+   * @param lectureEntity A lecture with a key from {@link #allocateKey}.
+   * @return The lecture the video already had, in which case {@code lectureEntity} isn't
+   *     stored, or else empty.
+   */
+  Optional<Entity> putIfAbsent(Entity lectureEntity);
+
+  /**
+   * Stores each of {@code lectureEntities} whose video doesn't have a lecture yet, like
+   * {@link #putIfAbsent}. Each entity must be of a different video.
+   *
+   * @param lectureEntities Lectures with keys from {@link #allocateKeys}.
+   * @return The lecture that already exists for each video that has one, by video id. These
+   *     videos' entities in {@code lectureEntities} aren't stored.
+   */
+  Map<String, Entity> putAllIfAbsent(List<Entity> lectureEntities);
+
+  /** Returns a new key for a lecture that is yet to be stored. */
+  Key allocateKey();
+
+  /** Returns {@code count} new keys for lectures that are yet to be stored. */
+  List<Key> allocateKeys(int count);
+}
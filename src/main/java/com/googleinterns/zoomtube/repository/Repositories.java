@@ -0,0 +1,104 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.common.annotations.VisibleForTesting;
+import com.googleinterns.zoomtube.metrics.MeteredDatastoreService;
+
+/**
+ * The repositories that servlets read and write through, all backed by datastore or all held
+ * in memory.
+ *
+ * <p>In memory, the servlets can be load tested and benchmarked without a datastore, or its
+ * local stub, taking most of the time. Lectures, their discussions and feedback, fetched
+ * transcripts and their search indexes are all kept in memory then. Admin servlets that read
+ * or write every entity of a lecture in batches, such as to export, import or delete it,
+ * still go to datastore directly, so they don't see what is kept in memory.
+ */
+public final class Repositories {
+  /* The system property, set in appengine-web.xml, that chooses the repositories. */
+  @VisibleForTesting static final String PROPERTY = "zoomtube.repositories";
+  @VisibleForTesting static final String DATASTORE = "datastore";
+  @VisibleForTesting static final String MEMORY = "memory";
+
+  private final LectureRepository lectures;
+  private final CommentRepository comments;
+  private final IconFeedbackRepository iconFeedback;
+  private final TranscriptLineRepository transcriptLines;
+  private final boolean inMemory;
+
+  private Repositories(LectureRepository lectures, CommentRepository comments,
+      IconFeedbackRepository iconFeedback, TranscriptLineRepository transcriptLines,
+      boolean inMemory) {
+    this.lectures = lectures;
+    this.comments = comments;
+    this.iconFeedback = iconFeedback;
+    this.transcriptLines = transcriptLines;
+    this.inMemory = inMemory;
+  }
+
+  /**
+   * Returns the repositories chosen by the {@link #PROPERTY} system property, which are
+   * backed by datastore unless it is {@value #MEMORY}. Every caller shares them.
+   */
+  public static Repositories getRepositories() {
+    return UniqueRepositories.INSTANCE;
+  }
+
+  private static final class UniqueRepositories {
+    static final Repositories INSTANCE = System.getProperty(PROPERTY, DATASTORE).equals(MEMORY)
+        ? inMemory()
+        : inDatastore(MeteredDatastoreService.getDatastoreService());
+  }
+
+  /** Returns repositories that read and write {@code datastore}. */
+  public static Repositories inDatastore(DatastoreService datastore) {
+    return new Repositories(new DatastoreLectureRepository(datastore),
+        new DatastoreCommentRepository(datastore), new DatastoreIconFeedbackRepository(datastore),
+        new DatastoreTranscriptLineRepository(datastore), /* inMemory= */ false);
+  }
+
+  /** Returns new, empty repositories held in memory. */
+  public static Repositories inMemory() {
+    return new Repositories(new InMemoryLectureRepository(), new InMemoryCommentRepository(),
+        new InMemoryIconFeedbackRepository(), new InMemoryTranscriptLineRepository(),
+        /* inMemory= */ true);
+  }
+
+  /**
+   * Returns whether these repositories are held in memory, in which case servlets that read
+   * datastore themselves, for speed, should read through them instead.
+   */
+  public boolean isInMemory() {
+    return inMemory;
+  }
+
+  public LectureRepository lectures() {
+    return lectures;
+  }
+
+  public CommentRepository comments() {
+    return comments;
+  }
+
+  public IconFeedbackRepository iconFeedback() {
+    return iconFeedback;
+  }
+
+  public TranscriptLineRepository transcriptLines() {
+    return transcriptLines;
+  }
+}
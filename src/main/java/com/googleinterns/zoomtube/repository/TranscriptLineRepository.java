@@ -0,0 +1,95 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stores the lines of transcripts, either as an entity each or in the chunks that hold
+ * them, and the segments they merge into and the search index of them. See
+ * {@code TranscriptStorage}.
+ */
+public interface TranscriptLineRepository {
+  /**
+   * Returns the line entities of the lecture with {@code lectureKey} in {@code language}, in
+   * the order they are shown. If {@code language} is empty, returns the lines stored before
+   * transcripts had languages, never the lines of every language together.
+   */
+  List<Entity> getLines(Key lectureKey, Optional<String> language);
+
+  /**
+   * Returns the line entities of the lecture with {@code lectureKey} in every language, and
+   * those without one, in the order they are shown.
+   */
+  List<Entity> getAllLines(Key lectureKey);
+
+  /**
+   * Returns the chunks of the transcript in {@code language} of the lecture with
+   * {@code lectureKey}, in the order they are shown.
+   */
+  List<Entity> getChunks(Key lectureKey, String language);
+
+  /**
+   * Returns the shards of the segments of the transcript in {@code language} of the lecture
+   * with {@code lectureKey} in the order they are shown, or an empty list if it was stored
+   * before it had segments or they aren't all written yet.
+   */
+  List<Entity> getSegments(Key lectureKey, String language);
+
+  /**
+   * Returns the lines, chunks, segments or search index shards with {@code keys} that exist,
+   * by key.
+   */
+  Map<Key, Entity> getAll(Collection<Key> keys);
+
+  /**
+   * Returns the first shard of the search index of every lecture, in no particular order,
+   * including those marked deleted. See {@code TranscriptIndexUtil}.
+   */
+  Iterable<Entity> getIndexes();
+
+  /**
+   * Returns the first shard of each search index updated at or after {@code updatedFromMs},
+   * like {@link #getIndexes}.
+   */
+  Iterable<Entity> getIndexesUpdatedSince(long updatedFromMs);
+
+  /**
+   * Stores {@code entities}, which are lines, chunks, segments or search indexes, and returns
+   * their keys. Lines without an id are given one.
+   */
+  List<Key> putAll(List<Entity> entities);
+
+  /** Removes the lines, chunks, segments or search indexes with {@code keys}. */
+  void deleteAll(List<Key> keys);
+
+  /**
+   * Replaces the lines, chunks and segments of the transcript in {@code language} of the
+   * lecture with {@code lectureKey} with {@code entities}, which can also hold its search
+   * index.
+   */
+  void replaceTranscript(Key lectureKey, String language, List<Entity> entities);
+
+  /**
+   * Returns {@code count} new keys for lines of the lecture with {@code lectureKey}, such as
+   * for lines stored in chunks, which aren't given keys as they are stored.
+   */
+  List<Key> allocateLineKeys(Key lectureKey, int count);
+}
@@ -0,0 +1,371 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.search;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.googleinterns.zoomtube.repository.TranscriptLineRepository;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory search index over the transcripts of every lecture.
+ *
+ * <p>The index is made of immutable {@link IndexSegment}s. Each ingested transcript is added
+ * as a small segment of its own, and once there are too many segments the smallest ones are
+ * merged together on a background thread. Re-indexing or removing a lecture doesn't touch
+ * existing segments: its old documents are skipped at search time and dropped by the next
+ * merge.
+ *
+ * <p>Transcripts indexed, re-indexed or deleted on other instances are picked up by a periodic
+ * refresh that reads the transcript indexes updated since the last one. A deleted index is
+ * marked deleted rather than removed, so the same query finds the lectures to drop. Every
+ * stored index is read by the first load, which {@code LectureSearchServlet} runs as the
+ * instance warms up.
+ *
+ * <p>Results are transcript lines ranked with BM25.
+ */
+public final class GlobalTranscriptIndex {
+  /* Segments are merged once there are more than this many of them. */
+  @VisibleForTesting static final int MAX_SEGMENTS = 8;
+  /* The number of smallest segments merged at a time. */
+  private static final int MERGE_FACTOR = 4;
+  /* BM25 parameters, using the usual defaults. */
+  private static final double K1 = 1.2;
+  private static final double B = 0.75;
+  private static final long REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+  /* Queries are eventually consistent, so indexes updated a little earlier are read again. */
+  private static final long REFRESH_OVERLAP_MS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final Comparator<Hit> HIT_ORDER =
+      Comparator.comparingDouble((Hit hit) -> hit.score)
+          .reversed()
+          .thenComparingLong(hit -> hit.lectureId)
+          .thenComparingLong(hit -> hit.startMs);
+
+  /* Bounds the up-front allocation of the top hits queue for deep pages. */
+  private static final int MAX_INITIAL_QUEUE_CAPACITY = 1024;
+
+  private final Executor mergeExecutor;
+  /* Replaced, never modified, so searches can read a consistent snapshot without locking. */
+  private volatile List<IndexSegment> segments = Collections.emptyList();
+  private final Map<Long, Long> liveGenerations = new ConcurrentHashMap<>();
+  /* When the indexed transcript of each lecture was stored, or indexed by this instance. */
+  private final Map<Long, Long> indexedAtMs = new ConcurrentHashMap<>();
+  private final AtomicLong nextGeneration = new AtomicLong();
+  private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+  private volatile boolean loaded = false;
+  private volatile long lastRefreshNanos;
+  /* Transcript indexes updated from this time on are read by the next refresh. */
+  private volatile long refreshFromMs;
+
+  @VisibleForTesting
+  public GlobalTranscriptIndex(Executor mergeExecutor) {
+    this.mergeExecutor = mergeExecutor;
+  }
+
+  /**
+   * Returns the {@code GlobalTranscriptIndex} instance, creating it if there isn't one yet.
+   */
+  public static GlobalTranscriptIndex getIndex() {
+    return UniqueIndex.INSTANCE;
+  }
+
+  private static final class UniqueIndex {
+    static final GlobalTranscriptIndex INSTANCE =
+        new GlobalTranscriptIndex(Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("transcript-index-merge").setDaemon(true)
+                .build()));
+  }
+
+  /**
+   * Adds the transcript in {@code index} for the lecture with {@code lectureId}, replacing
+   * any transcript already indexed for it.
+   */
+  public void addLecture(long lectureId, TranscriptIndex index) {
+    addLecture(lectureId, index, System.currentTimeMillis());
+  }
+
+  private void addLecture(long lectureId, TranscriptIndex index, long indexedAt) {
+    long generation = nextGeneration.incrementAndGet();
+    IndexSegment segment = IndexSegment.fromTranscript(lectureId, generation, index);
+    synchronized (this) {
+      liveGenerations.put(lectureId, generation);
+      indexedAtMs.put(lectureId, indexedAt);
+      List<IndexSegment> newSegments = new ArrayList<>(segments);
+      newSegments.add(segment);
+      segments = Collections.unmodifiableList(newSegments);
+    }
+    maybeScheduleMerge();
+  }
+
+  /** Removes the lecture with {@code lectureId} from search results. */
+  public synchronized void removeLecture(long lectureId) {
+    liveGenerations.remove(lectureId);
+    indexedAtMs.remove(lectureId);
+  }
+
+  /**
+   * Indexes every transcript index stored in {@code transcriptLines} the first time it is
+   * called, and refreshes the index from {@code transcriptLines} at most every
+   * {@code REFRESH_INTERVAL_NANOS} after that. Transcripts ingested by this instance are
+   * indexed as they are ingested.
+   *
+   * @throws IOException if a stored index can't be read.
+   */
+  public void ensureLoaded(TranscriptLineRepository transcriptLines) throws IOException {
+    if (!loaded) {
+      load(transcriptLines);
+      return;
+    }
+    if (System.nanoTime() - lastRefreshNanos >= REFRESH_INTERVAL_NANOS
+        && refreshing.compareAndSet(false, true)) {
+      // Other requests keep searching the index while one refreshes it.
+      try {
+        refresh(transcriptLines);
+      } finally {
+        refreshing.set(false);
+      }
+    }
+  }
+
+  private synchronized void load(TranscriptLineRepository transcriptLines) throws IOException {
+    if (loaded) {
+      return;
+    }
+    long startMs = System.currentTimeMillis();
+    for (Entity indexEntity : transcriptLines.getIndexes()) {
+      long lectureId = indexEntity.getKey().getParent().getId();
+      // A lecture ingested while loading is already indexed with a fresher transcript.
+      if (!TranscriptIndexUtil.isDeleted(indexEntity) && !liveGenerations.containsKey(lectureId)) {
+        addLecture(lectureId, TranscriptIndexStore.read(transcriptLines, indexEntity),
+            TranscriptIndexUtil.getUpdatedMs(indexEntity));
+      }
+    }
+    refreshFromMs = startMs - REFRESH_OVERLAP_MS;
+    lastRefreshNanos = System.nanoTime();
+    loaded = true;
+  }
+
+  /**
+   * Indexes the transcript indexes in {@code transcriptLines} updated since the last refresh, and
+   * removes the lectures whose transcript index was deleted since.
+   *
+   * @throws IOException if a stored index can't be read.
+   */
+  @VisibleForTesting
+  void refresh(TranscriptLineRepository transcriptLines) throws IOException {
+    long startMs = System.currentTimeMillis();
+    for (Entity indexEntity : transcriptLines.getIndexesUpdatedSince(refreshFromMs)) {
+      long lectureId = indexEntity.getKey().getParent().getId();
+      long updatedMs = TranscriptIndexUtil.getUpdatedMs(indexEntity);
+      Long indexedAt = indexedAtMs.get(lectureId);
+      // Skips transcripts this instance has already indexed, or indexed a newer version of.
+      if (indexedAt != null && indexedAt >= updatedMs) {
+        continue;
+      }
+      if (TranscriptIndexUtil.isDeleted(indexEntity)) {
+        removeLecture(lectureId);
+      } else {
+        addLecture(lectureId, TranscriptIndexStore.read(transcriptLines, indexEntity), updatedMs);
+      }
+    }
+    refreshFromMs = startMs - REFRESH_OVERLAP_MS;
+    lastRefreshNanos = System.nanoTime();
+  }
+
+  /** Returns the number of segments currently searched. */
+  public int segmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * Returns the hits for {@code query} ranked by relevance, skipping the first
+   * {@code offset} and returning at most {@code limit}. A negative {@code offset} is treated
+   * as 0, and a {@code limit} of 0 or less only counts the hits.
+   */
+  public Results search(String query, int offset, int limit) {
+    offset = Math.max(0, offset);
+    Set<String> queryTerms = new LinkedHashSet<>();
+    for (Tokenizer.Token token : Tokenizer.tokenize(query)) {
+      queryTerms.add(token.term);
+    }
+    List<IndexSegment> searchedSegments = segments;
+    if (queryTerms.isEmpty() || searchedSegments.isEmpty()) {
+      return new Results(ImmutableList.of(), /* totalHits= */ 0);
+    }
+
+    long docCount = 0;
+    long totalTokens = 0;
+    for (IndexSegment segment : searchedSegments) {
+      docCount += segment.docCount();
+      totalTokens += segment.totalTokens;
+    }
+    double averageDocLength = docCount == 0 ? 1 : (double) totalTokens / docCount;
+    Map<String, Double> idfs = inverseDocumentFrequencies(queryTerms, searchedSegments, docCount);
+
+    // Saturates rather than overflowing when a caller asks for a very deep page.
+    int wanted = limit <= 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+    PriorityQueue<Hit> topHits = new PriorityQueue<>(
+        Math.max(1, Math.min(wanted, MAX_INITIAL_QUEUE_CAPACITY)), HIT_ORDER.reversed());
+    int totalHits = 0;
+    for (IndexSegment segment : searchedSegments) {
+      boolean[] liveLectures = new boolean[segment.lectureIds.length];
+      for (int lecture = 0; lecture < liveLectures.length; lecture++) {
+        liveLectures[lecture] =
+            isLive(segment.lectureIds[lecture], segment.lectureGenerations[lecture]);
+      }
+      double[] scores = new double[segment.docCount()];
+      for (String term : queryTerms) {
+        int termIndex = segment.termIndex(term);
+        if (termIndex < 0) {
+          continue;
+        }
+        double idf = idfs.get(term);
+        for (int posting = segment.postingsStart(termIndex);
+             posting < segment.postingsEnd(termIndex); posting++) {
+          int doc = segment.postingDoc(posting);
+          if (!liveLectures[segment.docLectures[doc]]) {
+            continue;
+          }
+          double frequency = segment.postingFrequency(posting);
+          double lengthNorm = 1 - B + B * segment.docLengths[doc] / averageDocLength;
+          scores[doc] += idf * frequency * (K1 + 1) / (frequency + K1 * lengthNorm);
+        }
+      }
+      for (int doc = 0; doc < scores.length; doc++) {
+        if (scores[doc] <= 0) {
+          continue;
+        }
+        totalHits++;
+        if (wanted == 0) {
+          continue;
+        }
+        Hit hit = new Hit(segment.lectureIds[segment.docLectures[doc]], segment.docLines[doc],
+            segment.docStartsMs[doc], scores[doc]);
+        if (topHits.size() < wanted) {
+          topHits.add(hit);
+        } else if (HIT_ORDER.compare(hit, topHits.peek()) < 0) {
+          topHits.poll();
+          topHits.add(hit);
+        }
+      }
+    }
+
+    List<Hit> rankedHits = new ArrayList<>(topHits);
+    rankedHits.sort(HIT_ORDER);
+    List<Hit> page = offset >= rankedHits.size()
+        ? ImmutableList.of()
+        : rankedHits.subList(offset, rankedHits.size());
+    return new Results(ImmutableList.copyOf(page), totalHits);
+  }
+
+  private Map<String, Double> inverseDocumentFrequencies(
+      Set<String> queryTerms, List<IndexSegment> searchedSegments, long docCount) {
+    Map<String, Double> idfs = new HashMap<>();
+    for (String term : queryTerms) {
+      long documentFrequency = 0;
+      for (IndexSegment segment : searchedSegments) {
+        int termIndex = segment.termIndex(term);
+        if (termIndex >= 0) {
+          documentFrequency += segment.documentFrequency(termIndex);
+        }
+      }
+      idfs.put(term,
+          Math.log(1 + (docCount - documentFrequency + 0.5) / (documentFrequency + 0.5)));
+    }
+    return idfs;
+  }
+
+  private boolean isLive(long lectureId, long generation) {
+    Long liveGeneration = liveGenerations.get(lectureId);
+    return liveGeneration != null && liveGeneration == generation;
+  }
+
+  private void maybeScheduleMerge() {
+    if (segments.size() <= MAX_SEGMENTS || !mergeScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    mergeExecutor.execute(() -> {
+      try {
+        while (segments.size() > MAX_SEGMENTS) {
+          mergeSmallestSegments();
+        }
+      } finally {
+        mergeScheduled.set(false);
+      }
+    });
+  }
+
+  /** Replaces the {@code MERGE_FACTOR} smallest segments with a single merged segment. */
+  private void mergeSmallestSegments() {
+    List<IndexSegment> toMerge = new ArrayList<>(segments);
+    toMerge.sort(Comparator.comparingInt(IndexSegment::docCount));
+    toMerge = toMerge.subList(0, Math.min(MERGE_FACTOR, toMerge.size()));
+    IndexSegment merged = IndexSegment.merge(toMerge, this::isLive);
+    synchronized (this) {
+      // Segments are only removed here, so every merged segment is still present.
+      List<IndexSegment> newSegments = new ArrayList<>(segments);
+      newSegments.removeAll(toMerge);
+      newSegments.add(merged);
+      segments = Collections.unmodifiableList(newSegments);
+    }
+  }
+
+  /** A transcript line matching a query. */
+  public static final class Hit {
+    public final long lectureId;
+    public final int lineIndex;
+    public final long startMs;
+    public final double score;
+
+    private Hit(long lectureId, int lineIndex, long startMs, double score) {
+      this.lectureId = lectureId;
+      this.lineIndex = lineIndex;
+      this.startMs = startMs;
+      this.score = score;
+    }
+  }
+
+  /** A page of hits for a query. */
+  public static final class Results {
+    public final ImmutableList<Hit> hits;
+    /** The number of lines matching the query, across every page. */
+    public final int totalHits;
+
+    private Results(ImmutableList<Hit> hits, int totalHits) {
+      this.hits = hits;
+      this.totalHits = totalHits;
+    }
+  }
+}
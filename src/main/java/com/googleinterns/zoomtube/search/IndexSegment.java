@@ -0,0 +1,252 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable inverted index over the transcript lines of one or more lectures, used as a
+ * segment of the {@link GlobalTranscriptIndex}.
+ *
+ * <p>Each transcript line is a document. Postings hold, for every term, the documents it
+ * occurs in along with how many times it occurs there.
+ */
+final class IndexSegment {
+  /* The lectures in this segment and the generation they were indexed at. */
+  final long[] lectureIds;
+  final long[] lectureGenerations;
+
+  /* Per-document data, indexed by document id. */
+  final int[] docLectures;
+  final int[] docLines;
+  final long[] docStartsMs;
+  final int[] docLengths;
+  final long totalTokens;
+
+  /* Sorted so terms can be found with a binary search. */
+  private final String[] terms;
+  /* Where each term's postings start in {@code postingDocs}, followed by its length. */
+  private final int[] postingOffsets;
+  private final int[] postingDocs;
+  private final int[] postingFrequencies;
+
+  private IndexSegment(long[] lectureIds, long[] lectureGenerations, int[] docLectures,
+      int[] docLines, long[] docStartsMs, int[] docLengths, long totalTokens, String[] terms,
+      int[] postingOffsets, int[] postingDocs, int[] postingFrequencies) {
+    this.lectureIds = lectureIds;
+    this.lectureGenerations = lectureGenerations;
+    this.docLectures = docLectures;
+    this.docLines = docLines;
+    this.docStartsMs = docStartsMs;
+    this.docLengths = docLengths;
+    this.totalTokens = totalTokens;
+    this.terms = terms;
+    this.postingOffsets = postingOffsets;
+    this.postingDocs = postingDocs;
+    this.postingFrequencies = postingFrequencies;
+  }
+
+  /** Returns a segment containing every line of {@code index}. */
+  static IndexSegment fromTranscript(long lectureId, long generation, TranscriptIndex index) {
+    int lineCount = index.lineCount();
+    int[] docLines = new int[lineCount];
+    long[] docStartsMs = new long[lineCount];
+    int[] docLengths = new int[lineCount];
+    long totalTokens = 0;
+    Map<String, PostingsBuilder> postingsByTerm = new TreeMap<>();
+    for (int line = 0; line < lineCount; line++) {
+      docLines[line] = line;
+      docStartsMs[line] = index.lineStartMs(line);
+      Map<String, Integer> lineFrequencies = new HashMap<>();
+      for (Tokenizer.Token token : Tokenizer.tokenize(index.lineContent(line))) {
+        lineFrequencies.merge(token.term, 1, Integer::sum);
+        docLengths[line]++;
+      }
+      totalTokens += docLengths[line];
+      for (Map.Entry<String, Integer> entry : lineFrequencies.entrySet()) {
+        postingsByTerm.computeIfAbsent(entry.getKey(), term -> new PostingsBuilder())
+            .add(line, entry.getValue());
+      }
+    }
+    return build(new long[] {lectureId}, new long[] {generation}, new int[lineCount], docLines,
+        docStartsMs, docLengths, totalTokens, postingsByTerm);
+  }
+
+  /**
+   * Returns a segment containing the documents of {@code segments}, leaving out lectures for
+   * which {@code isLive} rejects the generation they were indexed at.
+   */
+  static IndexSegment merge(List<IndexSegment> segments, LiveLectures isLive) {
+    List<Long> lectureIds = new ArrayList<>();
+    List<Long> lectureGenerations = new ArrayList<>();
+    int docCount = 0;
+    // Maps each segment's documents to their id in the merged segment, or -1 if dropped.
+    List<int[]> docRemaps = new ArrayList<>();
+    List<int[]> lectureRemaps = new ArrayList<>();
+    for (IndexSegment segment : segments) {
+      int[] lectureRemap = new int[segment.lectureIds.length];
+      for (int lecture = 0; lecture < segment.lectureIds.length; lecture++) {
+        if (isLive.test(segment.lectureIds[lecture], segment.lectureGenerations[lecture])) {
+          lectureRemap[lecture] = lectureIds.size();
+          lectureIds.add(segment.lectureIds[lecture]);
+          lectureGenerations.add(segment.lectureGenerations[lecture]);
+        } else {
+          lectureRemap[lecture] = -1;
+        }
+      }
+      int[] docRemap = new int[segment.docCount()];
+      for (int doc = 0; doc < segment.docCount(); doc++) {
+        docRemap[doc] = lectureRemap[segment.docLectures[doc]] < 0 ? -1 : docCount++;
+      }
+      docRemaps.add(docRemap);
+      lectureRemaps.add(lectureRemap);
+    }
+
+    int[] docLectures = new int[docCount];
+    int[] docLines = new int[docCount];
+    long[] docStartsMs = new long[docCount];
+    int[] docLengths = new int[docCount];
+    long totalTokens = 0;
+    Map<String, PostingsBuilder> postingsByTerm = new TreeMap<>();
+    for (int i = 0; i < segments.size(); i++) {
+      IndexSegment segment = segments.get(i);
+      int[] docRemap = docRemaps.get(i);
+      int[] lectureRemap = lectureRemaps.get(i);
+      for (int doc = 0; doc < segment.docCount(); doc++) {
+        int mergedDoc = docRemap[doc];
+        if (mergedDoc < 0) {
+          continue;
+        }
+        docLectures[mergedDoc] = lectureRemap[segment.docLectures[doc]];
+        docLines[mergedDoc] = segment.docLines[doc];
+        docStartsMs[mergedDoc] = segment.docStartsMs[doc];
+        docLengths[mergedDoc] = segment.docLengths[doc];
+        totalTokens += segment.docLengths[doc];
+      }
+      // Documents of later segments get higher ids, so appending keeps postings sorted.
+      for (int termIndex = 0; termIndex < segment.terms.length; termIndex++) {
+        PostingsBuilder postings = null;
+        for (int posting = segment.postingOffsets[termIndex];
+             posting < segment.postingOffsets[termIndex + 1]; posting++) {
+          int mergedDoc = docRemap[segment.postingDocs[posting]];
+          if (mergedDoc < 0) {
+            continue;
+          }
+          if (postings == null) {
+            postings = postingsByTerm.computeIfAbsent(
+                segment.terms[termIndex], term -> new PostingsBuilder());
+          }
+          postings.add(mergedDoc, segment.postingFrequencies[posting]);
+        }
+      }
+    }
+    return build(toLongArray(lectureIds), toLongArray(lectureGenerations), docLectures,
+        docLines, docStartsMs, docLengths, totalTokens, postingsByTerm);
+  }
+
+  private static IndexSegment build(long[] lectureIds, long[] lectureGenerations,
+      int[] docLectures, int[] docLines, long[] docStartsMs, int[] docLengths, long totalTokens,
+      Map<String, PostingsBuilder> postingsByTerm) {
+    String[] terms = new String[postingsByTerm.size()];
+    int[] postingOffsets = new int[terms.length + 1];
+    int postingCount = 0;
+    for (PostingsBuilder postings : postingsByTerm.values()) {
+      postingCount += postings.size;
+    }
+    int[] postingDocs = new int[postingCount];
+    int[] postingFrequencies = new int[postingCount];
+    int termIndex = 0;
+    for (Map.Entry<String, PostingsBuilder> entry : postingsByTerm.entrySet()) {
+      PostingsBuilder postings = entry.getValue();
+      int offset = postingOffsets[termIndex];
+      System.arraycopy(postings.docs, 0, postingDocs, offset, postings.size);
+      System.arraycopy(postings.frequencies, 0, postingFrequencies, offset, postings.size);
+      terms[termIndex] = entry.getKey();
+      postingOffsets[++termIndex] = offset + postings.size;
+    }
+    return new IndexSegment(lectureIds, lectureGenerations, docLectures, docLines, docStartsMs,
+        docLengths, totalTokens, terms, postingOffsets, postingDocs, postingFrequencies);
+  }
+
+  /** Returns the number of documents in this segment. */
+  int docCount() {
+    return docLines.length;
+  }
+
+  /** Returns the index of {@code term} in this segment, or a negative number if absent. */
+  int termIndex(String term) {
+    return Arrays.binarySearch(terms, term);
+  }
+
+  /** Returns the number of documents containing the term at {@code termIndex}. */
+  int documentFrequency(int termIndex) {
+    return postingOffsets[termIndex + 1] - postingOffsets[termIndex];
+  }
+
+  /** Returns the first posting of the term at {@code termIndex}. */
+  int postingsStart(int termIndex) {
+    return postingOffsets[termIndex];
+  }
+
+  /** Returns the posting after the last posting of the term at {@code termIndex}. */
+  int postingsEnd(int termIndex) {
+    return postingOffsets[termIndex + 1];
+  }
+
+  /** Returns the document of {@code posting}. */
+  int postingDoc(int posting) {
+    return postingDocs[posting];
+  }
+
+  /** Returns how many times the term occurs in the document of {@code posting}. */
+  int postingFrequency(int posting) {
+    return postingFrequencies[posting];
+  }
+
+  private static long[] toLongArray(List<Long> values) {
+    long[] array = new long[values.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = values.get(i);
+    }
+    return array;
+  }
+
+  /** Decides whether a lecture indexed at a generation should still be searched. */
+  interface LiveLectures {
+    boolean test(long lectureId, long generation);
+  }
+
+  /** A growable list of postings for a single term. */
+  private static final class PostingsBuilder {
+    int[] docs = new int[4];
+    int[] frequencies = new int[4];
+    int size = 0;
+
+    void add(int doc, int frequency) {
+      if (size == docs.length) {
+        docs = Arrays.copyOf(docs, size * 2);
+        frequencies = Arrays.copyOf(frequencies, size * 2);
+      }
+      docs[size] = doc;
+      frequencies[size] = frequency;
+      size++;
+    }
+  }
+}
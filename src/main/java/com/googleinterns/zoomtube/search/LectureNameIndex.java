@@ -0,0 +1,317 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.search;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An in-memory index of lecture names for completing what is typed in the lecture list.
+ *
+ * <p>A lecture matches a query if each of the query's terms is the start of a term in its
+ * name, ignoring case, so "intro alg" matches "Introduction to Algorithms". Lectures whose
+ * name starts with the query come first, in name order, followed by the other matches.
+ *
+ * <p>Names are kept in sorted maps keyed by each of their terms, so a query only reads the
+ * matches it returns plus the ones it skips, and adding a lecture doesn't rebuild anything.
+ * Lectures added on other instances are picked up by a periodic query for lectures created
+ * since the last one, and lectures they delete by a less frequent lookup of every indexed
+ * lecture.
+ */
+public final class LectureNameIndex {
+  /* Bounds the work of a query whose first terms match many names that its others don't. */
+  @VisibleForTesting static final int MAX_SCANNED_ENTRIES = 2000;
+  private static final long REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+  /* Reads every indexed lecture, so it is done less often than looking for new ones. */
+  private static final long REMOVE_DELETED_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(10);
+  /* The most keys datastore gets in one call. */
+  private static final int GET_BATCH_SIZE = 1000;
+  /* Queries are eventually consistent, so lectures created a little earlier are read again. */
+  private static final long REFRESH_OVERLAP_MS = TimeUnit.MINUTES.toMillis(1);
+  /* Separates the parts of a key. It sorts before every character in a term or name. */
+  private static final char SEPARATOR = '\u0000';
+
+  /* Keyed by term, then name and lecture id, so each term's lectures are in name order. */
+  private final NavigableMap<String, IndexedLecture> lecturesByTerm =
+      new ConcurrentSkipListMap<>();
+  /* Keyed by name, then lecture id. */
+  private final NavigableMap<String, IndexedLecture> lecturesByName =
+      new ConcurrentSkipListMap<>();
+  private final Map<Long, IndexedLecture> lectures = new ConcurrentHashMap<>();
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+  private volatile boolean loaded = false;
+  private volatile long lastRefreshNanos;
+  private volatile long lastRemoveDeletedNanos;
+  /* Lectures created from this time on are read by the next refresh. */
+  private volatile long refreshFromMs;
+
+  @VisibleForTesting
+  public LectureNameIndex() {}
+
+  /** Returns the {@code LectureNameIndex} instance, creating it if there isn't one yet. */
+  public static LectureNameIndex getIndex() {
+    return UniqueIndex.INSTANCE;
+  }
+
+  private static final class UniqueIndex {
+    static final LectureNameIndex INSTANCE = new LectureNameIndex();
+  }
+
+  /** Adds the lecture with {@code lectureId}, replacing it if it is already indexed. */
+  public synchronized void addLecture(long lectureId, String lectureName) {
+    removeLecture(lectureId);
+    IndexedLecture lecture = new IndexedLecture(lectureId, lectureName);
+    lectures.put(lectureId, lecture);
+    lecturesByName.put(lecture.nameKey(), lecture);
+    for (String term : lecture.terms) {
+      lecturesByTerm.put(lecture.termKey(term), lecture);
+    }
+  }
+
+  /** Removes the lecture with {@code lectureId} from completions. */
+  public synchronized void removeLecture(long lectureId) {
+    IndexedLecture lecture = lectures.remove(lectureId);
+    if (lecture == null) {
+      return;
+    }
+    lecturesByName.remove(lecture.nameKey());
+    for (String term : lecture.terms) {
+      lecturesByTerm.remove(lecture.termKey(term));
+    }
+  }
+
+  /** Returns the number of indexed lectures. */
+  public int size() {
+    return lectures.size();
+  }
+
+  /**
+   * Indexes every lecture stored in {@code datastore} the first time it is called, and the
+   * lectures created since then at most every {@code REFRESH_INTERVAL_NANOS} after that.
+   * Lectures deleted from {@code datastore} are removed at most every
+   * {@code REMOVE_DELETED_INTERVAL_NANOS}. Lectures created or deleted by this instance are
+   * indexed or removed as that happens.
+   */
+  public void ensureLoaded(DatastoreService datastore) {
+    if (!loaded) {
+      load(datastore);
+      return;
+    }
+    if (System.nanoTime() - lastRefreshNanos >= REFRESH_INTERVAL_NANOS
+        && refreshing.compareAndSet(false, true)) {
+      // Other requests keep using the index while one refreshes it.
+      try {
+        refresh(datastore);
+        if (System.nanoTime() - lastRemoveDeletedNanos >= REMOVE_DELETED_INTERVAL_NANOS) {
+          removeDeletedLectures(datastore);
+        }
+      } finally {
+        refreshing.set(false);
+      }
+    }
+  }
+
+  private synchronized void load(DatastoreService datastore) {
+    if (loaded) {
+      return;
+    }
+    long startMs = System.currentTimeMillis();
+    Query query = new Query(LectureUtil.KIND).addProjection(
+        new PropertyProjection(LectureUtil.NAME, String.class));
+    for (Entity lectureEntity : datastore.prepare(query).asIterable()) {
+      addLecture(lectureEntity.getKey().getId(),
+          (String) lectureEntity.getProperty(LectureUtil.NAME));
+    }
+    refreshFromMs = startMs - REFRESH_OVERLAP_MS;
+    lastRefreshNanos = System.nanoTime();
+    lastRemoveDeletedNanos = lastRefreshNanos;
+    loaded = true;
+  }
+
+  /** Indexes the lectures in {@code datastore} created since the last refresh. */
+  @VisibleForTesting
+  void refresh(DatastoreService datastore) {
+    long startMs = System.currentTimeMillis();
+    // A keys only query doesn't need a composite index, and few lectures are new.
+    Query query = new Query(LectureUtil.KIND)
+                      .setFilter(new FilterPredicate(LectureUtil.CREATED,
+                          FilterOperator.GREATER_THAN_OR_EQUAL, new Date(refreshFromMs)))
+                      .setKeysOnly();
+    List<Key> lectureKeys = new ArrayList<>();
+    for (Entity lectureEntity : datastore.prepare(query).asIterable()) {
+      lectureKeys.add(lectureEntity.getKey());
+    }
+    for (Entity lectureEntity : datastore.get(lectureKeys).values()) {
+      addLecture(lectureEntity.getKey().getId(),
+          (String) lectureEntity.getProperty(LectureUtil.NAME));
+    }
+    refreshFromMs = startMs - REFRESH_OVERLAP_MS;
+    lastRefreshNanos = System.nanoTime();
+  }
+
+  /**
+   * Removes the indexed lectures that are no longer in {@code datastore}. Getting them by key
+   * is strongly consistent, unlike a query, so a lecture just created is never removed.
+   */
+  @VisibleForTesting
+  void removeDeletedLectures(DatastoreService datastore) {
+    List<Key> lectureKeys = new ArrayList<>();
+    for (long lectureId : lectures.keySet()) {
+      lectureKeys.add(KeyFactory.createKey(LectureUtil.KIND, lectureId));
+    }
+    for (List<Key> batch : Lists.partition(lectureKeys, GET_BATCH_SIZE)) {
+      Set<Key> storedKeys = datastore.get(batch).keySet();
+      for (Key lectureKey : batch) {
+        if (!storedKeys.contains(lectureKey)) {
+          removeLecture(lectureKey.getId());
+        }
+      }
+    }
+    lastRemoveDeletedNanos = System.nanoTime();
+  }
+
+  /** Returns at most {@code limit} lectures matching {@code query}, best first. */
+  public ImmutableList<Completion> complete(String query, int limit) {
+    List<String> queryTerms = new ArrayList<>();
+    for (Tokenizer.Token token : Tokenizer.tokenize(query)) {
+      queryTerms.add(token.term);
+    }
+    if (queryTerms.isEmpty() || limit <= 0) {
+      return ImmutableList.of();
+    }
+
+    Map<Long, IndexedLecture> matches = new LinkedHashMap<>();
+    int scanned = 0;
+    String namePrefix = sortName(query.trim());
+    for (IndexedLecture lecture : withPrefix(lecturesByName, namePrefix).values()) {
+      if (matches.size() == limit || ++scanned > MAX_SCANNED_ENTRIES) {
+        break;
+      }
+      matches.put(lecture.id, lecture);
+    }
+    // The longest term matches the fewest names, so the fewest are skipped.
+    String anchorTerm = queryTerms.get(0);
+    for (String term : queryTerms) {
+      if (term.length() > anchorTerm.length()) {
+        anchorTerm = term;
+      }
+    }
+    for (IndexedLecture lecture : withPrefix(lecturesByTerm, anchorTerm).values()) {
+      if (matches.size() == limit || ++scanned > MAX_SCANNED_ENTRIES) {
+        break;
+      }
+      if (!matches.containsKey(lecture.id) && lecture.matches(queryTerms)) {
+        matches.put(lecture.id, lecture);
+      }
+    }
+
+    ImmutableList.Builder<Completion> completions = ImmutableList.builder();
+    for (IndexedLecture lecture : matches.values()) {
+      completions.add(new Completion(lecture.id, lecture.name));
+    }
+    return completions.build();
+  }
+
+  /** Returns the entries of {@code map} whose key starts with {@code prefix}. */
+  private static NavigableMap<String, IndexedLecture> withPrefix(
+      NavigableMap<String, IndexedLecture> map, String prefix) {
+    return map.subMap(prefix, /* fromInclusive= */ true, prefix + Character.MAX_VALUE,
+        /* toInclusive= */ false);
+  }
+
+  private static String sortName(String lectureName) {
+    return lectureName.toLowerCase(Locale.ROOT);
+  }
+
+  /** A lecture and the terms of its name. */
+  private static final class IndexedLecture {
+    final long id;
+    final String name;
+    final String sortName;
+    final String[] terms;
+
+    IndexedLecture(long id, String name) {
+      this.id = id;
+      this.name = name;
+      this.sortName = sortName(name);
+      Set<String> terms = new LinkedHashSet<>();
+      for (Tokenizer.Token token : Tokenizer.tokenize(name)) {
+        terms.add(token.term);
+      }
+      this.terms = terms.toArray(new String[0]);
+    }
+
+    /** Returns the key of this lecture in {@code lecturesByName}. */
+    String nameKey() {
+      return sortName + SEPARATOR + id;
+    }
+
+    /** Returns the key of this lecture under {@code term}, which orders it by name. */
+    String termKey(String term) {
+      return term + SEPARATOR + nameKey();
+    }
+
+    /** Returns whether each of {@code queryTerms} is the start of one of this name's terms. */
+    boolean matches(List<String> queryTerms) {
+      for (String queryTerm : queryTerms) {
+        boolean matched = false;
+        for (String term : terms) {
+          if (term.startsWith(queryTerm)) {
+            matched = true;
+            break;
+          }
+        }
+        if (!matched) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** A lecture completing a query. */
+  public static final class Completion {
+    public final long lectureId;
+    public final String lectureName;
+
+    private Completion(long lectureId, String lectureName) {
+      this.lectureId = lectureId;
+      this.lectureName = lectureName;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into lowercase search terms. Terms are runs of letters and digits, and
+ * apostrophes inside a word are dropped so that "that's" and "thats" match.
+ */
+public final class Tokenizer {
+  /** A term and where it was found in the original text. */
+  public static final class Token {
+    /** The normalized term. */
+    public final String term;
+    /** Index of the first character of the token in the original text. */
+    public final int start;
+    /** Index after the last character of the token in the original text. */
+    public final int end;
+
+    private Token(String term, int start, int end) {
+      this.term = term;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /** Returns the tokens of {@code text} in the order they appear. */
+  public static List<Token> tokenize(String text) {
+    List<Token> tokens = new ArrayList<>();
+    StringBuilder term = new StringBuilder();
+    int tokenStart = -1;
+    int index = 0;
+    while (index < text.length()) {
+      int codePoint = text.codePointAt(index);
+      int next = index + Character.charCount(codePoint);
+      if (Character.isLetterOrDigit(codePoint)) {
+        if (tokenStart < 0) {
+          tokenStart = index;
+        }
+        term.appendCodePoint(codePoint);
+      } else if (!(isApostrophe(codePoint) && tokenStart >= 0 && next < text.length()
+                     && Character.isLetterOrDigit(text.codePointAt(next)))) {
+        addToken(tokens, term, tokenStart, index);
+        tokenStart = -1;
+      }
+      index = next;
+    }
+    addToken(tokens, term, tokenStart, text.length());
+    return tokens;
+  }
+
+  private static void addToken(List<Token> tokens, StringBuilder term, int start, int end) {
+    if (term.length() == 0) {
+      return;
+    }
+    tokens.add(new Token(term.toString().toLowerCase(Locale.ROOT), start, end));
+    term.setLength(0);
+  }
+
+  private static boolean isApostrophe(int codePoint) {
+    return codePoint == '\'' || codePoint == '’';
+  }
+
+  private Tokenizer() {}
+}
@@ -0,0 +1,457 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.search;
+
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.apache.commons.text.StringEscapeUtils;
+
+/**
+ * A compact positional inverted index over the lines of a single transcript.
+ *
+ * <p>Every token in the transcript gets a position, counting from the first token of the
+ * first line. Each distinct term maps to the delta and varint encoded list of positions it
+ * occurs at, which lets phrase queries match across line boundaries. Postings are only
+ * decoded for the terms of a query, so an index can be kept in memory in its compact form.
+ */
+public final class TranscriptIndex {
+  /** Increment when the serialized format changes. */
+  private static final int FORMAT_VERSION = 1;
+  private static final String SNIPPET_MARK_START = "<mark>";
+  private static final String SNIPPET_MARK_END = "</mark>";
+
+  private final long[] lineIds;
+  private final long[] lineStartsMs;
+  private final long[] lineDurationsMs;
+  private final String[] lineContents;
+  /* The position of the first token of each line, followed by the total token count. */
+  private final int[] lineFirstPositions;
+  /* Sorted so terms can be found with a binary search. */
+  private final String[] terms;
+  /* Where each term's postings start in {@code postings}, followed by its length. */
+  private final int[] postingOffsets;
+  private final byte[] postings;
+
+  private TranscriptIndex(long[] lineIds, long[] lineStartsMs, long[] lineDurationsMs,
+      String[] lineContents, int[] lineFirstPositions, String[] terms, int[] postingOffsets,
+      byte[] postings) {
+    this.lineIds = lineIds;
+    this.lineStartsMs = lineStartsMs;
+    this.lineDurationsMs = lineDurationsMs;
+    this.lineContents = lineContents;
+    this.lineFirstPositions = lineFirstPositions;
+    this.terms = terms;
+    this.postingOffsets = postingOffsets;
+    this.postings = postings;
+  }
+
+  /** Returns a builder that indexes transcript lines in the order they are added. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Returns the number of lines in this index. */
+  public int lineCount() {
+    return lineIds.length;
+  }
+
+  /** Returns the number of distinct terms in this index. */
+  public int termCount() {
+    return terms.length;
+  }
+
+  /** Returns the datastore id of the transcript line at {@code lineIndex}. */
+  public long lineId(int lineIndex) {
+    return lineIds[lineIndex];
+  }
+
+  /** Returns the start of the transcript line at {@code lineIndex} in milliseconds. */
+  public long lineStartMs(int lineIndex) {
+    return lineStartsMs[lineIndex];
+  }
+
+  /** Returns the duration of the transcript line at {@code lineIndex} in milliseconds. */
+  public long lineDurationMs(int lineIndex) {
+    return lineDurationsMs[lineIndex];
+  }
+
+  /** Returns the text content of the transcript line at {@code lineIndex}. */
+  public String lineContent(int lineIndex) {
+    return lineContents[lineIndex];
+  }
+
+  /**
+   * Returns the number of times {@code term} occurs in this transcript. {@code term} must
+   * already be normalized with {@link Tokenizer}.
+   */
+  public int termFrequency(String term) {
+    return positionsOf(term).length;
+  }
+
+  /** Returns every term in this index in sorted order. */
+  public List<String> terms() {
+    return Arrays.asList(terms);
+  }
+
+  /**
+   * Returns the lines matching {@code query}, in transcript order, up to {@code limit}.
+   *
+   * <p>Words in double quotes must appear next to each other, in order. A line matches when
+   * every word or quoted phrase in the query starts within it.
+   */
+  public ImmutableList<Match> search(String query, int limit) {
+    List<String[]> phrases = parseQuery(query);
+    if (phrases.isEmpty()) {
+      return ImmutableList.of();
+    }
+
+    BitSet matchingLines = null;
+    // Positions covered by any matched phrase, used to highlight snippets.
+    BitSet matchedPositions = new BitSet();
+    for (String[] phrase : phrases) {
+      int[] phraseStarts = phraseStartPositions(phrase);
+      BitSet phraseLines = new BitSet(lineCount());
+      for (int position : phraseStarts) {
+        phraseLines.set(lineOfPosition(position));
+        matchedPositions.set(position, position + phrase.length);
+      }
+      if (matchingLines == null) {
+        matchingLines = phraseLines;
+      } else {
+        matchingLines.and(phraseLines);
+      }
+      if (matchingLines.isEmpty()) {
+        return ImmutableList.of();
+      }
+    }
+
+    ImmutableList.Builder<Match> matches = ImmutableList.builder();
+    int count = 0;
+    for (int line = matchingLines.nextSetBit(0); line >= 0 && count < limit;
+         line = matchingLines.nextSetBit(line + 1)) {
+      matches.add(new Match(line, highlightLine(line, matchedPositions)));
+      count++;
+    }
+    return matches.build();
+  }
+
+  /**
+   * Returns the positions at which every term of {@code phrase} occurs consecutively.
+   */
+  private int[] phraseStartPositions(String[] phrase) {
+    int[] candidates = positionsOf(phrase[0]);
+    for (int offset = 1; offset < phrase.length && candidates.length > 0; offset++) {
+      int[] nextPositions = positionsOf(phrase[offset]);
+      int[] kept = new int[candidates.length];
+      int keptCount = 0;
+      int nextIndex = 0;
+      for (int candidate : candidates) {
+        int wanted = candidate + offset;
+        while (nextIndex < nextPositions.length && nextPositions[nextIndex] < wanted) {
+          nextIndex++;
+        }
+        if (nextIndex < nextPositions.length && nextPositions[nextIndex] == wanted) {
+          kept[keptCount++] = candidate;
+        }
+      }
+      candidates = Arrays.copyOf(kept, keptCount);
+    }
+    return candidates;
+  }
+
+  /** Returns the decoded, sorted positions of {@code term}, or an empty array. */
+  private int[] positionsOf(String term) {
+    int termIndex = Arrays.binarySearch(terms, term);
+    if (termIndex < 0) {
+      return new int[0];
+    }
+    int offset = postingOffsets[termIndex];
+    int end = postingOffsets[termIndex + 1];
+    int[] positions = new int[end - offset];
+    int count = 0;
+    int position = 0;
+    while (offset < end) {
+      int delta = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = postings[offset++];
+        delta |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      position += delta;
+      positions[count++] = position;
+    }
+    return Arrays.copyOf(positions, count);
+  }
+
+  /** Returns the index of the line containing the token at {@code position}. */
+  private int lineOfPosition(int position) {
+    int low = 0;
+    int high = lineCount() - 1;
+    while (low < high) {
+      int middle = (low + high + 1) >>> 1;
+      if (lineFirstPositions[middle] <= position) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the HTML escaped content of the line at {@code lineIndex} with every word whose
+   * normalized term is in {@code terms} wrapped in {@code <mark>} tags.
+   */
+  public String snippet(int lineIndex, Set<String> terms) {
+    String content = lineContents[lineIndex];
+    BitSet matchedPositions = new BitSet();
+    int position = lineFirstPositions[lineIndex];
+    for (Tokenizer.Token token : Tokenizer.tokenize(content)) {
+      if (terms.contains(token.term)) {
+        matchedPositions.set(position);
+      }
+      position++;
+    }
+    return highlightLine(lineIndex, matchedPositions);
+  }
+
+  /**
+   * Returns the HTML escaped content of {@code line} with tokens whose position is set in
+   * {@code matchedPositions} wrapped in {@code <mark>} tags.
+   */
+  private String highlightLine(int line, BitSet matchedPositions) {
+    String content = lineContents[line];
+    StringBuilder snippet = new StringBuilder(content.length() + 16);
+    int position = lineFirstPositions[line];
+    int copiedUpTo = 0;
+    for (Tokenizer.Token token : Tokenizer.tokenize(content)) {
+      if (matchedPositions.get(position)) {
+        snippet.append(StringEscapeUtils.escapeHtml4(content.substring(copiedUpTo, token.start)))
+            .append(SNIPPET_MARK_START)
+            .append(StringEscapeUtils.escapeHtml4(content.substring(token.start, token.end)))
+            .append(SNIPPET_MARK_END);
+        copiedUpTo = token.end;
+      }
+      position++;
+    }
+    snippet.append(StringEscapeUtils.escapeHtml4(content.substring(copiedUpTo)));
+    return snippet.toString();
+  }
+
+  /**
+   * Splits {@code query} into phrases of normalized terms. Quoted sections become a single
+   * phrase and every other word becomes a phrase of its own.
+   */
+  private static List<String[]> parseQuery(String query) {
+    List<String[]> phrases = new ArrayList<>();
+    String[] sections = query.split("\"", -1);
+    for (int i = 0; i < sections.length; i++) {
+      List<String> sectionTerms = new ArrayList<>();
+      for (Tokenizer.Token token : Tokenizer.tokenize(sections[i])) {
+        sectionTerms.add(token.term);
+      }
+      // Odd sections are between quotes.
+      boolean quoted = i % 2 == 1;
+      if (quoted && !sectionTerms.isEmpty()) {
+        phrases.add(sectionTerms.toArray(new String[0]));
+      } else {
+        for (String term : sectionTerms) {
+          phrases.add(new String[] {term});
+        }
+      }
+    }
+    return phrases;
+  }
+
+  /** Returns this index serialized and compressed, for storing in datastore. */
+  public byte[] toBytes() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+      output.writeInt(FORMAT_VERSION);
+      output.writeInt(lineCount());
+      for (int line = 0; line < lineCount(); line++) {
+        output.writeLong(lineIds[line]);
+        output.writeLong(lineStartsMs[line]);
+        output.writeLong(lineDurationsMs[line]);
+        output.writeUTF(lineContents[line]);
+        output.writeInt(lineFirstPositions[line]);
+      }
+      output.writeInt(lineFirstPositions[lineCount()]);
+      output.writeInt(terms.length);
+      for (int termIndex = 0; termIndex < terms.length; termIndex++) {
+        output.writeUTF(terms[termIndex]);
+        output.writeInt(postingOffsets[termIndex + 1]);
+      }
+      output.write(postings);
+    } catch (IOException e) {
+      // Writing to memory doesn't fail.
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Returns the index serialized in {@code bytes} by {@link #toBytes()}.
+   *
+   * @throws IOException if {@code bytes} is not a serialized index.
+   */
+  public static TranscriptIndex fromBytes(byte[] bytes) throws IOException {
+    try (DataInputStream input = new DataInputStream(
+             new InflaterInputStream(new ByteArrayInputStream(bytes)))) {
+      int version = input.readInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported transcript index version " + version);
+      }
+      int lineCount = input.readInt();
+      long[] lineIds = new long[lineCount];
+      long[] lineStartsMs = new long[lineCount];
+      long[] lineDurationsMs = new long[lineCount];
+      String[] lineContents = new String[lineCount];
+      int[] lineFirstPositions = new int[lineCount + 1];
+      for (int line = 0; line < lineCount; line++) {
+        lineIds[line] = input.readLong();
+        lineStartsMs[line] = input.readLong();
+        lineDurationsMs[line] = input.readLong();
+        lineContents[line] = input.readUTF();
+        lineFirstPositions[line] = input.readInt();
+      }
+      lineFirstPositions[lineCount] = input.readInt();
+      int termCount = input.readInt();
+      String[] terms = new String[termCount];
+      int[] postingOffsets = new int[termCount + 1];
+      for (int termIndex = 0; termIndex < termCount; termIndex++) {
+        terms[termIndex] = input.readUTF();
+        postingOffsets[termIndex + 1] = input.readInt();
+      }
+      byte[] postings = new byte[postingOffsets[termCount]];
+      input.readFully(postings);
+      return new TranscriptIndex(lineIds, lineStartsMs, lineDurationsMs, lineContents,
+          lineFirstPositions, terms, postingOffsets, postings);
+    }
+  }
+
+  /** A line that matched a query. */
+  public static final class Match {
+    private final int lineIndex;
+    private final String snippet;
+
+    private Match(int lineIndex, String snippet) {
+      this.lineIndex = lineIndex;
+      this.snippet = snippet;
+    }
+
+    /** Returns the index of the matching line in the transcript. */
+    public int lineIndex() {
+      return lineIndex;
+    }
+
+    /** Returns the HTML escaped line content with matched words in {@code <mark>} tags. */
+    public String snippet() {
+      return snippet;
+    }
+  }
+
+  /** Collects transcript lines and builds a {@code TranscriptIndex} from them. */
+  public static final class Builder {
+    private final List<Long> lineIds = new ArrayList<>();
+    private final List<Long> lineStartsMs = new ArrayList<>();
+    private final List<Long> lineDurationsMs = new ArrayList<>();
+    private final List<String> lineContents = new ArrayList<>();
+    private final List<Integer> lineFirstPositions = new ArrayList<>();
+    /* Sorted by term so the finished index can binary search them. */
+    private final Map<String, PostingsWriter> postingsByTerm = new TreeMap<>();
+    private int nextPosition = 0;
+
+    private Builder() {}
+
+    /** Adds the line with datastore id {@code lineId} after every previously added line. */
+    public Builder addLine(long lineId, long startMs, long durationMs, String content) {
+      lineIds.add(lineId);
+      lineStartsMs.add(startMs);
+      lineDurationsMs.add(durationMs);
+      lineContents.add(content);
+      lineFirstPositions.add(nextPosition);
+      for (Tokenizer.Token token : Tokenizer.tokenize(content)) {
+        postingsByTerm.computeIfAbsent(token.term, term -> new PostingsWriter()).add(nextPosition);
+        nextPosition++;
+      }
+      return this;
+    }
+
+    public TranscriptIndex build() {
+      int lineCount = lineIds.size();
+      long[] ids = new long[lineCount];
+      long[] startsMs = new long[lineCount];
+      long[] durationsMs = new long[lineCount];
+      int[] firstPositions = new int[lineCount + 1];
+      for (int line = 0; line < lineCount; line++) {
+        ids[line] = lineIds.get(line);
+        startsMs[line] = lineStartsMs.get(line);
+        durationsMs[line] = lineDurationsMs.get(line);
+        firstPositions[line] = lineFirstPositions.get(line);
+      }
+      firstPositions[lineCount] = nextPosition;
+
+      String[] terms = new String[postingsByTerm.size()];
+      int[] postingOffsets = new int[terms.length + 1];
+      ByteArrayOutputStream postings = new ByteArrayOutputStream();
+      int termIndex = 0;
+      for (Map.Entry<String, PostingsWriter> entry : postingsByTerm.entrySet()) {
+        terms[termIndex] = entry.getKey();
+        entry.getValue().writeTo(postings);
+        postingOffsets[++termIndex] = postings.size();
+      }
+      return new TranscriptIndex(ids, startsMs, durationsMs,
+          lineContents.toArray(new String[0]), firstPositions, terms, postingOffsets,
+          postings.toByteArray());
+    }
+  }
+
+  /** Delta and varint encodes an increasing list of positions. */
+  private static final class PostingsWriter {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private int lastPosition = 0;
+
+    void add(int position) {
+      int delta = position - lastPosition;
+      lastPosition = position;
+      while ((delta & ~0x7F) != 0) {
+        bytes.write((delta & 0x7F) | 0x80);
+        delta >>>= 7;
+      }
+      bytes.write(delta);
+    }
+
+    void writeTo(ByteArrayOutputStream output) {
+      byte[] encoded = bytes.toByteArray();
+      output.write(encoded, 0, encoded.length);
+    }
+  }
+}
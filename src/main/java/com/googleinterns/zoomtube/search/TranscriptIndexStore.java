@@ -0,0 +1,119 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.search;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.googleinterns.zoomtube.repository.TranscriptLineRepository;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Loads persisted transcript indexes, keeping recently searched ones decoded in memory so
+ * repeated searches of a lecture don't read them again.
+ */
+public final class TranscriptIndexStore {
+  /* Enough for the lectures being watched at once, without holding every index. */
+  private static final int MAX_CACHED_INDEXES = 64;
+
+  /* Shared by every store so evictions are seen by all servlets. */
+  private static final Cache<Key, TranscriptIndex> cache =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_INDEXES).build();
+
+  private final TranscriptLineRepository transcriptLines;
+
+  public TranscriptIndexStore(TranscriptLineRepository transcriptLines) {
+    this.transcriptLines = transcriptLines;
+  }
+
+  /**
+   * Returns the index of the transcript for the lecture with {@code lectureKey}, or
+   * {@code Optional.empty()} if the lecture has no indexed transcript.
+   *
+   * @throws IOException if the stored index can't be read.
+   */
+  public Optional<TranscriptIndex> load(Key lectureKey) throws IOException {
+    return Optional.ofNullable(loadAll(Collections.singletonList(lectureKey)).get(lectureKey));
+  }
+
+  /**
+   * Returns the index of the transcript for each of the lectures with {@code lectureKeys}
+   * that has an indexed transcript, by lecture key. The indexes that aren't cached are read
+   * together, with a batch get of their first shards and another of the rest.
+   *
+   * @throws IOException if a stored index can't be read.
+   */
+  public Map<Key, TranscriptIndex> loadAll(Collection<Key> lectureKeys) throws IOException {
+    Map<Key, TranscriptIndex> indexes = new HashMap<>();
+    List<Key> indexKeys = new ArrayList<>();
+    for (Key lectureKey : lectureKeys) {
+      TranscriptIndex cachedIndex = cache.getIfPresent(lectureKey);
+      if (cachedIndex != null) {
+        indexes.put(lectureKey, cachedIndex);
+      } else {
+        indexKeys.add(TranscriptIndexUtil.createKey(lectureKey));
+      }
+    }
+    if (indexKeys.isEmpty()) {
+      return indexes;
+    }
+    List<Entity> indexEntities = new ArrayList<>();
+    List<Key> otherShardKeys = new ArrayList<>();
+    for (Entity indexEntity : transcriptLines.getAll(indexKeys).values()) {
+      if (!TranscriptIndexUtil.isDeleted(indexEntity)) {
+        indexEntities.add(indexEntity);
+        otherShardKeys.addAll(TranscriptIndexUtil.getOtherShardKeys(indexEntity));
+      }
+    }
+    Map<Key, Entity> otherShardEntities =
+        otherShardKeys.isEmpty() ? ImmutableMap.of() : transcriptLines.getAll(otherShardKeys);
+    for (Entity indexEntity : indexEntities) {
+      Key lectureKey = indexEntity.getKey().getParent();
+      TranscriptIndex index =
+          TranscriptIndexUtil.createTranscriptIndex(indexEntity, otherShardEntities);
+      cache.put(lectureKey, index);
+      indexes.put(lectureKey, index);
+    }
+    return indexes;
+  }
+
+  /**
+   * Returns the index stored in {@code indexEntity}, reading the rest of its shards from
+   * {@code transcriptLines} if it has more than one.
+   *
+   * @throws IOException if the stored index can't be read.
+   */
+  static TranscriptIndex read(TranscriptLineRepository transcriptLines, Entity indexEntity)
+      throws IOException {
+    List<Key> otherShardKeys = TranscriptIndexUtil.getOtherShardKeys(indexEntity);
+    return TranscriptIndexUtil.createTranscriptIndex(indexEntity,
+        otherShardKeys.isEmpty() ? ImmutableMap.of() : transcriptLines.getAll(otherShardKeys));
+  }
+
+  /** Forgets any cached index for the lecture with {@code lectureKey}. */
+  public static void evict(Key lectureKey) {
+    cache.invalidate(lectureKey);
+  }
+}
@@ -0,0 +1,244 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.googleinterns.zoomtube.data.LectureDeletion;
+import com.googleinterns.zoomtube.metrics.MeteredDatastoreService;
+import com.googleinterns.zoomtube.search.GlobalTranscriptIndex;
+import com.googleinterns.zoomtube.search.LectureNameIndex;
+import com.googleinterns.zoomtube.search.TranscriptIndexStore;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.LectureVideoUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Deletes a lecture along with its comments, transcripts and icon feedback.
+ *
+ * <p>The first request deletes the lecture itself and removes it from every cache and index
+ * on this instance, so it can't be opened or found while the rest is deleted. Comments, then
+ * everything stored under the lecture's key, are then deleted in batches with keys-only
+ * queries. If the request is about to run out of time, the response includes a stage and a
+ * cursor to continue from with another request.
+ *
+ * <p>Once everything is deleted, the lecture's transcript index is marked deleted, so that
+ * other instances stop searching it too.
+ *
+ * <p>Deleting a lecture that was already deleted deletes anything that was left of it.
+ */
+public class DeleteLectureServlet extends HttpServlet {
+  @VisibleForTesting static final String PARAM_ID = "id";
+  @VisibleForTesting static final String PARAM_STAGE = "stage";
+  @VisibleForTesting static final String PARAM_CURSOR = "cursor";
+  @VisibleForTesting static final String STAGE_COMMENTS = "comments";
+  /* Transcripts, their index and icon feedback are all stored under the lecture's key. */
+  @VisibleForTesting static final String STAGE_DESCENDANTS = "descendants";
+  private static final ImmutableList<String> STAGES =
+      ImmutableList.of(STAGE_COMMENTS, STAGE_DESCENDANTS);
+  /* Datastore deletes at most 500 entities in one call. */
+  @VisibleForTesting static final int BATCH_SIZE = 500;
+  /* Stops early enough to respond before the request deadline. */
+  private static final long MIN_REMAINING_MILLIS = 5000;
+
+  private static final String ERROR_MISSING_ID = "Missing id parameter.";
+  private static final String ERROR_INVALID_STAGE = "Invalid stage parameter.";
+  private static final String ERROR_CURSOR_WITHOUT_STAGE =
+      "A cursor can only be used with a stage.";
+  private static final String ERROR_INVALID_CURSOR = "Invalid cursor parameter.";
+
+  private DatastoreService datastore;
+  private LongSupplier remainingMillis;
+
+  @Override
+  public void init() throws ServletException {
+    datastore = MeteredDatastoreService.getDatastoreService();
+    remainingMillis = () -> ApiProxy.getCurrentEnvironment().getRemainingMillis();
+  }
+
+  @VisibleForTesting
+  void setRemainingMillis(LongSupplier remainingMillis) {
+    this.remainingMillis = remainingMillis;
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<String> error = validatePostRequest(request);
+    if (error.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, error.get());
+      return;
+    }
+
+    long lectureId = Long.parseLong(request.getParameter(PARAM_ID));
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, lectureId);
+    String stage = request.getParameter(PARAM_STAGE);
+    String cursor = request.getParameter(PARAM_CURSOR);
+    int deletedCount = 0;
+    if (stage == null) {
+      deletedCount = deleteLectureEntity(lectureKey);
+      forgetLecture(lectureKey);
+      stage = STAGES.get(0);
+    }
+
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(BATCH_SIZE);
+    LectureDeletion deletion;
+    try {
+      if (cursor != null) {
+        fetchOptions.startCursor(Cursor.fromWebSafeString(cursor));
+      }
+      deletion = deleteLectureData(lectureKey, stage, fetchOptions, deletedCount);
+    } catch (IllegalArgumentException e) {
+      // The cursor is only fully checked once the query runs.
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, ERROR_INVALID_CURSOR);
+      return;
+    }
+    writeDeletion(response, deletion);
+  }
+
+  private Optional<String> validatePostRequest(HttpServletRequest request) {
+    if (request.getParameter(PARAM_ID) == null) {
+      return Optional.of(ERROR_MISSING_ID);
+    }
+    String stage = request.getParameter(PARAM_STAGE);
+    if (stage != null && !STAGES.contains(stage)) {
+      return Optional.of(ERROR_INVALID_STAGE);
+    }
+    if (stage == null && request.getParameter(PARAM_CURSOR) != null) {
+      return Optional.of(ERROR_CURSOR_WITHOUT_STAGE);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Deletes the lecture with {@code lectureKey} and the LectureVideo entity its video is
+   * found by, returning how many entities were deleted.
+   */
+  private int deleteLectureEntity(Key lectureKey) {
+    Entity lectureEntity;
+    try {
+      lectureEntity = datastore.get(lectureKey);
+    } catch (EntityNotFoundException e) {
+      // Already deleted by an earlier request.
+      return 0;
+    }
+    List<Key> keys = new ArrayList<>();
+    keys.add(lectureKey);
+    String videoId = (String) lectureEntity.getProperty(LectureUtil.VIDEO_ID);
+    Key lectureVideoKey = LectureVideoUtil.createKey(videoId);
+    try {
+      // The video may belong to another lecture that was created for it first.
+      Entity lectureVideoEntity = datastore.get(lectureVideoKey);
+      if (lectureKey.equals(lectureVideoEntity.getProperty(LectureVideoUtil.LECTURE))) {
+        keys.add(lectureVideoKey);
+      }
+    } catch (EntityNotFoundException e) {
+      // Lectures created before LectureVideo entities existed may not have one.
+    }
+    datastore.delete(keys);
+    return keys.size();
+  }
+
+  /** Removes the lecture with {@code lectureKey} from the caches and indexes that hold it. */
+  private static void forgetLecture(Key lectureKey) {
+    LectureServlet.invalidateLecture(lectureKey.getId());
+    LectureListServlet.invalidateLecturePages();
+    LectureNameIndex.getIndex().removeLecture(lectureKey.getId());
+    TranscriptIndexStore.evict(lectureKey);
+    GlobalTranscriptIndex.getIndex().removeLecture(lectureKey.getId());
+  }
+
+  /**
+   * Deletes batches of the lecture's data, starting from {@code stage}, until it is all
+   * deleted or the request is running out of time. {@code deletedCount} entities were
+   * already deleted by this request.
+   */
+  private LectureDeletion deleteLectureData(
+      Key lectureKey, String stage, FetchOptions fetchOptions, int deletedCount) {
+    for (int stageIndex = STAGES.indexOf(stage); stageIndex < STAGES.size(); stageIndex++) {
+      Query query = createStageQuery(lectureKey, STAGES.get(stageIndex));
+      while (true) {
+        QueryResultList<Entity> batch = datastore.prepare(query).asQueryResultList(fetchOptions);
+        List<Key> keys = new ArrayList<>(batch.size());
+        for (Entity entity : batch) {
+          keys.add(entity.getKey());
+        }
+        datastore.delete(keys);
+        deletedCount += keys.size();
+        if (batch.size() < BATCH_SIZE) {
+          break;
+        }
+        fetchOptions.startCursor(batch.getCursor());
+        if (remainingMillis.getAsLong() < MIN_REMAINING_MILLIS) {
+          return LectureDeletion.create(deletedCount, /* done= */ false, STAGES.get(stageIndex),
+              batch.getCursor().toWebSafeString());
+        }
+      }
+      fetchOptions = FetchOptions.Builder.withLimit(BATCH_SIZE);
+      boolean isLastStage = stageIndex == STAGES.size() - 1;
+      if (!isLastStage && remainingMillis.getAsLong() < MIN_REMAINING_MILLIS) {
+        return LectureDeletion.create(
+            deletedCount, /* done= */ false, STAGES.get(stageIndex + 1), /* cursor= */ "");
+      }
+    }
+    datastore.put(TranscriptIndexUtil.createDeletedEntity(lectureKey));
+    return LectureDeletion.create(
+        deletedCount, /* done= */ true, /* stage= */ "", /* cursor= */ "");
+  }
+
+  /** Returns the keys-only query for what {@code stage} deletes of the lecture's data. */
+  private static Query createStageQuery(Key lectureKey, String stage) {
+    if (stage.equals(STAGE_COMMENTS)) {
+      // Replies are root entities too, and reference the lecture like any other comment.
+      return new Query(CommentUtil.KIND)
+          .setFilter(new FilterPredicate(CommentUtil.LECTURE, FilterOperator.EQUAL, lectureKey))
+          .setKeysOnly();
+    }
+    // A kindless query finds every kind stored under the lecture, including ones added later.
+    return new Query().setAncestor(lectureKey).setKeysOnly();
+  }
+
+  /**
+   * Writes {@code deletion} as Json to {@code response}.
+   */
+  private void writeDeletion(HttpServletResponse response, LectureDeletion deletion)
+      throws IOException {
+    response.setContentType("application/json");
+    Gson gson = new Gson();
+    response.getWriter().println(gson.toJson(deletion));
+  }
+}
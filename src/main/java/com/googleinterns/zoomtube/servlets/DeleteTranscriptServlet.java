@@ -14,36 +14,225 @@
 
 package com.googleinterns.zoomtube.servlets;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.googleinterns.zoomtube.data.TranscriptDeletion;
+import com.googleinterns.zoomtube.metrics.MeteredDatastoreService;
+import com.googleinterns.zoomtube.search.GlobalTranscriptIndex;
+import com.googleinterns.zoomtube.search.TranscriptIndexStore;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptChunkUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
 import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.googleinterns.zoomtube.utils.TranscriptSegmentUtil;
 import java.io.IOException;
-import java.util.stream.StreamSupport;
-import javax.servlet.annotation.WebServlet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Servlet that deletes all of the transcript lines. */
-@WebServlet("/delete-transcript")
+/**
+ * Deletes the transcript of a lecture, or only its transcript in one language.
+ *
+ * <p>Lines are deleted in batches. If the request is about to run out of time, the response
+ * includes a cursor to continue from with another request.
+ */
 public class DeleteTranscriptServlet extends HttpServlet {
-  private static String HOME_PATH = "/";
+  @VisibleForTesting static final String PARAM_ID = "id";
+  @VisibleForTesting static final String PARAM_LANGUAGE = "lang";
+  @VisibleForTesting static final String PARAM_CURSOR = "cursor";
+  /* Datastore deletes at most 500 entities in one call. */
+  @VisibleForTesting static final int BATCH_SIZE = 500;
+  /* Stops early enough to respond before the request deadline. */
+  private static final long MIN_REMAINING_MILLIS = 5000;
+
+  private static final String ERROR_MISSING_ID = "Missing id parameter.";
+  private static final String ERROR_INVALID_CURSOR = "Invalid cursor parameter.";
+
+  private DatastoreService datastore;
+  private LongSupplier remainingMillis;
+
+  @Override
+  public void init() throws ServletException {
+    datastore = MeteredDatastoreService.getDatastoreService();
+    remainingMillis = () -> ApiProxy.getCurrentEnvironment().getRemainingMillis();
+  }
+
+  @VisibleForTesting
+  void setRemainingMillis(LongSupplier remainingMillis) {
+    this.remainingMillis = remainingMillis;
+  }
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Query query = new Query(TranscriptLineUtil.KIND);
+    Optional<String> error = validatePostRequest(request);
+    if (error.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, error.get());
+      return;
+    }
+
+    long lectureId = Long.parseLong(request.getParameter(PARAM_ID));
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, lectureId);
+    Optional<String> language = Optional.ofNullable(request.getParameter(PARAM_LANGUAGE));
+    String cursor = request.getParameter(PARAM_CURSOR);
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(BATCH_SIZE);
+    if (cursor == null && isSearchedLanguage(lectureKey, language)) {
+      // Stops searching the transcript before its lines start disappearing. Requests that
+      // continue from a cursor already did this.
+      deleteTranscriptIndex(lectureKey);
+      TranscriptIndexStore.evict(lectureKey);
+      GlobalTranscriptIndex.getIndex().removeLecture(lectureId);
+    }
+
+    if (cursor == null) {
+      // Chunks and segments are few and small, so they are all deleted by the first request.
+      deleteTranscriptChunks(lectureKey, language);
+      deleteTranscriptSegments(lectureKey, language);
+    }
 
-    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    PreparedQuery results = datastore.prepare(query);
-    Iterable<Entity> resultsIterable = results.asIterable();
+    TranscriptDeletion deletion;
+    try {
+      if (cursor != null) {
+        fetchOptions.startCursor(Cursor.fromWebSafeString(cursor));
+      }
+      deletion = deleteTranscriptLines(lectureKey, language, fetchOptions);
+    } catch (IllegalArgumentException e) {
+      // The cursor is only fully checked once the query runs.
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, ERROR_INVALID_CURSOR);
+      return;
+    }
+    writeDeletion(response, deletion);
+  }
+
+  private Optional<String> validatePostRequest(HttpServletRequest request) {
+    if (request.getParameter(PARAM_ID) == null) {
+      return Optional.of(ERROR_MISSING_ID);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Returns whether deleting the transcript in {@code language} deletes the transcript that
+   * is indexed for search, which is in the lecture's default language.
+   */
+  private boolean isSearchedLanguage(Key lectureKey, Optional<String> language) {
+    if (!language.isPresent()) {
+      return true;
+    }
+    try {
+      Entity lectureEntity = datastore.get(lectureKey);
+      return language.get().equals(lectureEntity.getProperty(LectureUtil.TRANSCRIPT_LANGUAGE));
+    } catch (EntityNotFoundException e) {
+      return true;
+    }
+  }
+
+  /**
+   * Deletes every shard of the transcript index for {@code lectureKey}, leaving the first
+   * marked deleted so that other instances stop searching it.
+   */
+  private void deleteTranscriptIndex(Key lectureKey) {
+    Query query =
+        new Query(TranscriptIndexUtil.SHARD_KIND).setAncestor(lectureKey).setKeysOnly();
+    List<Key> shardKeys = new ArrayList<>();
+    for (Entity shardEntity : datastore.prepare(query).asIterable()) {
+      shardKeys.add(shardEntity.getKey());
+    }
+    datastore.put(TranscriptIndexUtil.createDeletedEntity(lectureKey));
+    datastore.delete(shardKeys);
+  }
+
+  /**
+   * Deletes the chunks of the transcript for {@code lectureKey}, in {@code language} if it is
+   * present.
+   */
+  private void deleteTranscriptChunks(Key lectureKey, Optional<String> language) {
+    Query query = new Query(TranscriptChunkUtil.KIND).setAncestor(lectureKey).setKeysOnly();
+    if (language.isPresent()) {
+      query.setFilter(
+          new FilterPredicate(TranscriptChunkUtil.LANGUAGE, FilterOperator.EQUAL, language.get()));
+    }
+    List<Key> chunkKeys = new ArrayList<>();
+    for (Entity chunkEntity : datastore.prepare(query).asIterable()) {
+      chunkKeys.add(chunkEntity.getKey());
+    }
+    datastore.delete(chunkKeys);
+  }
+
+  /**
+   * Deletes the segments of the transcript for {@code lectureKey}, in {@code language} if it
+   * is present.
+   */
+  private void deleteTranscriptSegments(Key lectureKey, Optional<String> language) {
+    // Long transcripts have their segments in several shards, so they are all looked up.
+    Query query = new Query(TranscriptSegmentUtil.KIND).setAncestor(lectureKey).setKeysOnly();
+    if (language.isPresent()) {
+      query.setFilter(new FilterPredicate(
+          TranscriptSegmentUtil.LANGUAGE, FilterOperator.EQUAL, language.get()));
+    }
+    List<Key> segmentsKeys = new ArrayList<>();
+    for (Entity segmentsEntity : datastore.prepare(query).asIterable()) {
+      segmentsKeys.add(segmentsEntity.getKey());
+    }
+    datastore.delete(segmentsKeys);
+  }
+
+  /**
+   * Deletes batches of the lines of the transcript for {@code lectureKey}, in
+   * {@code language} if it is present, until they are all deleted or the request is running
+   * out of time.
+   */
+  private TranscriptDeletion deleteTranscriptLines(
+      Key lectureKey, Optional<String> language, FetchOptions fetchOptions) {
+    Query query = new Query(TranscriptLineUtil.KIND).setAncestor(lectureKey).setKeysOnly();
+    if (language.isPresent()) {
+      query.setFilter(
+          new FilterPredicate(TranscriptLineUtil.LANGUAGE, FilterOperator.EQUAL, language.get()));
+    }
+
+    int deletedCount = 0;
+    while (true) {
+      QueryResultList<Entity> batch = datastore.prepare(query).asQueryResultList(fetchOptions);
+      List<Key> lineKeys = new ArrayList<>(batch.size());
+      for (Entity lineEntity : batch) {
+        lineKeys.add(lineEntity.getKey());
+      }
+      datastore.delete(lineKeys);
+      deletedCount += lineKeys.size();
+      if (batch.size() < BATCH_SIZE) {
+        return TranscriptDeletion.create(deletedCount, /* done= */ true, /* cursor= */ "");
+      }
+      fetchOptions.startCursor(batch.getCursor());
+      if (remainingMillis.getAsLong() < MIN_REMAINING_MILLIS) {
+        return TranscriptDeletion.create(
+            deletedCount, /* done= */ false, batch.getCursor().toWebSafeString());
+      }
+    }
+  }
 
-    StreamSupport.stream(resultsIterable.spliterator(), false)
-        .map(entity -> entity.getKey())
-        .forEach(datastore::delete);
-    System.out.println("DeleteTranscript doPost");
-    response.sendRedirect(HOME_PATH);
+  /**
+   * Writes {@code deletion} as Json to {@code response}.
+   */
+  private void writeDeletion(HttpServletResponse response, TranscriptDeletion deletion)
+      throws IOException {
+    response.setContentType("application/json");
+    Gson gson = new Gson();
+    response.getWriter().println(gson.toJson(deletion));
   }
-}
\ No newline at end of file
+}
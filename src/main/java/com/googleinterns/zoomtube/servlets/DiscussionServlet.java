@@ -14,17 +14,9 @@
 
 package com.googleinterns.zoomtube.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
-import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.api.users.User;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
@@ -33,6 +25,10 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
 import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.repository.CommentRepository;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.tracing.Span;
+import com.googleinterns.zoomtube.tracing.Tracer;
 import com.googleinterns.zoomtube.utils.CommentUtil;
 import com.googleinterns.zoomtube.utils.LectureUtil;
 import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
@@ -63,12 +59,12 @@ public class DiscussionServlet extends HttpServlet {
   private static final String ERROR_NOT_LOGGED_IN = "You are not logged in.";
 
   private UserService userService;
-  private DatastoreService datastore;
+  private CommentRepository comments;
 
   @Override
   public void init() throws ServletException {
     userService = UserServiceFactory.getUserService();
-    datastore = DatastoreServiceFactory.getDatastoreService();
+    comments = Repositories.getRepositories().comments();
   }
 
   @Override
@@ -113,9 +109,7 @@ public class DiscussionServlet extends HttpServlet {
       commentEntity = CommentUtil.createRootEntity(
           lectureKey, timestampMs, transcriptLineKey, author, content, dateNow, type);
     }
-    datastore.put(commentEntity);
-
-    datastore.put(commentEntity);
+    comments.put(commentEntity);
     response.setStatus(HttpServletResponse.SC_ACCEPTED);
   }
 
@@ -151,20 +145,20 @@ public class DiscussionServlet extends HttpServlet {
 
     long lectureId = Long.parseLong(request.getParameter(PARAM_LECTURE));
     Key lecture = KeyFactory.createKey(LectureUtil.KIND, lectureId);
-    Filter lectureFilter = new FilterPredicate(CommentUtil.LECTURE, FilterOperator.EQUAL, lecture);
-
-    Query query = new Query(CommentUtil.KIND).setFilter(lectureFilter);
-    PreparedQuery pq = datastore.prepare(query);
 
     ImmutableList.Builder<Comment> commentsBuilder = new ImmutableList.Builder<>();
-    for (Entity entity : pq.asQueryResultIterable()) {
+    for (Entity entity : comments.getByLecture(lecture)) {
       commentsBuilder.add(CommentUtil.createComment(entity));
     }
-    ImmutableList<Comment> comments = commentsBuilder.build();
+    ImmutableList<Comment> lectureComments = commentsBuilder.build();
 
-    Gson gson = new Gson();
+    String commentsJson;
+    try (Span span = Tracer.startSpan("json.serialize")) {
+      Gson gson = new Gson();
+      commentsJson = gson.toJson(lectureComments);
+    }
     response.setContentType("application/json");
-    response.getWriter().println(gson.toJson(comments));
+    response.getWriter().println(commentsJson);
   }
 
   private Optional<String> validateGetRequest(HttpServletRequest request) {
@@ -0,0 +1,160 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.googleinterns.zoomtube.metrics.MeteredDatastoreService;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import com.googleinterns.zoomtube.utils.IconFeedbackUtil;
+import com.googleinterns.zoomtube.utils.LectureRecordUtil;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptChunkUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Optional;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Exports a lecture with its transcripts, comments and icon feedback as newline-delimited
+ * Json, one record per line, which {@link ImportLectureServlet} imports. The lecture comes
+ * first, then every transcript line, then comments and then icon feedback.
+ *
+ * <p>Each kind is read a page at a time, following query cursors, and each page is written
+ * out before the next is read. Lines stored in chunks are exported like any other line.
+ */
+public class ExportLectureServlet extends HttpServlet {
+  @VisibleForTesting static final String PARAM_ID = "id";
+  @VisibleForTesting static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+  @VisibleForTesting static final int PAGE_SIZE = 500;
+  /* Each chunk holds minutes of transcript, so fewer are read at a time. */
+  @VisibleForTesting static final int CHUNK_PAGE_SIZE = 20;
+
+  private static final String ERROR_MISSING_ID = "Missing id parameter.";
+  private static final String ERROR_LECTURE_NOT_FOUND = "Lecture not found in database.";
+
+  private DatastoreService datastore;
+
+  /** Writes the records of a page of entities. */
+  private interface PageWriter {
+    void write(QueryResultList<Entity> page) throws IOException;
+  }
+
+  @Override
+  public void init() throws ServletException {
+    datastore = MeteredDatastoreService.getDatastoreService();
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<String> error = validateGetRequest(request);
+    if (error.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, error.get());
+      return;
+    }
+
+    long lectureId = Long.parseLong(request.getParameter(PARAM_ID));
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, lectureId);
+    Entity lectureEntity;
+    try {
+      lectureEntity = datastore.get(lectureKey);
+    } catch (EntityNotFoundException e) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND, ERROR_LECTURE_NOT_FOUND);
+      return;
+    }
+
+    response.setContentType(MEDIA_TYPE_NDJSON);
+    response.setCharacterEncoding("UTF-8");
+    PrintWriter writer = response.getWriter();
+    Gson gson = new Gson();
+    writeRecord(writer, gson, LectureRecordUtil.createLectureRecord(lectureEntity));
+
+    Query chunkQuery = new Query(TranscriptChunkUtil.KIND).setAncestor(lectureKey);
+    forEachPage(chunkQuery, CHUNK_PAGE_SIZE, writer, page -> {
+      for (Entity chunkEntity : page) {
+        for (Entity lineEntity : TranscriptChunkUtil.createLineEntities(chunkEntity)) {
+          writeRecord(writer, gson, LectureRecordUtil.createTranscriptLineRecord(lineEntity));
+        }
+      }
+    });
+    Query lineQuery = new Query(TranscriptLineUtil.KIND).setAncestor(lectureKey);
+    forEachPage(lineQuery, PAGE_SIZE, writer, page -> {
+      for (Entity lineEntity : page) {
+        writeRecord(writer, gson, LectureRecordUtil.createTranscriptLineRecord(lineEntity));
+      }
+    });
+    Query commentQuery = new Query(CommentUtil.KIND).setFilter(
+        new FilterPredicate(CommentUtil.LECTURE, FilterOperator.EQUAL, lectureKey));
+    forEachPage(commentQuery, PAGE_SIZE, writer, page -> {
+      for (Entity commentEntity : page) {
+        writeRecord(writer, gson, LectureRecordUtil.createCommentRecord(commentEntity));
+      }
+    });
+    Query iconFeedbackQuery = new Query(IconFeedbackUtil.KIND).setAncestor(lectureKey);
+    forEachPage(iconFeedbackQuery, PAGE_SIZE, writer, page -> {
+      for (Entity iconFeedbackEntity : page) {
+        writeRecord(
+            writer, gson, LectureRecordUtil.createIconFeedbackRecord(iconFeedbackEntity));
+      }
+    });
+  }
+
+  private Optional<String> validateGetRequest(HttpServletRequest request) {
+    if (request.getParameter(PARAM_ID) == null) {
+      return Optional.of(ERROR_MISSING_ID);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Runs {@code query} a page of {@code pageSize} entities at a time, starting each page from
+   * the cursor of the last, and writes each page with {@code pageWriter} before reading the
+   * next.
+   */
+  private void forEachPage(Query query, int pageSize, PrintWriter writer, PageWriter pageWriter)
+      throws IOException {
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(pageSize);
+    while (true) {
+      QueryResultList<Entity> page = datastore.prepare(query).asQueryResultList(fetchOptions);
+      pageWriter.write(page);
+      writer.flush();
+      if (page.size() < pageSize) {
+        return;
+      }
+      fetchOptions.startCursor(page.getCursor());
+    }
+  }
+
+  private static void writeRecord(PrintWriter writer, Gson gson, JsonObject record) {
+    // Gson escapes any newline within a string, so each record stays on its own line.
+    writer.print(gson.toJson(record));
+    writer.print('\n');
+  }
+}
@@ -14,21 +14,15 @@
 
 package com.googleinterns.zoomtube.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
-import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
 import com.googleinterns.zoomtube.data.IconFeedback;
+import com.googleinterns.zoomtube.repository.IconFeedbackRepository;
+import com.googleinterns.zoomtube.repository.Repositories;
 import com.googleinterns.zoomtube.utils.IconFeedbackUtil;
 import com.googleinterns.zoomtube.utils.LectureUtil;
 import java.io.IOException;
@@ -51,11 +45,11 @@ public class IconFeedbackServlet extends HttpServlet {
   private static final String ERROR_MISSING_TIMESTAMP = "Missing timestamp parameter.";
   private static final String ERROR_MISSING_ICON_TYPE = "Missing icon type parameter.";
 
-  private DatastoreService datastore;
+  private IconFeedbackRepository iconFeedback;
 
   @Override
   public void init() throws ServletException {
-    datastore = DatastoreServiceFactory.getDatastoreService();
+    iconFeedback = Repositories.getRepositories().iconFeedback();
   }
 
   @Override
@@ -65,7 +59,7 @@ public class IconFeedbackServlet extends HttpServlet {
       response.sendError(HttpServletResponse.SC_BAD_REQUEST, postRequestError.get());
       return;
     }
-    datastore.put(createEntityFromRequest(request));
+    iconFeedback.put(createEntityFromRequest(request));
   }
 
   @Override
@@ -85,16 +79,9 @@ public class IconFeedbackServlet extends HttpServlet {
   /** Returns IconFeedback (associated with {@code lectureId}) from the database. */
   private List<IconFeedback> getIconFeedback(long lectureId) {
     Key lecture = KeyFactory.createKey(LectureUtil.KIND, lectureId);
-    Filter lectureFilter =
-        new FilterPredicate(IconFeedbackUtil.LECTURE, FilterOperator.EQUAL, lecture);
-
-    Query query = new Query(IconFeedbackUtil.KIND)
-                      .setFilter(lectureFilter)
-                      .addSort(IconFeedbackUtil.TIMESTAMP_MS, SortDirection.ASCENDING);
-    PreparedQuery pq = datastore.prepare(query);
     ImmutableList.Builder<IconFeedback> iconFeedbackListBuilder = new ImmutableList.Builder<>();
 
-    for (Entity iconFeedbackEntity : pq.asQueryResultIterable()) {
+    for (Entity iconFeedbackEntity : iconFeedback.getByLecture(lecture)) {
       iconFeedbackListBuilder.add(IconFeedbackUtil.createIconFeedback(iconFeedbackEntity));
     }
     ImmutableList<IconFeedback> iconFeedbackList = iconFeedbackListBuilder.build();
@@ -0,0 +1,271 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.googleinterns.zoomtube.data.ImportedLecture;
+import com.googleinterns.zoomtube.metrics.MeteredDatastoreService;
+import com.googleinterns.zoomtube.search.LectureNameIndex;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptParser;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import com.googleinterns.zoomtube.utils.LectureIdentity;
+import com.googleinterns.zoomtube.utils.LectureRecordUtil;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Imports a lecture exported by {@link ExportLectureServlet} as a new lecture, with its
+ * transcripts, comments and icon feedback.
+ *
+ * <p>The request body is read a record at a time, and entities are written in batches, so
+ * only a batch is held at once. Comments are given new ids, and the only thing kept for the
+ * whole import is which new id each comment was given, so replies can refer to it.
+ * Transcript lines keep their ids, which are reserved under the new lecture, so comments
+ * still refer to the lines they were on.
+ *
+ * <p>Lines are stored an entity per line. /migrate-transcripts moves them into chunks.
+ * Segments and search indexes aren't exported, so once the lines are imported they are built
+ * again from each transcript's lines.
+ *
+ * <p>The body is read as UTF-8, which is how {@link ExportLectureServlet} writes it.
+ */
+public class ImportLectureServlet extends HttpServlet {
+  /* Datastore puts at most 500 entities in one call. */
+  @VisibleForTesting static final int BATCH_SIZE = 500;
+
+  private static final String ERROR_MISSING_LECTURE = "The first record must be a lecture.";
+  private static final String ERROR_INVALID_LINK = "Invalid video link.";
+  private static final String ERROR_LECTURE_EXISTS = "A lecture already exists for this video.";
+  private static final String ERROR_INVALID_RECORD = "Invalid record on line %d: %s";
+  private static final String ERROR_PARTIAL_IMPORT =
+      " Lecture %d was partly imported and can be deleted.";
+
+  private DatastoreService datastore;
+  private TranscriptParser transcriptParser;
+
+  @Override
+  public void init() throws ServletException {
+    datastore = MeteredDatastoreService.getDatastoreService();
+    transcriptParser = TranscriptParser.getParser();
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // Without this, the container would read the body as ISO-8859-1.
+    request.setCharacterEncoding("UTF-8");
+    BufferedReader reader = request.getReader();
+    JsonObject lectureRecord;
+    try {
+      lectureRecord = readRecord(reader.readLine());
+    } catch (JsonParseException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          String.format(ERROR_INVALID_RECORD, /* lineNumber= */ 1, e.getMessage()));
+      return;
+    }
+    if (lectureRecord == null
+        || !LectureRecordUtil.getType(lectureRecord).equals(LectureRecordUtil.TYPE_LECTURE)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, ERROR_MISSING_LECTURE);
+      return;
+    }
+
+    Entity lectureEntity;
+    try {
+      lectureEntity = LectureRecordUtil.createLectureEntity(lectureRecord);
+    } catch (JsonParseException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          String.format(ERROR_INVALID_RECORD, /* lineNumber= */ 1, e.getMessage()));
+      return;
+    }
+    String videoId = (String) lectureEntity.getProperty(LectureUtil.VIDEO_ID);
+    if (!videoId.equals(
+            LectureServlet.getVideoId((String) lectureEntity.getProperty(LectureUtil.VIDEO_URL))
+                .orElse(null))) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, ERROR_INVALID_LINK);
+      return;
+    }
+    Entity existingEntity = new LectureIdentity(datastore)
+                                .putIfAbsent(Collections.singletonList(lectureEntity))
+                                .get(videoId);
+    if (existingEntity != null) {
+      response.sendError(HttpServletResponse.SC_CONFLICT, ERROR_LECTURE_EXISTS);
+      return;
+    }
+    Key lectureKey = lectureEntity.getKey();
+    LectureListServlet.invalidateLecturePages();
+    LectureNameIndex.getIndex().addLecture(
+        lectureKey.getId(), (String) lectureEntity.getProperty(LectureUtil.NAME));
+
+    RecordImport recordImport = new RecordImport(lectureKey);
+    int lineNumber = 1;
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        JsonObject record = readRecord(line);
+        if (record != null) {
+          recordImport.add(record);
+        }
+      }
+    } catch (JsonParseException e) {
+      recordImport.flush();
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          String.format(ERROR_INVALID_RECORD, lineNumber, e.getMessage())
+              + String.format(ERROR_PARTIAL_IMPORT, lectureKey.getId()));
+      return;
+    }
+    recordImport.flush();
+    recordImport.reserveTranscriptLineIds();
+    transcriptParser.putSegmentsAndIndex(lectureKey,
+        Optional.ofNullable((String) lectureEntity.getProperty(LectureUtil.TRANSCRIPT_LANGUAGE)));
+
+    response.setContentType("application/json");
+    Gson gson = new Gson();
+    response.getWriter().println(gson.toJson(recordImport.toImportedLecture()));
+  }
+
+  /**
+   * Returns the record on {@code line}, or {@code null} if the line is blank or there are no
+   * more lines.
+   *
+   * @throws JsonParseException if the line isn't a Json object with a type.
+   */
+  private static JsonObject readRecord(String line) {
+    if (line == null || line.trim().isEmpty()) {
+      return null;
+    }
+    try {
+      JsonObject record = new JsonParser().parse(line).getAsJsonObject();
+      LectureRecordUtil.getType(record);
+      return record;
+    } catch (IllegalStateException e) {
+      throw new JsonParseException("Not a Json object.", e);
+    }
+  }
+
+  /** Creates the entities of the records of a lecture, and puts them in batches. */
+  private final class RecordImport {
+    private final Key lectureKey;
+    private final List<Entity> batch = new ArrayList<>();
+    /* The new key of each comment by its exported id. */
+    private final Map<Long, Key> commentKeys = new HashMap<>();
+    private Iterator<Key> allocatedCommentKeys = Collections.emptyIterator();
+    private long minTranscriptLineId = Long.MAX_VALUE;
+    private long maxTranscriptLineId = Long.MIN_VALUE;
+    private int transcriptLineCount;
+    private int commentCount;
+    private int iconFeedbackCount;
+
+    RecordImport(Key lectureKey) {
+      this.lectureKey = lectureKey;
+    }
+
+    /**
+     * Adds the entity of {@code record}, putting a batch if it is full.
+     *
+     * @throws JsonParseException if the record is invalid.
+     */
+    void add(JsonObject record) {
+      String type = LectureRecordUtil.getType(record);
+      switch (type) {
+        case LectureRecordUtil.TYPE_TRANSCRIPT_LINE:
+          Entity lineEntity = LectureRecordUtil.createTranscriptLineEntity(record, lectureKey);
+          batch.add(lineEntity);
+          minTranscriptLineId = Math.min(minTranscriptLineId, lineEntity.getKey().getId());
+          maxTranscriptLineId = Math.max(maxTranscriptLineId, lineEntity.getKey().getId());
+          transcriptLineCount++;
+          break;
+        case LectureRecordUtil.TYPE_COMMENT:
+          batch.add(createCommentEntity(record));
+          commentCount++;
+          break;
+        case LectureRecordUtil.TYPE_ICON_FEEDBACK:
+          batch.add(LectureRecordUtil.createIconFeedbackEntity(record, lectureKey));
+          iconFeedbackCount++;
+          break;
+        default:
+          throw new JsonParseException("Unexpected type " + type + ".");
+      }
+      if (batch.size() == BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    /**
+     * Creates the entity of a comment {@code record}. A reply may come before the comment it
+     * replies to, so that comment's new key is allocated when either is first seen.
+     */
+    private Entity createCommentEntity(JsonObject record) {
+      Optional<Long> parentId = LectureRecordUtil.getCommentParentId(record);
+      Optional<Key> parentKey =
+          parentId.map(id -> commentKeys.computeIfAbsent(id, unused -> allocateCommentKey()));
+      Key commentKey = commentKeys.computeIfAbsent(
+          LectureRecordUtil.getId(record), unused -> allocateCommentKey());
+      return LectureRecordUtil.createCommentEntity(record, commentKey, lectureKey, parentKey);
+    }
+
+    /** Returns a new comment key, allocating a batch of them at a time. */
+    private Key allocateCommentKey() {
+      if (!allocatedCommentKeys.hasNext()) {
+        allocatedCommentKeys = datastore.allocateIds(CommentUtil.KIND, BATCH_SIZE).iterator();
+      }
+      return allocatedCommentKeys.next();
+    }
+
+    /** Puts the entities that haven't been put yet. */
+    void flush() {
+      if (!batch.isEmpty()) {
+        datastore.put(batch);
+        batch.clear();
+      }
+    }
+
+    /**
+     * Keeps the ids of the imported transcript lines from being allocated to lines that are
+     * added to the lecture later.
+     */
+    void reserveTranscriptLineIds() {
+      if (transcriptLineCount > 0) {
+        datastore.allocateIdRange(new KeyRange(
+            lectureKey, TranscriptLineUtil.KIND, minTranscriptLineId, maxTranscriptLineId));
+      }
+    }
+
+    ImportedLecture toImportedLecture() {
+      return ImportedLecture.create(
+          lectureKey.getId(), transcriptLineCount, commentCount, iconFeedbackCount);
+    }
+  }
+}
@@ -0,0 +1,229 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharStreams;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.googleinterns.zoomtube.data.LectureImportResult;
+import com.googleinterns.zoomtube.data.LectureImportResult.Status;
+import com.googleinterns.zoomtube.repository.LectureRepository;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.search.LectureNameIndex;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptParser;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptParser.PendingTranscripts;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Imports several lectures at once, such as every lecture of a course.
+ *
+ * <p>The request body is a Json array of objects with a {@code name}, a {@code videoUrl} and
+ * optionally the {@code language} of the transcript. A lecture whose video already has one
+ * isn't created again. The transcripts of the new lectures are fetched in parallel, and the
+ * response has the outcome of each lecture in the order they were given.
+ */
+public class ImportLecturesServlet extends HttpServlet {
+  @VisibleForTesting static final String FIELD_NAME = "name";
+  @VisibleForTesting static final String FIELD_VIDEO_URL = "videoUrl";
+  @VisibleForTesting static final String FIELD_LANGUAGE = "language";
+  /* Keeps an import well within the request deadline. */
+  @VisibleForTesting static final int MAX_LECTURES = 100;
+
+  private static final String ERROR_INVALID_BODY =
+      "Request body must be a Json array of lectures.";
+  private static final String ERROR_TOO_MANY_LECTURES =
+      "At most " + MAX_LECTURES + " lectures can be imported at once.";
+  private static final String ERROR_MISSING_FIELDS =
+      "Each lecture needs a name and a videoUrl.";
+  private static final String ERROR_INVALID_LINK = "Invalid video link.";
+  private static final String ERROR_TRANSCRIPT_NOT_FETCHED = "Couldn't fetch the transcript: ";
+
+  private LectureRepository lectures;
+  private TranscriptParser transcriptParser;
+
+  @Override
+  public void init() throws ServletException {
+    lectures = Repositories.getRepositories().lectures();
+    transcriptParser = TranscriptParser.getParser();
+  }
+
+  @VisibleForTesting
+  void setTranscriptParser(TranscriptParser transcriptParser) {
+    this.transcriptParser = transcriptParser;
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    JsonArray lectureArray;
+    try {
+      JsonElement body = new JsonParser().parse(CharStreams.toString(request.getReader()));
+      lectureArray = body.isJsonArray() ? body.getAsJsonArray() : null;
+    } catch (JsonParseException e) {
+      lectureArray = null;
+    }
+    Optional<String> error = validateLectures(lectureArray);
+    if (error.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, error.get());
+      return;
+    }
+
+    List<JsonObject> lectureObjects = new ArrayList<>();
+    for (JsonElement lecture : lectureArray) {
+      lectureObjects.add(lecture.getAsJsonObject());
+    }
+
+    // Creates the lectures that don't exist yet, once for each video.
+    Map<String, JsonObject> lectureObjectsByVideo = new LinkedHashMap<>();
+    for (JsonObject lectureObject : lectureObjects) {
+      LectureServlet.getVideoId(getString(lectureObject, FIELD_VIDEO_URL))
+          .ifPresent(videoId -> lectureObjectsByVideo.putIfAbsent(videoId, lectureObject));
+    }
+    Iterator<Key> lectureKeys = lectures.allocateKeys(lectureObjectsByVideo.size()).iterator();
+    Map<String, Entity> createdLectures = new LinkedHashMap<>();
+    for (Map.Entry<String, JsonObject> lectureObject : lectureObjectsByVideo.entrySet()) {
+      Entity lectureEntity = new Entity(lectureKeys.next());
+      lectureEntity.setPropertiesFrom(
+          LectureUtil.createEntity(getString(lectureObject.getValue(), FIELD_NAME),
+              getString(lectureObject.getValue(), FIELD_VIDEO_URL), lectureObject.getKey()));
+      String language = getString(lectureObject.getValue(), FIELD_LANGUAGE);
+      if (!language.isEmpty()) {
+        lectureEntity.setProperty(LectureUtil.TRANSCRIPT_LANGUAGE, language);
+      }
+      createdLectures.put(lectureObject.getKey(), lectureEntity);
+    }
+    Map<String, Entity> existingLectures =
+        lectures.putAllIfAbsent(new ArrayList<>(createdLectures.values()));
+    createdLectures.keySet().removeAll(existingLectures.keySet());
+    if (!createdLectures.isEmpty()) {
+      LectureListServlet.invalidateLecturePages();
+    }
+    for (Entity lectureEntity : createdLectures.values()) {
+      LectureNameIndex.getIndex().addLecture(
+          lectureEntity.getKey().getId(), (String) lectureEntity.getProperty(LectureUtil.NAME));
+    }
+
+    // Every fetch is started before any transcript is stored, so they overlap.
+    Map<String, PendingTranscripts> pendingTranscripts = new HashMap<>();
+    for (Map.Entry<String, Entity> createdLecture : createdLectures.entrySet()) {
+      String language =
+          (String) createdLecture.getValue().getProperty(LectureUtil.TRANSCRIPT_LANGUAGE);
+      if (language != null) {
+        pendingTranscripts.put(createdLecture.getKey(),
+            transcriptParser.fetchTranscripts(createdLecture.getKey(),
+                createdLecture.getValue().getKey(), ImmutableList.of(language)));
+      }
+    }
+
+    List<LectureImportResult> results = new ArrayList<>();
+    Set<String> reportedVideoIds = new HashSet<>();
+    for (JsonObject lectureObject : lectureObjects) {
+      String videoUrl = getString(lectureObject, FIELD_VIDEO_URL);
+      Optional<String> videoId = LectureServlet.getVideoId(videoUrl);
+      if (!videoId.isPresent()) {
+        results.add(LectureImportResult.create(videoUrl, Status.INVALID_LINK,
+            /* lectureId= */ 0, ImmutableList.of(), ERROR_INVALID_LINK));
+      } else if (!reportedVideoIds.add(videoId.get())
+          || existingLectures.containsKey(videoId.get())) {
+        Entity lectureEntity =
+            existingLectures.getOrDefault(videoId.get(), createdLectures.get(videoId.get()));
+        results.add(LectureImportResult.create(videoUrl, Status.EXISTING,
+            lectureEntity.getKey().getId(), ImmutableList.of(), /* error= */ ""));
+      } else {
+        results.add(storeTranscripts(videoUrl, createdLectures.get(videoId.get()),
+            Optional.ofNullable(pendingTranscripts.get(videoId.get()))));
+      }
+    }
+    writeResults(response, results);
+  }
+
+  private static Optional<String> validateLectures(JsonArray lectures) {
+    if (lectures == null) {
+      return Optional.of(ERROR_INVALID_BODY);
+    }
+    if (lectures.size() > MAX_LECTURES) {
+      return Optional.of(ERROR_TOO_MANY_LECTURES);
+    }
+    for (JsonElement lecture : lectures) {
+      if (!lecture.isJsonObject()) {
+        return Optional.of(ERROR_INVALID_BODY);
+      }
+      JsonObject lectureObject = lecture.getAsJsonObject();
+      if (getString(lectureObject, FIELD_NAME).isEmpty()
+          || getString(lectureObject, FIELD_VIDEO_URL).isEmpty()) {
+        return Optional.of(ERROR_MISSING_FIELDS);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /** Returns the string {@code field} of {@code object}, or an empty string if it has none. */
+  private static String getString(JsonObject object, String field) {
+    JsonElement value = object.get(field);
+    return value != null && value.isJsonPrimitive() ? value.getAsString() : "";
+  }
+
+  /**
+   * Stores the transcripts of the newly created {@code lectureEntity}, if any are being
+   * fetched, once they arrive, and returns the result of importing it.
+   */
+  private LectureImportResult storeTranscripts(
+      String videoUrl, Entity lectureEntity, Optional<PendingTranscripts> pending) {
+    long lectureId = lectureEntity.getKey().getId();
+    if (!pending.isPresent()) {
+      return LectureImportResult.create(
+          videoUrl, Status.CREATED, lectureId, ImmutableList.of(), /* error= */ "");
+    }
+    try {
+      return LectureImportResult.create(videoUrl, Status.CREATED, lectureId,
+          transcriptParser.storeTranscripts(pending.get()), /* error= */ "");
+    } catch (IOException e) {
+      // The lecture is still created without a transcript, like one added on its own.
+      return LectureImportResult.create(videoUrl, Status.CREATED, lectureId,
+          ImmutableList.of(), ERROR_TRANSCRIPT_NOT_FETCHED + e.getMessage());
+    }
+  }
+
+  /**
+   * Writes {@code results} as Json to {@code response}.
+   */
+  private void writeResults(HttpServletResponse response, List<LectureImportResult> results)
+      throws IOException {
+    response.setContentType("application/json");
+    Gson gson = new Gson();
+    response.getWriter().println(gson.toJson(results));
+  }
+}
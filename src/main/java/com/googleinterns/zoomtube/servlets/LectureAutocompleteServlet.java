@@ -0,0 +1,97 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.googleinterns.zoomtube.data.LectureSummary;
+import com.googleinterns.zoomtube.metrics.MeteredDatastoreService;
+import com.googleinterns.zoomtube.search.LectureNameIndex;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Completes what is typed in the lecture list with the names of matching lectures. */
+public class LectureAutocompleteServlet extends HttpServlet {
+  @VisibleForTesting static final String PARAM_QUERY = "query";
+  @VisibleForTesting static final String PARAM_LIMIT = "limit";
+  @VisibleForTesting static final int DEFAULT_LIMIT = 10;
+  @VisibleForTesting static final int MAX_LIMIT = 50;
+
+  private static final String ERROR_MISSING_QUERY = "Missing query parameter.";
+  private static final String ERROR_INVALID_LIMIT = "Invalid limit parameter.";
+
+  private DatastoreService datastore;
+  private LectureNameIndex nameIndex;
+
+  @Override
+  public void init() throws ServletException {
+    datastore = MeteredDatastoreService.getDatastoreService();
+    nameIndex = LectureNameIndex.getIndex();
+  }
+
+  @VisibleForTesting
+  void setNameIndex(LectureNameIndex nameIndex) {
+    this.nameIndex = nameIndex;
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<String> error = validateGetRequest(request);
+    if (error.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, error.get());
+      return;
+    }
+
+    int limit = DEFAULT_LIMIT;
+    if (request.getParameter(PARAM_LIMIT) != null) {
+      limit = Math.min(MAX_LIMIT, Integer.parseInt(request.getParameter(PARAM_LIMIT)));
+    }
+    nameIndex.ensureLoaded(datastore);
+    ImmutableList.Builder<LectureSummary> lectures = ImmutableList.builder();
+    for (LectureNameIndex.Completion completion :
+        nameIndex.complete(request.getParameter(PARAM_QUERY), limit)) {
+      lectures.add(LectureSummary.create(
+          KeyFactory.createKey(LectureUtil.KIND, completion.lectureId), completion.lectureName));
+    }
+    writeLectures(response, lectures.build());
+  }
+
+  private Optional<String> validateGetRequest(HttpServletRequest request) {
+    if (request.getParameter(PARAM_QUERY) == null) {
+      return Optional.of(ERROR_MISSING_QUERY);
+    }
+    String limit = request.getParameter(PARAM_LIMIT);
+    if (limit != null && !limit.matches("[1-9][0-9]{0,8}")) {
+      return Optional.of(ERROR_INVALID_LIMIT);
+    }
+    return Optional.empty();
+  }
+
+  private void writeLectures(HttpServletResponse response, List<LectureSummary> lectures)
+      throws IOException {
+    Gson gson = new Gson();
+    response.setContentType("application/json");
+    response.getWriter().println(gson.toJson(lectures));
+  }
+}
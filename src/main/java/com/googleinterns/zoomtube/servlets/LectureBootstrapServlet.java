@@ -0,0 +1,397 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.users.User;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.googleinterns.zoomtube.data.AuthenticationStatus;
+import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.data.IconFeedback;
+import com.googleinterns.zoomtube.data.TranscriptColumns;
+import com.googleinterns.zoomtube.data.TranscriptLine;
+import com.googleinterns.zoomtube.metrics.MeteredAsyncDatastoreService;
+import com.googleinterns.zoomtube.repository.DatastoreTranscriptLineRepository;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.tracing.Span;
+import com.googleinterns.zoomtube.tracing.Tracer;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import com.googleinterns.zoomtube.utils.IconFeedbackUtil;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.googleinterns.zoomtube.utils.TranscriptSegmentUtil;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Provides everything the lecture view needs to first render in a single response, instead
+ * of a request each to {@code /lecture}, {@code /transcript}, {@code /discussion},
+ * {@code /icon-feedback} and {@code /auth}.
+ *
+ * <p>The {@code include} parameter lists the sections to return, separated by commas. It
+ * defaults to every section but {@code iconFeedback}. Every datastore read is started, with
+ * the asynchronous datastore API, before any of them is waited for. When the repositories are
+ * held in memory, they are read through instead.
+ *
+ * <p>The transcript is made of its segments as {@link TranscriptColumns}, like
+ * {@code /transcript?granularity=segments&format=columns}. A transcript that isn't stored yet
+ * is left out rather than fetched, so the page can request it from {@code /transcript}.
+ */
+public class LectureBootstrapServlet extends HttpServlet {
+  @VisibleForTesting static final String PARAM_ID = "id";
+  @VisibleForTesting static final String PARAM_INCLUDE = "include";
+  @VisibleForTesting static final String PARAM_LANGUAGE = "lang";
+  @VisibleForTesting static final String SECTION_LECTURE = "lecture";
+  @VisibleForTesting static final String SECTION_TRANSCRIPT = "transcript";
+  @VisibleForTesting static final String SECTION_DISCUSSION = "discussion";
+  @VisibleForTesting static final String SECTION_ICON_FEEDBACK = "iconFeedback";
+  @VisibleForTesting static final String SECTION_AUTH = "auth";
+  private static final ImmutableSet<String> SECTIONS = ImmutableSet.of(SECTION_LECTURE,
+      SECTION_TRANSCRIPT, SECTION_DISCUSSION, SECTION_ICON_FEEDBACK, SECTION_AUTH);
+  private static final ImmutableSet<String> DEFAULT_SECTIONS =
+      ImmutableSet.of(SECTION_LECTURE, SECTION_TRANSCRIPT, SECTION_DISCUSSION, SECTION_AUTH);
+  /* Reads most discussions in a single round trip, rather than in batches of 20. */
+  private static final FetchOptions FETCH_OPTIONS =
+      FetchOptions.Builder.withPrefetchSize(500).chunkSize(500);
+  private static final String REDIRECT_URL = "/";
+
+  private static final String ERROR_MISSING_ID = "Missing id parameter.";
+  private static final String ERROR_INVALID_INCLUDE = "Invalid include parameter.";
+  private static final String ERROR_LECTURE_NOT_FOUND = "Lecture not found in database.";
+
+  private AsyncDatastoreService datastore;
+  private Repositories repositories;
+  private UserService userService;
+
+  @Override
+  public void init() throws ServletException {
+    datastore = MeteredAsyncDatastoreService.getAsyncDatastoreService();
+    repositories = Repositories.getRepositories();
+    userService = UserServiceFactory.getUserService();
+  }
+
+  @VisibleForTesting
+  void setRepositories(Repositories repositories) {
+    this.repositories = repositories;
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<String> error = validateGetRequest(request);
+    if (error.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, error.get());
+      return;
+    }
+
+    Key lectureKey =
+        KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(request.getParameter(PARAM_ID)));
+    Set<String> sections = getSections(request);
+    Optional<String> language = Optional.ofNullable(request.getParameter(PARAM_LANGUAGE))
+                                    .filter(languageCode -> !languageCode.isEmpty());
+
+    // Every read that doesn't depend on the lecture is started before it arrives.
+    Future<Entity> lectureEntity = startLectureRead(lectureKey);
+    Optional<TranscriptReads> transcriptReads = Optional.empty();
+    if (sections.contains(SECTION_TRANSCRIPT) && language.isPresent()) {
+      transcriptReads = Optional.of(startTranscriptReads(lectureKey, language));
+    }
+    Optional<List<Entity>> commentEntities = Optional.empty();
+    if (sections.contains(SECTION_DISCUSSION)) {
+      commentEntities = Optional.of(startCommentsRead(lectureKey));
+    }
+    Optional<List<Entity>> iconFeedbackEntities = Optional.empty();
+    if (sections.contains(SECTION_ICON_FEEDBACK)) {
+      iconFeedbackEntities = Optional.of(startIconFeedbackRead(lectureKey));
+    }
+
+    JsonObject bootstrap = new JsonObject();
+    Gson gson = new Gson();
+    Optional<Entity> lecture = await(lectureEntity);
+    if (!lecture.isPresent()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND, ERROR_LECTURE_NOT_FOUND);
+      return;
+    }
+    if (sections.contains(SECTION_LECTURE)) {
+      bootstrap.add(SECTION_LECTURE, gson.toJsonTree(LectureUtil.createLecture(lecture.get())));
+    }
+    if (sections.contains(SECTION_TRANSCRIPT)) {
+      if (!transcriptReads.isPresent()) {
+        language = Optional.ofNullable(
+            (String) lecture.get().getProperty(LectureUtil.TRANSCRIPT_LANGUAGE));
+        transcriptReads = Optional.of(startTranscriptReads(lectureKey, language));
+      }
+      Optional<TranscriptColumns> transcript = readTranscript(transcriptReads.get());
+      if (transcript.isPresent()) {
+        bootstrap.add(SECTION_TRANSCRIPT, gson.toJsonTree(transcript.get()));
+      }
+    }
+    if (commentEntities.isPresent()) {
+      ImmutableList.Builder<Comment> comments = ImmutableList.builder();
+      for (Entity commentEntity : commentEntities.get()) {
+        comments.add(CommentUtil.createComment(commentEntity));
+      }
+      bootstrap.add(SECTION_DISCUSSION, gson.toJsonTree(comments.build()));
+    }
+    if (iconFeedbackEntities.isPresent()) {
+      ImmutableList.Builder<IconFeedback> iconFeedback = ImmutableList.builder();
+      for (Entity iconFeedbackEntity : iconFeedbackEntities.get()) {
+        iconFeedback.add(IconFeedbackUtil.createIconFeedback(iconFeedbackEntity));
+      }
+      bootstrap.add(SECTION_ICON_FEEDBACK, gson.toJsonTree(iconFeedback.build()));
+    }
+    if (sections.contains(SECTION_AUTH)) {
+      bootstrap.add(SECTION_AUTH, gson.toJsonTree(getAuthenticationStatus()));
+    }
+
+    String bootstrapJson;
+    try (Span span = Tracer.startSpan("json.serialize")) {
+      bootstrapJson = gson.toJson(bootstrap);
+    }
+    response.setContentType("application/json");
+    response.getWriter().println(bootstrapJson);
+  }
+
+  private Optional<String> validateGetRequest(HttpServletRequest request) {
+    if (request.getParameter(PARAM_ID) == null) {
+      return Optional.of(ERROR_MISSING_ID);
+    }
+    if (!SECTIONS.containsAll(getSections(request))) {
+      return Optional.of(ERROR_INVALID_INCLUDE);
+    }
+    return Optional.empty();
+  }
+
+  private static Set<String> getSections(HttpServletRequest request) {
+    String include = request.getParameter(PARAM_INCLUDE);
+    if (include == null) {
+      return DEFAULT_SECTIONS;
+    }
+    return ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(include));
+  }
+
+  /**
+   * Starts reading the transcript in {@code language}, if it is present, of the lecture with
+   * {@code lectureKey}. Its segments and chunks are read at once, since which of them it is
+   * stored as isn't known.
+   */
+  private TranscriptReads startTranscriptReads(Key lectureKey, Optional<String> language) {
+    if (!language.isPresent()) {
+      return new TranscriptReads(lectureKey, language, Optional.empty(), Optional.empty());
+    }
+    return new TranscriptReads(lectureKey, language,
+        Optional.of(startSegmentsRead(lectureKey, language.get())),
+        Optional.of(startChunksRead(lectureKey, language.get())));
+  }
+
+  /**
+   * Returns the transcript started by {@code reads}, from the first of its segments, its
+   * chunks or its lines that is stored.
+   */
+  private Optional<TranscriptColumns> readTranscript(TranscriptReads reads) throws IOException {
+    if (reads.segmentsEntity.isPresent()) {
+      Optional<Entity> segmentsEntity = await(reads.segmentsEntity.get());
+      List<Entity> shardEntities = segmentsEntity.isPresent()
+          ? readSegmentShards(reads, segmentsEntity.get())
+          : ImmutableList.of();
+      if (!shardEntities.isEmpty()) {
+        TranscriptColumns.Builder columnsBuilder = TranscriptColumns.builder();
+        TranscriptSegmentUtil.createTranscriptSegments(shardEntities)
+            .forEach(columnsBuilder::addSegment);
+        return Optional.of(columnsBuilder.build());
+      }
+    }
+    if (reads.chunkEntities.isPresent() && !reads.chunkEntities.get().isEmpty()) {
+      return Optional.of(TranscriptServlet.createTranscriptColumns(
+          DatastoreTranscriptLineRepository.sortChunks(reads.chunkEntities.get())));
+    }
+    // Transcripts stored before chunks are only read once the others turn out to be missing.
+    List<Entity> lineEntities = startLinesRead(reads.lectureKey, reads.language);
+    if (lineEntities.isEmpty()) {
+      return Optional.empty();
+    }
+    TranscriptColumns.Builder columnsBuilder = TranscriptColumns.builder();
+    for (Entity lineEntity : lineEntities) {
+      TranscriptLine transcriptLine = TranscriptLineUtil.createTranscriptLine(lineEntity);
+      columnsBuilder.addLine(transcriptLine);
+    }
+    return Optional.of(columnsBuilder.build());
+  }
+
+  /**
+   * Returns every shard of the segments that start with {@code firstShardEntity}, in the
+   * order they are shown, or an empty list if any of them is missing. Only a long
+   * transcript's segments have more than the first shard.
+   */
+  private List<Entity> readSegmentShards(TranscriptReads reads, Entity firstShardEntity)
+      throws IOException {
+    List<Key> otherShardKeys = TranscriptSegmentUtil.getOtherShardKeys(firstShardEntity);
+    if (otherShardKeys.isEmpty()) {
+      return ImmutableList.of(firstShardEntity);
+    }
+    if (repositories.isInMemory()) {
+      return repositories.transcriptLines().getSegments(reads.lectureKey, reads.language.get());
+    }
+    try {
+      return TranscriptSegmentUtil.getShards(
+          firstShardEntity, datastore.get(otherShardKeys).get());
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+  }
+
+  private Future<Entity> startLectureRead(Key lectureKey) {
+    if (repositories.isInMemory()) {
+      return completed(lectureKey, repositories.lectures().get(lectureKey.getId()));
+    }
+    return datastore.get(lectureKey);
+  }
+
+  private List<Entity> startCommentsRead(Key lectureKey) {
+    if (repositories.isInMemory()) {
+      return repositories.comments().getByLecture(lectureKey);
+    }
+    return startQuery(new Query(CommentUtil.KIND).setFilter(
+        new FilterPredicate(CommentUtil.LECTURE, FilterOperator.EQUAL, lectureKey)));
+  }
+
+  private List<Entity> startIconFeedbackRead(Key lectureKey) {
+    if (repositories.isInMemory()) {
+      return repositories.iconFeedback().getByLecture(lectureKey);
+    }
+    return startQuery(
+        new Query(IconFeedbackUtil.KIND)
+            .setFilter(
+                new FilterPredicate(IconFeedbackUtil.LECTURE, FilterOperator.EQUAL, lectureKey))
+            .addSort(IconFeedbackUtil.TIMESTAMP_MS, SortDirection.ASCENDING));
+  }
+
+  private Future<Entity> startSegmentsRead(Key lectureKey, String language) {
+    Key segmentsKey = TranscriptSegmentUtil.createKey(lectureKey, language);
+    if (repositories.isInMemory()) {
+      return completed(segmentsKey,
+          repositories.transcriptLines().getSegments(lectureKey, language).stream().findFirst());
+    }
+    return datastore.get(segmentsKey);
+  }
+
+  private List<Entity> startChunksRead(Key lectureKey, String language) {
+    if (repositories.isInMemory()) {
+      return repositories.transcriptLines().getChunks(lectureKey, language);
+    }
+    return startQuery(DatastoreTranscriptLineRepository.createChunksQuery(lectureKey, language));
+  }
+
+  private List<Entity> startLinesRead(Key lectureKey, Optional<String> language) {
+    if (repositories.isInMemory()) {
+      return repositories.transcriptLines().getLines(lectureKey, language);
+    }
+    List<Entity> lineEntities =
+        startQuery(DatastoreTranscriptLineRepository.createLinesQuery(lectureKey, language));
+    // Without a language, only the lines stored before transcripts had languages are shown.
+    return language.isPresent()
+        ? lineEntities
+        : DatastoreTranscriptLineRepository.getUnlabeledLines(lineEntities);
+  }
+
+  /**
+   * Returns {@code entity}, already read from memory, as a read that is done. It fails like
+   * a datastore read if there's no entity with {@code key}.
+   */
+  private static Future<Entity> completed(Key key, Optional<Entity> entity) {
+    if (entity.isPresent()) {
+      return Futures.immediateFuture(entity.get());
+    }
+    return Futures.immediateFailedFuture(new EntityNotFoundException(key));
+  }
+
+  /**
+   * Starts running {@code query}. The returned list waits for the results when it is first
+   * read.
+   */
+  private List<Entity> startQuery(Query query) {
+    return datastore.prepare(query).asList(FETCH_OPTIONS);
+  }
+
+  private AuthenticationStatus getAuthenticationStatus() {
+    User user = userService.getCurrentUser();
+    if (user == null) {
+      return AuthenticationStatus.loggedOut(userService.createLoginURL(REDIRECT_URL));
+    }
+    return AuthenticationStatus.loggedIn(user, userService.createLogoutURL(REDIRECT_URL));
+  }
+
+  /**
+   * Waits for {@code entity}, returning {@code Optional.empty()} if it doesn't exist.
+   *
+   * @throws IOException if the entity couldn't be read.
+   */
+  private static Optional<Entity> await(Future<Entity> entity) throws IOException {
+    try {
+      return Optional.of(entity.get());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof EntityNotFoundException) {
+        return Optional.empty();
+      }
+      throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+  }
+
+  /** The reads of a transcript that are in progress. */
+  private static final class TranscriptReads {
+    final Key lectureKey;
+    final Optional<String> language;
+    final Optional<Future<Entity>> segmentsEntity;
+    final Optional<List<Entity>> chunkEntities;
+
+    TranscriptReads(Key lectureKey, Optional<String> language,
+        Optional<Future<Entity>> segmentsEntity, Optional<List<Entity>> chunkEntities) {
+      this.lectureKey = lectureKey;
+      this.language = language;
+      this.segmentsEntity = segmentsEntity;
+      this.chunkEntities = chunkEntities;
+    }
+  }
+}
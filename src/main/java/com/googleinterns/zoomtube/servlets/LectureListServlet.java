@@ -12,50 +12,155 @@
 // See the License for the specific language governing permissions and
 // limitations under the License.
 
+
 package com.googleinterns.zoomtube.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.Gson;
-import com.googleinterns.zoomtube.data.Lecture;
+import com.googleinterns.zoomtube.cache.RefreshingCache;
+import com.googleinterns.zoomtube.data.LecturePage;
+import com.googleinterns.zoomtube.filters.PrecompressedBody;
+import com.googleinterns.zoomtube.repository.LectureRepository;
+import com.googleinterns.zoomtube.repository.Repositories;
 import com.googleinterns.zoomtube.utils.LectureUtil;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import javax.servlet.ServletException;
+import java.time.Duration;
+import java.util.Optional;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Obtains list of available Lectures stored in Datastore. */
+/**
+ * Lists the lectures a page at a time, sorted by name or newest first. When sorted by name,
+ * the list can be limited to the lectures whose name starts with a prefix, ignoring case.
+ *
+ * <p>Only the name of each lecture is read. First pages are cached until a lecture is added,
+ * since they're what the lecture list shows when it opens. They're cached already
+ * compressed, so they aren't compressed again for every request.
+ */
 public class LectureListServlet extends HttpServlet {
-  private DatastoreService datastore;
+  @VisibleForTesting static final String PARAM_SORT = "sort";
+  @VisibleForTesting static final String PARAM_PREFIX = "prefix";
+  @VisibleForTesting static final String PARAM_LIMIT = "limit";
+  @VisibleForTesting static final String PARAM_CURSOR = "cursor";
+  @VisibleForTesting static final String SORT_NAME = "name";
+  @VisibleForTesting static final String SORT_CREATED = "created";
+  @VisibleForTesting static final int DEFAULT_LIMIT = 50;
+  @VisibleForTesting static final int MAX_LIMIT = 200;
 
-  @Override
-  public void init() throws ServletException {
-    datastore = DatastoreServiceFactory.getDatastoreService();
+  @VisibleForTesting static final String CACHE_NAME = "lecture-pages";
+  /* Other instances only see a new lecture once their first pages expire. */
+  private static final Duration CACHE_TIME_TO_LIVE = Duration.ofMinutes(1);
+  /* There's a first page for each prefix that has been typed. */
+  private static final int CACHE_MAXIMUM_SIZE = 1000;
+
+  private static final String ERROR_INVALID_SORT = "Invalid sort parameter.";
+  private static final String ERROR_INVALID_LIMIT = "Invalid limit parameter.";
+  private static final String ERROR_INVALID_CURSOR = "Invalid cursor parameter.";
+  private static final String ERROR_PREFIX_NOT_SORTED_BY_NAME =
+      "A prefix can only be used when sorting by name.";
+
+  /* Shared by every instance of the servlet, so that adding a lecture invalidates it. */
+  private static final RefreshingCache<PageQuery, PrecompressedBody> firstPageCache =
+      RefreshingCache.builder(CACHE_NAME, LectureListServlet::createFirstPageBody)
+          .setTimeToLive(CACHE_TIME_TO_LIVE)
+          .setMaximumSize(CACHE_MAXIMUM_SIZE)
+          .build();
+
+  /** The parameters of a request for a page of lectures. */
+  @AutoValue
+  abstract static class PageQuery {
+    abstract String sort();
+    /* The prefix in lower case, or an empty string to list every lecture. */
+    abstract String prefix();
+    abstract int limit();
+    /* The cursor of the page, or an empty string for the first page. */
+    abstract String cursor();
+
+    static PageQuery create(String sort, String prefix, int limit, String cursor) {
+      return new AutoValue_LectureListServlet_PageQuery(sort, prefix, limit, cursor);
+    }
+  }
+
+  /** Removes the cached first pages, such as after a lecture is added. */
+  static void invalidateLecturePages() {
+    firstPageCache.invalidateAll();
   }
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    List<Lecture> lectures = getLectures();
-    Gson gson = new Gson();
-    response.setContentType("application/json");
-    response.getWriter().println(gson.toJson(lectures));
+    Optional<String> error = validateGetRequest(request);
+    if (error.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, error.get());
+      return;
+    }
+
+    PageQuery pageQuery = getPageQuery(request);
+    if (pageQuery.cursor().isEmpty()) {
+      firstPageCache.get(pageQuery).write(request, response);
+      return;
+    }
+    LecturePage lecturePage;
+    try {
+      lecturePage = queryLecturePage(pageQuery);
+    } catch (IllegalArgumentException e) {
+      // The cursor is only fully checked once the query runs.
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, ERROR_INVALID_CURSOR);
+      return;
+    }
+    writeLecturePage(response, lecturePage);
   }
 
-  /** Returns lectures stored in the database. */
-  private List<Lecture> getLectures() {
-    Query query = new Query(LectureUtil.KIND);
-    PreparedQuery results = datastore.prepare(query);
-    List<Lecture> lectures = new ArrayList<>();
-    for (Entity lectureEntity : results.asIterable()) {
-      Lecture lecture = LectureUtil.createLecture(lectureEntity);
-      lectures.add(lecture);
+  private Optional<String> validateGetRequest(HttpServletRequest request) {
+    String sort = Optional.ofNullable(request.getParameter(PARAM_SORT)).orElse(SORT_NAME);
+    if (!sort.equals(SORT_NAME) && !sort.equals(SORT_CREATED)) {
+      return Optional.of(ERROR_INVALID_SORT);
     }
-    return lectures;
+    if (sort.equals(SORT_CREATED) && request.getParameter(PARAM_PREFIX) != null) {
+      return Optional.of(ERROR_PREFIX_NOT_SORTED_BY_NAME);
+    }
+    String limit = request.getParameter(PARAM_LIMIT);
+    if (limit != null && !limit.matches("[1-9][0-9]{0,8}")) {
+      return Optional.of(ERROR_INVALID_LIMIT);
+    }
+    return Optional.empty();
+  }
+
+  /** Returns the page of lectures requested by the valid {@code request}. */
+  private static PageQuery getPageQuery(HttpServletRequest request) {
+    String sort = Optional.ofNullable(request.getParameter(PARAM_SORT)).orElse(SORT_NAME);
+    String prefix = Optional.ofNullable(request.getParameter(PARAM_PREFIX)).orElse("");
+    int limit = DEFAULT_LIMIT;
+    if (request.getParameter(PARAM_LIMIT) != null) {
+      limit = Math.min(MAX_LIMIT, Integer.parseInt(request.getParameter(PARAM_LIMIT)));
+    }
+    String cursor = Optional.ofNullable(request.getParameter(PARAM_CURSOR)).orElse("");
+    return PageQuery.create(sort, LectureUtil.createSortName(prefix), limit, cursor);
+  }
+
+  /**
+   * Returns the page of lectures for {@code pageQuery}.
+   *
+   * @throws IllegalArgumentException if the cursor is invalid.
+   */
+  private static LecturePage queryLecturePage(PageQuery pageQuery) {
+    LectureRepository lectures = Repositories.getRepositories().lectures();
+    if (pageQuery.sort().equals(SORT_CREATED)) {
+      return lectures.getNewestPage(pageQuery.limit(), pageQuery.cursor());
+    }
+    return lectures.getPageByName(pageQuery.prefix(), pageQuery.limit(), pageQuery.cursor());
+  }
+
+  private static PrecompressedBody createFirstPageBody(PageQuery pageQuery) {
+    Gson gson = new Gson();
+    return PrecompressedBody.create("application/json", gson.toJson(queryLecturePage(pageQuery)));
+  }
+
+  private void writeLecturePage(HttpServletResponse response, LecturePage lecturePage)
+      throws IOException {
+    Gson gson = new Gson();
+    response.setContentType("application/json");
+    response.getWriter().println(gson.toJson(lecturePage));
   }
 }
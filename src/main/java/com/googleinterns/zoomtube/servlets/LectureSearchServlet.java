@@ -0,0 +1,189 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.googleinterns.zoomtube.data.LectureSearchHit;
+import com.googleinterns.zoomtube.data.LectureSearchResults;
+import com.googleinterns.zoomtube.repository.LectureRepository;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.repository.TranscriptLineRepository;
+import com.googleinterns.zoomtube.search.GlobalTranscriptIndex;
+import com.googleinterns.zoomtube.search.Tokenizer;
+import com.googleinterns.zoomtube.search.TranscriptIndex;
+import com.googleinterns.zoomtube.search.TranscriptIndexStore;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Searches the transcripts of every lecture, returning the most relevant lines first.
+ *
+ * <p>The servlet is loaded on startup, so the stored search index is read while the instance
+ * warms up rather than by the first search.
+ */
+public class LectureSearchServlet extends HttpServlet {
+  private static final Logger logger = Logger.getLogger(LectureSearchServlet.class.getName());
+
+  @VisibleForTesting static final String PARAM_QUERY = "query";
+  @VisibleForTesting static final String PARAM_OFFSET = "offset";
+  @VisibleForTesting static final String PARAM_LIMIT = "limit";
+  @VisibleForTesting static final int DEFAULT_LIMIT = 20;
+  @VisibleForTesting static final int MAX_LIMIT = 100;
+
+  private static final String ERROR_MISSING_QUERY = "Missing query parameter.";
+  private static final String ERROR_INVALID_OFFSET = "Invalid offset parameter.";
+  private static final String ERROR_INVALID_LIMIT = "Invalid limit parameter.";
+
+  private LectureRepository lectures;
+  private TranscriptLineRepository transcriptLines;
+  private TranscriptIndexStore indexStore;
+  private GlobalTranscriptIndex globalIndex;
+
+  @Override
+  public void init() throws ServletException {
+    Repositories repositories = Repositories.getRepositories();
+    lectures = repositories.lectures();
+    transcriptLines = repositories.transcriptLines();
+    indexStore = new TranscriptIndexStore(transcriptLines);
+    globalIndex = GlobalTranscriptIndex.getIndex();
+    try {
+      globalIndex.ensureLoaded(transcriptLines);
+    } catch (IOException | RuntimeException e) {
+      // The first search tries again.
+      logger.log(Level.WARNING, "Couldn't load the transcript search index.", e);
+    }
+  }
+
+  @VisibleForTesting
+  void setGlobalIndex(GlobalTranscriptIndex globalIndex) {
+    this.globalIndex = globalIndex;
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<String> error = validateGetRequest(request);
+    if (error.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, error.get());
+      return;
+    }
+
+    String query = request.getParameter(PARAM_QUERY);
+    int offset = 0;
+    if (request.getParameter(PARAM_OFFSET) != null) {
+      offset = Math.max(0, Integer.parseInt(request.getParameter(PARAM_OFFSET)));
+    }
+    int limit = DEFAULT_LIMIT;
+    if (request.getParameter(PARAM_LIMIT) != null) {
+      int requestedLimit = Integer.parseInt(request.getParameter(PARAM_LIMIT));
+      limit = Math.max(0, Math.min(MAX_LIMIT, requestedLimit));
+    }
+
+    globalIndex.ensureLoaded(transcriptLines);
+    GlobalTranscriptIndex.Results results = globalIndex.search(query, offset, limit);
+    ImmutableList<LectureSearchHit> hits = createHits(query, results);
+    writeResults(response, LectureSearchResults.create(hits, results.totalHits, offset));
+  }
+
+  private Optional<String> validateGetRequest(HttpServletRequest request) {
+    if (request.getParameter(PARAM_QUERY) == null) {
+      return Optional.of(ERROR_MISSING_QUERY);
+    }
+    if (!isIntegerOrMissing(request.getParameter(PARAM_OFFSET))) {
+      return Optional.of(ERROR_INVALID_OFFSET);
+    }
+    if (!isIntegerOrMissing(request.getParameter(PARAM_LIMIT))) {
+      return Optional.of(ERROR_INVALID_LIMIT);
+    }
+    return Optional.empty();
+  }
+
+  private static boolean isIntegerOrMissing(String value) {
+    if (value == null) {
+      return true;
+    }
+    try {
+      Integer.parseInt(value);
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the hits in {@code results} with their lecture names and highlighted snippets.
+   */
+  private ImmutableList<LectureSearchHit> createHits(
+      String query, GlobalTranscriptIndex.Results results) throws IOException {
+    Set<String> queryTerms = new HashSet<>();
+    for (Tokenizer.Token token : Tokenizer.tokenize(query)) {
+      queryTerms.add(token.term);
+    }
+    Set<Key> lectureKeys = new LinkedHashSet<>();
+    for (GlobalTranscriptIndex.Hit hit : results.hits) {
+      lectureKeys.add(KeyFactory.createKey(LectureUtil.KIND, hit.lectureId));
+    }
+    // Fetches every lecture on the page, and the indexes that aren't cached, in batches.
+    Map<Key, Entity> lectureEntities = lectures.getAll(lectureKeys);
+    Map<Key, TranscriptIndex> indexes = indexStore.loadAll(lectureKeys);
+
+    ImmutableList.Builder<LectureSearchHit> hits = ImmutableList.builder();
+    for (GlobalTranscriptIndex.Hit hit : results.hits) {
+      Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, hit.lectureId);
+      Entity lecture = lectureEntities.get(lectureKey);
+      TranscriptIndex index = indexes.get(lectureKey);
+      if (lecture == null || index == null || hit.lineIndex >= index.lineCount()) {
+        // The lecture was deleted or re-ingested since it was indexed.
+        continue;
+      }
+      hits.add(LectureSearchHit.builder()
+                   .setLectureKey(lectureKey)
+                   .setLectureName((String) lecture.getProperty(LectureUtil.NAME))
+                   .setTranscriptKey(KeyFactory.createKey(lectureKey, TranscriptLineUtil.KIND,
+                       index.lineId(hit.lineIndex)))
+                   .setStartTimestampMs(hit.startMs)
+                   .setSnippet(index.snippet(hit.lineIndex, queryTerms))
+                   .setScore(hit.score)
+                   .build());
+    }
+    return hits.build();
+  }
+
+  /**
+   * Writes {@code results} as Json to {@code response}.
+   */
+  private void writeResults(HttpServletResponse response, LectureSearchResults results)
+      throws IOException {
+    response.setContentType("application/json");
+    Gson gson = new Gson();
+    response.getWriter().println(gson.toJson(results));
+  }
+}
@@ -14,23 +14,27 @@
 
 package com.googleinterns.zoomtube.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.Gson;
+import com.googleinterns.zoomtube.cache.RefreshingCache;
+import com.googleinterns.zoomtube.repository.LectureRepository;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.search.LectureNameIndex;
+import com.googleinterns.zoomtube.tracing.Span;
+import com.googleinterns.zoomtube.tracing.Tracer;
 import com.googleinterns.zoomtube.transcriptParser.TranscriptParser;
 import com.googleinterns.zoomtube.utils.LectureUtil;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -40,7 +44,13 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.http.client.utils.URIBuilder;
 
-/** Provides information on a lecture. */
+/**
+ * Provides information on a lecture.
+ *
+ * <p>A lecture's name and video don't change once it's created, so each lecture is cached as
+ * Json, first on this instance and then in memcache, which every instance shares. Unknown ids
+ * are only cached on this instance, and for less time, in case another instance creates them.
+ */
 public class LectureServlet extends HttpServlet {
   /* Used to generate a Pattern for a Video URL. */
   private static final String YOUTUBE_VIDEO_URL_PATTERN =
@@ -61,13 +71,56 @@ public class LectureServlet extends HttpServlet {
   @VisibleForTesting static final String PARAM_ID = "id";
   @VisibleForTesting static final String PARAM_LANGUAGE = "language-input";
 
+  @VisibleForTesting static final String CACHE_NAME = "lectures";
+  private static final Duration CACHE_TIME_TO_LIVE = Duration.ofHours(1);
+  private static final Duration CACHE_NOT_FOUND_TIME_TO_LIVE = Duration.ofMinutes(1);
+  /* Lectures don't change, so an expired one is returned while it's read again. */
+  private static final Duration CACHE_STALE = Duration.ofDays(1);
+  private static final int CACHE_MAXIMUM_SIZE = 5000;
+  private static final String MEMCACHE_KEY_PREFIX = "lecture:";
+  private static final Expiration MEMCACHE_EXPIRATION =
+      Expiration.byDeltaSeconds((int) Duration.ofDays(7).getSeconds());
+
   /* Pattern used to create a matcher for a video ID. */
-  private static Pattern videoUrlGeneratedPattern = Pattern.compile(YOUTUBE_VIDEO_URL_PATTERN);
-  private static DatastoreService datastore;
+  private static final Pattern videoUrlGeneratedPattern =
+      Pattern.compile(YOUTUBE_VIDEO_URL_PATTERN);
+  /*
+   * Each lecture's Json by id, or empty if there's no lecture with that id. It is static so
+   * other servlets can invalidate it, and volatile so they see the one the last init built.
+   */
+  private static volatile RefreshingCache<Long, Optional<String>> lectureCache;
+  private MemcacheService memcache;
+  private LectureRepository lectures;
 
   @Override
   public void init() throws ServletException {
-    datastore = DatastoreServiceFactory.getDatastoreService();
+    lectures = Repositories.getRepositories().lectures();
+    memcache = MemcacheServiceFactory.getMemcacheService();
+    lectureCache =
+        RefreshingCache.builder(CACHE_NAME, this::loadLectureJson)
+            .setTimeToLive(CACHE_TIME_TO_LIVE)
+            .setNegativeTimeToLive(
+                CACHE_NOT_FOUND_TIME_TO_LIVE, lectureJson -> !lectureJson.isPresent())
+            .setStale(CACHE_STALE)
+            .setMaximumSize(CACHE_MAXIMUM_SIZE)
+            .build();
+  }
+
+  @VisibleForTesting
+  RefreshingCache<Long, Optional<String>> getLectureCache() {
+    return lectureCache;
+  }
+
+  /**
+   * Forgets the lecture with {@code lectureId}, such as after it is deleted. Other instances
+   * only forget it once it expires from their cache.
+   */
+  static void invalidateLecture(long lectureId) {
+    MemcacheServiceFactory.getMemcacheService().delete(MEMCACHE_KEY_PREFIX + lectureId);
+    RefreshingCache<Long, Optional<String>> cache = lectureCache;
+    if (cache != null) {
+      cache.invalidate(lectureId);
+    }
   }
 
   @Override
@@ -87,19 +140,25 @@ public class LectureServlet extends HttpServlet {
       return;
     }
 
-    Optional<Entity> existingEntity = queryForLectureWithVideoId(videoId.get());
+    String lectureName = request.getParameter(PARAM_NAME);
+    List<String> transcriptLanguages = getTranscriptLanguages(request);
+    // The key is allocated first, so it is known whether or not the lecture is stored.
+    Entity lectureEntity = new Entity(lectures.allocateKey());
+    lectureEntity.setPropertiesFrom(LectureUtil.createEntity(lectureName, videoUrl, videoId.get()));
+    if (!transcriptLanguages.get(0).isEmpty()) {
+      lectureEntity.setProperty(LectureUtil.TRANSCRIPT_LANGUAGE, transcriptLanguages.get(0));
+    }
+    Optional<Entity> existingEntity = lectures.putIfAbsent(lectureEntity);
     if (existingEntity.isPresent()) {
       response.sendRedirect(buildRedirectUrl(existingEntity.get()));
       return;
     }
-
-    String lectureName = request.getParameter(PARAM_NAME);
-    Entity lectureEntity = LectureUtil.createEntity(lectureName, videoUrl, videoId.get());
-    datastore.put(lectureEntity);
+    cacheLecture(lectureEntity);
+    LectureListServlet.invalidateLecturePages();
+    LectureNameIndex.getIndex().addLecture(
+        lectureEntity.getKey().getId(), (String) lectureEntity.getProperty(LectureUtil.NAME));
     try {
-      Optional<String> transcriptLanguage =
-          Optional.ofNullable(request.getParameter(PARAM_LANGUAGE));
-      initializeTranscript(lectureEntity, transcriptLanguage);
+      initializeTranscript(lectureEntity, transcriptLanguages);
     } catch (IOException | ServletException e) {
       // If there was an error initializing the transcript, then this lecture won't have one.
       // Luckily that's still ok, so we suppress these errors so we can redirect.
@@ -118,17 +177,30 @@ public class LectureServlet extends HttpServlet {
     return Optional.empty();
   }
 
+  /**
+   * Returns the transcript languages requested in {@code request}, which may list several.
+   * The first one is shown by default.
+   */
+  private List<String> getTranscriptLanguages(HttpServletRequest request) {
+    String[] transcriptLanguages = request.getParameterValues(PARAM_LANGUAGE);
+    if (transcriptLanguages != null && transcriptLanguages.length > 0) {
+      return Arrays.asList(transcriptLanguages);
+    }
+    return Collections.singletonList(
+        Optional.ofNullable(request.getParameter(PARAM_LANGUAGE)).orElse(""));
+  }
+
   /**
    * Parses and stores the transcript lines in datastore using the properties
-   * in {@code lectureEntity}. The language for parsing is determined by
-   * {@code transcriptLanguage}.
+   * in {@code lectureEntity}. A transcript is stored for each of
+   * {@code transcriptLanguages}.
    */
-  private void initializeTranscript(Entity lectureEntity, Optional<String> transcriptLanguage)
+  private void initializeTranscript(Entity lectureEntity, List<String> transcriptLanguages)
       throws IOException, ServletException {
     TranscriptParser transcriptParser = TranscriptParser.getParser();
     Key lectureKey = lectureEntity.getKey();
     String videoId = (String) lectureEntity.getProperty(LectureUtil.VIDEO_ID);
-    transcriptParser.parseAndStoreTranscript(videoId, lectureKey, transcriptLanguage.orElse(""));
+    transcriptParser.parseAndStoreTranscripts(videoId, lectureKey, transcriptLanguages);
   }
 
   @Override
@@ -140,15 +212,13 @@ public class LectureServlet extends HttpServlet {
     }
 
     long lectureId = Long.parseLong(request.getParameter(PARAM_ID));
-    Key lectureEntityKey = KeyFactory.createKey(LectureUtil.KIND, lectureId);
-    try {
-      Entity lectureEntity = datastore.get(lectureEntityKey);
-      Gson gson = new Gson();
-      response.setContentType("application/json");
-      response.getWriter().println(gson.toJson(LectureUtil.createLecture(lectureEntity)));
-    } catch (EntityNotFoundException entityNotFound) {
+    Optional<String> lectureJson = lectureCache.get(lectureId);
+    if (!lectureJson.isPresent()) {
       response.sendError(HttpServletResponse.SC_NOT_FOUND, ERROR_LECTURE_NOT_FOUND);
+      return;
     }
+    response.setContentType("application/json");
+    response.getWriter().println(lectureJson.get());
   }
 
   private Optional<String> validateGetRequest(HttpServletRequest request) {
@@ -159,15 +229,40 @@ public class LectureServlet extends HttpServlet {
   }
 
   /**
-   * Returns the Entity in database that has {@code videoId}, or
-   * {@code Optional.empty()} if one doesn't exist.
+   * Returns the Json of the lecture with {@code lectureId} from memcache, or else from
+   * datastore, or {@code Optional.empty()} if there's no such lecture.
    */
-  private Optional<Entity> queryForLectureWithVideoId(String videoId) {
-    Filter videoIdFilter = new FilterPredicate(LectureUtil.VIDEO_ID, FilterOperator.EQUAL, videoId);
-    Query query = new Query(LectureUtil.KIND).setFilter(videoIdFilter);
-    PreparedQuery results = datastore.prepare(query);
+  private Optional<String> loadLectureJson(long lectureId) {
+    String memcacheKey = MEMCACHE_KEY_PREFIX + lectureId;
+    String lectureJson = (String) memcache.get(memcacheKey);
+    if (lectureJson != null) {
+      return Optional.of(lectureJson);
+    }
+    Optional<Entity> lectureEntity = lectures.get(lectureId);
+    if (!lectureEntity.isPresent()) {
+      return Optional.empty();
+    }
+    lectureJson = toJson(lectureEntity.get());
+    memcache.put(memcacheKey, lectureJson, MEMCACHE_EXPIRATION);
+    return Optional.of(lectureJson);
+  }
 
-    return Optional.ofNullable(results.asSingleEntity());
+  /**
+   * Caches the newly created {@code lectureEntity}, so the lecture view it is redirected to
+   * doesn't read it again.
+   */
+  private void cacheLecture(Entity lectureEntity) {
+    long lectureId = lectureEntity.getKey().getId();
+    String lectureJson = toJson(lectureEntity);
+    memcache.put(MEMCACHE_KEY_PREFIX + lectureId, lectureJson, MEMCACHE_EXPIRATION);
+    lectureCache.put(lectureId, Optional.of(lectureJson));
+  }
+
+  private static String toJson(Entity lectureEntity) {
+    try (Span span = Tracer.startSpan("json.serialize")) {
+      Gson gson = new Gson();
+      return gson.toJson(LectureUtil.createLecture(lectureEntity));
+    }
   }
 
   /** Returns YouTube video ID for a given {@code videoUrl}. */
@@ -14,10 +14,7 @@
 
 package com.googleinterns.zoomtube.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.users.User;
@@ -25,6 +22,8 @@ import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
 import com.google.common.annotations.VisibleForTesting;
 import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.repository.CommentRepository;
+import com.googleinterns.zoomtube.repository.Repositories;
 import com.googleinterns.zoomtube.utils.CommentUtil;
 import java.io.IOException;
 import java.util.Optional;
@@ -48,12 +47,12 @@ public class MarkAnsweredServlet extends HttpServlet {
   private static final String ERROR_NOT_LOGGED_IN = "You are not logged in.";
 
   private UserService userService;
-  private DatastoreService datastore;
+  private CommentRepository comments;
 
   @Override
   public void init() throws ServletException {
     userService = UserServiceFactory.getUserService();
-    datastore = DatastoreServiceFactory.getDatastoreService();
+    comments = Repositories.getRepositories().comments();
   }
 
   @Override
@@ -101,12 +100,11 @@ public class MarkAnsweredServlet extends HttpServlet {
       return Optional.of(ERROR_INVALID_NEW_TYPE);
     }
 
-    final Entity commentEntity;
-    try {
-      commentEntity = datastore.get(commentKey);
-    } catch (EntityNotFoundException e) {
+    Optional<Entity> storedComment = comments.get(commentKey.getId());
+    if (!storedComment.isPresent()) {
       return Optional.of(ERROR_INVALID_COMMENT);
     }
+    Entity commentEntity = storedComment.get();
 
     Comment.Type currentType = CommentUtil.createComment(commentEntity).type();
     if (!isQuestionType(currentType)) {
@@ -114,7 +112,7 @@ public class MarkAnsweredServlet extends HttpServlet {
     }
 
     commentEntity.setProperty(CommentUtil.TYPE, newType.toString());
-    datastore.put(commentEntity);
+    comments.put(commentEntity);
     return Optional.empty();
   }
 
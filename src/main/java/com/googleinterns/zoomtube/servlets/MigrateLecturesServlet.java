@@ -0,0 +1,166 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.googleinterns.zoomtube.data.LectureMigration;
+import com.googleinterns.zoomtube.metrics.MeteredDatastoreService;
+import com.googleinterns.zoomtube.utils.LectureIdentity;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Updates the lectures created before LectureVideo entities existed, a batch at a time. Each
+ * is given a LectureVideo entity, so it's found by its video without a query, and the
+ * properties the list of lectures is sorted by. When two lectures have the same video, the
+ * first one migrated keeps it.
+ *
+ * <p>If the request is about to run out of time, the response includes a cursor to continue
+ * from with another request. Migrating a lecture twice does nothing the second time.
+ */
+public class MigrateLecturesServlet extends HttpServlet {
+  @VisibleForTesting static final String PARAM_CURSOR = "cursor";
+  @VisibleForTesting static final int LECTURE_BATCH_SIZE = 100;
+  /* Stops early enough to respond before the request deadline. */
+  private static final long MIN_REMAINING_MILLIS = 5000;
+
+  private static final String ERROR_INVALID_CURSOR = "Invalid cursor parameter.";
+
+  private DatastoreService datastore;
+  private LongSupplier remainingMillis;
+
+  @Override
+  public void init() throws ServletException {
+    datastore = MeteredDatastoreService.getDatastoreService();
+    remainingMillis = () -> ApiProxy.getCurrentEnvironment().getRemainingMillis();
+  }
+
+  @VisibleForTesting
+  void setRemainingMillis(LongSupplier remainingMillis) {
+    this.remainingMillis = remainingMillis;
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String cursor = request.getParameter(PARAM_CURSOR);
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(LECTURE_BATCH_SIZE);
+    LectureMigration migration;
+    try {
+      if (cursor != null) {
+        fetchOptions.startCursor(Cursor.fromWebSafeString(cursor));
+      }
+      migration = migrateLectures(fetchOptions);
+    } catch (IllegalArgumentException e) {
+      // The cursor is only fully checked once the query runs.
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, ERROR_INVALID_CURSOR);
+      return;
+    }
+    writeMigration(response, migration);
+  }
+
+  /**
+   * Migrates batches of lectures until every lecture is migrated or the request is running
+   * out of time.
+   */
+  private LectureMigration migrateLectures(FetchOptions fetchOptions) {
+    LectureIdentity lectureIdentity = new LectureIdentity(datastore);
+    // Ordered by key, so the lecture with the lowest id keeps its video.
+    Query query = new Query(LectureUtil.KIND);
+    int lectureCount = 0;
+    int duplicateCount = 0;
+    boolean lecturesUpdated = false;
+    while (true) {
+      QueryResultList<Entity> batch = datastore.prepare(query).asQueryResultList(fetchOptions);
+      List<Entity> updatedLectures = new ArrayList<>();
+      List<Entity> lecturesWithVideo = new ArrayList<>();
+      for (Entity lectureEntity : batch) {
+        if (addListProperties(lectureEntity)) {
+          updatedLectures.add(lectureEntity);
+        }
+        if (lectureEntity.hasProperty(LectureUtil.VIDEO_ID)) {
+          lecturesWithVideo.add(lectureEntity);
+        }
+      }
+      if (!updatedLectures.isEmpty()) {
+        datastore.put(updatedLectures);
+        lecturesUpdated = true;
+      }
+      duplicateCount += lectureIdentity.adopt(lecturesWithVideo);
+      lectureCount += batch.size();
+      if (batch.size() < LECTURE_BATCH_SIZE) {
+        if (lecturesUpdated) {
+          LectureListServlet.invalidateLecturePages();
+        }
+        return LectureMigration.create(
+            lectureCount, duplicateCount, /* done= */ true, /* cursor= */ "");
+      }
+      fetchOptions.startCursor(batch.getCursor());
+      if (remainingMillis.getAsLong() < MIN_REMAINING_MILLIS) {
+        if (lecturesUpdated) {
+          LectureListServlet.invalidateLecturePages();
+        }
+        return LectureMigration.create(
+            lectureCount, duplicateCount, /* done= */ false, batch.getCursor().toWebSafeString());
+      }
+    }
+  }
+
+  /**
+   * Adds the properties that the list of lectures is sorted by to {@code lectureEntity}, if it
+   * is missing them, and returns whether it was.
+   */
+  private static boolean addListProperties(Entity lectureEntity) {
+    boolean updated = false;
+    if (!lectureEntity.hasProperty(LectureUtil.SORT_NAME)) {
+      String lectureName =
+          Optional.ofNullable((String) lectureEntity.getProperty(LectureUtil.NAME)).orElse("");
+      lectureEntity.setProperty(LectureUtil.SORT_NAME, LectureUtil.createSortName(lectureName));
+      updated = true;
+    }
+    if (!lectureEntity.hasProperty(LectureUtil.CREATED)) {
+      // When these lectures were created isn't known, so they're listed as the oldest.
+      lectureEntity.setProperty(LectureUtil.CREATED, new Date(0));
+      updated = true;
+    }
+    return updated;
+  }
+
+  /**
+   * Writes {@code migration} as Json to {@code response}.
+   */
+  private void writeMigration(HttpServletResponse response, LectureMigration migration)
+      throws IOException {
+    response.setContentType("application/json");
+    Gson gson = new Gson();
+    response.getWriter().println(gson.toJson(migration));
+  }
+}
@@ -0,0 +1,126 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.googleinterns.zoomtube.data.TranscriptMigration;
+import com.googleinterns.zoomtube.metrics.MeteredDatastoreService;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptParser;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import java.io.IOException;
+import java.util.function.LongSupplier;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Moves the transcripts stored as an entity per line into compressed chunks, a lecture at a
+ * time. Line ids are kept, so comments and search results still refer to the same lines.
+ *
+ * <p>If the request is about to run out of time, the response includes a cursor to continue
+ * from with another request. Migrating a lecture twice does nothing the second time.
+ */
+public class MigrateTranscriptsServlet extends HttpServlet {
+  @VisibleForTesting static final String PARAM_CURSOR = "cursor";
+  @VisibleForTesting static final int LECTURE_BATCH_SIZE = 20;
+  /* Stops early enough to respond before the request deadline. */
+  private static final long MIN_REMAINING_MILLIS = 5000;
+
+  private static final String ERROR_INVALID_CURSOR = "Invalid cursor parameter.";
+
+  private DatastoreService datastore;
+  private TranscriptParser transcriptParser;
+  private LongSupplier remainingMillis;
+
+  @Override
+  public void init() throws ServletException {
+    datastore = MeteredDatastoreService.getDatastoreService();
+    transcriptParser = TranscriptParser.getParser();
+    remainingMillis = () -> ApiProxy.getCurrentEnvironment().getRemainingMillis();
+  }
+
+  @VisibleForTesting
+  void setTranscriptParser(TranscriptParser transcriptParser) {
+    this.transcriptParser = transcriptParser;
+  }
+
+  @VisibleForTesting
+  void setRemainingMillis(LongSupplier remainingMillis) {
+    this.remainingMillis = remainingMillis;
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String cursor = request.getParameter(PARAM_CURSOR);
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(LECTURE_BATCH_SIZE);
+    TranscriptMigration migration;
+    try {
+      if (cursor != null) {
+        fetchOptions.startCursor(Cursor.fromWebSafeString(cursor));
+      }
+      migration = migrateLectures(fetchOptions);
+    } catch (IllegalArgumentException e) {
+      // The cursor is only fully checked once the query runs.
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, ERROR_INVALID_CURSOR);
+      return;
+    }
+    writeMigration(response, migration);
+  }
+
+  /**
+   * Migrates batches of lectures until every lecture is migrated or the request is running
+   * out of time.
+   */
+  private TranscriptMigration migrateLectures(FetchOptions fetchOptions) {
+    Query query = new Query(LectureUtil.KIND).setKeysOnly();
+    int lectureCount = 0;
+    int lineCount = 0;
+    while (true) {
+      QueryResultList<Entity> batch = datastore.prepare(query).asQueryResultList(fetchOptions);
+      for (Entity lectureEntity : batch) {
+        lineCount += transcriptParser.moveTranscriptLinesToChunks(lectureEntity.getKey());
+      }
+      lectureCount += batch.size();
+      if (batch.size() < LECTURE_BATCH_SIZE) {
+        return TranscriptMigration.create(
+            lectureCount, lineCount, /* done= */ true, /* cursor= */ "");
+      }
+      fetchOptions.startCursor(batch.getCursor());
+      if (remainingMillis.getAsLong() < MIN_REMAINING_MILLIS) {
+        return TranscriptMigration.create(
+            lectureCount, lineCount, /* done= */ false, batch.getCursor().toWebSafeString());
+      }
+    }
+  }
+
+  /**
+   * Writes {@code migration} as Json to {@code response}.
+   */
+  private void writeMigration(HttpServletResponse response, TranscriptMigration migration)
+      throws IOException {
+    response.setContentType("application/json");
+    Gson gson = new Gson();
+    response.getWriter().println(gson.toJson(migration));
+  }
+}
@@ -0,0 +1,121 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.googleinterns.zoomtube.data.TranscriptResync;
+import com.googleinterns.zoomtube.metrics.MeteredDatastoreService;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptParser;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import java.io.IOException;
+import java.util.Optional;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Fetches the transcript of a lecture again and updates the stored lines that changed, such
+ * as after its captions were corrected.
+ *
+ * <p>The transcript is in the language given by the {@code lang} parameter, or else the
+ * language chosen when the lecture was created.
+ */
+public class ResyncTranscriptServlet extends HttpServlet {
+  private DatastoreService datastore;
+  private TranscriptParser transcriptParser;
+  @VisibleForTesting static final String PARAM_ID = "id";
+  @VisibleForTesting static final String PARAM_LANGUAGE = "lang";
+  private static final String ERROR_MISSING_ID = "Missing id parameter.";
+  private static final String ERROR_MISSING_LANGUAGE = "Missing lang parameter.";
+  private static final String ERROR_LECTURE_NOT_FOUND = "Lecture not found in database.";
+  private static final String ERROR_FETCH_FAILED = "The transcript couldn't be fetched.";
+
+  @Override
+  public void init() throws ServletException {
+    datastore = MeteredDatastoreService.getDatastoreService();
+    transcriptParser = TranscriptParser.getParser();
+  }
+
+  @VisibleForTesting
+  void setTranscriptParser(TranscriptParser transcriptParser) {
+    this.transcriptParser = transcriptParser;
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<String> error = validatePostRequest(request);
+    if (error.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, error.get());
+      return;
+    }
+
+    long lectureId = Long.parseLong(request.getParameter(PARAM_ID));
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, lectureId);
+    Entity lectureEntity;
+    try {
+      lectureEntity = datastore.get(lectureKey);
+    } catch (EntityNotFoundException e) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND, ERROR_LECTURE_NOT_FOUND);
+      return;
+    }
+    String searchedLanguage = (String) lectureEntity.getProperty(LectureUtil.TRANSCRIPT_LANGUAGE);
+    Optional<String> language = Optional.ofNullable(request.getParameter(PARAM_LANGUAGE))
+                                    .filter(languageCode -> !languageCode.isEmpty());
+    if (!language.isPresent() && searchedLanguage == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, ERROR_MISSING_LANGUAGE);
+      return;
+    }
+
+    String videoId = (String) lectureEntity.getProperty(LectureUtil.VIDEO_ID);
+    String transcriptLanguage = language.orElse(searchedLanguage);
+    TranscriptResync resync;
+    try {
+      // Lines stored before transcripts had languages are in the lecture's first language,
+      // which an old enough lecture doesn't record.
+      resync = transcriptParser.resyncTranscript(videoId, lectureKey, transcriptLanguage,
+          /* indexForSearch= */ transcriptLanguage.equals(searchedLanguage),
+          /* unlabeledLinesInLanguage= */ searchedLanguage == null
+              || transcriptLanguage.equals(searchedLanguage));
+    } catch (IOException e) {
+      response.sendError(HttpServletResponse.SC_BAD_GATEWAY, ERROR_FETCH_FAILED);
+      return;
+    }
+    writeResync(response, resync);
+  }
+
+  private Optional<String> validatePostRequest(HttpServletRequest request) {
+    if (request.getParameter(PARAM_ID) == null) {
+      return Optional.of(ERROR_MISSING_ID);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Writes {@code resync} as Json to {@code response}.
+   */
+  private void writeResync(HttpServletResponse response, TranscriptResync resync)
+      throws IOException {
+    response.setContentType("application/json");
+    Gson gson = new Gson();
+    response.getWriter().println(gson.toJson(resync));
+  }
+}
@@ -0,0 +1,65 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.googleinterns.zoomtube.data.RequestTrace;
+import com.googleinterns.zoomtube.tracing.TracingFilter;
+import java.io.IOException;
+import java.util.Optional;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Provides the span trees of the most recent requests on this instance, newest first. With
+ * {@code min-ms}, only the requests that took at least that long are included.
+ */
+public class TracesServlet extends HttpServlet {
+  @VisibleForTesting static final String PARAM_MIN_MS = "min-ms";
+
+  private static final String ERROR_INVALID_MIN_MS = "Invalid min-ms parameter.";
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<String> error = validateGetRequest(request);
+    if (error.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, error.get());
+      return;
+    }
+
+    long minMs = Optional.ofNullable(request.getParameter(PARAM_MIN_MS))
+                     .map(Long::parseLong)
+                     .orElse(0L);
+    ImmutableList<RequestTrace> traces =
+        TracingFilter.recentTraces()
+            .stream()
+            .filter(trace -> trace.durationMs() >= minMs)
+            .collect(ImmutableList.toImmutableList());
+    Gson gson = new Gson();
+    response.setContentType("application/json");
+    response.getWriter().println(gson.toJson(traces));
+  }
+
+  private Optional<String> validateGetRequest(HttpServletRequest request) {
+    String minMs = request.getParameter(PARAM_MIN_MS);
+    if (minMs != null && !minMs.matches("[0-9]{1,9}")) {
+      return Optional.of(ERROR_INVALID_MIN_MS);
+    }
+    return Optional.empty();
+  }
+}
@@ -15,48 +15,44 @@
 package com.googleinterns.zoomtube.servlets;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
 import com.googleinterns.zoomtube.data.TranscriptLanguage;
-import com.googleinterns.zoomtube.transcriptParser.TranscriptParser;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptLanguageCache;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.List;
 import java.util.Optional;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.http.client.utils.URIBuilder;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 /**
  * Fetches and parses the available transcript languages as XML from the Google
  * Video Timetext API.
+ *
+ * <p>The languages are requested as the user types a video link, so they are read from the
+ * {@link TranscriptLanguageCache} that {@link TranscriptServlet} also uses.
  */
 public class TranscriptLanguageServlet extends HttpServlet {
-  /* Properties of the API Url. */
-  private static final String API_URL = "http://video.google.com/timedtext";
-  private static final String API_PARAM_TYPE = "type";
-  private static final String API_TYPE_LIST = "list";
-  private static final String API_PARAM_VIDEO = "v";
-
   /* Error messages for missing or invalid video link. */
   private static final String ERROR_MISSING_LINK = "Missing link parameter.";
   private static final String ERROR_INVALID_LINK = "Invalid video link.";
 
-  /* Attributes for parsing the XML. */
-  private static final String TAG_TRACK = "track";
-  private static final String ATTR_LANG_CODE = "lang_code";
-  private static final String ATTR_NAME = "name";
-  private static final String ATTR_LANG_TRANSLATED = "lang_translated";
-
   /* Name of input field used for lecture video link in lecture selection page. */
   @VisibleForTesting static final String PARAM_LINK = "link-input";
 
+  private TranscriptLanguageCache transcriptLanguageCache;
+
+  @Override
+  public void init() throws ServletException {
+    transcriptLanguageCache = TranscriptLanguageCache.getCache();
+  }
+
+  @VisibleForTesting
+  void setTranscriptLanguageCache(TranscriptLanguageCache transcriptLanguageCache) {
+    this.transcriptLanguageCache = transcriptLanguageCache;
+  }
+
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     Optional<String> error = validateGetRequest(request);
@@ -74,11 +70,8 @@ public class TranscriptLanguageServlet extends HttpServlet {
       return;
     }
 
-    URL transcriptLanguagesUrl = getTranscriptLanguagesUrlForVideo(videoId.get());
-    Document transcriptLanguagesDocument =
-        TranscriptParser.fetchUrlAsXmlDocument(transcriptLanguagesUrl);
     List<TranscriptLanguage> transcriptLanguages =
-        parseTranscriptLanguages(transcriptLanguagesDocument);
+        transcriptLanguageCache.getLanguages(videoId.get());
     writeTranscriptLanguages(response, transcriptLanguages);
   }
 
@@ -93,47 +86,6 @@ public class TranscriptLanguageServlet extends HttpServlet {
     return Optional.empty();
   }
 
-  /**
-   * Returns the API Url used to fetch the list of available transcript languages
-   * for {@code videoId}.
-   */
-  private URL getTranscriptLanguagesUrlForVideo(String videoId) throws IOException {
-    try {
-      URIBuilder urlBuilder = new URIBuilder(API_URL);
-      urlBuilder.addParameter(API_PARAM_TYPE, API_TYPE_LIST);
-      urlBuilder.addParameter(API_PARAM_VIDEO, videoId);
-      return urlBuilder.build().toURL();
-    } catch (URISyntaxException | MalformedURLException e) {
-      throw new IOException(e.getCause());
-    }
-  }
-
-  /**
-   * Returns the available transcript languages parsed from {@code document}.
-   */
-  private ImmutableList<TranscriptLanguage> parseTranscriptLanguages(Document document) {
-    NodeList transcriptNodes = document.getElementsByTagName(TAG_TRACK);
-    ImmutableList.Builder<TranscriptLanguage> transcriptLanguagesBuilder =
-        new ImmutableList.Builder<>();
-    for (int nodeIndex = 0; nodeIndex < transcriptNodes.getLength(); nodeIndex++) {
-      Element transcriptElement = (Element) transcriptNodes.item(nodeIndex);
-      transcriptLanguagesBuilder.add(createTranscriptLanguageFromElement(transcriptElement));
-    }
-    return transcriptLanguagesBuilder.build();
-  }
-
-  private TranscriptLanguage createTranscriptLanguageFromElement(
-      Element transcriptLanguageElement) {
-    String languageName = transcriptLanguageElement.getAttribute(ATTR_NAME);
-    String languageCode = transcriptLanguageElement.getAttribute(ATTR_LANG_CODE);
-    String languageNameInEnglish = transcriptLanguageElement.getAttribute(ATTR_LANG_TRANSLATED);
-    return TranscriptLanguage.builder()
-        .setLanguageName(languageName)
-        .setLanguageCode(languageCode)
-        .setLanguageNameInEnglish(languageNameInEnglish)
-        .build();
-  }
-
   /**
    * Writes {@code transcriptLanguages} as Json to {@code response}.
    */
@@ -0,0 +1,136 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.googleinterns.zoomtube.data.TranscriptSearchHit;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.search.TranscriptIndex;
+import com.googleinterns.zoomtube.search.TranscriptIndexStore;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import java.io.IOException;
+import java.util.Optional;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Searches the transcript of a lecture, returning the lines where the query was said.
+ */
+public class TranscriptSearchServlet extends HttpServlet {
+  @VisibleForTesting static final String PARAM_ID = "id";
+  @VisibleForTesting static final String PARAM_QUERY = "query";
+  @VisibleForTesting static final String PARAM_LIMIT = "limit";
+  @VisibleForTesting static final int DEFAULT_LIMIT = 50;
+  @VisibleForTesting static final int MAX_LIMIT = 200;
+
+  private static final String ERROR_MISSING_ID = "Missing id parameter.";
+  private static final String ERROR_MISSING_QUERY = "Missing query parameter.";
+  private static final String ERROR_INVALID_LIMIT = "Invalid limit parameter.";
+
+  private TranscriptIndexStore indexStore;
+
+  @Override
+  public void init() throws ServletException {
+    indexStore = new TranscriptIndexStore(Repositories.getRepositories().transcriptLines());
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<String> error = validateGetRequest(request);
+    if (error.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, error.get());
+      return;
+    }
+
+    long lectureId = Long.parseLong(request.getParameter(PARAM_ID));
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, lectureId);
+    String query = request.getParameter(PARAM_QUERY);
+    int limit = DEFAULT_LIMIT;
+    if (request.getParameter(PARAM_LIMIT) != null) {
+      int requestedLimit = Integer.parseInt(request.getParameter(PARAM_LIMIT));
+      limit = Math.max(0, Math.min(MAX_LIMIT, requestedLimit));
+    }
+
+    ImmutableList<TranscriptSearchHit> hits = ImmutableList.of();
+    Optional<TranscriptIndex> index = indexStore.load(lectureKey);
+    if (index.isPresent()) {
+      hits = search(lectureKey, index.get(), query, limit);
+    }
+    writeHits(response, hits);
+  }
+
+  private Optional<String> validateGetRequest(HttpServletRequest request) {
+    if (request.getParameter(PARAM_ID) == null) {
+      return Optional.of(ERROR_MISSING_ID);
+    }
+    if (request.getParameter(PARAM_QUERY) == null) {
+      return Optional.of(ERROR_MISSING_QUERY);
+    }
+    if (!isIntegerOrMissing(request.getParameter(PARAM_LIMIT))) {
+      return Optional.of(ERROR_INVALID_LIMIT);
+    }
+    return Optional.empty();
+  }
+
+  private static boolean isIntegerOrMissing(String value) {
+    if (value == null) {
+      return true;
+    }
+    try {
+      Integer.parseInt(value);
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns up to {@code limit} lines of the transcript in {@code index} that match
+   * {@code query}.
+   */
+  private ImmutableList<TranscriptSearchHit> search(
+      Key lectureKey, TranscriptIndex index, String query, int limit) {
+    ImmutableList.Builder<TranscriptSearchHit> hits = ImmutableList.builder();
+    for (TranscriptIndex.Match match : index.search(query, limit)) {
+      int line = match.lineIndex();
+      long startMs = index.lineStartMs(line);
+      hits.add(TranscriptSearchHit.builder()
+                   .setTranscriptKey(KeyFactory.createKey(
+                       lectureKey, TranscriptLineUtil.KIND, index.lineId(line)))
+                   .setStartTimestampMs(startMs)
+                   .setEndTimestampMs(startMs + index.lineDurationMs(line))
+                   .setSnippet(match.snippet())
+                   .build());
+    }
+    return hits.build();
+  }
+
+  /**
+   * Writes {@code hits} as Json to {@code response}.
+   */
+  private void writeHits(HttpServletResponse response, ImmutableList<TranscriptSearchHit> hits)
+      throws IOException {
+    response.setContentType("application/json");
+    Gson gson = new Gson();
+    response.getWriter().println(gson.toJson(hits));
+  }
+}
@@ -14,24 +14,30 @@
 
 package com.googleinterns.zoomtube.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
-import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.googleinterns.zoomtube.data.TranscriptColumns;
 import com.googleinterns.zoomtube.data.TranscriptLine;
+import com.googleinterns.zoomtube.data.TranscriptSegment;
+import com.googleinterns.zoomtube.repository.LectureRepository;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.repository.TranscriptLineRepository;
+import com.googleinterns.zoomtube.tracing.Span;
+import com.googleinterns.zoomtube.tracing.Tracer;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptChunk;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptLanguageCache;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptParser;
 import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptChunkUtil;
 import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.googleinterns.zoomtube.utils.TranscriptSegmentUtil;
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -40,15 +46,57 @@ import javax.servlet.http.HttpServletResponse;
 
 /**
  * Provides the transcript for a given lecture.
+ *
+ * <p>The transcript is in the language given by the {@code lang} parameter, or else the
+ * language chosen when the lecture was created. A language that hasn't been stored yet is
+ * fetched the first time it is requested, if the video has a transcript in it. The languages
+ * of each video are read from the {@link TranscriptLanguageCache}, so requests for other
+ * languages don't reach the Timedtext API.
+ *
+ * <p>The transcript is made of its lines, or of the segments they merge into if the
+ * {@code granularity} parameter is {@code segments}. A transcript stored before it had
+ * segments is made of its lines either way.
+ *
+ * <p>The transcript is an array of objects, or {@link TranscriptColumns} if the
+ * {@code format} parameter is {@code columns} or, without the parameter, if the
+ * {@code Accept} header includes {@link #MEDIA_TYPE_COLUMNS}.
  */
 public class TranscriptServlet extends HttpServlet {
-  private DatastoreService datastore;
+  private LectureRepository lectures;
+  private TranscriptLineRepository transcriptLines;
+  private TranscriptParser transcriptParser;
+  private TranscriptLanguageCache transcriptLanguageCache;
   @VisibleForTesting static final String PARAM_ID = "id";
+  @VisibleForTesting static final String PARAM_LANGUAGE = "lang";
+  @VisibleForTesting static final String PARAM_GRANULARITY = "granularity";
+  @VisibleForTesting static final String GRANULARITY_LINES = "lines";
+  @VisibleForTesting static final String GRANULARITY_SEGMENTS = "segments";
+  @VisibleForTesting static final String PARAM_FORMAT = "format";
+  @VisibleForTesting static final String FORMAT_OBJECTS = "objects";
+  @VisibleForTesting static final String FORMAT_COLUMNS = "columns";
+  @VisibleForTesting
+  static final String MEDIA_TYPE_COLUMNS = "application/vnd.zoomtube.transcript-columns+json";
   private static final String ERROR_MISSING_ID = "Missing id parameter.";
+  private static final String ERROR_INVALID_GRANULARITY = "Invalid granularity parameter.";
+  private static final String ERROR_INVALID_FORMAT = "Invalid format parameter.";
 
   @Override
   public void init() throws ServletException {
-    datastore = DatastoreServiceFactory.getDatastoreService();
+    Repositories repositories = Repositories.getRepositories();
+    lectures = repositories.lectures();
+    transcriptLines = repositories.transcriptLines();
+    transcriptParser = TranscriptParser.getParser();
+    transcriptLanguageCache = TranscriptLanguageCache.getCache();
+  }
+
+  @VisibleForTesting
+  void setTranscriptParser(TranscriptParser transcriptParser) {
+    this.transcriptParser = transcriptParser;
+  }
+
+  @VisibleForTesting
+  void setTranscriptLanguageCache(TranscriptLanguageCache transcriptLanguageCache) {
+    this.transcriptLanguageCache = transcriptLanguageCache;
   }
 
   @Override
@@ -60,51 +108,215 @@ public class TranscriptServlet extends HttpServlet {
     }
 
     long lectureId = Long.parseLong(request.getParameter(PARAM_ID));
-    PreparedQuery preparedQuery = getLectureTranscriptQuery(lectureId);
-    ImmutableList<TranscriptLine> transcriptLines = getTranscriptLines(preparedQuery);
-    writeTranscriptLines(response, transcriptLines);
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, lectureId);
+    Optional<Entity> lectureEntity = lectures.get(lectureId);
+    Optional<String> language = Optional.ofNullable(request.getParameter(PARAM_LANGUAGE))
+                                    .filter(languageCode -> !languageCode.isEmpty());
+    if (!language.isPresent() && lectureEntity.isPresent()) {
+      language = Optional.ofNullable(
+          (String) lectureEntity.get().getProperty(LectureUtil.TRANSCRIPT_LANGUAGE));
+    }
+
+    boolean segments = GRANULARITY_SEGMENTS.equals(request.getParameter(PARAM_GRANULARITY));
+    boolean columns = acceptsColumns(request);
+    // The same url can be answered in either format.
+    response.setHeader("Vary", "Accept");
+
+    if (writeStoredTranscript(response, lectureKey, language, segments, columns)) {
+      return;
+    }
+    if (language.isPresent() && lectureEntity.isPresent()
+        && fetchTranscript(lectureEntity.get(), language.get())
+        && writeStoredTranscript(response, lectureKey, language, segments, columns)) {
+      return;
+    }
+    writeTranscriptLines(response, ImmutableList.of(), columns);
+  }
+
+  /**
+   * Returns whether to write the transcript as {@link TranscriptColumns}, which the format
+   * parameter decides over the {@code Accept} header.
+   */
+  private static boolean acceptsColumns(HttpServletRequest request) {
+    String format = request.getParameter(PARAM_FORMAT);
+    if (format != null) {
+      return format.equals(FORMAT_COLUMNS);
+    }
+    String accept = request.getHeader("Accept");
+    return accept != null && accept.contains(MEDIA_TYPE_COLUMNS);
   }
 
   private Optional<String> validateGetRequest(HttpServletRequest request) {
     if (request.getParameter(PARAM_ID) == null) {
       return Optional.of(ERROR_MISSING_ID);
     }
+    String granularity = request.getParameter(PARAM_GRANULARITY);
+    if (granularity != null && !granularity.equals(GRANULARITY_LINES)
+        && !granularity.equals(GRANULARITY_SEGMENTS)) {
+      return Optional.of(ERROR_INVALID_GRANULARITY);
+    }
+    String format = request.getParameter(PARAM_FORMAT);
+    if (format != null && !format.equals(FORMAT_OBJECTS) && !format.equals(FORMAT_COLUMNS)) {
+      return Optional.of(ERROR_INVALID_FORMAT);
+    }
     return Optional.empty();
   }
 
   /**
-   * Returns the query for the lecture transcripts based on lecture id indicated in {@code
-   * lectureId}.
+   * Fetches and stores the transcript of {@code lectureEntity} in {@code language}. Returns
+   * false if the video has no transcript in that language.
    */
-  private PreparedQuery getLectureTranscriptQuery(long lectureId) {
-    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, lectureId);
-    Filter lectureFilter =
-        new FilterPredicate(TranscriptLineUtil.LECTURE, FilterOperator.EQUAL, lectureKey);
+  private boolean fetchTranscript(Entity lectureEntity, String language) {
+    String videoId = (String) lectureEntity.getProperty(LectureUtil.VIDEO_ID);
+    try {
+      if (!transcriptLanguageCache.getLanguageCodes(videoId).contains(language)) {
+        return false;
+      }
+      transcriptParser.parseAndStoreAdditionalTranscript(
+          videoId, lectureEntity.getKey(), language);
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes the stored transcript of the lecture with {@code lectureKey} in {@code language}
+   * to {@code response}, or the lines stored without a language if it is empty. Returns false
+   * without writing anything if there is no such transcript.
+   *
+   * <p>A transcript stored in chunks is read from them rather than from line entities.
+   *
+   * @param segments Whether to write the segments of the transcript if it has them, rather
+   *     than its lines.
+   * @param columns Whether to write the transcript as {@link TranscriptColumns}.
+   */
+  private boolean writeStoredTranscript(HttpServletResponse response, Key lectureKey,
+      Optional<String> language, boolean segments, boolean columns) throws IOException {
+    if (segments && language.isPresent()) {
+      List<Entity> segmentsEntities = transcriptLines.getSegments(lectureKey, language.get());
+      if (!segmentsEntities.isEmpty()) {
+        writeTranscriptSegments(response,
+            TranscriptSegmentUtil.createTranscriptSegments(segmentsEntities), columns);
+        return true;
+      }
+    }
+    if (language.isPresent()) {
+      List<Entity> chunkEntities = transcriptLines.getChunks(lectureKey, language.get());
+      if (!chunkEntities.isEmpty()) {
+        writeTranscriptChunks(response, chunkEntities, columns);
+        return true;
+      }
+    }
+    ImmutableList<TranscriptLine> lines =
+        getTranscriptLines(transcriptLines.getLines(lectureKey, language));
+    if (lines.isEmpty()) {
+      return false;
+    }
+    writeTranscriptLines(response, lines, columns);
+    return true;
+  }
 
-    Query query = new Query(TranscriptLineUtil.KIND)
-                      .setFilter(lectureFilter)
-                      .addSort(TranscriptLineUtil.START_TIMESTAMP_MS, SortDirection.ASCENDING);
-    return datastore.prepare(query);
+  /** Returns the lines in {@code chunkEntities} as {@link TranscriptColumns}. */
+  static TranscriptColumns createTranscriptColumns(List<Entity> chunkEntities)
+      throws IOException {
+    // Chunks are already stored column by column, so their lines are copied over directly.
+    TranscriptColumns.Builder columnsBuilder = TranscriptColumns.builder();
+    for (Entity chunkEntity : chunkEntities) {
+      TranscriptChunk chunk = TranscriptChunkUtil.createTranscriptChunk(chunkEntity);
+      for (int line = 0; line < chunk.lineCount(); line++) {
+        columnsBuilder.addLine(chunk.lineId(line), chunk.lineStartMs(line),
+            chunk.lineDurationMs(line), chunk.lineContent(line));
+      }
+    }
+    return columnsBuilder.build();
   }
 
   /**
-   * Returns the transcript lines in {@code preparedQuery}.
+   * Returns the transcript lines in {@code lineEntities}.
    */
-  private ImmutableList<TranscriptLine> getTranscriptLines(PreparedQuery preparedQuery) {
+  private static ImmutableList<TranscriptLine> getTranscriptLines(List<Entity> lineEntities) {
     ImmutableList.Builder<TranscriptLine> lineBuilder = new ImmutableList.Builder<>();
-    for (Entity transcriptLine : preparedQuery.asQueryResultIterable()) {
+    for (Entity transcriptLine : lineEntities) {
       lineBuilder.add(TranscriptLineUtil.createTranscriptLine(transcriptLine));
     }
     return lineBuilder.build();
   }
 
   /**
-   * Writes {@code transcriptLines} as Json to {@code response}.
+   * Writes the lines in {@code chunkEntities} as Json to {@code response}, as columns if
+   * {@code columns} is set. Chunks of objects are decoded one at a time as they are written,
+   * so the whole transcript is never decoded at once.
    */
-  private void writeTranscriptLines(HttpServletResponse response,
-      ImmutableList<TranscriptLine> transcriptLines) throws IOException {
+  private void writeTranscriptChunks(HttpServletResponse response, List<Entity> chunkEntities,
+      boolean columns) throws IOException {
+    if (columns) {
+      writeTranscriptColumns(response, createTranscriptColumns(chunkEntities));
+      return;
+    }
     response.setContentType("application/json");
     Gson gson = new Gson();
-    response.getWriter().println(gson.toJson(transcriptLines));
+    JsonWriter jsonWriter = new JsonWriter(response.getWriter());
+    // Includes decoding the chunks, which is done as they're written.
+    try (Span span = Tracer.startSpan("json.serialize")) {
+      jsonWriter.beginArray();
+      for (Entity chunkEntity : chunkEntities) {
+        for (Entity lineEntity : TranscriptChunkUtil.createLineEntities(chunkEntity)) {
+          TranscriptLine transcriptLine = TranscriptLineUtil.createTranscriptLine(lineEntity);
+          gson.toJson(transcriptLine, transcriptLine.getClass(), jsonWriter);
+        }
+      }
+      jsonWriter.endArray();
+      jsonWriter.flush();
+    }
+    response.getWriter().println();
+  }
+
+  /**
+   * Writes {@code transcriptSegments} as Json to {@code response}, as columns if
+   * {@code columns} is set.
+   */
+  private void writeTranscriptSegments(HttpServletResponse response,
+      ImmutableList<TranscriptSegment> transcriptSegments, boolean columns) throws IOException {
+    if (columns) {
+      TranscriptColumns.Builder columnsBuilder = TranscriptColumns.builder();
+      transcriptSegments.forEach(columnsBuilder::addSegment);
+      writeTranscriptColumns(response, columnsBuilder.build());
+      return;
+    }
+    response.setContentType("application/json");
+    response.getWriter().println(toJson(transcriptSegments));
+  }
+
+  /**
+   * Writes {@code transcriptLines} as Json to {@code response}, as columns if {@code columns}
+   * is set.
+   */
+  private void writeTranscriptLines(HttpServletResponse response,
+      ImmutableList<TranscriptLine> transcriptLines, boolean columns) throws IOException {
+    if (columns) {
+      TranscriptColumns.Builder columnsBuilder = TranscriptColumns.builder();
+      transcriptLines.forEach(columnsBuilder::addLine);
+      writeTranscriptColumns(response, columnsBuilder.build());
+      return;
+    }
+    response.setContentType("application/json");
+    response.getWriter().println(toJson(transcriptLines));
+  }
+
+  /**
+   * Writes {@code transcriptColumns} as Json to {@code response}.
+   */
+  private void writeTranscriptColumns(HttpServletResponse response,
+      TranscriptColumns transcriptColumns) throws IOException {
+    response.setContentType(MEDIA_TYPE_COLUMNS);
+    response.getWriter().println(toJson(transcriptColumns));
+  }
+
+  private static String toJson(Object transcript) {
+    try (Span span = Tracer.startSpan("json.serialize")) {
+      Gson gson = new Gson();
+      return gson.toJson(transcript);
+    }
   }
 }
@@ -0,0 +1,91 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.tracing;
+
+/**
+ * A timed part of a traced request, started by {@link Tracer#startSpan} and ended by
+ * {@link #close}. Spans started on the same thread before it ends are its children.
+ */
+public final class Span implements AutoCloseable {
+  /* Returned when the thread isn't serving a traced request, so that nothing is recorded. */
+  static final Span NOOP = new Span(null, -1, null, "", "", 0);
+
+  private final Trace trace;
+  private final int id;
+  private final Span parent;
+  private final String name;
+  private final String thread;
+  private final long startNanos;
+  private volatile long endNanos = -1;
+
+  Span(Trace trace, int id, Span parent, String name, String thread, long startNanos) {
+    this.trace = trace;
+    this.id = id;
+    this.parent = parent;
+    this.name = name;
+    this.thread = thread;
+    this.startNanos = startNanos;
+  }
+
+  /** Ends the span, and makes its parent the current span again. */
+  @Override
+  public void close() {
+    if (this == NOOP) {
+      return;
+    }
+    endNanos = System.nanoTime();
+    Tracer.endSpan(this);
+  }
+
+  Trace trace() {
+    return trace;
+  }
+
+  int id() {
+    return id;
+  }
+
+  /** Returns the span this is part of, or null if this is the span of the whole request. */
+  Span parent() {
+    return parent;
+  }
+
+  int parentId() {
+    return parent == null ? -1 : parent.id();
+  }
+
+  String name() {
+    return name;
+  }
+
+  String thread() {
+    return thread;
+  }
+
+  long startNanos() {
+    return startNanos;
+  }
+
+  /** Returns when the span ended, or -1 if it hasn't. */
+  long endNanos() {
+    return endNanos;
+  }
+
+  void setEndNanos(long endNanos) {
+    if (this != NOOP) {
+      this.endNanos = endNanos;
+    }
+  }
+}
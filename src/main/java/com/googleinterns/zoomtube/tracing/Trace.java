@@ -0,0 +1,121 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.tracing;
+
+import com.google.common.collect.ImmutableList;
+import com.googleinterns.zoomtube.data.RequestTrace;
+import com.googleinterns.zoomtube.data.TraceSpan;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The spans of one request. Spans can be added from any thread that the request's work was
+ * handed to with {@link Tracer#propagate}.
+ */
+final class Trace {
+  /* Bounds the memory held by a request that makes a call per line or per entity. */
+  private static final int MAX_SPANS = 1000;
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  private final String requestId;
+  private final long startTimeMs;
+  private final Span root;
+  private final List<Span> spans = new ArrayList<>();
+  private int droppedSpanCount;
+
+  Trace(String requestId, String name) {
+    this.requestId = requestId;
+    startTimeMs = System.currentTimeMillis();
+    root = new Span(this, 0, null, name, Thread.currentThread().getName(), System.nanoTime());
+    spans.add(root);
+  }
+
+  String requestId() {
+    return requestId;
+  }
+
+  Span root() {
+    return root;
+  }
+
+  /**
+   * Returns a new span named {@code name} under {@code parent}, or {@link Span#NOOP} if the
+   * request already has too many.
+   */
+  synchronized Span addSpan(Span parent, String name, long startNanos) {
+    if (spans.size() >= MAX_SPANS) {
+      droppedSpanCount++;
+      return Span.NOOP;
+    }
+    Span span = new Span(
+        this, spans.size(), parent, name, Thread.currentThread().getName(), startNanos);
+    spans.add(span);
+    return span;
+  }
+
+  /** Returns how long the request took, or has taken so far, in milliseconds. */
+  double durationMs() {
+    long endNanos = root.endNanos() < 0 ? System.nanoTime() : root.endNanos();
+    return (endNanos - root.startNanos()) / NANOS_PER_MILLI;
+  }
+
+  synchronized RequestTrace toRequestTrace() {
+    Map<Integer, List<Span>> children = new HashMap<>();
+    for (Span span : spans) {
+      children.computeIfAbsent(span.parentId(), parentId -> new ArrayList<>()).add(span);
+    }
+    return RequestTrace.create(
+        requestId, startTimeMs, durationMs(), droppedSpanCount, toTraceSpan(root, children));
+  }
+
+  private TraceSpan toTraceSpan(Span span, Map<Integer, List<Span>> children) {
+    ImmutableList.Builder<TraceSpan> childSpans = ImmutableList.builder();
+    for (Span child : children.getOrDefault(span.id(), ImmutableList.of())) {
+      childSpans.add(toTraceSpan(child, children));
+    }
+    double durationMs =
+        span.endNanos() < 0 ? -1 : (span.endNanos() - span.startNanos()) / NANOS_PER_MILLI;
+    return TraceSpan.create(span.name(), (span.startNanos() - root.startNanos()) / NANOS_PER_MILLI,
+        durationMs, span.thread(), childSpans.build());
+  }
+
+  /** Returns the spans as an indented tree, one per line, for the log. */
+  String formatTree() {
+    RequestTrace requestTrace = toRequestTrace();
+    StringBuilder tree = new StringBuilder();
+    tree.append(String.format(
+        Locale.ROOT, "Request %s took %.1f ms", requestId, requestTrace.durationMs()));
+    if (requestTrace.droppedSpanCount() > 0) {
+      tree.append(String.format(" (%d spans dropped)", requestTrace.droppedSpanCount()));
+    }
+    appendSpan(tree, requestTrace.root(), 1);
+    return tree.toString();
+  }
+
+  private static void appendSpan(StringBuilder tree, TraceSpan span, int depth) {
+    tree.append('\n');
+    for (int indent = 0; indent < depth; indent++) {
+      tree.append("  ");
+    }
+    tree.append(String.format(Locale.ROOT, "%s  +%.1f ms  %.1f ms  [%s]", span.name(),
+        span.startMs(), span.durationMs(), span.thread()));
+    for (TraceSpan child : span.children()) {
+      appendSpan(tree, child, depth + 1);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.tracing;
+
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+/**
+ * Records spans for the request being served on the current thread, which
+ * {@link TracingFilter} traces. On a thread that isn't serving a traced request, starting a
+ * span does nothing.
+ *
+ * <pre>
+ * try (Span span = Tracer.startSpan("xml.parse")) {
+ *   ...
+ * }
+ * </pre>
+ */
+public final class Tracer {
+  private static final ThreadLocal<Span> currentSpan = new ThreadLocal<>();
+
+  /** Starts a span named {@code name} under the current one, and makes it current. */
+  public static Span startSpan(String name) {
+    Span parent = currentSpan.get();
+    if (parent == null) {
+      return Span.NOOP;
+    }
+    Span span = parent.trace().addSpan(parent, name, System.nanoTime());
+    if (span != Span.NOOP) {
+      currentSpan.set(span);
+    }
+    return span;
+  }
+
+  /**
+   * Records a span named {@code name} under the current one, which has already ended. Saves a
+   * call that times itself from starting a span too.
+   */
+  public static void recordSpan(String name, long startNanos, long endNanos) {
+    Span parent = currentSpan.get();
+    if (parent == null) {
+      return;
+    }
+    parent.trace().addSpan(parent, name, startNanos).setEndNanos(endNanos);
+  }
+
+  /** Returns the id of the request being served on the current thread, if it's traced. */
+  public static Optional<String> currentRequestId() {
+    Span span = currentSpan.get();
+    return span == null ? Optional.empty() : Optional.of(span.trace().requestId());
+  }
+
+  /**
+   * Returns {@code task} made to record its spans under the current span, for running on
+   * another thread.
+   */
+  public static <T> Callable<T> propagate(Callable<T> task) {
+    Span parent = currentSpan.get();
+    if (parent == null) {
+      return task;
+    }
+    return () -> {
+      Span previous = currentSpan.get();
+      currentSpan.set(parent);
+      try {
+        return task.call();
+      } finally {
+        restore(previous);
+      }
+    };
+  }
+
+  /** Starts tracing a request on the current thread, and returns the span of the request. */
+  static Span startTrace(String requestId, String name) {
+    Span root = new Trace(requestId, name).root();
+    currentSpan.set(root);
+    return root;
+  }
+
+  static void endSpan(Span span) {
+    if (currentSpan.get() == span) {
+      restore(span.parent());
+    }
+  }
+
+  private static void restore(Span span) {
+    if (span == null) {
+      currentSpan.remove();
+    } else {
+      currentSpan.set(span);
+    }
+  }
+
+  private Tracer() {}
+}
@@ -0,0 +1,117 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.tracing;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.googleinterns.zoomtube.data.RequestTrace;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Traces every request, giving it an id that is sent back in the {@value #HEADER_REQUEST_ID}
+ * header. The most recent traces are kept in memory for {@code /traces}, and the whole span
+ * tree of a request slower than {@code slow-request-ms} is logged.
+ *
+ * <p>On App Engine, the request id is the id of the Cloud Trace the request belongs to, so
+ * the log and the trace can be found from one another.
+ */
+public class TracingFilter implements Filter {
+  @VisibleForTesting static final String PARAM_SLOW_REQUEST_MS = "slow-request-ms";
+  @VisibleForTesting static final long DEFAULT_SLOW_REQUEST_MS = 1000;
+  @VisibleForTesting static final String HEADER_REQUEST_ID = "X-Request-Id";
+  private static final String HEADER_CLOUD_TRACE_CONTEXT = "X-Cloud-Trace-Context";
+  @VisibleForTesting static final int RECENT_TRACE_COUNT = 100;
+
+  private static final Logger logger = Logger.getLogger(TracingFilter.class.getName());
+  /* Shared by every instance of the filter. The oldest trace is dropped when it's full. */
+  private static final Deque<Trace> recentTraces = new ArrayDeque<>(RECENT_TRACE_COUNT);
+
+  private long slowRequestMs = DEFAULT_SLOW_REQUEST_MS;
+
+  @Override
+  public void init(FilterConfig filterConfig) {
+    String slowRequest = filterConfig.getInitParameter(PARAM_SLOW_REQUEST_MS);
+    if (slowRequest != null) {
+      slowRequestMs = Long.parseLong(slowRequest);
+    }
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+      chain.doFilter(request, response);
+      return;
+    }
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    String requestId = getRequestId(httpRequest);
+    ((HttpServletResponse) response).setHeader(HEADER_REQUEST_ID, requestId);
+    Span root =
+        Tracer.startTrace(requestId, httpRequest.getMethod() + " " + httpRequest.getRequestURI());
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      root.close();
+      Trace trace = root.trace();
+      addRecentTrace(trace);
+      if (trace.durationMs() >= slowRequestMs) {
+        logger.warning(trace.formatTree());
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** Returns the traces of the most recent requests on this instance, newest first. */
+  public static ImmutableList<RequestTrace> recentTraces() {
+    ImmutableList<Trace> traces;
+    synchronized (recentTraces) {
+      traces = ImmutableList.copyOf(recentTraces);
+    }
+    return traces.stream().map(Trace::toRequestTrace).collect(ImmutableList.toImmutableList());
+  }
+
+  private static void addRecentTrace(Trace trace) {
+    synchronized (recentTraces) {
+      if (recentTraces.size() == RECENT_TRACE_COUNT) {
+        recentTraces.removeLast();
+      }
+      recentTraces.addFirst(trace);
+    }
+  }
+
+  /** Returns the Cloud Trace id of {@code request}, or else a new random id. */
+  private static String getRequestId(HttpServletRequest request) {
+    // The header is "TRACE_ID/SPAN_ID;o=TRACE_TRUE".
+    String traceContext = request.getHeader(HEADER_CLOUD_TRACE_CONTEXT);
+    if (traceContext != null && traceContext.matches("[0-9a-fA-F]+(/.*)?")) {
+      return traceContext.split("/", 2)[0];
+    }
+    return String.format("%016x", ThreadLocalRandom.current().nextLong());
+  }
+}
@@ -0,0 +1,131 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.transcriptParser;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.googleinterns.zoomtube.http.ResilientHttpClient;
+import com.googleinterns.zoomtube.tracing.Span;
+import com.googleinterns.zoomtube.tracing.Tracer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.http.client.utils.URIBuilder;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Fetches transcripts and transcript language lists as XML from the Google Video Timedtext
+ * API.
+ *
+ * <p>Requests go through a {@link ResilientHttpClient} shared by every instance, so they
+ * reuse connections and all back off together while the API is unhealthy.
+ */
+public final class TimedTextClient {
+  /** Transcripts are generated using the Google Video Timedtext API. */
+  public static final String API_URL = "http://video.google.com/timedtext";
+  private static final String API_PARAM_LANG = "lang";
+  private static final String API_PARAM_VIDEO = "v";
+  private static final String API_PARAM_TYPE = "type";
+  private static final String API_TYPE_LIST = "list";
+
+  private static final ResilientHttpClient defaultHttpClient =
+      ResilientHttpClient.builder().build();
+
+  private final String apiUrl;
+  private final ResilientHttpClient httpClient;
+
+  /**
+   * Creates a {@code TimedTextClient} that fetches from {@code apiUrl} instead of the
+   * Timedtext API, such as a local fake server.
+   */
+  public TimedTextClient(String apiUrl) {
+    this(apiUrl, defaultHttpClient);
+  }
+
+  @VisibleForTesting
+  public TimedTextClient(String apiUrl, ResilientHttpClient httpClient) {
+    this.apiUrl = apiUrl;
+    this.httpClient = httpClient;
+  }
+
+  /**
+   * Returns the {@code TimedTextClient} for the Timedtext API, creating it if there isn't
+   * one yet.
+   */
+  public static TimedTextClient getClient() {
+    return UniqueClient.INSTANCE;
+  }
+
+  private static final class UniqueClient {
+    static final TimedTextClient INSTANCE = new TimedTextClient(API_URL);
+  }
+
+  /**
+   * Returns the transcript of {@code videoId} in {@code language}.
+   *
+   * @throws IOException if there is no such transcript or it couldn't be fetched.
+   */
+  public Document fetchTranscript(String videoId, String language) throws IOException {
+    try {
+      URIBuilder uriBuilder = new URIBuilder(apiUrl);
+      uriBuilder.addParameter(API_PARAM_LANG, language);
+      uriBuilder.addParameter(API_PARAM_VIDEO, videoId);
+      return fetchXmlDocument(uriBuilder.build());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Returns the list of transcript languages available for {@code videoId}.
+   *
+   * @throws IOException if the list couldn't be fetched.
+   */
+  public Document fetchTranscriptLanguages(String videoId) throws IOException {
+    try {
+      URIBuilder uriBuilder = new URIBuilder(apiUrl);
+      uriBuilder.addParameter(API_PARAM_TYPE, API_TYPE_LIST);
+      uriBuilder.addParameter(API_PARAM_VIDEO, videoId);
+      return fetchXmlDocument(uriBuilder.build());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Returns a Document for the XML at {@code uri}.
+   *
+   * @throws IOException if there is an error fetching or parsing the XML.
+   */
+  private Document fetchXmlDocument(URI uri) throws IOException {
+    byte[] xml;
+    try (Span span = Tracer.startSpan("timedtext.fetch")) {
+      xml = httpClient.get(uri);
+    }
+    try (Span span = Tracer.startSpan("xml.parse")) {
+      DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      Document document = documentBuilder.parse(new ByteArrayInputStream(xml));
+      document.getDocumentElement().normalize();
+      return document;
+    } catch (ParserConfigurationException | SAXException e) {
+      // The API responds with an empty body when there is no transcript in a language.
+      throw new IOException(e);
+    }
+  }
+}
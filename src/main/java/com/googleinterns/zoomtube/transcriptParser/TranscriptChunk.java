@@ -0,0 +1,172 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.transcriptParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The transcript lines that start within a fixed span of a video, packed so they can be
+ * stored as a single compressed blob instead of an entity per line.
+ *
+ * <p>Lines are stored column by column: every id, then every start as a delta from the one
+ * before, then every duration, then every content. Similar values end up next to each other,
+ * which compresses better than line by line.
+ */
+public final class TranscriptChunk {
+  /** Increment when the serialized format changes. */
+  private static final int FORMAT_VERSION = 1;
+
+  private final long[] lineIds;
+  private final long[] lineStartsMs;
+  private final long[] lineDurationsMs;
+  private final String[] lineContents;
+
+  private TranscriptChunk(
+      long[] lineIds, long[] lineStartsMs, long[] lineDurationsMs, String[] lineContents) {
+    this.lineIds = lineIds;
+    this.lineStartsMs = lineStartsMs;
+    this.lineDurationsMs = lineDurationsMs;
+    this.lineContents = lineContents;
+  }
+
+  /** Returns a builder that keeps lines in the order they are added. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int lineCount() {
+    return lineIds.length;
+  }
+
+  /** Returns the datastore id of the line at {@code lineIndex}. */
+  public long lineId(int lineIndex) {
+    return lineIds[lineIndex];
+  }
+
+  public long lineStartMs(int lineIndex) {
+    return lineStartsMs[lineIndex];
+  }
+
+  public long lineDurationMs(int lineIndex) {
+    return lineDurationsMs[lineIndex];
+  }
+
+  public String lineContent(int lineIndex) {
+    return lineContents[lineIndex];
+  }
+
+  /** Returns this chunk serialized and compressed, for storing in datastore. */
+  public byte[] toBytes() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+      output.writeInt(FORMAT_VERSION);
+      output.writeInt(lineCount());
+      for (long lineId : lineIds) {
+        output.writeLong(lineId);
+      }
+      long previousStartMs = 0;
+      for (long lineStartMs : lineStartsMs) {
+        output.writeLong(lineStartMs - previousStartMs);
+        previousStartMs = lineStartMs;
+      }
+      for (long lineDurationMs : lineDurationsMs) {
+        output.writeLong(lineDurationMs);
+      }
+      for (String lineContent : lineContents) {
+        output.writeUTF(lineContent);
+      }
+    } catch (IOException e) {
+      // Writing to memory doesn't fail.
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Returns the chunk serialized in {@code bytes} by {@link #toBytes()}.
+   *
+   * @throws IOException if {@code bytes} is not a serialized chunk.
+   */
+  public static TranscriptChunk fromBytes(byte[] bytes) throws IOException {
+    try (DataInputStream input = new DataInputStream(
+             new InflaterInputStream(new ByteArrayInputStream(bytes)))) {
+      int version = input.readInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported transcript chunk version " + version);
+      }
+      int lineCount = input.readInt();
+      long[] lineIds = new long[lineCount];
+      long[] lineStartsMs = new long[lineCount];
+      long[] lineDurationsMs = new long[lineCount];
+      String[] lineContents = new String[lineCount];
+      for (int line = 0; line < lineCount; line++) {
+        lineIds[line] = input.readLong();
+      }
+      long previousStartMs = 0;
+      for (int line = 0; line < lineCount; line++) {
+        lineStartsMs[line] = previousStartMs + input.readLong();
+        previousStartMs = lineStartsMs[line];
+      }
+      for (int line = 0; line < lineCount; line++) {
+        lineDurationsMs[line] = input.readLong();
+      }
+      for (int line = 0; line < lineCount; line++) {
+        lineContents[line] = input.readUTF();
+      }
+      return new TranscriptChunk(lineIds, lineStartsMs, lineDurationsMs, lineContents);
+    }
+  }
+
+  /** Collects transcript lines and builds a {@code TranscriptChunk} from them. */
+  public static final class Builder {
+    private final List<Long> lineIds = new ArrayList<>();
+    private final List<Long> lineStartsMs = new ArrayList<>();
+    private final List<Long> lineDurationsMs = new ArrayList<>();
+    private final List<String> lineContents = new ArrayList<>();
+
+    private Builder() {}
+
+    /** Adds the line with datastore id {@code lineId} after every previously added line. */
+    public Builder addLine(long lineId, long startMs, long durationMs, String content) {
+      lineIds.add(lineId);
+      lineStartsMs.add(startMs);
+      lineDurationsMs.add(durationMs);
+      lineContents.add(content);
+      return this;
+    }
+
+    public TranscriptChunk build() {
+      int lineCount = lineIds.size();
+      long[] ids = new long[lineCount];
+      long[] startsMs = new long[lineCount];
+      long[] durationsMs = new long[lineCount];
+      for (int line = 0; line < lineCount; line++) {
+        ids[line] = lineIds.get(line);
+        startsMs[line] = lineStartsMs.get(line);
+        durationsMs[line] = lineDurationsMs.get(line);
+      }
+      return new TranscriptChunk(
+          ids, startsMs, durationsMs, lineContents.toArray(new String[0]));
+    }
+  }
+}
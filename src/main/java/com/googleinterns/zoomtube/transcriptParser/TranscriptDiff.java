@@ -0,0 +1,241 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.transcriptParser;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The edits that turn a stored transcript into a newly fetched one, so that only the lines
+ * that differ are written.
+ *
+ * <p>Lines are compared in order with a Myers diff. Within each run of edits, removed lines
+ * are paired with inserted lines as changes, so a corrected caption keeps the key of the
+ * line it corrects.
+ */
+final class TranscriptDiff {
+  /*
+   * Bounds the memory of the diff, which grows with the square of the number of edits. A
+   * transcript that changed more than this is compared line by line instead.
+   */
+  private static final int MAX_EDITS = 1000;
+
+  /* Fetched line index by stored line index, for lines whose timing or content changed. */
+  final ImmutableMap<Integer, Integer> changedLines;
+  /* Fetched line index by stored line index, for lines that are the same in both. */
+  final ImmutableMap<Integer, Integer> unchangedLines;
+  /* Indexes of fetched lines that aren't stored yet. */
+  final ImmutableList<Integer> insertedLines;
+  /* Indexes of stored lines that are no longer in the transcript. */
+  final ImmutableList<Integer> removedLines;
+
+  private TranscriptDiff(ImmutableMap<Integer, Integer> changedLines,
+      ImmutableMap<Integer, Integer> unchangedLines, ImmutableList<Integer> insertedLines,
+      ImmutableList<Integer> removedLines) {
+    this.changedLines = changedLines;
+    this.unchangedLines = unchangedLines;
+    this.insertedLines = insertedLines;
+    this.removedLines = removedLines;
+  }
+
+  /** The timing and content of a transcript line, which are what make two lines equal. */
+  @AutoValue
+  abstract static class Line {
+    abstract long startMs();
+
+    abstract long durationMs();
+
+    abstract String content();
+
+    static Line create(long startMs, long durationMs, String content) {
+      return new AutoValue_TranscriptDiff_Line(startMs, durationMs, content);
+    }
+  }
+
+  /** Returns the edits from {@code storedLines} to {@code fetchedLines}. */
+  static TranscriptDiff compute(List<Line> storedLines, List<Line> fetchedLines) {
+    List<Edit> edits = myersEdits(storedLines, fetchedLines);
+    if (edits == null) {
+      edits = positionalEdits(storedLines, fetchedLines);
+    }
+
+    ImmutableMap.Builder<Integer, Integer> changedLines = ImmutableMap.builder();
+    ImmutableList.Builder<Integer> insertedLines = ImmutableList.builder();
+    ImmutableMap.Builder<Integer, Integer> unchangedLines = ImmutableMap.builder();
+    ImmutableList.Builder<Integer> removedLines = ImmutableList.builder();
+    List<Integer> runRemoved = new ArrayList<>();
+    List<Integer> runInserted = new ArrayList<>();
+    for (Edit edit : edits) {
+      if (edit.storedIndex >= 0 && edit.fetchedIndex >= 0) {
+        pairRun(runRemoved, runInserted, changedLines, insertedLines, removedLines);
+        unchangedLines.put(edit.storedIndex, edit.fetchedIndex);
+      } else if (edit.storedIndex >= 0) {
+        runRemoved.add(edit.storedIndex);
+      } else {
+        runInserted.add(edit.fetchedIndex);
+      }
+    }
+    pairRun(runRemoved, runInserted, changedLines, insertedLines, removedLines);
+    return new TranscriptDiff(changedLines.build(), unchangedLines.build(),
+        insertedLines.build(), removedLines.build());
+  }
+
+  /** Returns whether there is anything to write. */
+  boolean isEmpty() {
+    return changedLines.isEmpty() && insertedLines.isEmpty() && removedLines.isEmpty();
+  }
+
+  /**
+   * Pairs the lines removed and inserted in a run of edits as changes, and records the rest
+   * as removed or inserted. Empties both lists.
+   */
+  private static void pairRun(List<Integer> runRemoved, List<Integer> runInserted,
+      ImmutableMap.Builder<Integer, Integer> changedLines,
+      ImmutableList.Builder<Integer> insertedLines, ImmutableList.Builder<Integer> removedLines) {
+    int pairs = Math.min(runRemoved.size(), runInserted.size());
+    for (int pair = 0; pair < pairs; pair++) {
+      changedLines.put(runRemoved.get(pair), runInserted.get(pair));
+    }
+    removedLines.addAll(runRemoved.subList(pairs, runRemoved.size()));
+    insertedLines.addAll(runInserted.subList(pairs, runInserted.size()));
+    runRemoved.clear();
+    runInserted.clear();
+  }
+
+  /**
+   * Returns the shortest edit script from {@code stored} to {@code fetched}, or null if it
+   * has more than {@link #MAX_EDITS} edits.
+   *
+   * <p>See "An O(ND) Difference Algorithm and Its Variations", Myers 1986. The furthest
+   * reaching path on each diagonal is kept for every number of edits so the script can be
+   * traced back.
+   */
+  private static List<Edit> myersEdits(List<Line> stored, List<Line> fetched) {
+    int storedCount = stored.size();
+    int fetchedCount = fetched.size();
+    List<int[]> trace = new ArrayList<>();
+    for (int edits = 0; edits <= Math.min(MAX_EDITS, storedCount + fetchedCount); edits++) {
+      // The furthest stored index reached on diagonal k is at furthest[k + edits].
+      int[] furthest = new int[2 * edits + 1];
+      int[] previous = edits == 0 ? null : trace.get(edits - 1);
+      for (int diagonal = -edits; diagonal <= edits; diagonal += 2) {
+        int storedIndex;
+        if (edits == 0) {
+          storedIndex = 0;
+        } else if (isInsertion(previous, edits, diagonal)) {
+          storedIndex = previous[diagonal + 1 + edits - 1];
+        } else {
+          storedIndex = previous[diagonal - 1 + edits - 1] + 1;
+        }
+        int fetchedIndex = storedIndex - diagonal;
+        while (storedIndex < storedCount && fetchedIndex < fetchedCount
+            && stored.get(storedIndex).equals(fetched.get(fetchedIndex))) {
+          storedIndex++;
+          fetchedIndex++;
+        }
+        furthest[diagonal + edits] = storedIndex;
+        if (storedIndex >= storedCount && fetchedIndex >= fetchedCount) {
+          trace.add(furthest);
+          return traceBack(trace, storedCount, fetchedCount);
+        }
+      }
+      trace.add(furthest);
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether the furthest path to {@code diagonal} with {@code edits} edits ends in
+   * an insertion rather than a removal.
+   */
+  private static boolean isInsertion(int[] previous, int edits, int diagonal) {
+    return diagonal == -edits
+        || (diagonal != edits
+            && previous[diagonal - 1 + edits - 1] < previous[diagonal + 1 + edits - 1]);
+  }
+
+  private static List<Edit> traceBack(List<int[]> trace, int storedCount, int fetchedCount) {
+    List<Edit> edits = new ArrayList<>();
+    int storedIndex = storedCount;
+    int fetchedIndex = fetchedCount;
+    for (int editCount = trace.size() - 1; editCount > 0; editCount--) {
+      int[] previous = trace.get(editCount - 1);
+      int diagonal = storedIndex - fetchedIndex;
+      boolean insertion = isInsertion(previous, editCount, diagonal);
+      int previousDiagonal = insertion ? diagonal + 1 : diagonal - 1;
+      int previousStoredIndex = previous[previousDiagonal + editCount - 1];
+      int previousFetchedIndex = previousStoredIndex - previousDiagonal;
+      int snakeStart = insertion ? previousStoredIndex : previousStoredIndex + 1;
+      while (storedIndex > snakeStart) {
+        storedIndex--;
+        fetchedIndex--;
+        edits.add(new Edit(storedIndex, fetchedIndex));
+      }
+      if (insertion) {
+        edits.add(new Edit(-1, previousFetchedIndex));
+      } else {
+        edits.add(new Edit(previousStoredIndex, -1));
+      }
+      storedIndex = previousStoredIndex;
+      fetchedIndex = previousFetchedIndex;
+    }
+    while (storedIndex > 0) {
+      storedIndex--;
+      fetchedIndex--;
+      edits.add(new Edit(storedIndex, fetchedIndex));
+    }
+    Collections.reverse(edits);
+    return edits;
+  }
+
+  /** Returns edits that compare the lines at the same position in both transcripts. */
+  private static List<Edit> positionalEdits(List<Line> stored, List<Line> fetched) {
+    List<Edit> edits = new ArrayList<>();
+    int common = Math.min(stored.size(), fetched.size());
+    for (int line = 0; line < common; line++) {
+      if (stored.get(line).equals(fetched.get(line))) {
+        edits.add(new Edit(line, line));
+      } else {
+        edits.add(new Edit(line, -1));
+        edits.add(new Edit(-1, line));
+      }
+    }
+    for (int line = common; line < stored.size(); line++) {
+      edits.add(new Edit(line, -1));
+    }
+    for (int line = common; line < fetched.size(); line++) {
+      edits.add(new Edit(-1, line));
+    }
+    return edits;
+  }
+
+  /**
+   * A step of an edit script: a line kept from both transcripts, a removed stored line or
+   * an inserted fetched line. Missing indexes are -1.
+   */
+  private static final class Edit {
+    final int storedIndex;
+    final int fetchedIndex;
+
+    Edit(int storedIndex, int fetchedIndex) {
+      this.storedIndex = storedIndex;
+      this.fetchedIndex = fetchedIndex;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.transcriptParser;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.googleinterns.zoomtube.cache.RefreshingCache;
+import com.googleinterns.zoomtube.data.CacheStats;
+import com.googleinterns.zoomtube.data.TranscriptLanguage;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * The transcript languages of each video, fetched from the Timedtext API and cached by video
+ * id for every servlet that needs them.
+ *
+ * <p>Videos without any transcript are cached for a shorter time, in case captions are added
+ * soon after a video is uploaded.
+ */
+public final class TranscriptLanguageCache {
+  private static final String CACHE_NAME = "transcript-languages";
+  private static final Duration CACHE_TIME_TO_LIVE = Duration.ofHours(1);
+  private static final Duration CACHE_NO_LANGUAGES_TIME_TO_LIVE = Duration.ofMinutes(5);
+  /* Languages rarely change, so an expired list is still good enough to use. */
+  private static final Duration CACHE_STALE = Duration.ofDays(1);
+  private static final int CACHE_MAXIMUM_SIZE = 1000;
+
+  /* Attributes for parsing the XML. */
+  private static final String TAG_TRACK = "track";
+  private static final String ATTR_LANG_CODE = "lang_code";
+  private static final String ATTR_NAME = "name";
+  private static final String ATTR_LANG_TRANSLATED = "lang_translated";
+
+  private final TimedTextClient timedTextClient;
+  private final RefreshingCache<String, ImmutableList<TranscriptLanguage>> cache;
+
+  /** Creates a {@code TranscriptLanguageCache} that fetches with {@code timedTextClient}. */
+  @VisibleForTesting
+  public TranscriptLanguageCache(TimedTextClient timedTextClient) {
+    this.timedTextClient = timedTextClient;
+    cache = RefreshingCache.builder(CACHE_NAME, this::fetchTranscriptLanguages)
+                .setTimeToLive(CACHE_TIME_TO_LIVE)
+                .setNegativeTimeToLive(CACHE_NO_LANGUAGES_TIME_TO_LIVE, List::isEmpty)
+                .setStale(CACHE_STALE)
+                .setMaximumSize(CACHE_MAXIMUM_SIZE)
+                .build();
+  }
+
+  /**
+   * Returns the {@code TranscriptLanguageCache} for the Timedtext API, creating it if there
+   * isn't one yet.
+   */
+  public static TranscriptLanguageCache getCache() {
+    return UniqueCache.INSTANCE;
+  }
+
+  private static final class UniqueCache {
+    static final TranscriptLanguageCache INSTANCE =
+        new TranscriptLanguageCache(TimedTextClient.getClient());
+  }
+
+  /**
+   * Returns the languages that {@code videoId} has a transcript in.
+   *
+   * @throws IOException if the languages weren't cached and couldn't be fetched.
+   */
+  public ImmutableList<TranscriptLanguage> getLanguages(String videoId) throws IOException {
+    return cache.get(videoId);
+  }
+
+  /**
+   * Returns the codes of the languages that {@code videoId} has a transcript in.
+   *
+   * @throws IOException if the languages weren't cached and couldn't be fetched.
+   */
+  public ImmutableSet<String> getLanguageCodes(String videoId) throws IOException {
+    ImmutableSet.Builder<String> languageCodes = ImmutableSet.builder();
+    for (TranscriptLanguage transcriptLanguage : getLanguages(videoId)) {
+      languageCodes.add(transcriptLanguage.languageCode());
+    }
+    return languageCodes.build();
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  private ImmutableList<TranscriptLanguage> fetchTranscriptLanguages(String videoId)
+      throws IOException {
+    return parseTranscriptLanguages(timedTextClient.fetchTranscriptLanguages(videoId));
+  }
+
+  /** Returns the available transcript languages parsed from {@code document}. */
+  private static ImmutableList<TranscriptLanguage> parseTranscriptLanguages(Document document) {
+    NodeList transcriptNodes = document.getElementsByTagName(TAG_TRACK);
+    ImmutableList.Builder<TranscriptLanguage> transcriptLanguagesBuilder =
+        new ImmutableList.Builder<>();
+    for (int nodeIndex = 0; nodeIndex < transcriptNodes.getLength(); nodeIndex++) {
+      Element transcriptElement = (Element) transcriptNodes.item(nodeIndex);
+      transcriptLanguagesBuilder.add(createTranscriptLanguageFromElement(transcriptElement));
+    }
+    return transcriptLanguagesBuilder.build();
+  }
+
+  private static TranscriptLanguage createTranscriptLanguageFromElement(
+      Element transcriptLanguageElement) {
+    String languageName = transcriptLanguageElement.getAttribute(ATTR_NAME);
+    String languageCode = transcriptLanguageElement.getAttribute(ATTR_LANG_CODE);
+    String languageNameInEnglish = transcriptLanguageElement.getAttribute(ATTR_LANG_TRANSLATED);
+    return TranscriptLanguage.builder()
+        .setLanguageName(languageName)
+        .setLanguageCode(languageCode)
+        .setLanguageNameInEnglish(languageNameInEnglish)
+        .build();
+  }
+}
@@ -14,70 +14,115 @@
 
 package com.googleinterns.zoomtube.transcriptParser;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.Transaction;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.googleinterns.zoomtube.data.TranscriptResync;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.repository.TranscriptLineRepository;
+import com.googleinterns.zoomtube.search.GlobalTranscriptIndex;
+import com.googleinterns.zoomtube.search.TranscriptIndex;
+import com.googleinterns.zoomtube.search.TranscriptIndexStore;
+import com.googleinterns.zoomtube.tracing.Span;
+import com.googleinterns.zoomtube.tracing.Tracer;
+import com.googleinterns.zoomtube.utils.TranscriptChunkUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
 import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.text.StringEscapeUtils;
-import org.apache.http.client.utils.URIBuilder;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /**
- * Fetches and parses English transcript XML from the Google Video Timedtext API, and
- * stores the lines in datastore.
+ * Fetches and parses transcript XML from the Google Video Timedtext API, and stores the
+ * lines along with the segments they merge into through the {@link TranscriptLineRepository}.
+ *
+ * <p>A lecture can have transcripts in several languages. Its first language is the one
+ * indexed for search.
  */
 public final class TranscriptParser {
-  /** Transcripts are generated using the Google Video Timedtext API. */
-  private static final String API_URL = "http://video.google.com/timedtext";
-  private static final String API_PARAM_LANG = "lang";
-  private static final String API_PARAM_VIDEO = "v";
   private static final long MILLISECONDS_PER_SECOND = 1000;
+  /* Bounds the number of transcripts fetched at once across every request. */
+  private static final int MAX_CONCURRENT_FETCHES = 4;
+  private static final ExecutorService fetchExecutor = Executors.newFixedThreadPool(
+      MAX_CONCURRENT_FETCHES,
+      new ThreadFactoryBuilder().setNameFormat("transcript-fetch-%d").setDaemon(true).build());
 
   public static final String ATTR_START = "start";
   public static final String ATTR_DURATION = "dur";
   public static final String TAG_TEXT = "text";
 
-  private static TranscriptParser uniqueParser;
-  private DatastoreService datastore;
+  private final TimedTextClient timedTextClient;
+  private final TranscriptLineRepository transcriptLines;
+  /* Set by tests while requests may be storing transcripts. */
+  private volatile TranscriptStorage storage;
 
   /**
-   * Creates a {@code TranscriptParser} instance with a datastore.
+   * Creates a {@code TranscriptParser} instance that stores transcripts in the shared
+   * repositories.
    */
   private TranscriptParser() {
-    datastore = DatastoreServiceFactory.getDatastoreService();
+    this(TimedTextClient.getClient());
   }
 
   /**
-   * Returns the {@code TranscriptParser} instance if there is one. Else, creates
-   * a new {@code TranscriptParser} and returns that.
-   *
-   * <p>Ensures that there is only one {@code TranscriptParser} is created.
+   * Creates a {@code TranscriptParser} that fetches transcripts with {@code timedTextClient}.
    */
-  // TODO: Refactor getParser() to use double-checked locking if
-  // synchronization is expensive.
-  public static synchronized TranscriptParser getParser() {
-    if (uniqueParser == null) {
-      uniqueParser = new TranscriptParser();
-    }
-    return uniqueParser;
+  @VisibleForTesting
+  public TranscriptParser(TimedTextClient timedTextClient) {
+    this(timedTextClient, Repositories.getRepositories().transcriptLines());
+  }
+
+  /**
+   * Creates a {@code TranscriptParser} that fetches transcripts with {@code timedTextClient}
+   * and stores them in {@code transcriptLines}.
+   */
+  @VisibleForTesting
+  public TranscriptParser(
+      TimedTextClient timedTextClient, TranscriptLineRepository transcriptLines) {
+    this.timedTextClient = timedTextClient;
+    this.transcriptLines = transcriptLines;
+    storage = TranscriptStorage.fromSystemProperty();
+  }
+
+  /** Sets how transcripts stored from now on are laid out. */
+  @VisibleForTesting
+  public void setStorage(TranscriptStorage storage) {
+    this.storage = storage;
   }
 
   /**
-   * Parses and stores the transcript lines in datastore given its {@code videoId},
+   * Returns the {@code TranscriptParser} instance, creating it the first time it is needed.
+   * Every request after that gets it without taking a lock.
+   */
+  public static TranscriptParser getParser() {
+    return UniqueParser.INSTANCE;
+  }
+
+  /** Holds the unique parser, which the JVM creates once when it is first read. */
+  private static final class UniqueParser {
+    static final TranscriptParser INSTANCE = new TranscriptParser();
+  }
+
+  /**
+   * Parses and stores the transcript lines given its {@code videoId},
    * {@code lectureKey}, and {@code transcriptLanguage}.
    *
    * <p>This method is called from the {@code LectureServlet} upon adding a lecture to
@@ -85,74 +130,432 @@ public final class TranscriptParser {
    */
   public void parseAndStoreTranscript(String videoId, Key lectureKey, String transcriptLanguage)
       throws IOException {
-    URL url = getTranscriptUrlForVideo(videoId, transcriptLanguage);
-    Document document = fetchUrlAsXmlDocument(url);
-    putTranscriptLinesInDatastore(lectureKey, document);
+    parseAndStoreTranscripts(videoId, lectureKey, ImmutableList.of(transcriptLanguage));
   }
 
-  private URL getTranscriptUrlForVideo(String videoId, String transcriptLanguage)
+  /**
+   * Fetches the transcripts in each of {@code transcriptLanguages} concurrently and stores
+   * them under {@code lectureKey}, replacing any already stored in the same language. The
+   * first language is the one indexed for search.
+   *
+   * <p>A language that can't be fetched is skipped so the others are still stored.
+   *
+   * @return The languages that were stored.
+   * @throws IOException if none of the languages could be fetched.
+   */
+  public ImmutableList<String> parseAndStoreTranscripts(
+      String videoId, Key lectureKey, List<String> transcriptLanguages) throws IOException {
+    return storeTranscripts(fetchTranscripts(videoId, lectureKey, transcriptLanguages));
+  }
+
+  /**
+   * Starts fetching the transcripts in each of {@code transcriptLanguages} in the background,
+   * to be stored under {@code lectureKey} by {@link #storeTranscripts}. Fetches for several
+   * lectures can be started before any is stored, so they overlap.
+   */
+  public PendingTranscripts fetchTranscripts(
+      String videoId, Key lectureKey, List<String> transcriptLanguages) {
+    List<Future<Document>> documents = new ArrayList<>();
+    for (String transcriptLanguage : transcriptLanguages) {
+      documents.add(fetchExecutor.submit(
+          Tracer.propagate(() -> timedTextClient.fetchTranscript(videoId, transcriptLanguage))));
+    }
+    return new PendingTranscripts(lectureKey, ImmutableList.copyOf(transcriptLanguages),
+        ImmutableList.copyOf(documents));
+  }
+
+  /**
+   * Waits for the transcripts of {@code pending} to be fetched and stores them like
+   * {@link #parseAndStoreTranscripts}.
+   *
+   * @return The languages that were stored.
+   * @throws IOException if none of the languages could be fetched.
+   */
+  public ImmutableList<String> storeTranscripts(PendingTranscripts pending) throws IOException {
+    // Datastore calls need the request thread, so only the fetching is done in parallel.
+    ImmutableList.Builder<String> storedLanguages = ImmutableList.builder();
+    IOException firstError = null;
+    for (int language = 0; language < pending.languages.size(); language++) {
+      try {
+        Document document;
+        try (Span span = Tracer.startSpan("transcript.fetchWait")) {
+          document = getDocument(pending.documents.get(language));
+        }
+        try (Span span = Tracer.startSpan("transcript.store")) {
+          putTranscript(pending.lectureKey, pending.languages.get(language),
+              document, /* indexForSearch= */ language == 0);
+        }
+        storedLanguages.add(pending.languages.get(language));
+      } catch (IOException e) {
+        if (firstError == null) {
+          firstError = e;
+        }
+      }
+    }
+    ImmutableList<String> stored = storedLanguages.build();
+    if (stored.isEmpty() && firstError != null) {
+      throw firstError;
+    }
+    return stored;
+  }
+
+  /** The transcripts of a lecture that are being fetched, to be stored once they arrive. */
+  public static final class PendingTranscripts {
+    private final Key lectureKey;
+    private final ImmutableList<String> languages;
+    private final ImmutableList<Future<Document>> documents;
+
+    private PendingTranscripts(Key lectureKey, ImmutableList<String> languages,
+        ImmutableList<Future<Document>> documents) {
+      this.lectureKey = lectureKey;
+      this.languages = languages;
+      this.documents = documents;
+    }
+  }
+
+  /**
+   * Parses and stores the transcript in {@code transcriptLanguage} under {@code lectureKey}
+   * without indexing it for search, so a lecture can be shown in another language.
+   */
+  public void parseAndStoreAdditionalTranscript(
+      String videoId, Key lectureKey, String transcriptLanguage) throws IOException {
+    Document document = timedTextClient.fetchTranscript(videoId, transcriptLanguage);
+    putTranscript(lectureKey, transcriptLanguage, document, /* indexForSearch= */ false);
+  }
+
+  /**
+   * Fetches the transcript in {@code transcriptLanguage} again and writes only the lines
+   * that differ from the ones stored under {@code lectureKey}. Unchanged and corrected lines
+   * keep their keys, so comments on them stay attached.
+   *
+   * <p>Lines are written in batches rather than in one transaction, so that a long
+   * transcript isn't limited by the size of a transaction. A transcript stored in chunks only
+   * has the chunks with changed lines written.
+   *
+   * @param indexForSearch Whether {@code transcriptLanguage} is the language indexed for
+   *     search, in which case the index is rebuilt if any line was written.
+   * @param unlabeledLinesInLanguage Whether the lines stored before transcripts had languages
+   *     are in {@code transcriptLanguage}. If no other lines are, those are resynced and given
+   *     the language, rather than left next to a second copy of the transcript.
+   */
+  public TranscriptResync resyncTranscript(String videoId, Key lectureKey,
+      String transcriptLanguage, boolean indexForSearch, boolean unlabeledLinesInLanguage)
       throws IOException {
-    try {
-      URIBuilder urlBuilder = new URIBuilder(API_URL);
-      urlBuilder.addParameter(API_PARAM_LANG, transcriptLanguage);
-      urlBuilder.addParameter(API_PARAM_VIDEO, videoId);
-      return urlBuilder.build().toURL();
-    } catch (URISyntaxException | MalformedURLException e) {
-      throw new IOException(e.getCause());
+    Document document = timedTextClient.fetchTranscript(videoId, transcriptLanguage);
+    List<Entity> fetchedEntities =
+        createTranscriptLinesFromDocument(lectureKey, transcriptLanguage, document);
+    List<Entity> storedChunkEntities = transcriptLines.getChunks(lectureKey, transcriptLanguage);
+    List<Entity> storedEntities = storedChunkEntities.isEmpty()
+        ? getStoredTranscriptLines(lectureKey, transcriptLanguage)
+        : getLinesOfChunks(storedChunkEntities);
+    boolean labelsStoredLines = false;
+    if (storedEntities.isEmpty() && unlabeledLinesInLanguage) {
+      storedEntities = getUnlabeledTranscriptLines(lectureKey);
+      labelsStoredLines = !storedEntities.isEmpty();
+    }
+    // A transcript stays in the storage it is in, and a new one uses the current storage.
+    boolean chunked = !storedChunkEntities.isEmpty()
+        || (storedEntities.isEmpty() && storage == TranscriptStorage.CHUNKS);
+    TranscriptDiff diff =
+        TranscriptDiff.compute(toDiffLines(storedEntities), toDiffLines(fetchedEntities));
+
+    // The entity for each fetched line, which is the stored one when it is kept.
+    Entity[] lineEntities = new Entity[fetchedEntities.size()];
+    List<Entity> writes = new ArrayList<>();
+    for (Map.Entry<Integer, Integer> unchangedLine : diff.unchangedLines.entrySet()) {
+      Entity lineEntity = storedEntities.get(unchangedLine.getKey());
+      if (labelsStoredLines) {
+        lineEntity.setProperty(TranscriptLineUtil.LANGUAGE, transcriptLanguage);
+        writes.add(lineEntity);
+      }
+      lineEntities[unchangedLine.getValue()] = lineEntity;
+    }
+    for (Map.Entry<Integer, Integer> changedLine : diff.changedLines.entrySet()) {
+      Entity lineEntity = storedEntities.get(changedLine.getKey());
+      lineEntity.setPropertiesFrom(fetchedEntities.get(changedLine.getValue()));
+      lineEntities[changedLine.getValue()] = lineEntity;
+      writes.add(lineEntity);
+    }
+    List<Entity> insertedEntities = new ArrayList<>();
+    for (int insertedLine : diff.insertedLines) {
+      insertedEntities.add(fetchedEntities.get(insertedLine));
+    }
+    if (chunked) {
+      insertedEntities = withAllocatedKeys(lectureKey, insertedEntities);
+    }
+    for (int inserted = 0; inserted < insertedEntities.size(); inserted++) {
+      lineEntities[diff.insertedLines.get(inserted)] = insertedEntities.get(inserted);
+      writes.add(insertedEntities.get(inserted));
+    }
+    List<Key> removals = new ArrayList<>();
+    for (int removedLine : diff.removedLines) {
+      removals.add(storedEntities.get(removedLine).getKey());
+    }
+
+    if (chunked) {
+      putChangedChunks(
+          lectureKey, transcriptLanguage, storedChunkEntities, Arrays.asList(lineEntities));
+    } else {
+      putAndDelete(writes, removals);
+    }
+    // Also gives segments to a transcript stored before they were.
+    if (!diff.isEmpty()
+        || transcriptLines.getSegments(lectureKey, transcriptLanguage).isEmpty()) {
+      transcriptLines.putAll(TranscriptSegmenter.createSegmentsEntities(
+          lectureKey, transcriptLanguage, Arrays.asList(lineEntities)));
+    }
+    if (indexForSearch && !diff.isEmpty()) {
+      putTranscriptIndex(lectureKey, Arrays.asList(lineEntities));
+    }
+    return TranscriptResync.create(diff.insertedLines.size(), diff.changedLines.size(),
+        diff.removedLines.size(), diff.unchangedLines.size());
+  }
+
+  /** Puts {@code writes} and then deletes {@code removals}. */
+  private void putAndDelete(List<Entity> writes, List<Key> removals) {
+    // New lines are written before old ones are removed, so the transcript is never missing
+    // a line while it is being updated.
+    transcriptLines.putAll(writes);
+    transcriptLines.deleteAll(removals);
+  }
+
+  /**
+   * Replaces {@code storedChunkEntities} with the chunks of {@code lineEntities}, only
+   * writing the chunks whose lines changed.
+   */
+  private void putChangedChunks(Key lectureKey, String language,
+      List<Entity> storedChunkEntities, List<Entity> lineEntities) {
+    Map<Key, Object> storedData = new HashMap<>();
+    for (Entity chunkEntity : storedChunkEntities) {
+      storedData.put(chunkEntity.getKey(), chunkEntity.getProperty(TranscriptChunkUtil.DATA));
+    }
+    List<Entity> writes = new ArrayList<>();
+    for (Entity chunkEntity :
+        TranscriptChunkUtil.createEntities(lectureKey, language, lineEntities)) {
+      Object data = storedData.remove(chunkEntity.getKey());
+      if (!chunkEntity.getProperty(TranscriptChunkUtil.DATA).equals(data)) {
+        writes.add(chunkEntity);
+      }
+    }
+    putAndDelete(writes, new ArrayList<>(storedData.keySet()));
+  }
+
+  /**
+   * Moves the transcript lines stored as an entity each under {@code lectureKey} into
+   * chunks. The lines keep their ids, so comments and search results still refer to them.
+   * Their segments are stored again, in case they were stored before segments were.
+   *
+   * <p>A lecture with several languages is moved one language at a time. Each language's
+   * chunks are written before its lines are deleted, so its transcript is never missing.
+   * Lines stored before transcripts had languages are left as they are.
+   *
+   * @return The number of lines moved.
+   */
+  public int moveTranscriptLinesToChunks(Key lectureKey) {
+    int movedCount = 0;
+    for (Map.Entry<String, List<Entity>> lines : getLabeledLinesByLanguage(lectureKey)) {
+      List<Entity> lineEntities = lines.getValue();
+      List<Entity> entities = new ArrayList<>(
+          TranscriptChunkUtil.createEntities(lectureKey, lines.getKey(), lineEntities));
+      entities.addAll(
+          TranscriptSegmenter.createSegmentsEntities(lectureKey, lines.getKey(), lineEntities));
+      transcriptLines.replaceTranscript(lectureKey, lines.getKey(), entities);
+      movedCount += lineEntities.size();
     }
+    return movedCount;
   }
 
   /**
-   * Returns a Document for the XML at {@code url}.
+   * Stores the segments of each transcript stored as lines under {@code lectureKey}, and the
+   * search index of the one in {@code searchedLanguage} if it is present, such as after the
+   * lines were imported without them.
    *
-   * @param url Indicates the url to fetch and parse.
-   * @throws IOException if there is an error parsing the transcript.
+   * <p>Lines stored before transcripts had languages are left as they are.
    */
-  // TODO: Move this to a Utils method.
-  public static Document fetchUrlAsXmlDocument(URL url) throws IOException {
+  public void putSegmentsAndIndex(Key lectureKey, Optional<String> searchedLanguage) {
+    for (Map.Entry<String, List<Entity>> lines : getLabeledLinesByLanguage(lectureKey)) {
+      List<Entity> lineEntities = lines.getValue();
+      transcriptLines.putAll(
+          TranscriptSegmenter.createSegmentsEntities(lectureKey, lines.getKey(), lineEntities));
+      if (lines.getKey().equals(searchedLanguage.orElse(null))) {
+        putTranscriptIndex(lectureKey, lineEntities);
+      }
+    }
+  }
+
+  /**
+   * Returns the transcript lines stored as an entity each under {@code lectureKey} that have
+   * a language, by language, in the order they are shown.
+   */
+  private Set<Map.Entry<String, List<Entity>>> getLabeledLinesByLanguage(Key lectureKey) {
+    Map<String, List<Entity>> linesByLanguage = new HashMap<>();
+    for (Entity lineEntity : transcriptLines.getAllLines(lectureKey)) {
+      String language = (String) lineEntity.getProperty(TranscriptLineUtil.LANGUAGE);
+      if (language != null) {
+        linesByLanguage.computeIfAbsent(language, key -> new ArrayList<>()).add(lineEntity);
+      }
+    }
+    linesByLanguage.values().forEach(TranscriptParser::sortByStart);
+    return linesByLanguage.entrySet();
+  }
+
+  /**
+   * Returns the transcript lines in {@code language} stored under {@code lectureKey}, in the
+   * order they are shown.
+   */
+  private List<Entity> getStoredTranscriptLines(Key lectureKey, String language) {
+    // Sorted again so that lines starting together are in the order of their ids.
+    List<Entity> lineEntities = transcriptLines.getLines(lectureKey, Optional.of(language));
+    return sortByStart(new ArrayList<>(lineEntities));
+  }
+
+  /**
+   * Returns the transcript lines stored under {@code lectureKey} before transcripts had
+   * languages, in the order they are shown.
+   */
+  private List<Entity> getUnlabeledTranscriptLines(Key lectureKey) {
+    return transcriptLines.getLines(lectureKey, Optional.empty());
+  }
+
+  /** Returns the lines of {@code chunkEntities} in the order they are shown. */
+  private static List<Entity> getLinesOfChunks(List<Entity> chunkEntities) throws IOException {
+    List<Entity> lineEntities = new ArrayList<>();
+    for (Entity chunkEntity : chunkEntities) {
+      lineEntities.addAll(TranscriptChunkUtil.createLineEntities(chunkEntity));
+    }
+    return sortByStart(lineEntities);
+  }
+
+  /** Sorts {@code lineEntities} by start time, then by id, and returns them. */
+  private static List<Entity> sortByStart(List<Entity> lineEntities) {
+    lineEntities.sort(
+        Comparator
+            .comparingLong(
+                (Entity lineEntity)
+                    -> (long) lineEntity.getProperty(TranscriptLineUtil.START_TIMESTAMP_MS))
+            .thenComparingLong(lineEntity -> lineEntity.getKey().getId()));
+    return lineEntities;
+  }
+
+  /**
+   * Returns copies of {@code lineEntities} with newly allocated keys. Chunks and search
+   * indexes store the ids of lines, which aren't otherwise given keys until they are put.
+   */
+  private List<Entity> withAllocatedKeys(Key lectureKey, List<Entity> lineEntities) {
+    if (lineEntities.isEmpty()) {
+      return lineEntities;
+    }
+    Iterator<Key> lineKeys =
+        transcriptLines.allocateLineKeys(lectureKey, lineEntities.size()).iterator();
+    List<Entity> keyedLineEntities = new ArrayList<>();
+    for (Entity lineEntity : lineEntities) {
+      Entity keyedLineEntity = new Entity(lineKeys.next());
+      keyedLineEntity.setPropertiesFrom(lineEntity);
+      keyedLineEntities.add(keyedLineEntity);
+    }
+    return keyedLineEntities;
+  }
+
+  private static List<TranscriptDiff.Line> toDiffLines(List<Entity> lineEntities) {
+    List<TranscriptDiff.Line> lines = new ArrayList<>();
+    for (Entity lineEntity : lineEntities) {
+      lines.add(TranscriptDiff.Line.create(
+          (long) lineEntity.getProperty(TranscriptLineUtil.START_TIMESTAMP_MS),
+          (long) lineEntity.getProperty(TranscriptLineUtil.DURATION_MS),
+          (String) lineEntity.getProperty(TranscriptLineUtil.CONTENT)));
+    }
+    return lines;
+  }
+
+  /** Replaces the search index of {@code lectureKey} with one of {@code lineEntities}. */
+  private void putTranscriptIndex(Key lectureKey, List<Entity> lineEntities) {
+    TranscriptIndex index = createTranscriptIndex(lineEntities);
+    transcriptLines.putAll(TranscriptIndexUtil.createEntities(lectureKey, index));
+    TranscriptIndexStore.evict(lectureKey);
+    GlobalTranscriptIndex.getIndex().addLecture(lectureKey.getId(), index);
+  }
+
+  /** Returns a search index of {@code lineEntities}, which must have complete keys. */
+  private static TranscriptIndex createTranscriptIndex(List<Entity> lineEntities) {
+    TranscriptIndex.Builder indexBuilder = TranscriptIndex.builder();
+    for (Entity lineEntity : lineEntities) {
+      indexBuilder.addLine(lineEntity.getKey().getId(),
+          (long) lineEntity.getProperty(TranscriptLineUtil.START_TIMESTAMP_MS),
+          (long) lineEntity.getProperty(TranscriptLineUtil.DURATION_MS),
+          (String) lineEntity.getProperty(TranscriptLineUtil.CONTENT));
+    }
+    return indexBuilder.build();
+  }
+
+  private static Document getDocument(Future<Document> document) throws IOException {
     try {
-      DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-      Document document = documentBuilder.parse(url.openStream());
-      document.getDocumentElement().normalize();
-      return document;
-    } catch (ParserConfigurationException | SAXException e) {
+      return document.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
       throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
     }
   }
 
   /**
-   * Puts each transcript line from {@code document} in datastore as its own entity.
+   * Stores each transcript line from {@code document}, as its own entity or in chunks
+   * depending on the storage, replacing the transcript already stored in {@code language}.
+   * The segments the lines merge into are stored with them.
    *
    * @param lectureKey Indicates the lecture key to group the transcript lines under.
+   * @param language The language of the transcript lines.
    * @param document The XML file containing the transcript lines.
+   * @param indexForSearch Whether to also store a search index of the lines.
    */
-  private void putTranscriptLinesInDatastore(Key lectureKey, Document document) {
-    Transaction transaction = datastore.beginTransaction();
-
-    try {
-      NodeList transcriptNodes = document.getElementsByTagName(TAG_TEXT);
-      for (int nodeIndex = 0; nodeIndex < transcriptNodes.getLength(); nodeIndex++) {
-        Element transcriptElement = (Element) transcriptNodes.item(nodeIndex);
-        Entity transcriptLineEntity =
-            createTranscriptLineFromElement(lectureKey, transcriptElement);
-        datastore.put(transaction, transcriptLineEntity);
-      }
+  private void putTranscript(
+      Key lectureKey, String language, Document document, boolean indexForSearch) {
+    // The keys are allocated first, since the chunks and the index refer to them.
+    List<Entity> lineEntities = withAllocatedKeys(
+        lectureKey, createTranscriptLinesFromDocument(lectureKey, language, document));
+    List<Entity> entities = new ArrayList<>();
+    if (storage == TranscriptStorage.CHUNKS) {
+      entities.addAll(TranscriptChunkUtil.createEntities(lectureKey, language, lineEntities));
+    } else {
+      entities.addAll(lineEntities);
+    }
+    entities.addAll(TranscriptSegmenter.createSegmentsEntities(lectureKey, language, lineEntities));
+    if (!indexForSearch) {
+      transcriptLines.replaceTranscript(lectureKey, language, entities);
+      return;
+    }
+    // The index is written after the new lines and before the old ones are deleted, so it
+    // never refers to lines that are gone.
+    TranscriptIndex index = createTranscriptIndex(lineEntities);
+    entities.addAll(TranscriptIndexUtil.createEntities(lectureKey, index));
+    transcriptLines.replaceTranscript(lectureKey, language, entities);
+    TranscriptIndexStore.evict(lectureKey);
+    GlobalTranscriptIndex.getIndex().addLecture(lectureKey.getId(), index);
+  }
 
-      transaction.commit();
-    } finally {
-      // If the transaction was interruped, we should make sure it is rolled back
-      // to avoid a partial datastore commit.
-      if (transaction.isActive()) {
-        transaction.rollback();
-      }
+  /**
+   * Returns an entity, without a complete key, for each transcript line in {@code document}.
+   */
+  private List<Entity> createTranscriptLinesFromDocument(
+      Key lectureKey, String language, Document document) {
+    List<Entity> lineEntities = new ArrayList<>();
+    NodeList transcriptNodes = document.getElementsByTagName(TAG_TEXT);
+    for (int nodeIndex = 0; nodeIndex < transcriptNodes.getLength(); nodeIndex++) {
+      Element transcriptElement = (Element) transcriptNodes.item(nodeIndex);
+      lineEntities.add(createTranscriptLineFromElement(lectureKey, language, transcriptElement));
     }
+    return lineEntities;
   }
 
   /**
    * Creates a Transcript Line entity from the XML {@code transcriptLineElement} as part of the
-   * transcript for the lecture referenced by {@code lectureKey}.
+   * transcript in {@code language} for the lecture referenced by {@code lectureKey}.
    */
-  private Entity createTranscriptLineFromElement(Key lectureKey, Element transcriptLineElement) {
+  private Entity createTranscriptLineFromElement(
+      Key lectureKey, String language, Element transcriptLineElement) {
     String lineContent = cleanupTranscriptLineContent(transcriptLineElement.getTextContent());
 
     float lineStartSeconds = Float.parseFloat(transcriptLineElement.getAttribute(ATTR_START));
@@ -164,7 +567,7 @@ public final class TranscriptParser {
     long lineEndMs = lineStartMs + lineDurationMs;
 
     return TranscriptLineUtil.createEntity(
-        lectureKey, lineContent, lineStartMs, lineDurationMs, lineEndMs);
+        lectureKey, language, lineContent, lineStartMs, lineDurationMs, lineEndMs);
   }
 
   /**
@@ -0,0 +1,186 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.transcriptParser;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Utf8;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.googleinterns.zoomtube.utils.TranscriptSegmentUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Merges the short fragments of a transcript into segments that read as sentences or
+ * paragraphs.
+ *
+ * <p>A segment ends at a pause in speech, or at the end of a sentence once it is long enough
+ * to read on its own. Captions without punctuation, which are usually auto-generated, are
+ * still split at pauses and at a maximum length.
+ */
+final class TranscriptSegmenter {
+  /* A gap of at least this long between lines is treated as a pause. */
+  @VisibleForTesting static final long PAUSE_MS = 2000;
+  /* A sentence ends the segment only once the segment is at least this long. */
+  @VisibleForTesting static final long MIN_SEGMENT_MS = 10000;
+  /* A segment ends after this long even mid-sentence, so it is never a wall of text. */
+  @VisibleForTesting static final long MAX_SEGMENT_MS = 30000;
+  /* Each shard of segments is kept to about half of datastore's 1 MiB entity limit. */
+  @VisibleForTesting static final int MAX_SHARD_BYTES = 512 * 1024;
+  /* A generous estimate of what each line adds to a shard besides its content. */
+  private static final int LINE_OVERHEAD_BYTES = 64;
+  /* Ends with sentence punctuation, optionally followed by closing quotes or brackets. */
+  private static final Pattern SENTENCE_END = Pattern.compile("[.?!][\"')\\]]*\\s*$");
+
+  /**
+   * Returns {@code lineEntities}, which must be in the order they are shown, split into
+   * segments of consecutive lines.
+   */
+  static List<List<Entity>> segment(List<Entity> lineEntities) {
+    List<List<Entity>> segments = new ArrayList<>();
+    List<Entity> segment = new ArrayList<>();
+    for (int line = 0; line < lineEntities.size(); line++) {
+      Entity lineEntity = lineEntities.get(line);
+      segment.add(lineEntity);
+      if (line + 1 == lineEntities.size()
+          || endsSegment(segment, lineEntities.get(line + 1))) {
+        segments.add(segment);
+        segment = new ArrayList<>();
+      }
+    }
+    return segments;
+  }
+
+  /** Returns whether {@code segment} ends before {@code nextLineEntity}. */
+  private static boolean endsSegment(List<Entity> segment, Entity nextLineEntity) {
+    Entity lastLineEntity = segment.get(segment.size() - 1);
+    long segmentStartMs = startMs(segment.get(0));
+    long segmentEndMs = endMs(segment);
+    if (startMs(nextLineEntity) - segmentEndMs >= PAUSE_MS) {
+      return true;
+    }
+    if (endMs(nextLineEntity) - segmentStartMs > MAX_SEGMENT_MS) {
+      return true;
+    }
+    String content = (String) lastLineEntity.getProperty(TranscriptLineUtil.CONTENT);
+    return segmentEndMs - segmentStartMs >= MIN_SEGMENT_MS
+        && SENTENCE_END.matcher(content).find();
+  }
+
+  /**
+   * Returns the entities that store the segments of {@code lineEntities}, which must have
+   * complete keys and be in the order they are shown, as the segments of the transcript in
+   * {@code language}. There is always at least one, and each stays well under datastore's
+   * entity size limit however long the transcript is.
+   */
+  static List<Entity> createSegmentsEntities(
+      Key lectureKey, String language, List<Entity> lineEntities) {
+    List<List<List<Entity>>> shards = new ArrayList<>();
+    List<List<Entity>> shard = new ArrayList<>();
+    long shardBytes = 0;
+    for (List<Entity> segment : segment(lineEntities)) {
+      long segmentBytes = estimateBytes(segment);
+      if (!shard.isEmpty() && shardBytes + segmentBytes > MAX_SHARD_BYTES) {
+        shards.add(shard);
+        shard = new ArrayList<>();
+        shardBytes = 0;
+      }
+      shard.add(segment);
+      shardBytes += segmentBytes;
+    }
+    shards.add(shard);
+
+    List<Entity> shardEntities = new ArrayList<>();
+    for (int shardIndex = 0; shardIndex < shards.size(); shardIndex++) {
+      shardEntities.add(createShardEntity(
+          lectureKey, language, shardIndex, shards.size(), shards.get(shardIndex)));
+    }
+    return shardEntities;
+  }
+
+  /**
+   * Returns the entity of the shard at {@code shard} of {@code shardCount} that stores
+   * {@code shardSegments}.
+   */
+  private static Entity createShardEntity(Key lectureKey, String language, int shard,
+      int shardCount, List<List<Entity>> shardSegments) {
+    TranscriptChunk.Builder segments = TranscriptChunk.builder();
+    List<Long> lineCounts = new ArrayList<>();
+    List<Long> lineIds = new ArrayList<>();
+    for (List<Entity> segment : shardSegments) {
+      long segmentStartMs = startMs(segment.get(0));
+      // Segments are identified by their first line, which comments on them are attached to.
+      segments.addLine(segment.get(0).getKey().getId(), segmentStartMs,
+          endMs(segment) - segmentStartMs, content(segment));
+      lineCounts.add((long) segment.size());
+      for (Entity lineEntity : segment) {
+        lineIds.add(lineEntity.getKey().getId());
+      }
+    }
+    return TranscriptSegmentUtil.createEntity(
+        lectureKey, language, shard, shardCount, segments.build(), lineCounts, lineIds);
+  }
+
+  /** Returns about how many bytes {@code segment} takes up in a shard. */
+  private static long estimateBytes(List<Entity> segment) {
+    long bytes = 0;
+    for (Entity lineEntity : segment) {
+      bytes += Utf8.encodedLength((String) lineEntity.getProperty(TranscriptLineUtil.CONTENT))
+          + LINE_OVERHEAD_BYTES;
+    }
+    return bytes;
+  }
+
+  /** Returns the contents of {@code segment} joined into one line of text. */
+  private static String content(List<Entity> segment) {
+    StringBuilder content = new StringBuilder();
+    for (Entity lineEntity : segment) {
+      String lineContent =
+          ((String) lineEntity.getProperty(TranscriptLineUtil.CONTENT)).trim();
+      if (lineContent.isEmpty()) {
+        continue;
+      }
+      if (content.length() > 0) {
+        content.append(' ');
+      }
+      content.append(lineContent);
+    }
+    return content.toString();
+  }
+
+  /**
+   * Returns when the last line of {@code segment} stops being shown. Auto-generated lines
+   * often overlap, so this isn't always the end of the last line.
+   */
+  private static long endMs(List<Entity> segment) {
+    long endMs = 0;
+    for (Entity lineEntity : segment) {
+      endMs = Math.max(endMs, endMs(lineEntity));
+    }
+    return endMs;
+  }
+
+  private static long startMs(Entity lineEntity) {
+    return (long) lineEntity.getProperty(TranscriptLineUtil.START_TIMESTAMP_MS);
+  }
+
+  private static long endMs(Entity lineEntity) {
+    return (long) lineEntity.getProperty(TranscriptLineUtil.END_TIMESTAMP_MS);
+  }
+
+  private TranscriptSegmenter() {}
+}
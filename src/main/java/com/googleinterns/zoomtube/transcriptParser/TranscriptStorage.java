@@ -0,0 +1,32 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.transcriptParser;
+
+/** How the lines of newly stored transcripts are laid out in datastore. */
+public enum TranscriptStorage {
+  /** An entity for each line, which is how every transcript used to be stored. */
+  LINES,
+  /** A compressed {@link TranscriptChunk} entity for each few minutes of video. */
+  CHUNKS;
+
+  /* The system property, set in appengine-web.xml, that chooses the storage. */
+  static final String PROPERTY = "zoomtube.transcript-storage";
+
+  /** Returns the storage chosen by the {@link #PROPERTY} system property, or lines. */
+  static TranscriptStorage fromSystemProperty() {
+    String storage = System.getProperty(PROPERTY, LINES.name());
+    return valueOf(storage.toUpperCase());
+  }
+}
@@ -0,0 +1,212 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.utils;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds and creates lectures by the id of their video, so that each video has one lecture.
+ *
+ * <p>A lecture is created in the same transaction as the LectureVideo entity keyed by its
+ * video id, so two requests for the same video can't both create one. Lectures created before
+ * LectureVideo entities existed are found with a query on their video id, and are given one.
+ */
+public final class LectureIdentity {
+  /*
+   * A transaction can use at most 25 entity groups. Each lecture uses two: its LectureVideo
+   * entity, and either the new lecture or the one that already exists.
+   */
+  @VisibleForTesting static final int TRANSACTION_BATCH_SIZE = 12;
+  /* Datastore runs a query for each value of an IN filter, and allows at most 30. */
+  private static final int MAX_IN_FILTER_VALUES = 30;
+  private static final int MAX_ATTEMPTS = 3;
+
+  private final DatastoreService datastore;
+
+  public LectureIdentity(DatastoreService datastore) {
+    this.datastore = datastore;
+  }
+
+  /**
+   * Puts each of {@code lectureEntities} whose video doesn't have a lecture yet, completing its
+   * key. Each entity must be of a different video.
+   *
+   * @return The lecture that already exists for each video that has one, by video id. These
+   *     videos' entities in {@code lectureEntities} aren't put.
+   * @throws ConcurrentModificationException if the lectures kept being created concurrently.
+   */
+  public Map<String, Entity> putIfAbsent(List<Entity> lectureEntities) {
+    Map<String, Entity> existingLectures = new HashMap<>();
+    for (List<Entity> batch : Lists.partition(lectureEntities, TRANSACTION_BATCH_SIZE)) {
+      for (int attempt = 1; ; attempt++) {
+        try {
+          existingLectures.putAll(putBatchIfAbsent(batch));
+          break;
+        } catch (ConcurrentModificationException e) {
+          // Another request created or adopted one of the lectures, which is found next time.
+          if (attempt == MAX_ATTEMPTS) {
+            throw e;
+          }
+        }
+      }
+    }
+    return existingLectures;
+  }
+
+  /**
+   * Gives each of {@code lectureEntities} a LectureVideo entity, unless its video already has
+   * one, such as when two lectures were created for the same video.
+   *
+   * @return The number of lectures whose video already had a LectureVideo entity for another
+   *     lecture.
+   */
+  public int adopt(List<Entity> lectureEntities) {
+    int duplicateCount = 0;
+    for (List<Entity> batch : Lists.partition(lectureEntities, TRANSACTION_BATCH_SIZE)) {
+      Transaction transaction =
+          datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        Map<Key, Entity> videoEntities = datastore.get(transaction, getVideoKeys(batch));
+        List<Entity> newVideoEntities = new ArrayList<>();
+        for (Entity lectureEntity : batch) {
+          String videoId = getVideoId(lectureEntity);
+          Entity videoEntity = videoEntities.get(LectureVideoUtil.createKey(videoId));
+          if (videoEntity == null) {
+            videoEntity = LectureVideoUtil.createEntity(videoId, lectureEntity.getKey());
+            videoEntities.put(videoEntity.getKey(), videoEntity);
+            newVideoEntities.add(videoEntity);
+          } else if (!videoEntity.getProperty(LectureVideoUtil.LECTURE)
+                          .equals(lectureEntity.getKey())) {
+            duplicateCount++;
+          }
+        }
+        datastore.put(transaction, newVideoEntities);
+        transaction.commit();
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+    return duplicateCount;
+  }
+
+  /**
+   * Puts each of {@code batch} whose video doesn't have a lecture in a single transaction, and
+   * returns the lectures of the ones that do.
+   */
+  private Map<String, Entity> putBatchIfAbsent(List<Entity> batch) {
+    // Queries can't be run in a cross-group transaction, so lectures created before
+    // LectureVideo entities are looked up first. A lecture is never given up, so one found
+    // here still exists in the transaction.
+    Map<String, Entity> unadoptedLectures = getUnadoptedLectures(batch);
+    Transaction transaction = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+    try {
+      Map<Key, Entity> videoEntities = datastore.get(transaction, getVideoKeys(batch));
+      List<Key> lectureKeys = new ArrayList<>();
+      for (Entity videoEntity : videoEntities.values()) {
+        lectureKeys.add((Key) videoEntity.getProperty(LectureVideoUtil.LECTURE));
+      }
+      Map<Key, Entity> lectures = datastore.get(transaction, lectureKeys);
+
+      Map<String, Entity> existingLectures = new HashMap<>();
+      List<Entity> newLectures = new ArrayList<>();
+      for (Entity lectureEntity : batch) {
+        String videoId = getVideoId(lectureEntity);
+        Entity videoEntity = videoEntities.get(LectureVideoUtil.createKey(videoId));
+        Entity existingLecture = videoEntity == null
+            ? unadoptedLectures.get(videoId)
+            : lectures.get((Key) videoEntity.getProperty(LectureVideoUtil.LECTURE));
+        if (existingLecture != null) {
+          existingLectures.put(videoId, existingLecture);
+        } else {
+          newLectures.add(lectureEntity);
+        }
+      }
+      // Completes the keys of the new lectures, which their LectureVideo entities refer to.
+      datastore.put(transaction, newLectures);
+      List<Entity> newVideoEntities = new ArrayList<>();
+      for (Entity lectureEntity : newLectures) {
+        newVideoEntities.add(
+            LectureVideoUtil.createEntity(getVideoId(lectureEntity), lectureEntity.getKey()));
+      }
+      for (Map.Entry<String, Entity> existingLecture : existingLectures.entrySet()) {
+        if (!videoEntities.containsKey(LectureVideoUtil.createKey(existingLecture.getKey()))) {
+          newVideoEntities.add(LectureVideoUtil.createEntity(
+              existingLecture.getKey(), existingLecture.getValue().getKey()));
+        }
+      }
+      datastore.put(transaction, newVideoEntities);
+      transaction.commit();
+      return existingLectures;
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+  }
+
+  /**
+   * Returns the lectures of the videos of {@code lectureEntities} that have no LectureVideo
+   * entity, by video id.
+   */
+  private Map<String, Entity> getUnadoptedLectures(List<Entity> lectureEntities) {
+    Map<Key, Entity> videoEntities = datastore.get(getVideoKeys(lectureEntities));
+    List<String> unadoptedVideoIds = new ArrayList<>();
+    for (Entity lectureEntity : lectureEntities) {
+      String videoId = getVideoId(lectureEntity);
+      if (!videoEntities.containsKey(LectureVideoUtil.createKey(videoId))) {
+        unadoptedVideoIds.add(videoId);
+      }
+    }
+    Map<String, Entity> lectures = new LinkedHashMap<>();
+    for (List<String> videoIds : Lists.partition(unadoptedVideoIds, MAX_IN_FILTER_VALUES)) {
+      Query query = new Query(LectureUtil.KIND)
+                        .setFilter(new FilterPredicate(
+                            LectureUtil.VIDEO_ID, FilterOperator.IN, videoIds));
+      for (Entity lectureEntity : datastore.prepare(query).asIterable()) {
+        lectures.putIfAbsent(getVideoId(lectureEntity), lectureEntity);
+      }
+    }
+    return lectures;
+  }
+
+  private static List<Key> getVideoKeys(List<Entity> lectureEntities) {
+    List<Key> videoKeys = new ArrayList<>();
+    for (Entity lectureEntity : lectureEntities) {
+      videoKeys.add(LectureVideoUtil.createKey(getVideoId(lectureEntity)));
+    }
+    return videoKeys;
+  }
+
+  private static String getVideoId(Entity lectureEntity) {
+    return (String) lectureEntity.getProperty(LectureUtil.VIDEO_ID);
+  }
+}
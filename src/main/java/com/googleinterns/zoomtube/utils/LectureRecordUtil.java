@@ -0,0 +1,280 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.utils;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.users.User;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.data.IconFeedback;
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * Provides methods to turn a lecture's entities into Json records that can be exported, one
+ * per line, and to create entities from them again. Keys are written as ids, so the records
+ * can be imported into another lecture or project.
+ */
+public final class LectureRecordUtil {
+  /** The type of each record, which is its {@code TYPE} field. */
+  public static final String TYPE = "type";
+  public static final String TYPE_LECTURE = "lecture";
+  public static final String TYPE_TRANSCRIPT_LINE = "transcriptLine";
+  public static final String TYPE_COMMENT = "comment";
+  public static final String TYPE_ICON_FEEDBACK = "iconFeedback";
+
+  /** Record fields. */
+  public static final String ID = "id";
+  public static final String NAME = "name";
+  public static final String VIDEO_URL = "videoUrl";
+  public static final String VIDEO_ID = "videoId";
+  public static final String TRANSCRIPT_LANGUAGE = "transcriptLanguage";
+  public static final String LANGUAGE = "language";
+  public static final String START_MS = "startMs";
+  public static final String DURATION_MS = "durationMs";
+  public static final String END_MS = "endMs";
+  public static final String CONTENT = "content";
+  public static final String COMMENT_TYPE = "commentType";
+  public static final String PARENT_ID = "parentId";
+  public static final String TIMESTAMP_MS = "timestampMs";
+  public static final String TRANSCRIPT_LINE_ID = "transcriptLineId";
+  public static final String AUTHOR_EMAIL = "authorEmail";
+  public static final String AUTHOR_DOMAIN = "authorDomain";
+  public static final String AUTHOR_ID = "authorId";
+  public static final String CREATED_MS = "createdMs";
+  public static final String FEEDBACK_TYPE = "feedbackType";
+
+  /** Creates and returns the record of a lecture from its {@code entity}. */
+  public static JsonObject createLectureRecord(Entity entity) {
+    JsonObject record = createRecord(TYPE_LECTURE);
+    record.addProperty(ID, entity.getKey().getId());
+    record.addProperty(NAME, (String) entity.getProperty(LectureUtil.NAME));
+    record.addProperty(VIDEO_URL, (String) entity.getProperty(LectureUtil.VIDEO_URL));
+    record.addProperty(VIDEO_ID, (String) entity.getProperty(LectureUtil.VIDEO_ID));
+    if (entity.hasProperty(LectureUtil.TRANSCRIPT_LANGUAGE)) {
+      record.addProperty(
+          TRANSCRIPT_LANGUAGE, (String) entity.getProperty(LectureUtil.TRANSCRIPT_LANGUAGE));
+    }
+    return record;
+  }
+
+  /**
+   * Creates and returns the record of a transcript line from its {@code entity}, which may
+   * come from a chunk rather than datastore.
+   */
+  public static JsonObject createTranscriptLineRecord(Entity entity) {
+    JsonObject record = createRecord(TYPE_TRANSCRIPT_LINE);
+    record.addProperty(ID, entity.getKey().getId());
+    if (entity.hasProperty(TranscriptLineUtil.LANGUAGE)) {
+      record.addProperty(LANGUAGE, (String) entity.getProperty(TranscriptLineUtil.LANGUAGE));
+    }
+    record.addProperty(START_MS, (long) entity.getProperty(TranscriptLineUtil.START_TIMESTAMP_MS));
+    record.addProperty(DURATION_MS, (long) entity.getProperty(TranscriptLineUtil.DURATION_MS));
+    record.addProperty(END_MS, (long) entity.getProperty(TranscriptLineUtil.END_TIMESTAMP_MS));
+    record.addProperty(CONTENT, (String) entity.getProperty(TranscriptLineUtil.CONTENT));
+    return record;
+  }
+
+  /** Creates and returns the record of a comment from its {@code entity}. */
+  public static JsonObject createCommentRecord(Entity entity) {
+    JsonObject record = createRecord(TYPE_COMMENT);
+    record.addProperty(ID, entity.getKey().getId());
+    record.addProperty(COMMENT_TYPE, (String) entity.getProperty(CommentUtil.TYPE));
+    if (entity.hasProperty(CommentUtil.PARENT)) {
+      record.addProperty(PARENT_ID, ((Key) entity.getProperty(CommentUtil.PARENT)).getId());
+    }
+    if (entity.hasProperty(CommentUtil.TIMESTAMP_MS)) {
+      record.addProperty(TIMESTAMP_MS, (long) entity.getProperty(CommentUtil.TIMESTAMP_MS));
+    }
+    if (entity.hasProperty(CommentUtil.TRANSCRIPT_LINE)) {
+      record.addProperty(
+          TRANSCRIPT_LINE_ID, ((Key) entity.getProperty(CommentUtil.TRANSCRIPT_LINE)).getId());
+    }
+    User author = (User) entity.getProperty(CommentUtil.AUTHOR);
+    record.addProperty(AUTHOR_EMAIL, author.getEmail());
+    record.addProperty(AUTHOR_DOMAIN, author.getAuthDomain());
+    if (author.getUserId() != null) {
+      record.addProperty(AUTHOR_ID, author.getUserId());
+    }
+    record.addProperty(CONTENT, (String) entity.getProperty(CommentUtil.CONTENT));
+    record.addProperty(CREATED_MS, ((Date) entity.getProperty(CommentUtil.CREATED)).getTime());
+    return record;
+  }
+
+  /** Creates and returns the record of icon feedback from its {@code entity}. */
+  public static JsonObject createIconFeedbackRecord(Entity entity) {
+    JsonObject record = createRecord(TYPE_ICON_FEEDBACK);
+    record.addProperty(TIMESTAMP_MS, (long) entity.getProperty(IconFeedbackUtil.TIMESTAMP_MS));
+    record.addProperty(FEEDBACK_TYPE, (String) entity.getProperty(IconFeedbackUtil.TYPE));
+    return record;
+  }
+
+  /**
+   * Returns the type of {@code record}.
+   *
+   * @throws JsonParseException if the record doesn't have a type.
+   */
+  public static String getType(JsonObject record) {
+    return getString(record, TYPE);
+  }
+
+  /**
+   * Returns the exported id of {@code record}.
+   *
+   * @throws JsonParseException if the record doesn't have an id.
+   */
+  public static long getId(JsonObject record) {
+    return getLong(record, ID);
+  }
+
+  /**
+   * Creates and returns a new lecture entity from a lecture {@code record}.
+   *
+   * @throws JsonParseException if the record is missing a field.
+   */
+  public static Entity createLectureEntity(JsonObject record) {
+    Entity entity = LectureUtil.createEntity(
+        getString(record, NAME), getString(record, VIDEO_URL), getString(record, VIDEO_ID));
+    Optional<String> transcriptLanguage = getOptionalString(record, TRANSCRIPT_LANGUAGE);
+    if (transcriptLanguage.isPresent()) {
+      entity.setProperty(LectureUtil.TRANSCRIPT_LANGUAGE, transcriptLanguage.get());
+    }
+    return entity;
+  }
+
+  /**
+   * Creates and returns the entity of a transcript line {@code record} of the lecture with
+   * {@code lectureKey}. The line keeps its id, so comments on it still refer to it.
+   *
+   * @throws JsonParseException if the record is missing a field.
+   */
+  public static Entity createTranscriptLineEntity(JsonObject record, Key lectureKey) {
+    Entity lineEntity = new Entity(
+        KeyFactory.createKey(lectureKey, TranscriptLineUtil.KIND, getId(record)));
+    Optional<String> language = getOptionalString(record, LANGUAGE);
+    String content = getString(record, CONTENT);
+    long startMs = getLong(record, START_MS);
+    long durationMs = getLong(record, DURATION_MS);
+    long endMs = getLong(record, END_MS);
+    lineEntity.setPropertiesFrom(language.isPresent()
+            ? TranscriptLineUtil.createEntity(
+                lectureKey, language.get(), content, startMs, durationMs, endMs)
+            : TranscriptLineUtil.createEntity(lectureKey, content, startMs, durationMs, endMs));
+    return lineEntity;
+  }
+
+  /**
+   * Returns the id of the comment that a comment {@code record} replies to, if it is a reply.
+   *
+   * @throws JsonParseException if the field isn't a number.
+   */
+  public static Optional<Long> getCommentParentId(JsonObject record) {
+    if (!record.has(PARENT_ID)) {
+      return Optional.empty();
+    }
+    return Optional.of(getLong(record, PARENT_ID));
+  }
+
+  /**
+   * Creates and returns the entity of a comment {@code record} of the lecture with
+   * {@code lectureKey}. It has {@code commentKey}, and replies to the comment with
+   * {@code parentKey} if it is present.
+   *
+   * @throws JsonParseException if the record is missing a field.
+   */
+  public static Entity createCommentEntity(
+      JsonObject record, Key commentKey, Key lectureKey, Optional<Key> parentKey) {
+    Comment.Type type = getEnum(record, COMMENT_TYPE, Comment.Type.class);
+    Optional<Key> transcriptLineKey = Optional.empty();
+    if (record.has(TRANSCRIPT_LINE_ID)) {
+      transcriptLineKey = Optional.of(KeyFactory.createKey(
+          lectureKey, TranscriptLineUtil.KIND, getLong(record, TRANSCRIPT_LINE_ID)));
+    }
+    User author = new User(getString(record, AUTHOR_EMAIL), getString(record, AUTHOR_DOMAIN),
+        getOptionalString(record, AUTHOR_ID).orElse(null));
+    String content = getString(record, CONTENT);
+    Date created = new Date(getLong(record, CREATED_MS));
+    Entity commentEntity;
+    if (type == Comment.Type.REPLY) {
+      if (!parentKey.isPresent()) {
+        throw new JsonParseException("Reply without " + PARENT_ID + ".");
+      }
+      commentEntity = CommentUtil.createReplyEntity(
+          lectureKey, parentKey.get(), transcriptLineKey, author, content, created);
+    } else {
+      commentEntity = CommentUtil.createRootEntity(lectureKey, getLong(record, TIMESTAMP_MS),
+          transcriptLineKey, author, content, created, type);
+    }
+    Entity keyedCommentEntity = new Entity(commentKey);
+    keyedCommentEntity.setPropertiesFrom(commentEntity);
+    return keyedCommentEntity;
+  }
+
+  /**
+   * Creates and returns a new entity of an icon feedback {@code record} of the lecture with
+   * {@code lectureKey}.
+   *
+   * @throws JsonParseException if the record is missing a field.
+   */
+  public static Entity createIconFeedbackEntity(JsonObject record, Key lectureKey) {
+    return IconFeedbackUtil.createEntity(lectureKey, getLong(record, TIMESTAMP_MS),
+        getEnum(record, FEEDBACK_TYPE, IconFeedback.Type.class));
+  }
+
+  private static JsonObject createRecord(String type) {
+    JsonObject record = new JsonObject();
+    record.addProperty(TYPE, type);
+    return record;
+  }
+
+  private static String getString(JsonObject record, String field) {
+    return getOptionalString(record, field).orElseThrow(
+        () -> new JsonParseException("Missing " + field + "."));
+  }
+
+  private static Optional<String> getOptionalString(JsonObject record, String field) {
+    JsonElement value = record.get(field);
+    if (value == null || value.isJsonNull()) {
+      return Optional.empty();
+    }
+    if (!value.isJsonPrimitive()) {
+      throw new JsonParseException("Invalid " + field + ".");
+    }
+    return Optional.of(value.getAsString());
+  }
+
+  private static long getLong(JsonObject record, String field) {
+    try {
+      return Long.parseLong(getString(record, field));
+    } catch (NumberFormatException e) {
+      throw new JsonParseException("Invalid " + field + ".", e);
+    }
+  }
+
+  private static <E extends Enum<E>> E getEnum(
+      JsonObject record, String field, Class<E> enumClass) {
+    try {
+      return Enum.valueOf(enumClass, getString(record, field));
+    } catch (IllegalArgumentException e) {
+      throw new JsonParseException("Invalid " + field + ".", e);
+    }
+  }
+
+  private LectureRecordUtil() {}
+}
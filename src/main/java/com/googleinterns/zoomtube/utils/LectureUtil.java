@@ -17,6 +17,10 @@ package com.googleinterns.zoomtube.utils;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Key;
 import com.googleinterns.zoomtube.data.Lecture;
+import com.googleinterns.zoomtube.data.LectureSummary;
+import java.time.Clock;
+import java.util.Date;
+import java.util.Locale;
 
 /** Utility for creating Lecture Entities and Lectures. */
 public final class LectureUtil {
@@ -25,6 +29,11 @@ public final class LectureUtil {
   public static final String NAME = "lectureName";
   public static final String VIDEO_URL = "videoUrl";
   public static final String VIDEO_ID = "video-id";
+  /* The name in lower case, which lectures are listed and filtered by. */
+  public static final String SORT_NAME = "sort-name";
+  public static final String CREATED = "created";
+  /* The language of the transcript shown when no other language is requested. */
+  public static final String TRANSCRIPT_LANGUAGE = "transcript-language";
   // TODO: Remove and prefer parameters specified in servlet that will be handling request.
   public static final String ID = "id";
 
@@ -37,6 +46,14 @@ public final class LectureUtil {
     return Lecture.create(key, lectureName, videoUrl, videoId);
   }
 
+  /**
+   * Creates and returns a LectureSummary from {@code entity}, which only needs to have a
+   * name.
+   */
+  public static LectureSummary createLectureSummary(Entity entity) {
+    return LectureSummary.create(entity.getKey(), (String) entity.getProperty(NAME));
+  }
+
   /**
    * Creates and returns a Lecture Entity using {@code lectureName},
    * {@code videoUrl}, and {@code videoId}.
@@ -44,10 +61,17 @@ public final class LectureUtil {
   public static Entity createEntity(String lectureName, String videoUrl, String videoId) {
     Entity lectureEntity = new Entity(KIND);
     lectureEntity.setProperty(NAME, lectureName);
+    lectureEntity.setProperty(SORT_NAME, createSortName(lectureName));
     lectureEntity.setProperty(VIDEO_URL, videoUrl);
     lectureEntity.setProperty(VIDEO_ID, videoId);
+    lectureEntity.setProperty(CREATED, new Date(Clock.systemUTC().millis()));
     return lectureEntity;
   }
 
+  /** Returns the value of {@code SORT_NAME} for a lecture named {@code lectureName}. */
+  public static String createSortName(String lectureName) {
+    return lectureName.toLowerCase(Locale.ROOT);
+  }
+
   private LectureUtil(){};
 }
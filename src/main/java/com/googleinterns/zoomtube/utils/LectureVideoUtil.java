@@ -0,0 +1,42 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.utils;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+
+/**
+ * Provides methods to store which lecture a video belongs to as a LectureVideo Entity. Its key
+ * name is the video id, so the lecture of a video is found with a get rather than a query.
+ */
+public final class LectureVideoUtil {
+  public static final String KIND = "LectureVideo";
+  public static final String LECTURE = "lecture";
+
+  /** Returns the key of the entity for the video with {@code videoId}. */
+  public static Key createKey(String videoId) {
+    return KeyFactory.createKey(KIND, videoId);
+  }
+
+  /** Creates an entity recording that the video with {@code videoId} is {@code lectureKey}'s. */
+  public static Entity createEntity(String videoId, Key lectureKey) {
+    Entity videoEntity = new Entity(createKey(videoId));
+    videoEntity.setUnindexedProperty(LECTURE, lectureKey);
+    return videoEntity;
+  }
+
+  private LectureVideoUtil() {}
+}
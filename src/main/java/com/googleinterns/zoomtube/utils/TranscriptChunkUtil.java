@@ -0,0 +1,122 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.utils;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptChunk;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Provides methods to store transcript lines as TranscriptChunk Entities, and to turn the
+ * chunks back into TranscriptLine Entities.
+ */
+public final class TranscriptChunkUtil {
+  public static final String KIND = "TranscriptChunk";
+  public static final String LECTURE = "lecture";
+  public static final String LANGUAGE = "language";
+  public static final String CHUNK_INDEX = "chunk_index";
+  public static final String LINE_COUNT = "line_count";
+  public static final String DATA = "data";
+  /* Each chunk holds the lines that start within this span of the video. */
+  public static final long CHUNK_DURATION_MS = 5 * 60 * 1000;
+
+  /**
+   * Returns the key of the chunk at {@code chunkIndex} of the transcript in
+   * {@code language} for the lecture with {@code lectureKey}.
+   */
+  public static Key createKey(Key lectureKey, String language, long chunkIndex) {
+    return KeyFactory.createKey(lectureKey, KIND, language + "/" + chunkIndex);
+  }
+
+  /**
+   * Creates and returns a TranscriptChunk from a datastore {@code entity}.
+   *
+   * @throws IOException if the stored chunk can't be read.
+   */
+  public static TranscriptChunk createTranscriptChunk(Entity entity) throws IOException {
+    Blob data = (Blob) entity.getProperty(DATA);
+    return TranscriptChunk.fromBytes(data.getBytes());
+  }
+
+  /**
+   * Creates a transcript chunk entity, grouped under the lecture, that stores {@code chunk}
+   * as the chunk at {@code chunkIndex} of the transcript in {@code language}.
+   */
+  public static Entity createEntity(
+      Key lectureKey, String language, long chunkIndex, TranscriptChunk chunk) {
+    Entity chunkEntity = new Entity(createKey(lectureKey, language, chunkIndex));
+    chunkEntity.setProperty(LECTURE, lectureKey);
+    chunkEntity.setProperty(LANGUAGE, language);
+    chunkEntity.setUnindexedProperty(CHUNK_INDEX, chunkIndex);
+    chunkEntity.setUnindexedProperty(LINE_COUNT, chunk.lineCount());
+    chunkEntity.setUnindexedProperty(DATA, new Blob(chunk.toBytes()));
+    return chunkEntity;
+  }
+
+  /**
+   * Packs {@code lineEntities}, which must have complete keys and be in the order they are
+   * shown, into chunk entities of the transcript in {@code language}.
+   */
+  public static List<Entity> createEntities(
+      Key lectureKey, String language, List<Entity> lineEntities) {
+    Map<Long, TranscriptChunk.Builder> chunks = new TreeMap<>();
+    for (Entity lineEntity : lineEntities) {
+      long startMs = (long) lineEntity.getProperty(TranscriptLineUtil.START_TIMESTAMP_MS);
+      chunks.computeIfAbsent(startMs / CHUNK_DURATION_MS, chunkIndex -> TranscriptChunk.builder())
+          .addLine(lineEntity.getKey().getId(), startMs,
+              (long) lineEntity.getProperty(TranscriptLineUtil.DURATION_MS),
+              (String) lineEntity.getProperty(TranscriptLineUtil.CONTENT));
+    }
+    List<Entity> chunkEntities = new ArrayList<>();
+    for (Map.Entry<Long, TranscriptChunk.Builder> chunk : chunks.entrySet()) {
+      chunkEntities.add(
+          createEntity(lectureKey, language, chunk.getKey(), chunk.getValue().build()));
+    }
+    return chunkEntities;
+  }
+
+  /**
+   * Returns a transcript line entity for each line in {@code chunkEntity}, with the key the
+   * line was given when it was stored. The entities aren't in datastore themselves.
+   *
+   * @throws IOException if the stored chunk can't be read.
+   */
+  public static List<Entity> createLineEntities(Entity chunkEntity) throws IOException {
+    TranscriptChunk chunk = createTranscriptChunk(chunkEntity);
+    Key lectureKey = (Key) chunkEntity.getProperty(LECTURE);
+    String language = (String) chunkEntity.getProperty(LANGUAGE);
+    List<Entity> lineEntities = new ArrayList<>();
+    for (int line = 0; line < chunk.lineCount(); line++) {
+      long startMs = chunk.lineStartMs(line);
+      long durationMs = chunk.lineDurationMs(line);
+      Entity lineEntity = TranscriptLineUtil.createEntity(lectureKey, language,
+          chunk.lineContent(line), startMs, durationMs, startMs + durationMs);
+      Entity keyedLineEntity = new Entity(
+          KeyFactory.createKey(lectureKey, TranscriptLineUtil.KIND, chunk.lineId(line)));
+      keyedLineEntity.setPropertiesFrom(lineEntity);
+      lineEntities.add(keyedLineEntity);
+    }
+    return lineEntities;
+  }
+
+  private TranscriptChunkUtil() {}
+}
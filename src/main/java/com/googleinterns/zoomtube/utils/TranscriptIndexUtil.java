@@ -0,0 +1,154 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.utils;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.googleinterns.zoomtube.search.TranscriptIndex;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides methods to store a lecture's TranscriptIndex as Entities.
+ *
+ * <p>An index is stored in shards of at most {@link #MAX_SHARD_BYTES}, so a long transcript's
+ * index stays under datastore's entity size limit. The first shard has the index's key and
+ * records how many shards there are; the others are of {@link #SHARD_KIND}, so queries of
+ * the indexes only find first shards. An index stored before it was split is a single shard
+ * without that count, and shards left from a longer index are ignored.
+ *
+ * <p>A deleted index leaves its first shard behind, without data and marked {@link #DELETED},
+ * with the time it was deleted. Other instances then find deletions with the same query of
+ * recently updated indexes that finds new ones.
+ */
+public final class TranscriptIndexUtil {
+  public static final String KIND = "TranscriptIndex";
+  public static final String LECTURE = "lecture";
+  public static final String DATA = "data";
+  public static final String UPDATED = "updated";
+  public static final String SHARD_KIND = "TranscriptIndexShard";
+  public static final String SHARD_COUNT = "shard_count";
+  public static final String DELETED = "deleted";
+  /* About half of datastore's 1 MiB entity limit. */
+  public static final int MAX_SHARD_BYTES = 512 * 1024;
+  /* Each lecture has a single index, so it always has the same key name. */
+  private static final String KEY_NAME = "transcript";
+
+  /** Returns the key of the transcript index for the lecture with {@code lectureKey}. */
+  public static Key createKey(Key lectureKey) {
+    return KeyFactory.createKey(lectureKey, KIND, KEY_NAME);
+  }
+
+  /**
+   * Returns the key of the shard at {@code shard} of the transcript index for the lecture
+   * with {@code lectureKey}. The first shard's key is the one {@link #createKey} returns.
+   */
+  public static Key createShardKey(Key lectureKey, int shard) {
+    if (shard == 0) {
+      return createKey(lectureKey);
+    }
+    return KeyFactory.createKey(lectureKey, SHARD_KIND, shard);
+  }
+
+  /** Returns the keys of the shards that follow {@code indexEntity}, the index's first shard. */
+  public static List<Key> getOtherShardKeys(Entity indexEntity) {
+    Long shardCount = (Long) indexEntity.getProperty(SHARD_COUNT);
+    Key lectureKey = (Key) indexEntity.getProperty(LECTURE);
+    List<Key> shardKeys = new ArrayList<>();
+    for (int shard = 1; shardCount != null && shard < shardCount; shard++) {
+      shardKeys.add(createShardKey(lectureKey, shard));
+    }
+    return shardKeys;
+  }
+
+  /**
+   * Creates and returns a TranscriptIndex from its first shard, the datastore
+   * {@code indexEntity}, and {@code otherShardEntities}, which must hold every shard of
+   * {@link #getOtherShardKeys}.
+   *
+   * @throws IOException if the stored index can't be read, or a shard is missing.
+   */
+  public static TranscriptIndex createTranscriptIndex(
+      Entity indexEntity, Map<Key, Entity> otherShardEntities) throws IOException {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    data.write(((Blob) indexEntity.getProperty(DATA)).getBytes());
+    for (Key shardKey : getOtherShardKeys(indexEntity)) {
+      Entity shardEntity = otherShardEntities.get(shardKey);
+      if (shardEntity == null) {
+        throw new IOException("Stored transcript index is missing a shard.");
+      }
+      data.write(((Blob) shardEntity.getProperty(DATA)).getBytes());
+    }
+    return TranscriptIndex.fromBytes(data.toByteArray());
+  }
+
+  /**
+   * Returns when the index in {@code entity} was stored, or 0 if it was stored before that
+   * was recorded.
+   */
+  public static long getUpdatedMs(Entity entity) {
+    Date updated = (Date) entity.getProperty(UPDATED);
+    return updated == null ? 0 : updated.getTime();
+  }
+
+  /** Returns whether {@code indexEntity} marks an index that was deleted. */
+  public static boolean isDeleted(Entity indexEntity) {
+    return Boolean.TRUE.equals(indexEntity.getProperty(DELETED));
+  }
+
+  /**
+   * Creates the entity that replaces the first shard of the transcript index for the lecture
+   * with {@code lectureKey} once the index is deleted.
+   */
+  public static Entity createDeletedEntity(Key lectureKey) {
+    Entity indexEntity = new Entity(createKey(lectureKey));
+    indexEntity.setProperty(LECTURE, lectureKey);
+    indexEntity.setProperty(UPDATED, new Date());
+    indexEntity.setUnindexedProperty(DELETED, true);
+    return indexEntity;
+  }
+
+  /**
+   * Creates the transcript index entities, grouped under the lecture, that store
+   * {@code index}. The first one is the index's first shard.
+   */
+  public static List<Entity> createEntities(Key lectureKey, TranscriptIndex index) {
+    byte[] data = index.toBytes();
+    int shardCount = Math.max(1, (data.length + MAX_SHARD_BYTES - 1) / MAX_SHARD_BYTES);
+    List<Entity> shardEntities = new ArrayList<>();
+    for (int shard = 0; shard < shardCount; shard++) {
+      Entity shardEntity = new Entity(createShardKey(lectureKey, shard));
+      shardEntity.setProperty(LECTURE, lectureKey);
+      if (shard == 0) {
+        shardEntity.setProperty(UPDATED, new Date());
+        shardEntity.setUnindexedProperty(SHARD_COUNT, (long) shardCount);
+      }
+      int start = shard * MAX_SHARD_BYTES;
+      int end = Math.min(data.length, start + MAX_SHARD_BYTES);
+      shardEntity.setUnindexedProperty(DATA, new Blob(Arrays.copyOfRange(data, start, end)));
+      shardEntities.add(shardEntity);
+    }
+    return shardEntities;
+  }
+
+  private TranscriptIndexUtil() {}
+}
@@ -26,6 +26,8 @@ public final class TranscriptLineUtil {
   public static final String DURATION_MS = "duration_ms";
   public static final String CONTENT = "content";
   public static final String END_TIMESTAMP_MS = "end_ms";
+  /* Lines stored before transcripts had languages don't have this property. */
+  public static final String LANGUAGE = "language";
 
   /**
    * Creates and returns a TranscriptLine from a datastore {@code entity} using
@@ -51,11 +53,11 @@ public final class TranscriptLineUtil {
   /**
    * Creates a transcript line entity.
    *
-   * @param lectureId The id of the lecture that the transcript line is a part of.
+   * @param lectureKey The key of the lecture that the transcript line is a part of.
    * @param lineContent The text content of the transcript line.
-   * @param lineStart The starting timestamp for the transcript line in milliseconds.
-   * @param lineDuration The duration for the transcript line in milliseconds.
-   * @param lineEnd The ending timestamp for the transcript line in milliseconds.
+   * @param lineStartMs The starting timestamp for the transcript line in milliseconds.
+   * @param lineDurationMs The duration for the transcript line in milliseconds.
+   * @param lineEndMs The ending timestamp for the transcript line in milliseconds.
    */
   public static Entity createEntity(
       Key lectureKey, String lineContent, long lineStartMs, long lineDurationMs, long lineEndMs) {
@@ -68,5 +70,23 @@ public final class TranscriptLineUtil {
     return lineEntity;
   }
 
+  /**
+   * Creates a transcript line entity that is part of the transcript in {@code language}.
+   *
+   * @param lectureKey The key of the lecture that the transcript line is a part of.
+   * @param language The code of the language the transcript line is in.
+   * @param lineContent The text content of the transcript line.
+   * @param lineStartMs The starting timestamp for the transcript line in milliseconds.
+   * @param lineDurationMs The duration for the transcript line in milliseconds.
+   * @param lineEndMs The ending timestamp for the transcript line in milliseconds.
+   */
+  public static Entity createEntity(Key lectureKey, String language, String lineContent,
+      long lineStartMs, long lineDurationMs, long lineEndMs) {
+    Entity lineEntity =
+        createEntity(lectureKey, lineContent, lineStartMs, lineDurationMs, lineEndMs);
+    lineEntity.setProperty(LANGUAGE, language);
+    return lineEntity;
+  }
+
   private TranscriptLineUtil() {}
 }
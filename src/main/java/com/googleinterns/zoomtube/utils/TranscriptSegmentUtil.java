@@ -0,0 +1,208 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.utils;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.common.collect.ImmutableList;
+import com.googleinterns.zoomtube.data.TranscriptSegment;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptChunk;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides methods to store the segments of a lecture's transcript in one language as an
+ * Entity, and to turn it back into TranscriptSegments.
+ *
+ * <p>The segments are packed like the lines of a TranscriptChunk, each with the id of its
+ * first line. The lines in each segment are stored next to them, so a segment can be mapped
+ * back to its lines.
+ *
+ * <p>A long transcript's segments are split into shards, so no entity nears datastore's size
+ * limit. The first shard has the key of the whole transcript's segments and records how many
+ * shards there are; segments stored before they were split are a single shard without that
+ * count. Shards left from longer segments are ignored.
+ */
+public final class TranscriptSegmentUtil {
+  public static final String KIND = "TranscriptSegments";
+  public static final String LECTURE = "lecture";
+  public static final String LANGUAGE = "language";
+  public static final String DATA = "data";
+  public static final String LINE_COUNTS = "line_counts";
+  public static final String LINE_IDS = "line_ids";
+  public static final String SHARD_COUNT = "shard_count";
+
+  /**
+   * Returns the key of the segments of the transcript in {@code language} for the lecture
+   * with {@code lectureKey}.
+   */
+  public static Key createKey(Key lectureKey, String language) {
+    return KeyFactory.createKey(lectureKey, KIND, language);
+  }
+
+  /**
+   * Returns the key of the shard at {@code shard} of the segments of the transcript in
+   * {@code language} for the lecture with {@code lectureKey}. The first shard's key is the
+   * one {@link #createKey} returns.
+   */
+  public static Key createShardKey(Key lectureKey, String language, int shard) {
+    if (shard == 0) {
+      return createKey(lectureKey, language);
+    }
+    return KeyFactory.createKey(lectureKey, KIND, language + "/" + shard);
+  }
+
+  /**
+   * Creates a transcript segments entity, grouped under the lecture, that stores
+   * {@code segments} as the segments of the transcript in {@code language}.
+   *
+   * @param lineCounts The number of lines in each segment.
+   * @param lineIds The ids of the lines in every segment, in the order they are shown.
+   */
+  public static Entity createEntity(Key lectureKey, String language, TranscriptChunk segments,
+      List<Long> lineCounts, List<Long> lineIds) {
+    return createEntity(lectureKey, language, 0, 1, segments, lineCounts, lineIds);
+  }
+
+  /**
+   * Creates the entity of the shard at {@code shard} of {@code shardCount}, grouped under
+   * the lecture, that stores {@code segments} as part of the segments of the transcript in
+   * {@code language}.
+   *
+   * @param lineCounts The number of lines in each segment.
+   * @param lineIds The ids of the lines in every segment, in the order they are shown.
+   */
+  public static Entity createEntity(Key lectureKey, String language, int shard, int shardCount,
+      TranscriptChunk segments, List<Long> lineCounts, List<Long> lineIds) {
+    Entity segmentsEntity = new Entity(createShardKey(lectureKey, language, shard));
+    segmentsEntity.setProperty(LECTURE, lectureKey);
+    segmentsEntity.setProperty(LANGUAGE, language);
+    if (shard == 0) {
+      segmentsEntity.setUnindexedProperty(SHARD_COUNT, (long) shardCount);
+    }
+    segmentsEntity.setUnindexedProperty(DATA, new Blob(segments.toBytes()));
+    segmentsEntity.setUnindexedProperty(LINE_COUNTS, lineCounts);
+    segmentsEntity.setUnindexedProperty(LINE_IDS, lineIds);
+    return segmentsEntity;
+  }
+
+  /**
+   * Returns the keys of the shards that follow {@code firstShardEntity}, the entity with the
+   * key {@link #createKey} returns, in the order they are shown.
+   */
+  public static List<Key> getOtherShardKeys(Entity firstShardEntity) {
+    Long shardCount = (Long) firstShardEntity.getProperty(SHARD_COUNT);
+    Key lectureKey = (Key) firstShardEntity.getProperty(LECTURE);
+    String language = (String) firstShardEntity.getProperty(LANGUAGE);
+    List<Key> shardKeys = new ArrayList<>();
+    for (int shard = 1; shardCount != null && shard < shardCount; shard++) {
+      shardKeys.add(createShardKey(lectureKey, language, shard));
+    }
+    return shardKeys;
+  }
+
+  /**
+   * Returns {@code firstShardEntity} followed by the shards after it that are in
+   * {@code otherShardEntities}, in the order they are shown. Returns an empty list if any of
+   * them is missing, such as while the segments are being written.
+   */
+  public static List<Entity> getShards(
+      Entity firstShardEntity, Map<Key, Entity> otherShardEntities) {
+    List<Entity> shardEntities = new ArrayList<>();
+    shardEntities.add(firstShardEntity);
+    for (Key shardKey : getOtherShardKeys(firstShardEntity)) {
+      Entity shardEntity = otherShardEntities.get(shardKey);
+      if (shardEntity == null) {
+        return ImmutableList.of();
+      }
+      shardEntities.add(shardEntity);
+    }
+    return shardEntities;
+  }
+
+  /**
+   * Creates and returns the TranscriptSegments stored in the datastore
+   * {@code shardEntities}, which must be every shard of a transcript's segments in order, in
+   * the order they are shown.
+   *
+   * @throws IOException if the stored segments can't be read.
+   */
+  public static ImmutableList<TranscriptSegment> createTranscriptSegments(
+      List<Entity> shardEntities) throws IOException {
+    ImmutableList.Builder<TranscriptSegment> segmentBuilder = ImmutableList.builder();
+    for (Entity shardEntity : shardEntities) {
+      segmentBuilder.addAll(createTranscriptSegments(shardEntity));
+    }
+    return segmentBuilder.build();
+  }
+
+  /**
+   * Creates and returns the TranscriptSegments stored in a datastore {@code entity}, which
+   * is one shard of a transcript's segments, in the order they are shown.
+   *
+   * @throws IOException if the stored segments can't be read.
+   */
+  public static ImmutableList<TranscriptSegment> createTranscriptSegments(Entity entity)
+      throws IOException {
+    TranscriptChunk segments =
+        TranscriptChunk.fromBytes(((Blob) entity.getProperty(DATA)).getBytes());
+    Key lectureKey = (Key) entity.getProperty(LECTURE);
+    List<Long> lineCounts = getLongList(entity, LINE_COUNTS);
+    List<Long> lineIds = getLongList(entity, LINE_IDS);
+    if (lineCounts.size() != segments.lineCount()) {
+      throw new IOException("Stored transcript segments don't match their line counts.");
+    }
+
+    ImmutableList.Builder<TranscriptSegment> segmentBuilder = ImmutableList.builder();
+    int firstLine = 0;
+    for (int segment = 0; segment < segments.lineCount(); segment++) {
+      int lastLine = firstLine + lineCounts.get(segment).intValue();
+      if (lastLine > lineIds.size()) {
+        throw new IOException("Stored transcript segments don't match their line ids.");
+      }
+      long startMs = segments.lineStartMs(segment);
+      long durationMs = segments.lineDurationMs(segment);
+      segmentBuilder.add(
+          TranscriptSegment.builder()
+              .setTranscriptKey(KeyFactory.createKey(
+                  lectureKey, TranscriptLineUtil.KIND, segments.lineId(segment)))
+              .setLectureKey(lectureKey)
+              .setStartTimestampMs(startMs)
+              .setDurationMs(durationMs)
+              .setEndTimestampMs(startMs + durationMs)
+              .setContent(segments.lineContent(segment))
+              .setLineIds(ImmutableList.copyOf(lineIds.subList(firstLine, lastLine)))
+              .build());
+      firstLine = lastLine;
+    }
+    return segmentBuilder.build();
+  }
+
+  /**
+   * Returns the list of longs in {@code property} of {@code entity}. Datastore stores an
+   * empty list as null.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<Long> getLongList(Entity entity, String property) {
+    List<Long> values = (List<Long>) entity.getProperty(property);
+    return values == null ? ImmutableList.of() : values;
+  }
+
+  private TranscriptSegmentUtil() {}
+}
@@ -13,6 +13,7 @@
 // limitations under the License.
 
 const ENDPOINT_LECTURE_LIST = '/lecture-list';
+const ENDPOINT_LECTURE_AUTOCOMPLETE = '/lecture-autocomplete';
 const ENDPOINT_TRANSCRIPT_LANGUAGES = '/transcript-language';
 const LANGUAGE_SELECTOR_CONTAINER = 'language-selector';
 const NO_LANGUAGES_AVAILABLE_MESSAGE =
@@ -26,21 +27,96 @@ const PARAM_ID = 'id';
 
 const REDIRECT_PAGE = '/view/';
 
-loadLectureList();
+/* Used to request a page of the lecture list. */
+const PARAM_SORT = 'sort';
+const PARAM_CURSOR = 'cursor';
+const PARAM_QUERY = 'query';
+/* How long to wait after the filter is typed in before fetching the list. */
+const FILTER_DELAY_MS = 200;
+
+/* The cursor of the next page of the list, or empty if there isn't one. */
+let nextLectureCursor = '';
+/* Incremented on each new list, so a page of an older list isn't shown. */
+let lectureListVersion = 0;
+let filterTimeout;
+
+window.addEventListener('DOMContentLoaded', () => loadLectureList());
 
 /**
- * Fetches avaiable Lectures from `ENDPOINT_LECTURE_LIST`
- * and sets them in the lecture selection page.
+ * Fetches the first page of lectures from `ENDPOINT_LECTURE_LIST` in the
+ * selected order, or the lectures matching the filter if there is one, and
+ * sets them in the lecture selection page.
  */
 async function loadLectureList() {
-  const response = await fetch(ENDPOINT_LECTURE_LIST);
-  const jsonData = await response.json();
-
+  const version = ++lectureListVersion;
+  const query = document.getElementById('lecture-filter').value.trim();
+  const lecturePage = query ?
+      {lectures: await fetchMatchingLectures(query), cursor: ''} :
+      await fetchLecturePage(/* cursor= */ '');
+  if (version != lectureListVersion) {
+    return;
+  }
   const lectureList = document.getElementById('lecture-list');
   lectureList.innerHTML = '';
-  for (const lecture of jsonData) {
+  appendLecturePage(lecturePage);
+}
+
+/**
+ * Fetches the lectures whose name matches `query` from
+ * `ENDPOINT_LECTURE_AUTOCOMPLETE`, best first.
+ */
+async function fetchMatchingLectures(query) {
+  const url = new URL(ENDPOINT_LECTURE_AUTOCOMPLETE, window.location.origin);
+  url.searchParams.append(PARAM_QUERY, query);
+  const response = await fetch(url);
+  return response.json();
+}
+
+/**
+ * Fetches the next page of lectures and appends it to the lecture list.
+ */
+async function loadMoreLectures() {
+  const version = lectureListVersion;
+  const lecturePage = await fetchLecturePage(nextLectureCursor);
+  if (version == lectureListVersion) {
+    appendLecturePage(lecturePage);
+  }
+}
+
+/**
+ * Fetches the page of lectures starting at `cursor`, or the first page if
+ * it is empty.
+ */
+async function fetchLecturePage(cursor) {
+  const url = new URL(ENDPOINT_LECTURE_LIST, window.location.origin);
+  const sort = document.getElementById('lecture-sort').value;
+  url.searchParams.append(PARAM_SORT, sort);
+  if (cursor) {
+    url.searchParams.append(PARAM_CURSOR, cursor);
+  }
+  const response = await fetch(url);
+  return response.json();
+}
+
+/**
+ * Appends the lectures of `lecturePage` to the lecture list, and shows the
+ * button to load more if there are.
+ */
+function appendLecturePage(lecturePage) {
+  const lectureList = document.getElementById('lecture-list');
+  for (const lecture of lecturePage.lectures) {
     lectureList.appendChild(createLectureListItem(lecture));
   }
+  nextLectureCursor = lecturePage.cursor;
+  document.getElementById('load-more-lectures').hidden = !nextLectureCursor;
+}
+
+/**
+ * Reloads the lecture list once the filter hasn't changed for a moment.
+ */
+function filterLectureList() {
+  clearTimeout(filterTimeout);
+  filterTimeout = setTimeout(loadLectureList, FILTER_DELAY_MS);
 }
 
 /**
@@ -119,3 +195,6 @@ function createDefaultDisabledLanguageOption() {
 }
 
 window.fetchAndDisplayTranscriptLanguages = fetchAndDisplayTranscriptLanguages;
+window.loadLectureList = loadLectureList;
+window.loadMoreLectures = loadMoreLectures;
+window.filterLectureList = filterLectureList;
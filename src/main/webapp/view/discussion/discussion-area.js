@@ -69,8 +69,11 @@ export default class DiscussionArea {
   /**
    * Adds event listener for seeking and initializes the discussion area by
    * loading the current comments.
+   *
+   * @param comments Every comment of the lecture, if they were already
+   *     fetched.
    */
-  async initialize() {
+  async initialize(comments) {
     this.#scrollContainer = new ScrollContainer();
     this.#scrollContainer.id = DiscussionArea.#ID_DISCUSSION_CONTAINER;
     this.#discussionCommentsDiv = document.createElement('div');
@@ -84,7 +87,7 @@ export default class DiscussionArea {
     setInterval(
         this.updateDiscussion.bind(this),
         DiscussionArea.#BACKGROUND_UPDATE_INTERVAL_MS);
-    await this.updateDiscussion();
+    await this.updateDiscussion(comments);
     DiscussionArea.#ELEMENT_DISCUSSION.removeChild(
         DiscussionArea.#ELEMENT_LOADING_SPINNER);
   }
@@ -112,9 +115,14 @@ export default class DiscussionArea {
 
   /**
    * Fetches and updates the currently displayed comments.
+   *
+   * @param comments Every comment of the lecture, if they were already
+   *     fetched.
    */
-  async updateDiscussion() {
-    const newComments = await this.#manager.fetchNewComments();
+  async updateDiscussion(comments) {
+    const newComments = comments ?
+        this.#manager.addFetchedComments(comments) :
+        await this.#manager.fetchNewComments();
     if (newComments.length == 0) {
       return;
     }
@@ -87,6 +87,14 @@ export default class DiscussionManager {
     }
   }
 
+  /**
+   * Returns the comments of `allComments`, fetched along with the rest of
+   * the lecture, that haven't been fetched before.
+   */
+  addFetchedComments(allComments) {
+    return this.processNewComments(allComments);
+  }
+
   /**
    * Fetches and returns all of the lecture comments that haven't been fetched
    * before from `ENDPOINT`.
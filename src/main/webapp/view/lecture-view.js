@@ -18,11 +18,14 @@ import DiscussionArea from './discussion/discussion-area.js';
 import TranscriptArea from './transcript/transcript-area.js';
 import Video from './video/video.js';
 
-const ENDPOINT_LECTURE = '/lecture';
+const ENDPOINT_LECTURE_BOOTSTRAP = '/lecture-bootstrap';
 const REDIRECT_FEEDBACK = '/feedback/';
 const HEADER_TEXT = 'header-text';
 
 const PARAM_ID = 'id';
+const PARAM_INCLUDE = 'include';
+/* The view doesn't show who is logged in, so it leaves out `auth`. */
+const BOOTSTRAP_SECTIONS = 'lecture,transcript,discussion';
 
 /**
  * Initilises and stores instances related to video, transcript, and
@@ -35,9 +38,15 @@ export default class LectureView {
   #transcript;
   #discussion;
   #postIconFeedback;
+  #bootstrap;
 
-  constructor(lecture) {
-    this.#lecture = lecture;
+  /**
+   * Creates a `LectureView` of the lecture in `bootstrap`, along with its
+   * transcript and comments if they're in `bootstrap` too.
+   */
+  constructor(bootstrap) {
+    this.#lecture = bootstrap.lecture;
+    this.#bootstrap = bootstrap;
   }
 
   /**
@@ -55,8 +64,8 @@ export default class LectureView {
         this.#lecture, this.#eventController, this.#transcript);
 
     await this.#video.loadVideoApi();
-    await this.#transcript.initialize();
-    await this.#discussion.initialize();
+    await this.#transcript.initialize(this.#bootstrap.transcript);
+    await this.#discussion.initialize(this.#bootstrap.discussion);
     this.#postIconFeedback.initialize();
   }
 
@@ -71,19 +80,20 @@ export default class LectureView {
 const lectureId = getLectureId(window.location.search);
 setFeebackRedirect();
 
-/** Creates a LectureView with `lecture`. */
-getLectureFromDatabase(lectureId).then((lecture) => {
-  const lectureView = new LectureView(lecture);
+/** Creates a LectureView with the lecture's bootstrap. */
+getLectureBootstrap(lectureId).then((bootstrap) => {
+  const lectureView = new LectureView(bootstrap);
   lectureView.initialize();
 });
 
 /**
- * Returns lecture in database associated with `lectureId`
- * obtained from `ENDPOINT_LECTURE`.
+ * Returns the lecture in database associated with `lectureId`, with its
+ * transcript and comments, obtained from `ENDPOINT_LECTURE_BOOTSTRAP`.
  */
-async function getLectureFromDatabase(lectureId) {
-  const url = new URL(ENDPOINT_LECTURE, window.location.origin);
+async function getLectureBootstrap(lectureId) {
+  const url = new URL(ENDPOINT_LECTURE_BOOTSTRAP, window.location.origin);
   url.searchParams.append(PARAM_ID, lectureId);
+  url.searchParams.append(PARAM_INCLUDE, BOOTSTRAP_SECTIONS);
   const response = await fetch(url);
   return response.json();
 }
@@ -13,6 +13,7 @@
 // limitations under the License.
 
 import {ScrollContainer} from '../../scroll-container.js';
+import TranscriptColumns from './transcript-columns.js';
 import TranscriptSeeker from './transcript-seeker.js';
 import {TranscriptLineElement} from './transcript.js';
 
@@ -23,6 +24,10 @@ export default class TranscriptArea {
   static #TRANSCRIPT_PARENT_CONTAINER = 'transcript-container';
   static #transcriptContainer;
   static #PARAM_ID = 'id';
+  static #PARAM_GRANULARITY = 'granularity';
+  // Segments merge short lines into sentences, so there are fewer elements to
+  // render and seek through.
+  static #GRANULARITY_SEGMENTS = 'segments';
   static #TRANSCRIPT_ERROR_MESSAGE =
       'Sorry, there is no transcript available for this lecture recording. :(';
 
@@ -49,10 +54,12 @@ export default class TranscriptArea {
   /**
    * Adds event listener for seeking and initializes the transcript area by
    * loading the transcript lines.
+   *
+   * @param transcript The transcript columns, if they were already fetched.
    */
-  async initialize() {
+  async initialize(transcript) {
     this.#transcriptSeeker.addSeekingListener();
-    await this.loadTranscript();
+    await this.loadTranscript(transcript);
   }
 
   /**
@@ -62,19 +69,33 @@ export default class TranscriptArea {
    *
    * <p>This function assumes that if there is a transcript for the
    * current lecture, the lines have already been added to the datastore.
+   *
+   * @param transcript The transcript columns, if they were already fetched.
    */
-  async loadTranscript() {
-    const url =
-        new URL(TranscriptArea.#ENDPOINT_TRANSCRIPT, window.location.origin);
-    url.searchParams.append(TranscriptArea.#PARAM_ID, this.#lecture.key.id);
-    const transcriptResponse = await fetch(url);
-    const transcriptLines = await transcriptResponse.json();
+  async loadTranscript(transcript) {
+    const transcriptColumns =
+        new TranscriptColumns(transcript || await this.fetchTranscript());
     // No transcript lines are available for this lecture.
-    if (transcriptLines.length == 0) {
+    if (transcriptColumns.size() == 0) {
       TranscriptArea.displayNoTranscriptMessage();
       return;
     }
-    this.addTranscriptLinesToDom(transcriptLines);
+    this.addTranscriptLinesToDom(transcriptColumns);
+    this.#transcriptSeeker.setTranscriptColumns(transcriptColumns);
+  }
+
+  /** Fetches the transcript columns from `ENDPOINT_TRANSCRIPT`. */
+  async fetchTranscript() {
+    const url =
+        new URL(TranscriptArea.#ENDPOINT_TRANSCRIPT, window.location.origin);
+    url.searchParams.append(TranscriptArea.#PARAM_ID, this.#lecture.key.id);
+    url.searchParams.append(
+        TranscriptArea.#PARAM_GRANULARITY,
+        TranscriptArea.#GRANULARITY_SEGMENTS);
+    // Columns are smaller to download and parse than an object per line.
+    const transcriptResponse = await fetch(
+        url, {headers: {'Accept': TranscriptColumns.MEDIA_TYPE}});
+    return transcriptResponse.json();
   }
 
   /**
@@ -88,26 +109,33 @@ export default class TranscriptArea {
   }
 
   /**
-   * Adds `transcriptLines` to the DOM as list elements.
+   * Adds the lines of `transcriptColumns` to the DOM as list elements.
+   *
+   * <p>Each line may be a segment made of several lines, in which case
+   * comments on any of its lines are counted on its element.
    *
    * <p>This is a private method that should only be called in
    * `loadTranscript()`.
    */
-  addTranscriptLinesToDom(transcriptLines) {
+  addTranscriptLinesToDom(transcriptColumns) {
     const transcriptContainer = TranscriptArea.transcriptScrollContainer();
     const ulElement = document.createElement('ul');
     // TODO: Move the class assignment to the HTML.
     ulElement.class = 'mx-auto';
     transcriptContainer.appendChild(ulElement);
-    transcriptLines.forEach((transcriptLine) => {
+    for (let index = 0; index < transcriptColumns.size(); index++) {
+      const transcriptLine = transcriptColumns.transcriptLine(index);
       const transcriptLineElement =
           TranscriptLineElement.createTranscriptLineElement(transcriptLine);
       ulElement.appendChild(transcriptLineElement);
-      this.#transcriptLineToCommentCount.set(
-          transcriptLine.transcriptKey.id, transcriptLineElement);
+      const lineIds =
+          transcriptLine.lineIds || [transcriptLine.transcriptKey.id];
+      lineIds.forEach((lineId) => {
+        this.#transcriptLineToCommentCount.set(lineId, transcriptLineElement);
+      });
       transcriptLineElement.attachSeekingEventListener(
           this.transcriptSeeker().eventController());
-    });
+    }
     $('.indicator').popover({trigger: 'hover'});
   }
 
@@ -0,0 +1,103 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+/**
+ * A transcript decoded from the columns format of `/transcript` into typed
+ * arrays, so that the line at a time can be found with a binary search.
+ */
+export default class TranscriptColumns {
+  /** The media type to request the columns format with. */
+  static MEDIA_TYPE = 'application/vnd.zoomtube.transcript-columns+json';
+
+  #ids;
+  #startsMs;
+  #endsMs;
+  #contents;
+  // The index in `#lineIds` of the first line of each segment, with the
+  // number of lines as the last element. Undefined if these are lines.
+  #lineOffsets;
+  #lineIds;
+
+  /**
+   * Decodes `columns`, the parsed Json of a `/transcript` response in the
+   * columns format.
+   */
+  constructor(columns) {
+    const size = columns.ids.length;
+    this.#ids = Float64Array.from(columns.ids);
+    this.#startsMs = new Float64Array(size);
+    this.#endsMs = new Float64Array(size);
+    let startMs = 0;
+    for (let index = 0; index < size; index++) {
+      startMs += columns.startDeltasMs[index];
+      this.#startsMs[index] = startMs;
+      this.#endsMs[index] = startMs + columns.durationsMs[index];
+    }
+    this.#contents = columns.contents;
+    if (columns.lineCounts.length > 0) {
+      this.#lineIds = Float64Array.from(columns.lineIds);
+      this.#lineOffsets = new Uint32Array(size + 1);
+      for (let index = 0; index < size; index++) {
+        this.#lineOffsets[index + 1] =
+            this.#lineOffsets[index] + columns.lineCounts[index];
+      }
+    }
+  }
+
+  /** Returns the number of lines in the transcript. */
+  size() {
+    return this.#ids.length;
+  }
+
+  /**
+   * Returns the line at `index` in the shape of a `TranscriptLine` from
+   * `/transcript`, with the ids of the lines it is made of if it is a segment.
+   */
+  transcriptLine(index) {
+    const transcriptLine = {
+      transcriptKey: {id: this.#ids[index]},
+      startTimestampMs: this.#startsMs[index],
+      durationMs: this.#endsMs[index] - this.#startsMs[index],
+      endTimestampMs: this.#endsMs[index],
+      content: this.#contents[index],
+    };
+    if (this.#lineOffsets) {
+      transcriptLine.lineIds = Array.from(this.#lineIds.subarray(
+          this.#lineOffsets[index], this.#lineOffsets[index + 1]));
+    }
+    return transcriptLine;
+  }
+
+  /**
+   * Returns the index of the line to show at `timeMs`: the line being spoken,
+   * else the next line to start, else the last line.
+   */
+  indexAtTime(timeMs) {
+    // Finds the first line that starts after `timeMs`.
+    let low = 0;
+    let high = this.#startsMs.length;
+    while (low < high) {
+      const middle = (low + high) >>> 1;
+      if (this.#startsMs[middle] <= timeMs) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    if (low > 0 && timeMs <= this.#endsMs[low - 1]) {
+      return low - 1;
+    }
+    return Math.min(low, this.#startsMs.length - 1);
+  }
+}
@@ -20,6 +20,7 @@ export default class TranscriptSeeker {
 
   #currentTranscriptLine;
   #eventController;
+  #transcriptColumns;
 
   /**
    * Creates an instance of `TranscriptSeeker` for seeking
@@ -42,6 +43,15 @@ export default class TranscriptSeeker {
     }, 'seek', 'seekAll');
   }
 
+  /**
+   * Sets the `TranscriptColumns` that the transcript line elements were
+   * created from, in the same order, so seeking can search them instead of
+   * walking the elements.
+   */
+  setTranscriptColumns(transcriptColumns) {
+    this.#transcriptColumns = transcriptColumns;
+  }
+
   /**
    * Returns the `currentTranscriptLine` if it exists. Else, returns
    * undefined.
@@ -95,12 +105,19 @@ export default class TranscriptSeeker {
   /**
    * Searches for and returns the closest transcript line
    * based on `timeMs`.
+   *
+   * <p>The search is a binary search of the transcript columns if they are
+   * set, and otherwise walks the elements from the first.
    */
   findClosestTranscriptLine(timeMs) {
     // TODO: Create a global variable for the list of transcript line elements
     // once the pull request separating transcript.js into classes is merged.
     const transcriptLineElements =
         document.getElementsByTagName('transcript-line');
+    if (this.#transcriptColumns != null) {
+      const index = this.#transcriptColumns.indexAtTime(timeMs);
+      return transcriptLineElements[index];
+    }
     let transcriptLinePointer = transcriptLineElements[0];
     while (transcriptLinePointer != null &&
            !transcriptLinePointer.isWithinTimeRange(timeMs) &&
@@ -16,13 +16,6 @@ import TimestampUtil from '../../timestamp-util.js';
 
 const CUSTOM_ELEMENT_TRANSCRIPT_LINE = 'transcript-line';
 
-/**
- * Sends a POST request to delete all of the transcript lines from datastore.
- */
-export function deleteTranscript() {
-  fetch('/delete-transcript', {method: 'POST'});
-}
-
 /**
  * Creates a transcript line element containing the text,
  * start time, and end time.
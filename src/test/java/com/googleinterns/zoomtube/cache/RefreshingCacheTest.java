@@ -0,0 +1,393 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.base.Ticker;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class RefreshingCacheTest {
+  private static final Duration TIME_TO_LIVE = Duration.ofMinutes(10);
+  private static final Duration NEGATIVE_TIME_TO_LIVE = Duration.ofMinutes(1);
+  private static final Duration STALE = Duration.ofMinutes(30);
+
+  private final AtomicLong nowNanos = new AtomicLong();
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return nowNanos.get();
+    }
+  };
+  private final AtomicInteger loadCount = new AtomicInteger();
+  private volatile String nextValue;
+
+  @Before
+  public void setUp() {
+    nextValue = "value";
+  }
+
+  @Test
+  public void get_freshValue_loadsOnce() throws Exception {
+    RefreshingCache<String, String> cache = createCache();
+
+    cache.get("key");
+    advance(TIME_TO_LIVE.minusSeconds(1));
+    String value = cache.get("key");
+
+    assertThat(value).isEqualTo("value");
+    assertThat(loadCount.get()).isEqualTo(1);
+    assertThat(cache.stats().hitCount()).isEqualTo(1);
+    assertThat(cache.stats().missCount()).isEqualTo(1);
+    assertThat(cache.stats().hitRate()).isEqualTo(0.5);
+  }
+
+  @Test
+  public void get_staleValue_refreshesIt() throws Exception {
+    RefreshingCache<String, String> cache = createCache();
+    cache.get("key");
+    nextValue = "new value";
+    advance(TIME_TO_LIVE.plusSeconds(1));
+
+    String refreshedValue = cache.get("key");
+    String cachedValue = cache.get("key");
+
+    assertThat(refreshedValue).isEqualTo("new value");
+    assertThat(cachedValue).isEqualTo("new value");
+    assertThat(loadCount.get()).isEqualTo(2);
+    assertThat(cache.stats().staleHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_staleValue_refreshFails_returnsStaleValue() throws Exception {
+    RefreshingCache<String, String> cache = createCache();
+    cache.get("key");
+    nextValue = null;
+    advance(TIME_TO_LIVE.plusSeconds(1));
+
+    String staleValue = cache.get("key");
+
+    assertThat(staleValue).isEqualTo("value");
+    assertThat(cache.stats().loadFailureCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_staleValueBeingRefreshed_returnsStaleValue() throws Exception {
+    CountDownLatch refreshStarted = new CountDownLatch(1);
+    CountDownLatch finishRefresh = new CountDownLatch(1);
+    RefreshingCache<String, String> cache =
+        RefreshingCache.builder("test", (String key) -> {
+                         if (loadCount.incrementAndGet() == 2) {
+                           refreshStarted.countDown();
+                           awaitUninterruptibly(finishRefresh);
+                         }
+                         return "value " + loadCount.get();
+                       })
+            .setTimeToLive(TIME_TO_LIVE)
+            .setStale(STALE)
+            .setTicker(ticker)
+            .build();
+    cache.get("key");
+    advance(TIME_TO_LIVE.plusSeconds(1));
+    ExecutorService refresher = Executors.newSingleThreadExecutor();
+    Future<String> refreshedValue = refresher.submit(() -> cache.get("key"));
+    refreshStarted.await();
+
+    String concurrentValue = cache.get("key");
+    finishRefresh.countDown();
+
+    assertThat(concurrentValue).isEqualTo("value 1");
+    assertThat(refreshedValue.get()).isEqualTo("value 2");
+    refresher.shutdown();
+  }
+
+  @Test
+  public void get_staleValue_refreshesFromDatastore() throws Exception {
+    LocalServiceTestHelper testServices =
+        new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+    testServices.setUp();
+    try {
+      DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+      Entity entity = new Entity("Value", "key");
+      entity.setProperty("value", "value");
+      datastore.put(entity);
+      RefreshingCache<String, String> cache =
+          RefreshingCache.builder("test", (String key) -> {
+                           try {
+                             return (String) DatastoreServiceFactory.getDatastoreService()
+                                 .get(KeyFactory.createKey("Value", key))
+                                 .getProperty("value");
+                           } catch (EntityNotFoundException e) {
+                             throw new IOException(e);
+                           }
+                         })
+              .setTimeToLive(TIME_TO_LIVE)
+              .setStale(STALE)
+              .setTicker(ticker)
+              .build();
+      cache.get("key");
+      entity.setProperty("value", "new value");
+      datastore.put(entity);
+      advance(TIME_TO_LIVE.plusSeconds(1));
+
+      String refreshedValue = cache.get("key");
+
+      assertThat(refreshedValue).isEqualTo("new value");
+      assertThat(cache.stats().loadFailureCount()).isEqualTo(0);
+    } finally {
+      testServices.tearDown();
+    }
+  }
+
+  @Test
+  public void get_expiredValue_waitsForLoad() throws Exception {
+    RefreshingCache<String, String> cache = createCache();
+    cache.get("key");
+    nextValue = "new value";
+    advance(TIME_TO_LIVE.plus(STALE));
+
+    String value = cache.get("key");
+
+    assertThat(value).isEqualTo("new value");
+    assertThat(cache.stats().missCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_negativeValue_expiresSooner() throws Exception {
+    RefreshingCache<String, String> cache = createCache();
+    nextValue = "";
+    cache.get("key");
+    nextValue = "value";
+    advance(NEGATIVE_TIME_TO_LIVE.plusSeconds(1));
+
+    String refreshedValue = cache.get("key");
+
+    assertThat(refreshedValue).isEqualTo("value");
+    assertThat(loadCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_loadFails_isNotCached() throws Exception {
+    RefreshingCache<String, String> cache = createCache();
+    nextValue = null;
+    try {
+      cache.get("key");
+      fail();
+    } catch (IOException e) {
+    }
+    nextValue = "value";
+
+    String value = cache.get("key");
+
+    assertThat(value).isEqualTo("value");
+    assertThat(cache.stats().loadFailureCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_concurrentMisses_shareOneLoad() throws Exception {
+    int requests = 8;
+    CountDownLatch releaseLoad = new CountDownLatch(1);
+    RefreshingCache<String, String> cache =
+        RefreshingCache.builder("test", (String key) -> {
+                         loadCount.incrementAndGet();
+                         awaitUninterruptibly(releaseLoad);
+                         return "value";
+                       })
+            .build();
+    ExecutorService requestExecutor = Executors.newFixedThreadPool(requests);
+    List<Future<String>> values = new ArrayList<>();
+    for (int request = 0; request < requests; request++) {
+      values.add(requestExecutor.submit(() -> cache.get("key")));
+    }
+
+    // Lets every request reach the cache before the load finishes.
+    while (cache.stats().missCount() < requests) {
+      Thread.sleep(1);
+    }
+    releaseLoad.countDown();
+
+    for (Future<String> value : values) {
+      assertThat(value.get()).isEqualTo("value");
+    }
+    requestExecutor.shutdown();
+    assertThat(loadCount.get()).isEqualTo(1);
+    assertThat(cache.stats().coalescedLoadCount()).isEqualTo(requests - 1);
+  }
+
+  @Test
+  public void get_overMaximumSize_evictsOldest() throws Exception {
+    RefreshingCache<String, String> cache = RefreshingCache.builder("test", this::load)
+                                                .setMaximumSize(2)
+                                                .setTicker(ticker)
+                                                .build();
+    cache.get("a");
+    advance(Duration.ofSeconds(1));
+    cache.get("b");
+    advance(Duration.ofSeconds(1));
+    cache.get("c");
+
+    cache.get("b");
+    cache.get("c");
+    cache.get("a");
+
+    assertThat(loadCount.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void get_overMaximumSize_evictsLeastRecentlyUsed() throws Exception {
+    RefreshingCache<String, String> cache = RefreshingCache.builder("test", this::load)
+                                                .setMaximumSize(2)
+                                                .setTicker(ticker)
+                                                .build();
+    cache.get("a");
+    advance(Duration.ofSeconds(1));
+    cache.get("b");
+    advance(Duration.ofSeconds(1));
+    cache.get("a");
+    advance(Duration.ofSeconds(1));
+    cache.get("c");
+
+    cache.get("a");
+    cache.get("c");
+
+    assertThat(loadCount.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void put_duringInvalidateAll_keepsEvicting() throws Exception {
+    RefreshingCache<Integer, String> cache = RefreshingCache.builder("test", (Integer key) -> {
+                                                              loadCount.incrementAndGet();
+                                                              return "loaded";
+                                                            })
+                                                 .setMaximumSize(10)
+                                                 .build();
+    ExecutorService putExecutor = Executors.newSingleThreadExecutor();
+    Future<?> puts = putExecutor.submit(() -> {
+      for (int key = 0; key < 100_000; key++) {
+        cache.put(key, "put");
+      }
+    });
+    while (!puts.isDone()) {
+      cache.invalidateAll();
+    }
+    puts.get();
+    putExecutor.shutdown();
+
+    cache.invalidateAll();
+    for (int key = 0; key <= 10; key++) {
+      cache.put(key, "put");
+    }
+
+    assertThat(cache.get(10)).isEqualTo("put");
+    assertThat(cache.get(0)).isEqualTo("loaded");
+    assertThat(loadCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void put_isReturnedWithoutLoading() throws Exception {
+    RefreshingCache<String, String> cache = createCache();
+
+    cache.put("key", "put value");
+
+    assertThat(cache.get("key")).isEqualTo("put value");
+    assertThat(loadCount.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void invalidateAll_removesEveryValue() throws Exception {
+    RefreshingCache<String, String> cache = createCache();
+    cache.get("a");
+    cache.get("b");
+    nextValue = "new value";
+
+    cache.invalidateAll();
+
+    assertThat(cache.get("a")).isEqualTo("new value");
+    assertThat(cache.get("b")).isEqualTo("new value");
+    assertThat(loadCount.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void invalidateAll_duringLoad_doesNotCacheLoadedValue() throws Exception {
+    AtomicReference<RefreshingCache<String, String>> cache = new AtomicReference<>();
+    cache.set(RefreshingCache.builder("test", (String key) -> {
+                                // The data changes while it is being loaded.
+                                if (loadCount.incrementAndGet() == 1) {
+                                  cache.get().invalidateAll();
+                                }
+                                return "value " + loadCount.get();
+                              })
+                  .build());
+
+    String firstValue = cache.get().get("key");
+    String secondValue = cache.get().get("key");
+
+    assertThat(firstValue).isEqualTo("value 1");
+    assertThat(secondValue).isEqualTo("value 2");
+  }
+
+  private RefreshingCache<String, String> createCache() {
+    return RefreshingCache.builder("test", this::load)
+        .setTimeToLive(TIME_TO_LIVE)
+        .setNegativeTimeToLive(NEGATIVE_TIME_TO_LIVE, String::isEmpty)
+        .setStale(STALE)
+        .setTicker(ticker)
+        .build();
+  }
+
+  private String load(String key) throws IOException {
+    loadCount.incrementAndGet();
+    if (nextValue == null) {
+      throw new IOException("Load failed.");
+    }
+    return nextValue;
+  }
+
+  private void advance(Duration duration) {
+    nowNanos.addAndGet(duration.toNanos());
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,219 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.filters;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CompressionFilterTest {
+  private static final int THRESHOLD_BYTES = 100;
+  private static final String LARGE_JSON =
+      "{\"text\":\"" + Strings.repeat("a", THRESHOLD_BYTES * 2) + "\"}";
+  private static final String SMALL_JSON = "{\"text\":\"a\"}";
+
+  private CompressionFilter filter;
+  private HttpServletRequest request;
+  private HttpServletResponse response;
+  private ByteArrayOutputStream content;
+
+  @Before
+  public void setUp() throws Exception {
+    FilterConfig filterConfig = mock(FilterConfig.class);
+    when(filterConfig.getInitParameter(CompressionFilter.PARAM_THRESHOLD_BYTES))
+        .thenReturn(String.valueOf(THRESHOLD_BYTES));
+    filter = new CompressionFilter();
+    filter.init(filterConfig);
+
+    request = mock(HttpServletRequest.class);
+    when(request.getMethod()).thenReturn("GET");
+    response = mock(HttpServletResponse.class);
+    when(response.getCharacterEncoding()).thenReturn("UTF-8");
+    content = new ByteArrayOutputStream();
+    when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        content.write(b);
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {}
+    });
+  }
+
+  @Test
+  public void doFilter_largeJsonAndAcceptsGzip_compresses() throws Exception {
+    when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+
+    filter.doFilter(request, response, writeJson(LARGE_JSON));
+
+    verify(response).setHeader("Content-Encoding", "gzip");
+    verify(response).addHeader("Vary", "Accept-Encoding");
+    assertThat(gunzip(content.toByteArray())).isEqualTo(LARGE_JSON);
+  }
+
+  @Test
+  public void doFilter_smallJson_sendsAsIs() throws Exception {
+    when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+
+    filter.doFilter(request, response, writeJson(SMALL_JSON));
+
+    verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+    verify(response).setContentLengthLong(SMALL_JSON.length());
+    assertThat(content.toString("UTF-8")).isEqualTo(SMALL_JSON);
+  }
+
+  @Test
+  public void doFilter_doesNotAcceptGzip_sendsAsIs() throws Exception {
+    when(request.getHeader("Accept-Encoding")).thenReturn("gzip;q=0, deflate");
+
+    filter.doFilter(request, response, writeJson(LARGE_JSON));
+
+    verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+    verify(response).addHeader("Vary", "Accept-Encoding");
+    assertThat(content.toString("UTF-8")).isEqualTo(LARGE_JSON);
+  }
+
+  @Test
+  public void doFilter_notJson_sendsAsIs() throws Exception {
+    when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+    when(response.getContentType()).thenReturn("text/html");
+
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {
+      filterResponse.getWriter().print(LARGE_JSON);
+    });
+
+    verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+    verify(response, never()).addHeader("Vary", "Accept-Encoding");
+    assertThat(content.toString("UTF-8")).isEqualTo(LARGE_JSON);
+  }
+
+  @Test
+  public void doFilter_contentLengthSet_isNotSentWhenCompressed() throws Exception {
+    when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {
+      when(response.getContentType()).thenReturn("application/json");
+      filterResponse.setContentLength(LARGE_JSON.length());
+      filterResponse.getOutputStream().write(LARGE_JSON.getBytes(StandardCharsets.UTF_8));
+    });
+
+    verify(response, never()).setContentLength(LARGE_JSON.length());
+    verify(response, never()).setContentLengthLong(anyLong());
+    assertThat(gunzip(content.toByteArray())).isEqualTo(LARGE_JSON);
+  }
+
+  @Test
+  public void doFilter_sendError_writesNothing() throws Exception {
+    when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {
+      ((HttpServletResponse) filterResponse).sendError(HttpServletResponse.SC_NOT_FOUND);
+      when(response.getContentType()).thenReturn("application/json");
+      filterResponse.getWriter().println(LARGE_JSON);
+    });
+
+    verify(response).sendError(HttpServletResponse.SC_NOT_FOUND);
+    assertThat(content.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void doFilter_precompressedBody_isNotCompressedAgain() throws Exception {
+    when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+    PrecompressedBody body = PrecompressedBody.create(
+        "application/json", Strings.repeat(LARGE_JSON, CompressionFilter.DEFAULT_THRESHOLD_BYTES));
+
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {
+      when(response.getContentType()).thenReturn("application/json; charset=UTF-8");
+      when(response.containsHeader("Content-Encoding")).thenReturn(true);
+      body.write((HttpServletRequest) filterRequest, (HttpServletResponse) filterResponse);
+    });
+
+    assertThat(gunzip(content.toByteArray()))
+        .isEqualTo(Strings.repeat(LARGE_JSON, CompressionFilter.DEFAULT_THRESHOLD_BYTES));
+  }
+
+  @Test
+  public void acceptsGzip_parsesAcceptEncoding() {
+    assertThat(acceptsGzip("gzip")).isTrue();
+    assertThat(acceptsGzip("deflate, GZIP;q=0.5")).isTrue();
+    assertThat(acceptsGzip("*")).isTrue();
+    assertThat(acceptsGzip("gzip;q=0")).isFalse();
+    assertThat(acceptsGzip("gzip; q=0.000")).isFalse();
+    assertThat(acceptsGzip("deflate, br")).isFalse();
+    assertThat(acceptsGzip(null)).isFalse();
+  }
+
+  @Test
+  public void isCompressible_onlyJson() {
+    assertThat(CompressionFilter.isCompressible("application/json")).isTrue();
+    assertThat(CompressionFilter.isCompressible("application/json;charset=UTF-8")).isTrue();
+    assertThat(CompressionFilter.isCompressible("application/x-ndjson")).isTrue();
+    assertThat(CompressionFilter.isCompressible("application/ld+json")).isTrue();
+    assertThat(CompressionFilter.isCompressible("text/html")).isFalse();
+    assertThat(CompressionFilter.isCompressible(null)).isFalse();
+  }
+
+  /** Returns a servlet that writes {@code json} with its writer. */
+  private FilterChain writeJson(String json) {
+    return (filterRequest, filterResponse) -> {
+      filterResponse.setContentType("application/json");
+      when(response.getContentType()).thenReturn("application/json");
+      filterResponse.getWriter().print(json);
+    };
+  }
+
+  private static boolean acceptsGzip(String acceptEncoding) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+    return CompressionFilter.acceptsGzip(request);
+  }
+
+  private static String gunzip(byte[] bytes) throws IOException {
+    try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      return new String(ByteStreams.toByteArray(gzip), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.http;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Ticker;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CircuitBreakerTest {
+  private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+
+  private final AtomicLong nowNanos = new AtomicLong();
+  private CircuitBreaker circuitBreaker;
+
+  @Before
+  public void setUp() {
+    Ticker ticker = new Ticker() {
+      @Override
+      public long read() {
+        return nowNanos.get();
+      }
+    };
+    circuitBreaker = new CircuitBreaker(/* failureThreshold= */ 3, OPEN_DURATION, ticker);
+  }
+
+  @Test
+  public void allowRequest_fewerFailuresThanThreshold_staysClosed() {
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordSuccess();
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordFailure();
+
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  public void allowRequest_consecutiveFailures_opens() {
+    openCircuit();
+
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  public void allowRequest_afterOpenDuration_allowsOneTrial() {
+    openCircuit();
+    nowNanos.addAndGet(OPEN_DURATION.toNanos());
+
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+  }
+
+  @Test
+  public void recordSuccess_trialSucceeds_closes() {
+    openCircuit();
+    nowNanos.addAndGet(OPEN_DURATION.toNanos());
+    circuitBreaker.allowRequest();
+
+    circuitBreaker.recordSuccess();
+
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  public void recordFailure_trialFails_reopens() {
+    openCircuit();
+    nowNanos.addAndGet(OPEN_DURATION.toNanos());
+    circuitBreaker.allowRequest();
+
+    circuitBreaker.recordFailure();
+
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+    assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  private void openCircuit() {
+    for (int failure = 0; failure < 3; failure++) {
+      circuitBreaker.allowRequest();
+      circuitBreaker.recordFailure();
+    }
+  }
+}
@@ -0,0 +1,198 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.http;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.googleinterns.zoomtube.transcriptParser.TimedTextStubServer;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ResilientHttpClientTest {
+  private static final String VIDEO_ID = "videoId";
+
+  private TimedTextStubServer stubServer;
+  private URI transcriptUri;
+
+  @Before
+  public void setUp() throws Exception {
+    stubServer = TimedTextStubServer.start();
+    stubServer.addTranscript(VIDEO_ID, "en", "Hi");
+    transcriptUri = URI.create(stubServer.apiUrl() + "?lang=en&v=" + VIDEO_ID);
+  }
+
+  @After
+  public void tearDown() {
+    stubServer.stop();
+  }
+
+  @Test
+  public void get_returnsBody() throws Exception {
+    ResilientHttpClient client = clientBuilder().build();
+
+    byte[] body = client.get(transcriptUri);
+
+    assertThat(new String(body, StandardCharsets.UTF_8)).contains("Hi");
+  }
+
+  @Test
+  public void get_serverErrors_retriesUntilSuccess() throws Exception {
+    ResilientHttpClient client = clientBuilder().setMaxAttempts(3).build();
+    stubServer.failNextRequests(2, /* status= */ 503);
+
+    byte[] body = client.get(transcriptUri);
+
+    assertThat(new String(body, StandardCharsets.UTF_8)).contains("Hi");
+    assertThat(stubServer.requestCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void get_notFound_doesNotRetry() throws Exception {
+    ResilientHttpClient client = clientBuilder().setMaxAttempts(3).build();
+
+    try {
+      client.get(URI.create(stubServer.apiUrl() + "?lang=fr&v=" + VIDEO_ID));
+      fail();
+    } catch (HttpStatusException e) {
+      assertThat(e.statusCode()).isEqualTo(404);
+    }
+    assertThat(stubServer.requestCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_tooManyErrors_givesUp() throws Exception {
+    ResilientHttpClient client = clientBuilder().setMaxAttempts(3).build();
+    stubServer.failNextRequests(5, /* status= */ 500);
+
+    try {
+      client.get(transcriptUri);
+      fail();
+    } catch (HttpStatusException e) {
+      assertThat(e.statusCode()).isEqualTo(500);
+    }
+    assertThat(stubServer.requestCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void get_retryBudgetSpent_doesNotRetry() throws Exception {
+    ResilientHttpClient client =
+        clientBuilder().setMaxAttempts(3).setRetryBudget(/* retryRatio= */ 0, 1).build();
+    stubServer.failNextRequests(10, /* status= */ 500);
+
+    for (int request = 0; request < 2; request++) {
+      try {
+        client.get(transcriptUri);
+        fail();
+      } catch (HttpStatusException e) {
+      }
+    }
+
+    // The first request is retried once, using up the budget.
+    assertThat(stubServer.requestCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void get_slowServer_timesOut() throws Exception {
+    ResilientHttpClient client =
+        clientBuilder().setMaxAttempts(1).setReadTimeout(Duration.ofMillis(100)).build();
+    stubServer.setResponseDelayMs(2000);
+
+    long start = System.nanoTime();
+    try {
+      client.get(transcriptUri);
+      fail();
+    } catch (SocketTimeoutException e) {
+    }
+
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+  }
+
+  @Test
+  public void get_deadlineBeforeReadTimeout_timesOutAtDeadline() throws Exception {
+    ResilientHttpClient client = clientBuilder()
+                                     .setMaxAttempts(1)
+                                     .setReadTimeout(Duration.ofSeconds(10))
+                                     .setDeadline(Duration.ofMillis(100))
+                                     .build();
+    stubServer.setResponseDelayMs(2000);
+
+    long start = System.nanoTime();
+    try {
+      client.get(transcriptUri);
+      fail();
+    } catch (SocketTimeoutException e) {
+    }
+
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+  }
+
+  @Test
+  public void get_interruptedWhileRetrying_recordsFailure() throws Exception {
+    ResilientHttpClient client = clientBuilder()
+                                     .setMaxAttempts(3)
+                                     .setCircuitBreaker(1, Duration.ofMinutes(1))
+                                     .build();
+    stubServer.failNextRequests(3, /* status= */ 503);
+
+    Thread.currentThread().interrupt();
+    try {
+      client.get(transcriptUri);
+      fail();
+    } catch (IOException e) {
+    } finally {
+      Thread.interrupted();
+    }
+
+    assertThat(client.circuitState(transcriptUri)).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  public void get_repeatedFailures_opensCircuit() throws Exception {
+    ResilientHttpClient client = clientBuilder()
+                                     .setMaxAttempts(1)
+                                     .setCircuitBreaker(2, Duration.ofMinutes(1))
+                                     .build();
+    stubServer.failNextRequests(2, /* status= */ 503);
+    for (int request = 0; request < 2; request++) {
+      try {
+        client.get(transcriptUri);
+        fail();
+      } catch (HttpStatusException e) {
+      }
+    }
+
+    try {
+      client.get(transcriptUri);
+      fail();
+    } catch (CircuitOpenException e) {
+    }
+    assertThat(stubServer.requestCount()).isEqualTo(2);
+    assertThat(client.circuitState(transcriptUri)).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  private static ResilientHttpClient.Builder clientBuilder() {
+    return ResilientHttpClient.builder().setBackoff(Duration.ofMillis(1), Duration.ofMillis(5));
+  }
+}
@@ -0,0 +1,66 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class HistogramTest {
+  @Test
+  public void bucketIndex_valueIsWithinItsBucket() {
+    long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 100, 1000, 123456789, Long.MAX_VALUE};
+    for (long value : values) {
+      int bucket = Histogram.bucketIndex(value);
+      long lowerBound = bucket == 0 ? 0 : Histogram.bucketUpperBound(bucket - 1) + 1;
+
+      assertThat(value).isAtLeast(lowerBound);
+      assertThat(value).isAtMost(Histogram.bucketUpperBound(bucket));
+    }
+  }
+
+  @Test
+  public void valueAtQuantile_isWithinPrecision() {
+    Histogram histogram = new Histogram();
+    for (long value = 1; value <= 1000; value++) {
+      histogram.record(value);
+    }
+
+    assertThat((double) histogram.valueAtQuantile(0.5)).isWithin(500 * 0.125).of(500);
+    assertThat((double) histogram.valueAtQuantile(0.99)).isWithin(990 * 0.125).of(990);
+    assertThat(histogram.valueAtQuantile(1)).isEqualTo(1000);
+    assertThat(histogram.count()).isEqualTo(1000);
+    assertThat(histogram.sum()).isEqualTo(500500);
+    assertThat(histogram.max()).isEqualTo(1000);
+  }
+
+  @Test
+  public void valueAtQuantile_empty_isZero() {
+    assertThat(new Histogram().valueAtQuantile(0.5)).isEqualTo(0);
+  }
+
+  @Test
+  public void record_negative_isZero() {
+    Histogram histogram = new Histogram();
+
+    histogram.record(-5);
+
+    assertThat(histogram.valueAtQuantile(1)).isEqualTo(0);
+    assertThat(histogram.sum()).isEqualTo(0);
+  }
+}
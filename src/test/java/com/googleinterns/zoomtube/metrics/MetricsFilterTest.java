@@ -0,0 +1,142 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRegistration;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class MetricsFilterTest {
+  /* Endpoints are shared by every filter, so each test records to its own. */
+  private static int testCount;
+
+  private String servletName;
+  private MetricsFilter filter;
+  private HttpServletRequest request;
+  private HttpServletResponse response;
+
+  @Before
+  public void setUp() {
+    servletName = "test-servlet-" + testCount++;
+    ServletRegistration registration = mock(ServletRegistration.class);
+    when(registration.getName()).thenReturn(servletName);
+    when(registration.getMappings()).thenReturn(ImmutableList.of("/" + servletName));
+    ServletContext servletContext = mock(ServletContext.class);
+    doReturn(ImmutableMap.of(servletName, registration))
+        .when(servletContext)
+        .getServletRegistrations();
+    FilterConfig filterConfig = mock(FilterConfig.class);
+    when(filterConfig.getServletContext()).thenReturn(servletContext);
+    filter = new MetricsFilter();
+    filter.init(filterConfig);
+
+    request = mock(HttpServletRequest.class);
+    when(request.getServletPath()).thenReturn("/" + servletName);
+    response = mock(HttpServletResponse.class);
+    when(response.getStatus()).thenReturn(HttpServletResponse.SC_OK);
+  }
+
+  @Test
+  public void doFilter_recordsRequestByServlet() throws Exception {
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {
+      RequestMetrics.recordDatastoreCall(DatastoreOperation.GET, 2000);
+      RequestMetrics.recordDatastoreCall(DatastoreOperation.QUERY, 3000);
+      RequestMetrics.recordResponseBytes(100);
+    });
+
+    EndpointMetrics endpoint = MetricsFilter.getEndpoint(servletName);
+    assertThat(endpoint.latencyMicros().count()).isEqualTo(1);
+    assertThat(endpoint.responseBytes().sum()).isEqualTo(100);
+    assertThat(endpoint.datastoreCalls(DatastoreOperation.GET)).isEqualTo(1);
+    assertThat(endpoint.datastoreNanos(DatastoreOperation.GET)).isEqualTo(2000);
+    assertThat(endpoint.datastoreCalls(DatastoreOperation.QUERY)).isEqualTo(1);
+    assertThat(endpoint.datastoreCalls(DatastoreOperation.PUT)).isEqualTo(0);
+    assertThat(endpoint.datastoreMicros().sum()).isEqualTo(5);
+    assertThat(endpoint.serverErrors()).isEqualTo(0);
+  }
+
+  @Test
+  public void doFilter_callsFromEarlierRequest_areNotCounted() throws Exception {
+    RequestMetrics.recordDatastoreCall(DatastoreOperation.PUT, 1000);
+
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {});
+
+    assertThat(MetricsFilter.getEndpoint(servletName).datastoreCalls(DatastoreOperation.PUT))
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void doFilter_servletThrows_recordsServerError() throws Exception {
+    try {
+      filter.doFilter(request, response, (filterRequest, filterResponse) -> {
+        throw new ServletException("failed");
+      });
+      fail();
+    } catch (ServletException expected) {
+    }
+
+    assertThat(MetricsFilter.getEndpoint(servletName).serverErrors()).isEqualTo(1);
+  }
+
+  @Test
+  public void doFilter_unknownPath_recordsAsOther() throws Exception {
+    when(request.getServletPath()).thenReturn("/index.html");
+    long otherCount = MetricsFilter.getEndpoint(MetricsFilter.OTHER_ENDPOINT)
+                          .latencyMicros()
+                          .count();
+
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {});
+
+    assertThat(
+        MetricsFilter.getEndpoint(MetricsFilter.OTHER_ENDPOINT).latencyMicros().count())
+        .isEqualTo(otherCount + 1);
+    assertThat(MetricsFilter.getEndpoint(servletName).latencyMicros().count()).isEqualTo(0);
+  }
+
+  @Test
+  public void prometheusText_writesServletMetrics() throws Exception {
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {
+      RequestMetrics.recordDatastoreCall(DatastoreOperation.GET, 1000);
+    });
+    StringWriter content = new StringWriter();
+
+    PrometheusText.write(new PrintWriter(content));
+
+    String metrics = content.toString();
+    assertThat(metrics).contains("# TYPE zoomtube_request_latency_seconds summary\n");
+    assertThat(metrics).contains(
+        "zoomtube_request_latency_seconds_count{servlet=\"" + servletName + "\"} 1\n");
+    assertThat(metrics).contains("zoomtube_datastore_calls_total{servlet=\"" + servletName
+        + "\",operation=\"get\"} 1\n");
+  }
+}
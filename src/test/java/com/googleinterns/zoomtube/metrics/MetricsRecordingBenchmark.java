@@ -0,0 +1,103 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline benchmark of the metrics recorded on every request: starting the request's
+ * metrics, a few datastore calls, and adding them to the servlet's metrics. Reports the time
+ * and the bytes allocated per request, which should be zero once warmed up. Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.googleinterns.zoomtube.metrics.MetricsRecordingBenchmark \
+ *     -Dexec.args="[threads]"
+ * </pre>
+ */
+public final class MetricsRecordingBenchmark {
+  private static final int DEFAULT_THREADS = 4;
+  private static final int REQUESTS = 5_000_000;
+
+  public static void main(String[] args) throws Exception {
+    int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+    EndpointMetrics endpoint = MetricsFilter.getEndpoint("benchmark");
+
+    // Warms up the JIT, and creates the thread's metrics, before measuring.
+    recordRequests(endpoint, REQUESTS);
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    recordRequests(endpoint, REQUESTS);
+    long nanos = System.nanoTime() - start;
+    long allocated = allocatedBytes() - allocatedBefore;
+    System.out.printf("1 thread:  %.1f ns per request, %.3f bytes allocated per request%n",
+        (double) nanos / REQUESTS, (double) allocated / REQUESTS);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    List<Callable<Long>> threads = new ArrayList<>();
+    for (int thread = 0; thread < threadCount; thread++) {
+      threads.add(() -> {
+        recordRequests(endpoint, REQUESTS);
+        long threadAllocatedBefore = allocatedBytes();
+        recordRequests(endpoint, REQUESTS);
+        return allocatedBytes() - threadAllocatedBefore;
+      });
+    }
+    start = System.nanoTime();
+    long threadsAllocated = 0;
+    for (Future<Long> thread : executor.invokeAll(threads)) {
+      threadsAllocated += thread.get();
+    }
+    nanos = System.nanoTime() - start;
+    executor.shutdown();
+    long requests = 2L * REQUESTS * threadCount;
+    System.out.printf("%d threads: %.1f ns per request, %.3f bytes allocated per request%n",
+        threadCount, (double) nanos / requests,
+        (double) threadsAllocated / (requests / 2));
+
+    System.out.printf("p50 %d us  p99 %d us  (of %d recorded)%n",
+        endpoint.latencyMicros().valueAtQuantile(0.5),
+        endpoint.latencyMicros().valueAtQuantile(0.99), endpoint.latencyMicros().count());
+  }
+
+  private static void recordRequests(EndpointMetrics endpoint, int requests) {
+    for (int request = 0; request < requests; request++) {
+      RequestMetrics requestMetrics = RequestMetrics.start();
+      RequestMetrics.recordDatastoreCall(DatastoreOperation.GET, 1_000_000 + request % 1000);
+      RequestMetrics.recordDatastoreCall(DatastoreOperation.QUERY, 5_000_000 + request % 5000);
+      RequestMetrics.recordDatastoreCall(DatastoreOperation.QUERY, 3_000_000);
+      RequestMetrics.recordResponseBytes(2048 + request % 512);
+      endpoint.record(requestMetrics, 20_000_000 + request % 100_000, 200);
+    }
+  }
+
+  /** Returns the bytes allocated by the current thread, if the JVM can measure them. */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return 0;
+    }
+    return ((com.sun.management.ThreadMXBean) threads)
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private MetricsRecordingBenchmark() {}
+}
@@ -0,0 +1,99 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptChunkUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class DatastoreTranscriptLineRepositoryTest {
+  private final LocalServiceTestHelper localServiceHelper =
+      new LocalServiceTestHelper((new LocalDatastoreServiceTestConfig()).setNoStorage(true));
+  /* More lines than are written in one batch. */
+  private static final int LINE_COUNT = 1200;
+  private TranscriptLineRepository transcriptLines;
+  private Key lectureKey;
+
+  @Before
+  public void setUp() {
+    localServiceHelper.setUp();
+    transcriptLines =
+        Repositories.inDatastore(DatastoreServiceFactory.getDatastoreService()).transcriptLines();
+    lectureKey = KeyFactory.createKey(LectureUtil.KIND, 1);
+  }
+
+  @After
+  public void tearDown() {
+    localServiceHelper.tearDown();
+  }
+
+  @Test
+  public void replaceTranscript_manyLines_replacesOnlyThatLanguage() {
+    transcriptLines.putAll(createLines("en", "old", LINE_COUNT));
+    transcriptLines.putAll(createLines("fr", "vieux", 1));
+    List<Entity> newLineEntities = createLines("en", "new", LINE_COUNT);
+
+    transcriptLines.replaceTranscript(lectureKey, "en", newLineEntities);
+
+    List<Entity> englishLines = transcriptLines.getLines(lectureKey, Optional.of("en"));
+    assertThat(englishLines).hasSize(LINE_COUNT);
+    assertThat(englishLines.get(0).getProperty(TranscriptLineUtil.CONTENT)).isEqualTo("new");
+    assertThat(transcriptLines.getLines(lectureKey, Optional.of("fr"))).hasSize(1);
+  }
+
+  @Test
+  public void replaceTranscript_linesWithChunks_keepsRewrittenChunksAndDeletesLines() {
+    List<Entity> lineEntities = createLines("en", "line", LINE_COUNT);
+    transcriptLines.putAll(lineEntities);
+    transcriptLines.putAll(TranscriptChunkUtil.createEntities(lectureKey, "en", lineEntities));
+    List<Entity> chunkEntities =
+        TranscriptChunkUtil.createEntities(lectureKey, "en", lineEntities.subList(0, 1));
+
+    transcriptLines.replaceTranscript(lectureKey, "en", chunkEntities);
+
+    assertThat(transcriptLines.getLines(lectureKey, Optional.of("en"))).isEmpty();
+    assertThat(transcriptLines.getChunks(lectureKey, "en")).hasSize(1);
+  }
+
+  /** Returns {@code count} lines in {@code language}, a second apart, with allocated keys. */
+  private List<Entity> createLines(String language, String content, int count) {
+    List<Entity> lineEntities = new ArrayList<>();
+    for (Key lineKey : transcriptLines.allocateLineKeys(lectureKey, count)) {
+      long startMs = lineEntities.size() * 1000L;
+      Entity lineEntity = new Entity(lineKey);
+      lineEntity.setPropertiesFrom(TranscriptLineUtil.createEntity(
+          lectureKey, language, content, startMs, 1000, startMs + 1000));
+      lineEntities.add(lineEntity);
+    }
+    return lineEntities;
+  }
+}
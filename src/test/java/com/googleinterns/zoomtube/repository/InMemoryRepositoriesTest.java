@@ -0,0 +1,267 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.repository;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import com.googleinterns.zoomtube.data.IconFeedback;
+import com.googleinterns.zoomtube.data.LecturePage;
+import com.googleinterns.zoomtube.data.LectureSummary;
+import com.googleinterns.zoomtube.search.TranscriptIndex;
+import com.googleinterns.zoomtube.utils.IconFeedbackUtil;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class InMemoryRepositoriesTest {
+  // Keys can only be made once there's an app id to put in them.
+  private final LocalServiceTestHelper testServices = new LocalServiceTestHelper();
+  private Repositories repositories;
+  private Key lectureKey;
+  private Key otherLectureKey;
+
+  @Before
+  public void setUp() {
+    testServices.setUp();
+    repositories = Repositories.inMemory();
+    lectureKey = KeyFactory.createKey(LectureUtil.KIND, 1);
+    otherLectureKey = KeyFactory.createKey(LectureUtil.KIND, 2);
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void put_givesNewEntitiesDistinctIds() {
+    Key firstKey = repositories.lectures().put(
+        LectureUtil.createEntity("First", "https://www.youtube.com/watch?v=a", "a"));
+    Key secondKey = repositories.lectures().put(
+        LectureUtil.createEntity("Second", "https://www.youtube.com/watch?v=b", "b"));
+
+    assertThat(firstKey.isComplete()).isTrue();
+    assertThat(secondKey.getId()).isNotEqualTo(firstKey.getId());
+    assertThat(repositories.lectures().get(secondKey.getId()).get().getProperty(LectureUtil.NAME))
+        .isEqualTo("Second");
+  }
+
+  @Test
+  public void get_noSuchEntity_returnsEmpty() {
+    assertThat(repositories.lectures().get(1)).isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void get_returnsCopy() {
+    Entity lectureEntity =
+        LectureUtil.createEntity("Lecture", "https://www.youtube.com/watch?v=a", "a");
+    long lectureId = repositories.lectures().put(lectureEntity).getId();
+
+    lectureEntity.setProperty(LectureUtil.NAME, "Changed before reading");
+    repositories.lectures().get(lectureId).get().setProperty(LectureUtil.NAME, "Changed");
+
+    assertThat(repositories.lectures().get(lectureId).get().getProperty(LectureUtil.NAME))
+        .isEqualTo("Lecture");
+  }
+
+  @Test
+  public void put_existingKey_replacesEntity() {
+    Entity iconFeedbackEntity =
+        IconFeedbackUtil.createEntity(lectureKey, 10, IconFeedback.Type.GOOD);
+    Key key = repositories.iconFeedback().put(iconFeedbackEntity);
+    Entity storedEntity = repositories.iconFeedback().getByLecture(lectureKey).get(0);
+
+    storedEntity.setProperty(IconFeedbackUtil.TIMESTAMP_MS, 20L);
+    repositories.iconFeedback().put(storedEntity);
+
+    List<Entity> iconFeedbackEntities = repositories.iconFeedback().getByLecture(lectureKey);
+    assertThat(iconFeedbackEntities).hasSize(1);
+    assertThat(iconFeedbackEntities.get(0).getKey()).isEqualTo(key);
+    assertThat(iconFeedbackEntities.get(0).getProperty(IconFeedbackUtil.TIMESTAMP_MS))
+        .isEqualTo(20L);
+  }
+
+  @Test
+  public void getByLecture_returnsOnlyThatLecture_sortedByTimestamp() {
+    repositories.iconFeedback().put(
+        IconFeedbackUtil.createEntity(lectureKey, 30, IconFeedback.Type.GOOD));
+    repositories.iconFeedback().put(
+        IconFeedbackUtil.createEntity(otherLectureKey, 20, IconFeedback.Type.TOO_FAST));
+    repositories.iconFeedback().put(
+        IconFeedbackUtil.createEntity(lectureKey, 10, IconFeedback.Type.TOO_SLOW));
+
+    List<Object> timestamps = repositories.iconFeedback()
+                                  .getByLecture(lectureKey)
+                                  .stream()
+                                  .map(entity -> entity.getProperty(IconFeedbackUtil.TIMESTAMP_MS))
+                                  .collect(Collectors.toList());
+
+    assertThat(timestamps).containsExactly(10L, 30L).inOrder();
+  }
+
+  @Test
+  public void getLines_filtersByLanguage_sortedByStart() {
+    repositories.transcriptLines().putAll(ImmutableList.of(
+        TranscriptLineUtil.createEntity(lectureKey, "en", "second", 2000, 1000, 3000),
+        TranscriptLineUtil.createEntity(lectureKey, "fr", "deuxième", 2000, 1000, 3000),
+        TranscriptLineUtil.createEntity(lectureKey, "en", "first", 0, 1000, 1000),
+        TranscriptLineUtil.createEntity(lectureKey, "unlabeled", 500, 1000, 1500)));
+
+    List<Object> contents = repositories.transcriptLines()
+                                .getLines(lectureKey, Optional.of("en"))
+                                .stream()
+                                .map(entity -> entity.getProperty(TranscriptLineUtil.CONTENT))
+                                .collect(Collectors.toList());
+
+    assertThat(contents).containsExactly("first", "second").inOrder();
+    assertThat(repositories.transcriptLines().getAllLines(lectureKey)).hasSize(4);
+    assertThat(repositories.transcriptLines().getAllLines(otherLectureKey)).isEmpty();
+  }
+
+  @Test
+  public void getLines_noLanguage_returnsOnlyLinesWithoutLanguage() {
+    repositories.transcriptLines().putAll(ImmutableList.of(
+        TranscriptLineUtil.createEntity(lectureKey, "fr", "deuxième", 2000, 1000, 3000),
+        TranscriptLineUtil.createEntity(lectureKey, "unlabeled", 0, 1000, 1000)));
+
+    List<Entity> lineEntities =
+        repositories.transcriptLines().getLines(lectureKey, Optional.empty());
+
+    assertThat(lineEntities).hasSize(1);
+    assertThat(lineEntities.get(0).getProperty(TranscriptLineUtil.CONTENT))
+        .isEqualTo("unlabeled");
+  }
+
+  @Test
+  public void putIfAbsent_videoHasLecture_returnsItWithoutStoring() {
+    Entity firstEntity = new Entity(repositories.lectures().allocateKey());
+    firstEntity.setPropertiesFrom(
+        LectureUtil.createEntity("First", "https://www.youtube.com/watch?v=a", "a"));
+    Entity secondEntity = new Entity(repositories.lectures().allocateKey());
+    secondEntity.setPropertiesFrom(
+        LectureUtil.createEntity("Second", "https://www.youtube.com/watch?v=a", "a"));
+
+    assertThat(repositories.lectures().putIfAbsent(firstEntity)).isEqualTo(Optional.empty());
+    Optional<Entity> existingEntity = repositories.lectures().putIfAbsent(secondEntity);
+
+    assertThat(existingEntity.get().getKey()).isEqualTo(firstEntity.getKey());
+    assertThat(repositories.lectures().get(secondEntity.getKey().getId()))
+        .isEqualTo(Optional.empty());
+  }
+
+  @Test
+  public void getPageByName_filtersByPrefix_continuesFromCursor() {
+    for (String name : ImmutableList.of("Cells", "biology", "Cellular respiration", "cell")) {
+      repositories.lectures().put(LectureUtil.createEntity(name, "link", name));
+    }
+
+    LecturePage firstPage = repositories.lectures().getPageByName("cell", 2, /* cursor= */ "");
+    LecturePage lastPage =
+        repositories.lectures().getPageByName("cell", 2, firstPage.cursor());
+
+    assertThat(getNames(firstPage)).containsExactly("cell", "Cells").inOrder();
+    assertThat(getNames(lastPage)).containsExactly("Cellular respiration");
+    assertThat(lastPage.cursor()).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void getNewestPage_invalidCursor_throwsIllegalArgumentException() {
+    repositories.lectures().getNewestPage(10, "not a cursor");
+  }
+
+  @Test
+  public void putAllIfAbsent_videoHasLecture_returnsItByVideoId() {
+    List<Key> lectureKeys = repositories.lectures().allocateKeys(2);
+    Entity firstEntity = new Entity(lectureKeys.get(0));
+    firstEntity.setPropertiesFrom(LectureUtil.createEntity("First", "link", "a"));
+    Entity secondEntity = new Entity(lectureKeys.get(1));
+    secondEntity.setPropertiesFrom(LectureUtil.createEntity("Second", "link", "b"));
+    repositories.lectures().putIfAbsent(firstEntity);
+
+    Map<String, Entity> existingLectures =
+        repositories.lectures().putAllIfAbsent(ImmutableList.of(firstEntity, secondEntity));
+
+    assertThat(existingLectures.keySet()).containsExactly("a");
+    assertThat(repositories.lectures().getAll(lectureKeys).keySet())
+        .containsExactlyElementsIn(lectureKeys);
+  }
+
+  @Test
+  public void getIndexesUpdatedSince_returnsFirstShardsUpdatedSince() {
+    TranscriptLineRepository transcriptLines = repositories.transcriptLines();
+    Entity oldIndexEntity = TranscriptIndexUtil.createDeletedEntity(otherLectureKey);
+    oldIndexEntity.setProperty(TranscriptIndexUtil.UPDATED, new Date(0));
+    transcriptLines.putAll(ImmutableList.of(oldIndexEntity));
+    transcriptLines.putAll(
+        TranscriptIndexUtil.createEntities(lectureKey, TranscriptIndex.builder().build()));
+
+    Iterable<Entity> updatedIndexEntities =
+        transcriptLines.getIndexesUpdatedSince(/* updatedFromMs= */ 1);
+
+    assertThat(transcriptLines.getIndexes()).hasSize(2);
+    assertThat(updatedIndexEntities).hasSize(1);
+    assertThat(updatedIndexEntities.iterator().next().getKey())
+        .isEqualTo(TranscriptIndexUtil.createKey(lectureKey));
+  }
+
+  @Test
+  public void replaceTranscript_replacesOnlyThatLanguage() {
+    TranscriptLineRepository transcriptLines = repositories.transcriptLines();
+    transcriptLines.putAll(ImmutableList.of(
+        TranscriptLineUtil.createEntity(lectureKey, "en", "old", 0, 1000, 1000),
+        TranscriptLineUtil.createEntity(lectureKey, "fr", "vieux", 0, 1000, 1000)));
+    Entity newLineEntity = new Entity(transcriptLines.allocateLineKeys(lectureKey, 1).get(0));
+    newLineEntity.setPropertiesFrom(
+        TranscriptLineUtil.createEntity(lectureKey, "en", "new", 0, 1000, 1000));
+
+    transcriptLines.replaceTranscript(lectureKey, "en", ImmutableList.of(newLineEntity));
+
+    List<Entity> englishLines = transcriptLines.getLines(lectureKey, Optional.of("en"));
+    assertThat(englishLines).hasSize(1);
+    assertThat(englishLines.get(0).getKey()).isEqualTo(newLineEntity.getKey());
+    assertThat(transcriptLines.getLines(lectureKey, Optional.of("fr"))).hasSize(1);
+  }
+
+  @Test
+  public void inMemory_returnsSeparateRepositories() {
+    repositories.iconFeedback().put(
+        IconFeedbackUtil.createEntity(lectureKey, 10, IconFeedback.Type.GOOD));
+
+    assertThat(Repositories.inMemory().iconFeedback().getByLecture(lectureKey)).isEmpty();
+  }
+
+  private static List<String> getNames(LecturePage lecturePage) {
+    return lecturePage.lectures()
+        .stream()
+        .map(LectureSummary::lectureName)
+        .collect(Collectors.toList());
+  }
+}
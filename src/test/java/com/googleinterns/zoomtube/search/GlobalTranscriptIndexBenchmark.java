@@ -0,0 +1,141 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.search;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Offline benchmark of the {@link GlobalTranscriptIndex} over a synthetic corpus.
+ *
+ * <p>Words are drawn from a Zipf distribution, like natural speech, so a few words are very
+ * common and most are rare. Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.googleinterns.zoomtube.search.GlobalTranscriptIndexBenchmark \
+ *     -Dexec.args="[transcripts] [linesPerTranscript]"
+ * </pre>
+ */
+public final class GlobalTranscriptIndexBenchmark {
+  private static final int DEFAULT_TRANSCRIPTS = 2000;
+  private static final int DEFAULT_LINES_PER_TRANSCRIPT = 400;
+  private static final int VOCABULARY_SIZE = 20000;
+  private static final int WORDS_PER_LINE = 8;
+  private static final int QUERIES = 1000;
+  private static final long SEED = 42;
+
+  public static void main(String[] args) {
+    int transcripts = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TRANSCRIPTS;
+    int linesPerTranscript =
+        args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LINES_PER_TRANSCRIPT;
+    Random random = new Random(SEED);
+    String[] vocabulary = createVocabulary(random);
+    double[] cumulativeWeights = zipfCumulativeWeights();
+
+    // Merges run on the ingesting thread so their cost is part of the ingest time.
+    GlobalTranscriptIndex index = new GlobalTranscriptIndex(MoreExecutors.directExecutor());
+    long ingestStart = System.nanoTime();
+    for (int lecture = 0; lecture < transcripts; lecture++) {
+      TranscriptIndex.Builder transcript = TranscriptIndex.builder();
+      for (int line = 0; line < linesPerTranscript; line++) {
+        transcript.addLine(line, line * 3000L, 3000L,
+            randomLine(random, vocabulary, cumulativeWeights));
+      }
+      index.addLecture(lecture, transcript.build());
+    }
+    long ingestNanos = System.nanoTime() - ingestStart;
+    System.out.printf("Indexed %d transcripts (%d lines) in %.1f s, %.2f ms per transcript, "
+            + "%d segments%n",
+        transcripts, (long) transcripts * linesPerTranscript, ingestNanos / 1e9,
+        ingestNanos / 1e6 / transcripts, index.segmentCount());
+
+    runQueries(index, "common word", random, () -> vocabulary[random.nextInt(10)]);
+    runQueries(index, "rare word", random,
+        () -> vocabulary[VOCABULARY_SIZE / 2 + random.nextInt(VOCABULARY_SIZE / 2)]);
+    runQueries(index, "two words", random,
+        ()
+            -> vocabulary[sample(random, cumulativeWeights)] + " "
+            + vocabulary[sample(random, cumulativeWeights)]);
+  }
+
+  private static void runQueries(
+      GlobalTranscriptIndex index, String name, Random random, QuerySupplier queries) {
+    // Warms up the JIT before measuring.
+    for (int i = 0; i < QUERIES; i++) {
+      index.search(queries.get(), 0, 20);
+    }
+    long[] latencies = new long[QUERIES];
+    long totalHits = 0;
+    for (int i = 0; i < QUERIES; i++) {
+      String query = queries.get();
+      long start = System.nanoTime();
+      totalHits += index.search(query, 0, 20).totalHits;
+      latencies[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(latencies);
+    System.out.printf("%-12s p50 %.3f ms  p99 %.3f ms  max %.3f ms  (avg %d hits)%n", name,
+        latencies[QUERIES / 2] / 1e6, latencies[QUERIES * 99 / 100] / 1e6,
+        latencies[QUERIES - 1] / 1e6, totalHits / QUERIES);
+  }
+
+  private static String[] createVocabulary(Random random) {
+    String[] syllables = {"ka", "lo", "mi", "ne", "su", "ta", "ri", "po", "ve", "do", "zu", "fa"};
+    String[] vocabulary = new String[VOCABULARY_SIZE];
+    for (int word = 0; word < VOCABULARY_SIZE; word++) {
+      StringBuilder builder = new StringBuilder();
+      int syllableCount = 1 + random.nextInt(4);
+      for (int syllable = 0; syllable < syllableCount; syllable++) {
+        builder.append(syllables[random.nextInt(syllables.length)]);
+      }
+      // Makes every word unique.
+      vocabulary[word] = builder.append(word).toString();
+    }
+    return vocabulary;
+  }
+
+  private static double[] zipfCumulativeWeights() {
+    double[] cumulativeWeights = new double[VOCABULARY_SIZE];
+    double total = 0;
+    for (int rank = 0; rank < VOCABULARY_SIZE; rank++) {
+      total += 1.0 / (rank + 1);
+      cumulativeWeights[rank] = total;
+    }
+    for (int rank = 0; rank < VOCABULARY_SIZE; rank++) {
+      cumulativeWeights[rank] /= total;
+    }
+    return cumulativeWeights;
+  }
+
+  private static int sample(Random random, double[] cumulativeWeights) {
+    int index = Arrays.binarySearch(cumulativeWeights, random.nextDouble());
+    return Math.min(index < 0 ? -index - 1 : index, cumulativeWeights.length - 1);
+  }
+
+  private static String randomLine(Random random, String[] vocabulary, double[] weights) {
+    StringBuilder line = new StringBuilder();
+    for (int word = 0; word < WORDS_PER_LINE; word++) {
+      line.append(vocabulary[sample(random, weights)]).append(' ');
+    }
+    return line.toString();
+  }
+
+  private interface QuerySupplier {
+    String get();
+  }
+
+  private GlobalTranscriptIndexBenchmark() {}
+}
@@ -0,0 +1,246 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.repository.TranscriptLineRepository;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import java.util.Date;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class GlobalTranscriptIndexTest {
+  private GlobalTranscriptIndex index;
+
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private DatastoreService datastore;
+  private TranscriptLineRepository transcriptLines;
+
+  @Before
+  public void setUp() {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    transcriptLines = Repositories.inDatastore(datastore).transcriptLines();
+    // Merges run on the calling thread so tests can check their results.
+    index = new GlobalTranscriptIndex(MoreExecutors.directExecutor());
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void search_emptyIndex_returnsNothing() {
+    GlobalTranscriptIndex.Results results = index.search("elephants", 0, 10);
+
+    assertThat(results.hits).isEmpty();
+    assertThat(results.totalHits).isEqualTo(0);
+  }
+
+  @Test
+  public void search_findsLinesAcrossLectures() {
+    index.addLecture(1, transcript("the elephants have trunks", "giraffes are tall"));
+    index.addLecture(2, transcript("zebras have stripes", "elephants are large"));
+
+    GlobalTranscriptIndex.Results results = index.search("elephants", 0, 10);
+
+    assertThat(results.totalHits).isEqualTo(2);
+    assertThat(results.hits).hasSize(2);
+  }
+
+  @Test
+  public void search_ranksLinesWithRarerTermsHigher() {
+    index.addLecture(1, transcript("the lecture is about the cell", "mitochondria in the cell"));
+    index.addLecture(2, transcript("the cell wall", "the cell membrane"));
+
+    GlobalTranscriptIndex.Results results = index.search("cell mitochondria", 0, 10);
+
+    assertThat(results.hits.get(0).lectureId).isEqualTo(1);
+    assertThat(results.hits.get(0).lineIndex).isEqualTo(1);
+  }
+
+  @Test
+  public void search_paginates() {
+    index.addLecture(1, transcript("cell one", "cell two", "cell three"));
+    index.addLecture(2, transcript("cell four", "cell five"));
+
+    GlobalTranscriptIndex.Results firstPage = index.search("cell", 0, 2);
+    GlobalTranscriptIndex.Results lastPage = index.search("cell", 4, 2);
+
+    assertThat(firstPage.hits).hasSize(2);
+    assertThat(firstPage.totalHits).isEqualTo(5);
+    assertThat(lastPage.hits).hasSize(1);
+    assertThat(lastPage.totalHits).isEqualTo(5);
+  }
+
+  @Test
+  public void search_nonPositiveLimit_onlyCountsHits() {
+    index.addLecture(1, transcript("cell one", "cell two"));
+
+    GlobalTranscriptIndex.Results results = index.search("cell", 1, -1);
+
+    assertThat(results.hits).isEmpty();
+    assertThat(results.totalHits).isEqualTo(2);
+  }
+
+  @Test
+  public void search_offsetAndLimitOverflow_returnsNoHits() {
+    index.addLecture(1, transcript("cell one", "cell two"));
+
+    GlobalTranscriptIndex.Results results =
+        index.search("cell", Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    assertThat(results.hits).isEmpty();
+    assertThat(results.totalHits).isEqualTo(2);
+  }
+
+  @Test
+  public void addLecture_replacesPreviousTranscript() {
+    index.addLecture(1, transcript("old captions"));
+    index.addLecture(1, transcript("fixed captions"));
+
+    assertThat(index.search("old", 0, 10).totalHits).isEqualTo(0);
+    assertThat(index.search("captions", 0, 10).totalHits).isEqualTo(1);
+  }
+
+  @Test
+  public void removeLecture_hidesItsLines() {
+    index.addLecture(1, transcript("elephants"));
+    index.addLecture(2, transcript("elephants"));
+
+    index.removeLecture(1);
+
+    GlobalTranscriptIndex.Results results = index.search("elephants", 0, 10);
+    assertThat(results.totalHits).isEqualTo(1);
+    assertThat(results.hits.get(0).lectureId).isEqualTo(2);
+  }
+
+  @Test
+  public void addLecture_manyLectures_mergesSegmentsKeepingResults() {
+    int lectureCount = GlobalTranscriptIndex.MAX_SEGMENTS * 3;
+    for (long lectureId = 0; lectureId < lectureCount; lectureId++) {
+      index.addLecture(lectureId, transcript("shared words", "lecture" + lectureId));
+    }
+    index.removeLecture(0);
+
+    assertThat(index.segmentCount()).isAtMost(GlobalTranscriptIndex.MAX_SEGMENTS);
+    assertThat(index.search("shared", 0, 100).totalHits).isEqualTo(lectureCount - 1);
+    assertThat(index.search("lecture5", 0, 10).hits.get(0).lectureId).isEqualTo(5);
+  }
+
+  @Test
+  public void ensureLoaded_indexesStoredTranscripts() throws Exception {
+    putTranscript(1, transcript("elephants have trunks"));
+
+    index.ensureLoaded(transcriptLines);
+
+    assertThat(index.search("elephants", 0, 10).totalHits).isEqualTo(1);
+  }
+
+  @Test
+  public void ensureLoaded_skipsDeletedTranscripts() throws Exception {
+    Key lectureKey = putTranscript(1, transcript("elephants have trunks"));
+    datastore.put(TranscriptIndexUtil.createDeletedEntity(lectureKey));
+
+    index.ensureLoaded(transcriptLines);
+
+    assertThat(index.search("elephants", 0, 10).totalHits).isEqualTo(0);
+  }
+
+  @Test
+  public void refresh_indexesTranscriptsStoredSinceLoad() throws Exception {
+    index.ensureLoaded(transcriptLines);
+    putTranscript(1, transcript("elephants have trunks"));
+
+    index.refresh(transcriptLines);
+
+    assertThat(index.search("elephants", 0, 10).totalHits).isEqualTo(1);
+  }
+
+  @Test
+  public void refresh_replacesTranscriptsReindexedElsewhere() throws Exception {
+    putOldTranscript(1, transcript("old captions"));
+    index.ensureLoaded(transcriptLines);
+    putTranscript(1, transcript("fixed captions"));
+
+    index.refresh(transcriptLines);
+
+    assertThat(index.search("old", 0, 10).totalHits).isEqualTo(0);
+    assertThat(index.search("fixed", 0, 10).totalHits).isEqualTo(1);
+  }
+
+  @Test
+  public void refresh_removesLecturesWhoseTranscriptWasDeleted() throws Exception {
+    Key lectureKey = putOldTranscript(1, transcript("elephants"));
+    index.ensureLoaded(transcriptLines);
+    datastore.put(TranscriptIndexUtil.createDeletedEntity(lectureKey));
+
+    index.refresh(transcriptLines);
+
+    assertThat(index.search("elephants", 0, 10).totalHits).isEqualTo(0);
+  }
+
+  @Test
+  public void refresh_keepsTranscriptsJustIndexedByThisInstance() throws Exception {
+    index.ensureLoaded(transcriptLines);
+    // Not stored yet, as if the datastore query didn't see it.
+    index.addLecture(1, transcript("elephants"));
+
+    index.refresh(transcriptLines);
+
+    assertThat(index.search("elephants", 0, 10).totalHits).isEqualTo(1);
+  }
+
+  private Key putTranscript(long lectureId, TranscriptIndex transcript) {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, lectureId);
+    datastore.put(TranscriptIndexUtil.createEntities(lectureKey, transcript));
+    return lectureKey;
+  }
+
+  /** Stores {@code transcript} as if it was indexed long before the test. */
+  private Key putOldTranscript(long lectureId, TranscriptIndex transcript) {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, lectureId);
+    Entity indexEntity = TranscriptIndexUtil.createEntities(lectureKey, transcript).get(0);
+    indexEntity.setProperty(TranscriptIndexUtil.UPDATED, new Date(0));
+    datastore.put(indexEntity);
+    return lectureKey;
+  }
+
+  private static TranscriptIndex transcript(String... lines) {
+    TranscriptIndex.Builder builder = TranscriptIndex.builder();
+    for (int line = 0; line < lines.length; line++) {
+      builder.addLine(/* lineId= */ line + 1, /* startMs= */ line * 1000, /* durationMs= */ 1000,
+          lines[line]);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,136 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Offline benchmark of completing queries with the {@link LectureNameIndex}, compared with
+ * checking every name.
+ *
+ * <p>Names are made of a few words from a vocabulary of course subjects, like "Introduction
+ * to Linear Algebra Lecture 12". Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.googleinterns.zoomtube.search.LectureNameIndexBenchmark \
+ *     -Dexec.args="[names]"
+ * </pre>
+ */
+public final class LectureNameIndexBenchmark {
+  private static final int DEFAULT_NAMES = 100000;
+  private static final int QUERIES = 10000;
+  private static final int LIMIT = 10;
+  private static final long SEED = 42;
+
+  private static final String[] PREFIXES = {"Introduction to", "Advanced", "Topics in",
+      "Foundations of", "Applied", "Principles of", ""};
+  private static final String[] SUBJECTS = {"Algorithms", "Linear Algebra", "Calculus",
+      "Organic Chemistry", "Microeconomics", "Machine Learning", "Operating Systems",
+      "Thermodynamics", "Genetics", "Statistics", "Philosophy", "Databases", "Compilers",
+      "Quantum Mechanics", "Art History", "Macroeconomics", "Neuroscience", "Cryptography",
+      "Distributed Systems", "Number Theory"};
+
+  public static void main(String[] args) {
+    int nameCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NAMES;
+    Random random = new Random(SEED);
+    String[] names = new String[nameCount];
+    for (int name = 0; name < nameCount; name++) {
+      names[name] = String.format("%s %s Lecture %d", PREFIXES[random.nextInt(PREFIXES.length)],
+          SUBJECTS[random.nextInt(SUBJECTS.length)], 1 + random.nextInt(40))
+                        .trim();
+    }
+
+    LectureNameIndex index = new LectureNameIndex();
+    long indexStart = System.nanoTime();
+    for (int name = 0; name < nameCount; name++) {
+      index.addLecture(name, names[name]);
+    }
+    long indexNanos = System.nanoTime() - indexStart;
+    System.out.printf("Indexed %d names in %.0f ms, %.1f us per name%n", nameCount,
+        indexNanos / 1e6, indexNanos / 1e3 / nameCount);
+
+    runQueries(index, names, "one letter", random, () -> randomPrefix(random, 1));
+    runQueries(index, names, "word prefix", random, () -> randomPrefix(random, 4));
+    runQueries(index, names, "two terms", random,
+        () -> randomPrefix(random, 3) + " " + "lecture " + (1 + random.nextInt(40)));
+    runQueries(index, names, "name start", random,
+        () -> "introduction to " + randomPrefix(random, 2));
+    runQueries(index, names, "no match", random, () -> "zebra");
+  }
+
+  private static void runQueries(LectureNameIndex index, String[] names, String name,
+      Random random, QuerySupplier queries) {
+    String[] queryStrings = new String[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      queryStrings[i] = queries.get();
+    }
+    // Warms up the JIT before measuring.
+    for (String query : queryStrings) {
+      index.complete(query, LIMIT);
+    }
+    long[] latencies = new long[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      long start = System.nanoTime();
+      index.complete(queryStrings[i], LIMIT);
+      latencies[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(latencies);
+
+    // Checking every name, as a filter over the whole list would.
+    int scans = QUERIES / 100;
+    long scanStart = System.nanoTime();
+    for (int i = 0; i < scans; i++) {
+      scanNames(names, queryStrings[i]);
+    }
+    double scanMs = (System.nanoTime() - scanStart) / 1e6 / scans;
+
+    System.out.printf("%-12s p50 %.3f ms  p99 %.3f ms  max %.3f ms  (every name: %.1f ms)%n",
+        name, latencies[QUERIES / 2] / 1e6, latencies[QUERIES * 99 / 100] / 1e6,
+        latencies[QUERIES - 1] / 1e6, scanMs);
+  }
+
+  /** Returns the names matching {@code query}, checking each of {@code names}. */
+  private static List<String> scanNames(String[] names, String query) {
+    String[] queryTerms = query.toLowerCase(Locale.ROOT).split(" ");
+    List<String> matches = new ArrayList<>();
+    for (String name : names) {
+      String[] terms = name.toLowerCase(Locale.ROOT).split(" ");
+      boolean matched = true;
+      for (String queryTerm : queryTerms) {
+        matched &= Arrays.stream(terms).anyMatch(term -> term.startsWith(queryTerm));
+      }
+      if (matched) {
+        matches.add(name);
+      }
+    }
+    return matches;
+  }
+
+  private static String randomPrefix(Random random, int length) {
+    String subject = SUBJECTS[random.nextInt(SUBJECTS.length)].toLowerCase(Locale.ROOT);
+    return subject.substring(0, Math.min(length, subject.length()));
+  }
+
+  private interface QuerySupplier {
+    String get();
+  }
+
+  private LectureNameIndexBenchmark() {}
+}
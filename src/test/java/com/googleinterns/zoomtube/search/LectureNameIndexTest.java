@@ -0,0 +1,144 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class LectureNameIndexTest {
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private LectureNameIndex index;
+
+  @Before
+  public void setUp() {
+    testServices.setUp();
+    index = new LectureNameIndex();
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void complete_termPrefixes_matchIgnoringCase() {
+    index.addLecture(1, "Introduction to Algorithms");
+    index.addLecture(2, "Linear Algebra");
+    index.addLecture(3, "Introduction to Biology");
+
+    assertThat(completedIds("intro ALG")).containsExactly(1L);
+    assertThat(completedIds("alg")).containsExactly(1L, 2L);
+  }
+
+  @Test
+  public void complete_namesStartingWithQuery_comeFirst() {
+    index.addLecture(1, "Advanced Algorithms");
+    index.addLecture(2, "Algorithms II");
+    index.addLecture(3, "Algorithms I");
+
+    assertThat(completedIds("algorithms")).containsExactly(3L, 2L, 1L).inOrder();
+  }
+
+  @Test
+  public void complete_moreMatchesThanLimit_returnsLimit() {
+    for (long lecture = 1; lecture <= 20; lecture++) {
+      index.addLecture(lecture, "Lecture " + lecture);
+    }
+
+    assertThat(index.complete("lecture", 5)).hasSize(5);
+  }
+
+  @Test
+  public void removeLecture_isNoLongerCompleted() {
+    index.addLecture(1, "Algorithms");
+    index.addLecture(2, "Algebra");
+
+    index.removeLecture(1);
+
+    assertThat(completedIds("alg")).containsExactly(2L);
+    assertThat(index.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void addLecture_sameLectureAgain_replacesIt() {
+    index.addLecture(1, "Algorithms");
+
+    index.addLecture(1, "Biology");
+
+    assertThat(completedIds("alg")).isEmpty();
+    assertThat(completedIds("bio")).containsExactly(1L);
+  }
+
+  @Test
+  public void ensureLoaded_indexesStoredLectures() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Entity lectureEntity = LectureUtil.createEntity("Algorithms", "link", "video");
+    datastore.put(lectureEntity);
+
+    index.ensureLoaded(datastore);
+
+    assertThat(completedIds("alg")).containsExactly(lectureEntity.getKey().getId());
+  }
+
+  @Test
+  public void refresh_indexesLecturesCreatedSinceLoad() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    index.ensureLoaded(datastore);
+    Entity lectureEntity = LectureUtil.createEntity("Algorithms", "link", "video");
+    datastore.put(lectureEntity);
+
+    index.refresh(datastore);
+
+    assertThat(completedIds("alg")).containsExactly(lectureEntity.getKey().getId());
+  }
+
+  @Test
+  public void removeDeletedLectures_removesLecturesNoLongerStored() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Entity deletedLecture = LectureUtil.createEntity("Algorithms", "link", "video");
+    Entity keptLecture = LectureUtil.createEntity("Algebra", "link", "other video");
+    datastore.put(deletedLecture);
+    datastore.put(keptLecture);
+    index.ensureLoaded(datastore);
+    datastore.delete(deletedLecture.getKey());
+
+    index.removeDeletedLectures(datastore);
+
+    assertThat(completedIds("alg")).containsExactly(keptLecture.getKey().getId());
+  }
+
+  private List<Long> completedIds(String query) {
+    List<Long> lectureIds = new ArrayList<>();
+    for (LectureNameIndex.Completion completion : index.complete(query, 10)) {
+      lectureIds.add(completion.lectureId);
+    }
+    return lectureIds;
+  }
+}
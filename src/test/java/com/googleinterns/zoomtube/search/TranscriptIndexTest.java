@@ -0,0 +1,123 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class TranscriptIndexTest {
+  private TranscriptIndex index;
+
+  @Before
+  public void setUp() {
+    index = TranscriptIndex.builder()
+                .addLine(/* lineId= */ 10, /* startMs= */ 0, /* durationMs= */ 1000,
+                    "All right, so here we are in front of the elephants,")
+                .addLine(/* lineId= */ 11, /* startMs= */ 1000, /* durationMs= */ 2000,
+                    "the cool thing about these guys is that they have really,")
+                .addLine(/* lineId= */ 12, /* startMs= */ 3000, /* durationMs= */ 1500,
+                    "really, really long trunks,")
+                .addLine(/* lineId= */ 13, /* startMs= */ 4500, /* durationMs= */ 1000,
+                    "and that's, that's <cool>.")
+                .build();
+  }
+
+  @Test
+  public void search_singleWord_returnsEveryLineWithWord() {
+    List<TranscriptIndex.Match> matches = index.search("cool", /* limit= */ 10);
+
+    assertThat(matches).hasSize(2);
+    assertThat(matches.get(0).lineIndex()).isEqualTo(1);
+    assertThat(matches.get(1).lineIndex()).isEqualTo(3);
+  }
+
+  @Test
+  public void search_isCaseInsensitive() {
+    List<TranscriptIndex.Match> matches = index.search("ELEPHANTS", /* limit= */ 10);
+
+    assertThat(matches).hasSize(1);
+    assertThat(matches.get(0).lineIndex()).isEqualTo(0);
+  }
+
+  @Test
+  public void search_unknownWord_returnsNothing() {
+    assertThat(index.search("giraffe", /* limit= */ 10)).isEmpty();
+  }
+
+  @Test
+  public void search_emptyQuery_returnsNothing() {
+    assertThat(index.search(" ,. ", /* limit= */ 10)).isEmpty();
+  }
+
+  @Test
+  public void search_phrase_onlyMatchesConsecutiveWords() {
+    assertThat(index.search("\"long trunks\"", /* limit= */ 10)).hasSize(1);
+    assertThat(index.search("\"trunks long\"", /* limit= */ 10)).isEmpty();
+  }
+
+  @Test
+  public void search_phraseAcrossLines_matchesLineWherePhraseStarts() {
+    List<TranscriptIndex.Match> matches =
+        index.search("\"they have really really\"", /* limit= */ 10);
+
+    assertThat(matches).hasSize(1);
+    assertThat(matches.get(0).lineIndex()).isEqualTo(1);
+  }
+
+  @Test
+  public void search_severalWords_requiresAllInLine() {
+    assertThat(index.search("cool guys", /* limit= */ 10)).hasSize(1);
+    assertThat(index.search("cool elephants", /* limit= */ 10)).isEmpty();
+  }
+
+  @Test
+  public void search_apostrophe_matchesWithOrWithout() {
+    assertThat(index.search("that's", /* limit= */ 10)).hasSize(1);
+    assertThat(index.search("thats", /* limit= */ 10)).hasSize(1);
+  }
+
+  @Test
+  public void search_respectsLimit() {
+    assertThat(index.search("really", /* limit= */ 1)).hasSize(1);
+  }
+
+  @Test
+  public void search_snippet_highlightsMatchesAndEscapesHtml() {
+    List<TranscriptIndex.Match> matches = index.search("cool", /* limit= */ 10);
+
+    assertThat(matches.get(1).snippet())
+        .isEqualTo("and that's, that's &lt;<mark>cool</mark>&gt;.");
+  }
+
+  @Test
+  public void fromBytes_restoresSerializedIndex() throws Exception {
+    TranscriptIndex restored = TranscriptIndex.fromBytes(index.toBytes());
+
+    assertThat(restored.lineCount()).isEqualTo(index.lineCount());
+    assertThat(restored.terms()).isEqualTo(index.terms());
+    assertThat(restored.lineId(2)).isEqualTo(12);
+    assertThat(restored.lineStartMs(2)).isEqualTo(3000);
+    assertThat(restored.lineDurationMs(2)).isEqualTo(1500);
+    assertThat(restored.lineContent(2)).isEqualTo("really, really long trunks,");
+    assertThat(restored.termFrequency("really")).isEqualTo(3);
+    assertThat(restored.search("\"they have really really\"", /* limit= */ 10)).hasSize(1);
+  }
+}
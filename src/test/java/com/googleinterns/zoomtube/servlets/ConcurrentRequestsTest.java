@@ -0,0 +1,238 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.Environment;
+import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.data.IconFeedback;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.search.GlobalTranscriptIndex;
+import com.googleinterns.zoomtube.search.LectureNameIndex;
+import com.googleinterns.zoomtube.transcriptParser.TimedTextClient;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptParser;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import com.googleinterns.zoomtube.utils.IconFeedbackUtil;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Serves requests to shared servlet instances from many threads at once, the way App Engine
+ * does with {@code threadsafe} on.
+ */
+@RunWith(JUnit4.class)
+public final class ConcurrentRequestsTest {
+  private static final int THREAD_COUNT = 16;
+  private static final int REQUESTS_PER_THREAD = 25;
+
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true),
+          new LocalMemcacheServiceTestConfig(), new LocalUserServiceTestConfig())
+          .setEnvIsLoggedIn(true)
+          .setEnvEmail("test@example.com")
+          .setEnvAuthDomain("example.com");
+  private ExecutorService executor;
+  private Key lectureKey;
+
+  @Before
+  public void setUp() {
+    testServices.setUp();
+    // Each thread makes API calls as the environment set up on this one.
+    Environment environment = ApiProxy.getCurrentEnvironment();
+    executor = Executors.newFixedThreadPool(THREAD_COUNT, task -> new Thread(() -> {
+      ApiProxy.setEnvironmentForCurrentThread(environment);
+      task.run();
+    }));
+    lectureKey = DatastoreServiceFactory.getDatastoreService().put(
+        LectureUtil.createEntity("Lecture", "https://www.youtube.com/watch?v=id", "id"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+    testServices.tearDown();
+  }
+
+  @Test
+  public void doPost_concurrentComments_storesEachOnce() throws Exception {
+    DiscussionServlet servlet = new DiscussionServlet();
+    servlet.init();
+
+    runConcurrently(request -> {
+      HttpServletRequest commentRequest = mock(HttpServletRequest.class);
+      when(commentRequest.getParameter(DiscussionServlet.PARAM_LECTURE))
+          .thenReturn(Long.toString(lectureKey.getId()));
+      when(commentRequest.getParameter(DiscussionServlet.PARAM_TYPE))
+          .thenReturn(Comment.Type.NOTE.toString());
+      when(commentRequest.getParameter(DiscussionServlet.PARAM_TIMESTAMP)).thenReturn("0");
+      when(commentRequest.getReader())
+          .thenReturn(new BufferedReader(new StringReader("comment " + request)));
+      HttpServletResponse response = mock(HttpServletResponse.class);
+      servlet.doPost(commentRequest, response);
+      verify(response, never()).sendError(anyInt(), anyString());
+    });
+
+    List<Object> contents = new ArrayList<>();
+    for (Entity commentEntity : getAll(CommentUtil.KIND)) {
+      contents.add(commentEntity.getProperty(CommentUtil.CONTENT));
+    }
+    assertThat(contents).hasSize(THREAD_COUNT * REQUESTS_PER_THREAD);
+    assertThat(contents).containsNoDuplicates();
+  }
+
+  @Test
+  public void doPost_concurrentIconFeedback_storesEveryClick() throws Exception {
+    IconFeedbackServlet servlet = new IconFeedbackServlet();
+    servlet.init();
+
+    runConcurrently(request -> {
+      HttpServletRequest iconFeedbackRequest = mock(HttpServletRequest.class);
+      when(iconFeedbackRequest.getParameter(IconFeedbackServlet.PARAM_LECTURE_ID))
+          .thenReturn(Long.toString(lectureKey.getId()));
+      when(iconFeedbackRequest.getParameter(IconFeedbackServlet.PARAM_TIMESTAMP))
+          .thenReturn(Integer.toString(request));
+      when(iconFeedbackRequest.getParameter(IconFeedbackServlet.PARAM_ICON_TYPE))
+          .thenReturn(IconFeedback.Type.GOOD.toString());
+      HttpServletResponse response = mock(HttpServletResponse.class);
+      servlet.doPost(iconFeedbackRequest, response);
+      verify(response, never()).sendError(anyInt(), anyString());
+    });
+
+    assertThat(getAll(IconFeedbackUtil.KIND)).hasSize(THREAD_COUNT * REQUESTS_PER_THREAD);
+  }
+
+  @Test
+  public void doGet_concurrentLectureReads_allSeeLecture() throws Exception {
+    LectureServlet servlet = new LectureServlet();
+    servlet.init();
+
+    runConcurrently(request -> {
+      HttpServletRequest lectureRequest = mock(HttpServletRequest.class);
+      when(lectureRequest.getParameter(LectureServlet.PARAM_ID))
+          .thenReturn(Long.toString(lectureKey.getId()));
+      HttpServletResponse response = mock(HttpServletResponse.class);
+      StringWriter content = new StringWriter();
+      when(response.getWriter()).thenReturn(new PrintWriter(content));
+      servlet.doGet(lectureRequest, response);
+      assertThat(content.toString()).contains("Lecture");
+    });
+  }
+
+  @Test
+  public void sharedInstances_fromManyThreads_areCreatedOnce() throws Exception {
+    List<Object> parsers = Collections.synchronizedList(new ArrayList<>());
+    List<Object> clients = Collections.synchronizedList(new ArrayList<>());
+    List<Object> nameIndexes = Collections.synchronizedList(new ArrayList<>());
+    List<Object> transcriptIndexes = Collections.synchronizedList(new ArrayList<>());
+    List<Object> repositories = Collections.synchronizedList(new ArrayList<>());
+
+    runConcurrently(request -> {
+      parsers.add(TranscriptParser.getParser());
+      clients.add(TimedTextClient.getClient());
+      nameIndexes.add(LectureNameIndex.getIndex());
+      transcriptIndexes.add(GlobalTranscriptIndex.getIndex());
+      repositories.add(Repositories.getRepositories());
+    });
+
+    assertThat(distinct(parsers)).hasSize(1);
+    assertThat(distinct(clients)).hasSize(1);
+    assertThat(distinct(nameIndexes)).hasSize(1);
+    assertThat(distinct(transcriptIndexes)).hasSize(1);
+    assertThat(distinct(repositories)).hasSize(1);
+  }
+
+  /** A request made by the test, numbered from 0 across every thread. */
+  private interface Request {
+    void make(int request) throws Exception;
+  }
+
+  /**
+   * Makes {@link #REQUESTS_PER_THREAD} requests on each of {@link #THREAD_COUNT} threads,
+   * which all start together, and rethrows the first failure.
+   */
+  private void runConcurrently(Request request) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Callable<Void>> threads = new ArrayList<>();
+    for (int thread = 0; thread < THREAD_COUNT; thread++) {
+      int firstRequest = thread * REQUESTS_PER_THREAD;
+      threads.add(() -> {
+        start.await();
+        for (int offset = 0; offset < REQUESTS_PER_THREAD; offset++) {
+          request.make(firstRequest + offset);
+        }
+        return null;
+      });
+    }
+    List<Future<Void>> results = new ArrayList<>();
+    for (Callable<Void> thread : threads) {
+      results.add(executor.submit(thread));
+    }
+    start.countDown();
+    for (Future<Void> result : results) {
+      result.get(1, TimeUnit.MINUTES);
+    }
+  }
+
+  private static List<Entity> getAll(String kind) {
+    return DatastoreServiceFactory.getDatastoreService()
+        .prepare(new Query(kind))
+        .asList(FetchOptions.Builder.withDefaults());
+  }
+
+  private static Set<Object> distinct(List<Object> instances) {
+    Set<Object> distinctInstances = Collections.newSetFromMap(new IdentityHashMap<>());
+    distinctInstances.addAll(instances);
+    return distinctInstances;
+  }
+}
@@ -0,0 +1,424 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.ApiConfig;
+import com.google.apphosting.api.ApiProxy.Environment;
+import com.google.apphosting.api.ApiProxy.LogRecord;
+import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.data.IconFeedback;
+import com.googleinterns.zoomtube.metrics.Histogram;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Offline load test of lectures watched by many viewers at once, with the servlets running
+ * in-process against the local datastore, or against the in-memory repositories when run
+ * with {@code -Dzoomtube.repositories=memory}.
+ *
+ * <p>Each viewer opens its lecture and the transcript when it joins, then polls the
+ * discussion every {@link #POLL_INTERVAL_MS}, sometimes posting a comment or icon feedback
+ * as well. Viewers join at random times during the first interval, so the load is spread
+ * out. Reports the requests per second, the p50 and p99 latency, the errors and the
+ * datastore calls per request of each endpoint.
+ *
+ * <p>Latency is measured from when each request was due rather than from when a thread got to
+ * it, so that requests left waiting behind slow ones count the wait, as they would for a
+ * viewer. The p99 service time, from when the request started, is reported next to it. Run it
+ * at 50, 500 and 5000 viewers with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.googleinterns.zoomtube.servlets.ConcurrentViewersBenchmark \
+ *     -Dexec.args="[viewersPerLecture] [lectures] [seconds] [threads]"
+ * </pre>
+ */
+public final class ConcurrentViewersBenchmark {
+  private static final int DEFAULT_VIEWERS_PER_LECTURE = 50;
+  private static final int DEFAULT_LECTURES = 1;
+  private static final int DEFAULT_SECONDS = 30;
+  private static final int DEFAULT_THREADS = 32;
+  private static final long POLL_INTERVAL_MS = 5000;
+  /* The chance that a viewer posts a comment, or icon feedback, each time it polls. */
+  private static final double COMMENT_CHANCE = 0.02;
+  private static final double ICON_FEEDBACK_CHANCE = 0.05;
+  private static final int TRANSCRIPT_LINE_COUNT = 500;
+  private static final long LINE_DURATION_MS = 4000;
+  private static final String LANGUAGE = "en";
+
+  /** The requests a viewer makes. */
+  private enum Endpoint {
+    LECTURE("GET /lecture"),
+    TRANSCRIPT("GET /transcript"),
+    DISCUSSION("GET /discussion"),
+    POST_COMMENT("POST /discussion"),
+    POST_ICON_FEEDBACK("POST /icon-feedback");
+
+    private final String label;
+
+    Endpoint(String label) {
+      this.label = label;
+    }
+  }
+
+  /**
+   * The latency and service time in microseconds, errors and datastore calls of an endpoint's
+   * requests.
+   */
+  private static final class EndpointStats {
+    final Histogram latencyMicros = new Histogram();
+    final Histogram serviceMicros = new Histogram();
+    final LongAdder errors = new LongAdder();
+    final LongAdder datastoreCalls = new LongAdder();
+  }
+
+  private final Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+  private final LectureServlet lectureServlet = new LectureServlet();
+  private final TranscriptServlet transcriptServlet = new TranscriptServlet();
+  private final DiscussionServlet discussionServlet = new DiscussionServlet();
+  private final IconFeedbackServlet iconFeedbackServlet = new IconFeedbackServlet();
+
+  private ConcurrentViewersBenchmark() throws Exception {
+    for (Endpoint endpoint : Endpoint.values()) {
+      stats.put(endpoint, new EndpointStats());
+    }
+    lectureServlet.init();
+    transcriptServlet.init();
+    discussionServlet.init();
+    iconFeedbackServlet.init();
+  }
+
+  public static void main(String[] args) throws Exception {
+    int viewersPerLecture =
+        args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_VIEWERS_PER_LECTURE;
+    int lectureCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LECTURES;
+    int seconds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SECONDS;
+    int threadCount = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_THREADS;
+    LocalServiceTestHelper localServiceHelper =
+        new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true),
+            new LocalMemcacheServiceTestConfig(), new LocalUserServiceTestConfig())
+            .setEnvIsLoggedIn(true)
+            .setEnvEmail("viewer@example.com")
+            .setEnvAuthDomain("example.com");
+    localServiceHelper.setUp();
+    @SuppressWarnings("unchecked")
+    ApiProxy.Delegate<Environment> delegate = ApiProxy.getDelegate();
+    try {
+      List<Long> lectureIds = new ArrayList<>();
+      for (int lecture = 0; lecture < lectureCount; lecture++) {
+        lectureIds.add(createLecture(lecture));
+      }
+      ConcurrentViewersBenchmark benchmark = new ConcurrentViewersBenchmark();
+      ApiProxy.setDelegate(new CountingDelegate(delegate));
+      long nanos = benchmark.run(lectureIds, viewersPerLecture, seconds, threadCount);
+
+      System.out.printf("%d lectures, %d viewers each, %d threads, %s repositories, %d s%n",
+          lectureCount, viewersPerLecture, threadCount,
+          System.getProperty("zoomtube.repositories", "datastore"), seconds);
+      System.out.printf("offered %.1f discussion polls per second%n",
+          lectureCount * viewersPerLecture * 1000.0 / POLL_INTERVAL_MS);
+      benchmark.printStats(nanos);
+    } finally {
+      ApiProxy.setDelegate(delegate);
+      localServiceHelper.tearDown();
+    }
+  }
+
+  /** Stores a lecture with a transcript of lines, returning its id. */
+  private static long createLecture(int lecture) {
+    Repositories repositories = Repositories.getRepositories();
+    Entity lectureEntity =
+        LectureUtil.createEntity("Lecture " + lecture, "url", "videoId" + lecture);
+    lectureEntity.setProperty(LectureUtil.TRANSCRIPT_LANGUAGE, LANGUAGE);
+    Key lectureKey = repositories.lectures().put(lectureEntity);
+
+    List<Entity> lineEntities = new ArrayList<>();
+    for (int line = 0; line < TRANSCRIPT_LINE_COUNT; line++) {
+      long startMs = line * LINE_DURATION_MS;
+      lineEntities.add(TranscriptLineUtil.createEntity(lectureKey, LANGUAGE, "line " + line,
+          startMs, LINE_DURATION_MS, startMs + LINE_DURATION_MS));
+    }
+    repositories.transcriptLines().putAll(lineEntities);
+    return lectureKey.getId();
+  }
+
+  /**
+   * Runs {@code viewersPerLecture} viewers of each lecture in {@code lectureIds} for
+   * {@code seconds} on {@code threadCount} threads, returning the nanoseconds it took.
+   */
+  private long run(List<Long> lectureIds, int viewersPerLecture, int seconds, int threadCount)
+      throws InterruptedException {
+    // Each thread makes API calls as the environment set up on this one.
+    Environment environment = ApiProxy.getCurrentEnvironment();
+    ScheduledThreadPoolExecutor viewers = new ScheduledThreadPoolExecutor(threadCount, task -> {
+      Thread thread = new Thread(() -> {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        task.run();
+      });
+      thread.setDaemon(true);
+      return thread;
+    });
+    List<Future<?>> polls = new ArrayList<>();
+    long start = System.nanoTime();
+    for (long lectureId : lectureIds) {
+      for (int viewer = 0; viewer < viewersPerLecture; viewer++) {
+        long joinMs = ThreadLocalRandom.current().nextLong(POLL_INTERVAL_MS);
+        long joinDueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(joinMs);
+        viewers.schedule(() -> join(lectureId, joinDueNanos), joinMs, TimeUnit.MILLISECONDS);
+        polls.add(viewers.scheduleAtFixedRate(new Poller(lectureId, joinDueNanos), joinMs,
+            POLL_INTERVAL_MS, TimeUnit.MILLISECONDS));
+      }
+    }
+    Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+    // Stops the polls, then waits for the requests already started.
+    polls.forEach(poll -> poll.cancel(false));
+    viewers.shutdown();
+    viewers.awaitTermination(1, TimeUnit.MINUTES);
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Opens the lecture with {@code lectureId} and its transcript, as a viewer joining at
+   * {@code dueNanos}.
+   */
+  private void join(long lectureId, long dueNanos) {
+    HttpServletRequest lectureRequest = mock(HttpServletRequest.class);
+    when(lectureRequest.getParameter(LectureServlet.PARAM_ID))
+        .thenReturn(Long.toString(lectureId));
+    request(Endpoint.LECTURE, lectureServlet::doGet, lectureRequest, dueNanos);
+
+    HttpServletRequest transcriptRequest = mock(HttpServletRequest.class);
+    when(transcriptRequest.getParameter(TranscriptServlet.PARAM_ID))
+        .thenReturn(Long.toString(lectureId));
+    request(Endpoint.TRANSCRIPT, transcriptServlet::doGet, transcriptRequest);
+  }
+
+  /** Polls a viewer's lecture every {@link #POLL_INTERVAL_MS}, keeping track of when it's due. */
+  private final class Poller implements Runnable {
+    private final long lectureId;
+    /* The executor never runs a poller on two threads at once, so this needs no lock. */
+    private long dueNanos;
+
+    Poller(long lectureId, long firstDueNanos) {
+      this.lectureId = lectureId;
+      dueNanos = firstDueNanos;
+    }
+
+    @Override
+    public void run() {
+      // A late poll is run as soon as possible, but is still due when it was scheduled.
+      long pollDueNanos = dueNanos;
+      dueNanos += TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MS);
+      poll(lectureId, pollDueNanos);
+    }
+  }
+
+  /**
+   * Polls the discussion of the lecture with {@code lectureId}, as due at {@code dueNanos},
+   * and sometimes posts a comment or icon feedback.
+   */
+  private void poll(long lectureId, long dueNanos) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long timestampMs = random.nextLong(TRANSCRIPT_LINE_COUNT * LINE_DURATION_MS);
+
+    HttpServletRequest discussionRequest = mock(HttpServletRequest.class);
+    when(discussionRequest.getParameter(DiscussionServlet.PARAM_LECTURE))
+        .thenReturn(Long.toString(lectureId));
+    request(Endpoint.DISCUSSION, discussionServlet::doGet, discussionRequest, dueNanos);
+
+    if (random.nextDouble() < COMMENT_CHANCE) {
+      HttpServletRequest commentRequest = mock(HttpServletRequest.class);
+      when(commentRequest.getParameter(DiscussionServlet.PARAM_LECTURE))
+          .thenReturn(Long.toString(lectureId));
+      when(commentRequest.getParameter(DiscussionServlet.PARAM_TYPE))
+          .thenReturn(Comment.Type.NOTE.toString());
+      when(commentRequest.getParameter(DiscussionServlet.PARAM_TIMESTAMP))
+          .thenReturn(Long.toString(timestampMs));
+      try {
+        when(commentRequest.getReader())
+            .thenReturn(new BufferedReader(new StringReader("comment at " + timestampMs)));
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      request(Endpoint.POST_COMMENT, discussionServlet::doPost, commentRequest);
+    }
+
+    if (random.nextDouble() < ICON_FEEDBACK_CHANCE) {
+      IconFeedback.Type[] types = IconFeedback.Type.values();
+      HttpServletRequest iconFeedbackRequest = mock(HttpServletRequest.class);
+      when(iconFeedbackRequest.getParameter(IconFeedbackServlet.PARAM_LECTURE_ID))
+          .thenReturn(Long.toString(lectureId));
+      when(iconFeedbackRequest.getParameter(IconFeedbackServlet.PARAM_TIMESTAMP))
+          .thenReturn(Long.toString(timestampMs));
+      when(iconFeedbackRequest.getParameter(IconFeedbackServlet.PARAM_ICON_TYPE))
+          .thenReturn(types[random.nextInt(types.length)].toString());
+      request(Endpoint.POST_ICON_FEEDBACK, iconFeedbackServlet::doPost, iconFeedbackRequest);
+    }
+  }
+
+  /**
+   * Serves {@code request} with {@code method} once the viewer's previous request is done,
+   * recording it against {@code endpoint}.
+   */
+  private void request(Endpoint endpoint, Method method, HttpServletRequest request) {
+    request(endpoint, method, request, Long.MAX_VALUE);
+  }
+
+  /**
+   * Serves {@code request}, which was due at {@code dueNanos}, with {@code method}, recording
+   * it against {@code endpoint}. The response is set up before the request is timed.
+   */
+  private void request(
+      Endpoint endpoint, Method method, HttpServletRequest request, long dueNanos) {
+    EndpointStats endpointStats = stats.get(endpoint);
+    boolean[] failed = new boolean[1];
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    try {
+      when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+      Answer<Void> fail = invocation -> {
+        failed[0] = true;
+        return null;
+      };
+      doAnswer(fail).when(response).sendError(anyInt(), anyString());
+      doAnswer(fail).when(response).sendError(anyInt());
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    long datastoreCallsBefore = CountingDelegate.datastoreCalls();
+    long start = System.nanoTime();
+    try {
+      method.serve(request, response);
+    } catch (Exception e) {
+      failed[0] = true;
+    }
+    long end = System.nanoTime();
+    endpointStats.latencyMicros.record(
+        TimeUnit.NANOSECONDS.toMicros(end - Math.min(dueNanos, start)));
+    endpointStats.serviceMicros.record(TimeUnit.NANOSECONDS.toMicros(end - start));
+    endpointStats.datastoreCalls.add(CountingDelegate.datastoreCalls() - datastoreCallsBefore);
+    if (failed[0]) {
+      endpointStats.errors.increment();
+    }
+  }
+
+  /** Prints each endpoint's stats, for requests made over {@code nanos}. */
+  private void printStats(long nanos) {
+    double seconds = nanos / 1e9;
+    long totalRequests = 0;
+    System.out.printf("%-21s %9s %9s %9s %9s %11s %7s %11s%n", "endpoint", "requests",
+        "per s", "p50 ms", "p99 ms", "p99 svc ms", "errors", "ds calls/r");
+    for (Endpoint endpoint : Endpoint.values()) {
+      EndpointStats endpointStats = stats.get(endpoint);
+      long requests = endpointStats.latencyMicros.count();
+      totalRequests += requests;
+      System.out.printf("%-21s %9d %9.1f %9.1f %9.1f %11.1f %7d %11.2f%n", endpoint.label,
+          requests, requests / seconds,
+          endpointStats.latencyMicros.valueAtQuantile(0.5) / 1000.0,
+          endpointStats.latencyMicros.valueAtQuantile(0.99) / 1000.0,
+          endpointStats.serviceMicros.valueAtQuantile(0.99) / 1000.0, endpointStats.errors.sum(),
+          requests == 0 ? 0.0 : (double) endpointStats.datastoreCalls.sum() / requests);
+    }
+    System.out.printf("%-21s %9d %9.1f%n", "all", totalRequests, totalRequests / seconds);
+  }
+
+  /** A servlet's {@code doGet} or {@code doPost}. */
+  private interface Method {
+    void serve(HttpServletRequest request, HttpServletResponse response) throws IOException;
+  }
+
+  /** Counts the datastore calls made on each thread. */
+  private static final class CountingDelegate implements ApiProxy.Delegate<Environment> {
+    private static final String DATASTORE_PACKAGE = "datastore_v3";
+    private static final ThreadLocal<long[]> calls = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final ApiProxy.Delegate<Environment> delegate;
+
+    CountingDelegate(ApiProxy.Delegate<Environment> delegate) {
+      this.delegate = delegate;
+    }
+
+    /** Returns the datastore calls made so far on the current thread. */
+    static long datastoreCalls() {
+      return calls.get()[0];
+    }
+
+    @Override
+    public byte[] makeSyncCall(Environment environment, String packageName, String methodName,
+        byte[] request) throws ApiProxy.ApiProxyException {
+      count(packageName);
+      return delegate.makeSyncCall(environment, packageName, methodName, request);
+    }
+
+    @Override
+    public Future<byte[]> makeAsyncCall(Environment environment, String packageName,
+        String methodName, byte[] request, ApiConfig apiConfig) {
+      count(packageName);
+      return delegate.makeAsyncCall(environment, packageName, methodName, request, apiConfig);
+    }
+
+    @Override
+    public void log(Environment environment, LogRecord record) {
+      delegate.log(environment, record);
+    }
+
+    @Override
+    public void flushLogs(Environment environment) {
+      delegate.flushLogs(environment);
+    }
+
+    @Override
+    public List<Thread> getRequestThreads(Environment environment) {
+      return delegate.getRequestThreads(environment);
+    }
+
+    private static void count(String packageName) {
+      if (packageName.equals(DATASTORE_PACKAGE)) {
+        calls.get()[0]++;
+      }
+    }
+  }
+}
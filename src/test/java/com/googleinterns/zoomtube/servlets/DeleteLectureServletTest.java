@@ -0,0 +1,237 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static com.google.appengine.api.datastore.FetchOptions.Builder.withDefaults;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.users.User;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.data.IconFeedback;
+import com.googleinterns.zoomtube.data.LectureDeletion;
+import com.googleinterns.zoomtube.search.TranscriptIndex;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import com.googleinterns.zoomtube.utils.IconFeedbackUtil;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.LectureVideoUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@RunWith(JUnit4.class)
+public final class DeleteLectureServletTest {
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+
+  private final LocalServiceTestHelper testServices = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setNoStorage(true),
+      new LocalMemcacheServiceTestConfig());
+  private DatastoreService datastore;
+  private DeleteLectureServlet servlet;
+  private StringWriter content;
+  private Key lectureKey;
+
+  @Before
+  public void setUp() throws Exception {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    servlet = new DeleteLectureServlet();
+    servlet.init();
+    servlet.setRemainingMillis(() -> Long.MAX_VALUE);
+    content = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(content));
+    lectureKey = datastore.put(LectureUtil.createEntity("Lecture", "link", "videoId"));
+    datastore.put(LectureVideoUtil.createEntity("videoId", lectureKey));
+    when(request.getParameter(DeleteLectureServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void doPost_missingId_badRequest() throws Exception {
+    when(request.getParameter(DeleteLectureServlet.PARAM_ID)).thenReturn(null);
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Missing id parameter.");
+  }
+
+  @Test
+  public void doPost_invalidStage_badRequest() throws Exception {
+    when(request.getParameter(DeleteLectureServlet.PARAM_STAGE)).thenReturn("lines");
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Invalid stage parameter.");
+  }
+
+  @Test
+  public void doPost_deletesEveryKindOfLectureOnly() throws Exception {
+    Key otherLectureKey = datastore.put(LectureUtil.createEntity("Other", "link", "otherId"));
+    putLectureData(lectureKey, 3);
+    putLectureData(otherLectureKey, 2);
+
+    servlet.doPost(request, response);
+
+    LectureDeletion deletion = deletion(content.toString());
+    // The lecture, its LectureVideo, and three of each comment, line and icon feedback.
+    assertThat(deletion.deletedCount()).isEqualTo(11);
+    assertThat(deletion.done()).isTrue();
+    assertThat(count(LectureUtil.KIND)).isEqualTo(1);
+    assertThat(count(LectureVideoUtil.KIND)).isEqualTo(0);
+    assertThat(count(CommentUtil.KIND)).isEqualTo(2);
+    assertThat(count(TranscriptLineUtil.KIND)).isEqualTo(2);
+    assertThat(count(IconFeedbackUtil.KIND)).isEqualTo(2);
+  }
+
+  @Test
+  public void doPost_done_marksTranscriptIndexDeleted() throws Exception {
+    datastore.put(
+        TranscriptIndexUtil.createEntities(lectureKey, TranscriptIndex.builder().build()));
+
+    servlet.doPost(request, response);
+
+    assertThat(TranscriptIndexUtil.isDeleted(
+                   datastore.get(TranscriptIndexUtil.createKey(lectureKey))))
+        .isTrue();
+  }
+
+  @Test
+  public void doPost_videoOfOtherLecture_keepsLectureVideo() throws Exception {
+    Key otherLectureKey = datastore.put(LectureUtil.createEntity("Other", "link", "videoId"));
+    datastore.put(LectureVideoUtil.createEntity("videoId", otherLectureKey));
+
+    servlet.doPost(request, response);
+
+    assertThat(count(LectureVideoUtil.KIND)).isEqualTo(1);
+  }
+
+  @Test
+  public void doPost_alreadyDeleted_deletesWhatIsLeft() throws Exception {
+    datastore.delete(lectureKey);
+    putLectureData(lectureKey, 2);
+
+    servlet.doPost(request, response);
+
+    assertThat(deletion(content.toString()).deletedCount()).isEqualTo(6);
+    assertThat(count(TranscriptLineUtil.KIND)).isEqualTo(0);
+  }
+
+  @Test
+  public void doPost_outOfTime_resumesFromStageAndCursor() throws Exception {
+    int lineCount = DeleteLectureServlet.BATCH_SIZE * 2 + 10;
+    putTranscriptLines(lectureKey, lineCount);
+    servlet.setRemainingMillis(() -> 0);
+
+    List<LectureDeletion> deletions = new ArrayList<>();
+    String stage = null;
+    String cursor = null;
+    do {
+      StringWriter requestContent = new StringWriter();
+      when(response.getWriter()).thenReturn(new PrintWriter(requestContent));
+      when(request.getParameter(DeleteLectureServlet.PARAM_STAGE)).thenReturn(stage);
+      when(request.getParameter(DeleteLectureServlet.PARAM_CURSOR))
+          .thenReturn(cursor == null || cursor.isEmpty() ? null : cursor);
+      servlet.doPost(request, response);
+      LectureDeletion deletion = deletion(requestContent.toString());
+      deletions.add(deletion);
+      stage = deletion.done() ? null : deletion.stage();
+      cursor = deletion.cursor();
+    } while (stage != null);
+
+    // Comments, then two full batches of lines, then the rest.
+    assertThat(deletions).hasSize(4);
+    assertThat(deletions.get(0).stage()).isEqualTo(DeleteLectureServlet.STAGE_DESCENDANTS);
+    assertThat(deletions.get(3).deletedCount()).isEqualTo(10);
+    assertThat(count(TranscriptLineUtil.KIND)).isEqualTo(0);
+  }
+
+  @Test
+  public void doPost_invalidCursor_badRequest() throws Exception {
+    when(request.getParameter(DeleteLectureServlet.PARAM_STAGE))
+        .thenReturn(DeleteLectureServlet.STAGE_DESCENDANTS);
+    when(request.getParameter(DeleteLectureServlet.PARAM_CURSOR)).thenReturn("notACursor");
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Invalid cursor parameter.");
+  }
+
+  /** Puts {@code count} each of comments, transcript lines and icon feedback. */
+  private void putLectureData(Key lectureKey, int count) {
+    putTranscriptLines(lectureKey, count);
+    for (int i = 0; i < count; i++) {
+      datastore.put(CommentUtil.createRootEntity(lectureKey, /* timestampMs= */ i,
+          Optional.empty(), new User("test@example.com", "example.com"), "Comment", new Date(),
+          Comment.Type.NOTE));
+      datastore.put(IconFeedbackUtil.createEntity(lectureKey, i, IconFeedback.Type.GOOD));
+    }
+  }
+
+  private void putTranscriptLines(Key lectureKey, int count) {
+    List<Entity> lineEntities = new ArrayList<>();
+    for (int line = 0; line < count; line++) {
+      lineEntities.add(TranscriptLineUtil.createEntity(lectureKey, "en", "content",
+          /* lineStartMs= */ line, /* lineDurationMs= */ 1, /* lineEndMs= */ line + 1));
+    }
+    datastore.put(lineEntities);
+  }
+
+  private int count(String kind) {
+    return datastore.prepare(new Query(kind)).countEntities(withDefaults());
+  }
+
+  private static LectureDeletion deletion(String json) {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    return gson.fromJson(json, LectureDeletion.class);
+  }
+}
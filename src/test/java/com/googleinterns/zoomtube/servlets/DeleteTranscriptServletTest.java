@@ -0,0 +1,203 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static com.google.appengine.api.datastore.FetchOptions.Builder.withDefaults;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.googleinterns.zoomtube.data.TranscriptDeletion;
+import com.googleinterns.zoomtube.search.TranscriptIndex;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@RunWith(JUnit4.class)
+public final class DeleteTranscriptServletTest {
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private DatastoreService datastore;
+  private DeleteTranscriptServlet servlet;
+  private StringWriter content;
+  private Key lectureKey;
+
+  @Before
+  public void setUp() throws Exception {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    servlet = new DeleteTranscriptServlet();
+    servlet.init();
+    servlet.setRemainingMillis(() -> Long.MAX_VALUE);
+    content = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(content));
+    Entity lectureEntity = LectureUtil.createEntity("Lecture", "link", "videoId");
+    lectureEntity.setProperty(LectureUtil.TRANSCRIPT_LANGUAGE, "en");
+    lectureKey = datastore.put(lectureEntity);
+    when(request.getParameter(DeleteTranscriptServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void doPost_missingId_badRequest() throws Exception {
+    when(request.getParameter(DeleteTranscriptServlet.PARAM_ID)).thenReturn(null);
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Missing id parameter.");
+  }
+
+  @Test
+  public void doPost_deletesOnlyLinesOfLecture() throws Exception {
+    Key otherLectureKey = datastore.put(LectureUtil.createEntity("Other", "link", "otherId"));
+    putTranscriptLines(lectureKey, "en", 3);
+    putTranscriptLines(otherLectureKey, "en", 2);
+
+    servlet.doPost(request, response);
+
+    TranscriptDeletion deletion = deletion(content.toString());
+    assertThat(deletion.deletedCount()).isEqualTo(3);
+    assertThat(deletion.done()).isTrue();
+    assertThat(transcriptLineCount(lectureKey, "en")).isEqualTo(0);
+    assertThat(transcriptLineCount(otherLectureKey, "en")).isEqualTo(2);
+  }
+
+  @Test
+  public void doPost_language_deletesOnlyLinesInLanguage() throws Exception {
+    putTranscriptLines(lectureKey, "en", 3);
+    putTranscriptLines(lectureKey, "fr", 2);
+    datastore.put(
+        TranscriptIndexUtil.createEntities(lectureKey, TranscriptIndex.builder().build()));
+    when(request.getParameter(DeleteTranscriptServlet.PARAM_LANGUAGE)).thenReturn("fr");
+
+    servlet.doPost(request, response);
+
+    assertThat(transcriptLineCount(lectureKey, "en")).isEqualTo(3);
+    assertThat(transcriptLineCount(lectureKey, "fr")).isEqualTo(0);
+    // The transcript in English is still searchable.
+    assertThat(datastore.prepare(new Query(TranscriptIndexUtil.KIND)).countEntities(withDefaults()))
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void doPost_searchedLanguage_deletesIndex() throws Exception {
+    putTranscriptLines(lectureKey, "en", 1);
+    datastore.put(
+        TranscriptIndexUtil.createEntities(lectureKey, TranscriptIndex.builder().build()));
+    when(request.getParameter(DeleteTranscriptServlet.PARAM_LANGUAGE)).thenReturn("en");
+
+    servlet.doPost(request, response);
+
+    // Only the first shard is left, marked deleted for other instances to find.
+    Entity indexEntity = datastore.get(TranscriptIndexUtil.createKey(lectureKey));
+    assertThat(TranscriptIndexUtil.isDeleted(indexEntity)).isTrue();
+    assertThat(datastore.prepare(new Query(TranscriptIndexUtil.KIND)).countEntities(withDefaults()))
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void doPost_outOfTime_resumesFromCursor() throws Exception {
+    int lineCount = DeleteTranscriptServlet.BATCH_SIZE * 2 + 10;
+    putTranscriptLines(lectureKey, "en", lineCount);
+    servlet.setRemainingMillis(() -> 0);
+
+    List<TranscriptDeletion> deletions = new ArrayList<>();
+    String cursor = null;
+    do {
+      StringWriter requestContent = new StringWriter();
+      when(response.getWriter()).thenReturn(new PrintWriter(requestContent));
+      when(request.getParameter(DeleteTranscriptServlet.PARAM_CURSOR)).thenReturn(cursor);
+      servlet.doPost(request, response);
+      TranscriptDeletion deletion = deletion(requestContent.toString());
+      deletions.add(deletion);
+      cursor = deletion.done() ? null : deletion.cursor();
+    } while (cursor != null);
+
+    assertThat(deletions).hasSize(3);
+    assertThat(deletions.get(0).deletedCount()).isEqualTo(DeleteTranscriptServlet.BATCH_SIZE);
+    assertThat(deletions.get(2).deletedCount()).isEqualTo(10);
+    assertThat(transcriptLineCount(lectureKey, "en")).isEqualTo(0);
+  }
+
+  @Test
+  public void doPost_invalidCursor_badRequest() throws Exception {
+    when(request.getParameter(DeleteTranscriptServlet.PARAM_CURSOR)).thenReturn("notACursor");
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Invalid cursor parameter.");
+  }
+
+  private void putTranscriptLines(Key lectureKey, String language, int count) {
+    List<Entity> lineEntities = new ArrayList<>();
+    for (int line = 0; line < count; line++) {
+      lineEntities.add(TranscriptLineUtil.createEntity(lectureKey, language, "content",
+          /* lineStartMs= */ line, /* lineDurationMs= */ 1, /* lineEndMs= */ line + 1));
+    }
+    datastore.put(lineEntities);
+  }
+
+  private int transcriptLineCount(Key lectureKey, String language) {
+    Query query =
+        new Query(TranscriptLineUtil.KIND)
+            .setAncestor(lectureKey)
+            .setFilter(new FilterPredicate(TranscriptLineUtil.LANGUAGE, FilterOperator.EQUAL,
+                language));
+    return datastore.prepare(query).countEntities(withDefaults());
+  }
+
+  private static TranscriptDeletion deletion(String json) {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    return gson.fromJson(json, TranscriptDeletion.class);
+  }
+}
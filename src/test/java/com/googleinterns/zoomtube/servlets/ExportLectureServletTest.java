@@ -0,0 +1,173 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.users.User;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.data.IconFeedback;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import com.googleinterns.zoomtube.utils.IconFeedbackUtil;
+import com.googleinterns.zoomtube.utils.LectureRecordUtil;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptChunkUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@RunWith(JUnit4.class)
+public final class ExportLectureServletTest {
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private DatastoreService datastore;
+  private ExportLectureServlet servlet;
+  private StringWriter content;
+  private Key lectureKey;
+
+  @Before
+  public void setUp() throws Exception {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    servlet = new ExportLectureServlet();
+    servlet.init();
+    content = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(content));
+    lectureKey = datastore.put(LectureUtil.createEntity("Lecture", "link", "videoId"));
+    when(request.getParameter(ExportLectureServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void doGet_missingId_badRequest() throws Exception {
+    when(request.getParameter(ExportLectureServlet.PARAM_ID)).thenReturn(null);
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Missing id parameter.");
+  }
+
+  @Test
+  public void doGet_lectureNotFound_notFound() throws Exception {
+    when(request.getParameter(ExportLectureServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId() + 1));
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_NOT_FOUND, /* message= */ "Lecture not found in database.");
+  }
+
+  @Test
+  public void doGet_writesRecordOfEachEntityPerLine() throws Exception {
+    Entity lineEntity = TranscriptLineUtil.createEntity(lectureKey, "en", "Line", 0, 1000, 1000);
+    datastore.put(lineEntity);
+    Entity rootEntity = CommentUtil.createRootEntity(lectureKey, /* timestampMs= */ 0,
+        Optional.of(lineEntity.getKey()), new User("test@example.com", "example.com"),
+        "Question", new Date(), Comment.Type.QUESTION_UNANSWERED);
+    datastore.put(rootEntity);
+    datastore.put(CommentUtil.createReplyEntity(lectureKey, rootEntity.getKey(), Optional.empty(),
+        new User("test@example.com", "example.com"), "Multi\nline reply", new Date()));
+    datastore.put(IconFeedbackUtil.createEntity(lectureKey, 0, IconFeedback.Type.GOOD));
+
+    servlet.doGet(request, response);
+
+    List<JsonObject> records = getRecords();
+    assertThat(records).hasSize(5);
+    assertThat(LectureRecordUtil.getType(records.get(0)))
+        .isEqualTo(LectureRecordUtil.TYPE_LECTURE);
+    assertThat(LectureRecordUtil.getType(records.get(1)))
+        .isEqualTo(LectureRecordUtil.TYPE_TRANSCRIPT_LINE);
+    assertThat(LectureRecordUtil.getType(records.get(4)))
+        .isEqualTo(LectureRecordUtil.TYPE_ICON_FEEDBACK);
+    verify(response).setContentType(ExportLectureServlet.MEDIA_TYPE_NDJSON);
+  }
+
+  @Test
+  public void doGet_transcriptInChunks_writesLines() throws Exception {
+    List<Entity> lineEntities = new ArrayList<>();
+    for (long line = 1; line <= 3; line++) {
+      Entity lineEntity = new Entity(TranscriptLineUtil.KIND, line, lectureKey);
+      lineEntity.setPropertiesFrom(
+          TranscriptLineUtil.createEntity(lectureKey, "en", "Line", line, 1, line + 1));
+      lineEntities.add(lineEntity);
+    }
+    datastore.put(TranscriptChunkUtil.createEntities(lectureKey, "en", lineEntities));
+
+    servlet.doGet(request, response);
+
+    List<JsonObject> records = getRecords();
+    assertThat(records).hasSize(4);
+    assertThat(LectureRecordUtil.getId(records.get(3))).isEqualTo(3);
+  }
+
+  @Test
+  public void doGet_morePagesThanOne_writesEveryLine() throws Exception {
+    int lineCount = ExportLectureServlet.PAGE_SIZE + 10;
+    List<Entity> lineEntities = new ArrayList<>();
+    for (int line = 0; line < lineCount; line++) {
+      lineEntities.add(
+          TranscriptLineUtil.createEntity(lectureKey, "en", "Line", line, 1, line + 1));
+    }
+    datastore.put(lineEntities);
+
+    servlet.doGet(request, response);
+
+    assertThat(getRecords()).hasSize(lineCount + 1);
+  }
+
+  private List<JsonObject> getRecords() {
+    List<JsonObject> records = new ArrayList<>();
+    for (String line : content.toString().split("\n")) {
+      records.add(new JsonParser().parse(line).getAsJsonObject());
+    }
+    return records;
+  }
+}
@@ -0,0 +1,244 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static com.google.appengine.api.datastore.FetchOptions.Builder.withDefaults;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.users.User;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.data.IconFeedback;
+import com.googleinterns.zoomtube.data.ImportedLecture;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import com.googleinterns.zoomtube.utils.IconFeedbackUtil;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.googleinterns.zoomtube.utils.TranscriptSegmentUtil;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@RunWith(JUnit4.class)
+public final class ImportLectureServletTest {
+  private static final String LINK = "https://www.youtube.com/watch?v=3ymwOvzhwHs";
+  private static final String VIDEO_ID = "3ymwOvzhwHs";
+  private static final String LECTURE_RECORD = "{\"type\":\"lecture\",\"id\":1,"
+      + "\"name\":\"Lecture\",\"videoUrl\":\"" + LINK + "\",\"videoId\":\"" + VIDEO_ID + "\"}";
+
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+
+  private final LocalServiceTestHelper testServices = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setNoStorage(true),
+      new LocalMemcacheServiceTestConfig());
+  private DatastoreService datastore;
+  private ImportLectureServlet servlet;
+  private StringWriter content;
+
+  @Before
+  public void setUp() throws Exception {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    servlet = new ImportLectureServlet();
+    servlet.init();
+    content = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(content));
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void doPost_firstRecordNotLecture_badRequest() throws Exception {
+    setBody("{\"type\":\"iconFeedback\",\"timestampMs\":0,\"feedbackType\":\"GOOD\"}");
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST,
+        /* message= */ "The first record must be a lecture.");
+  }
+
+  @Test
+  public void doPost_videoHasLecture_conflict() throws Exception {
+    servlet.doPost(requestWithBody(LECTURE_RECORD), response);
+
+    servlet.doPost(requestWithBody(LECTURE_RECORD), response);
+
+    verify(response).sendError(HttpServletResponse.SC_CONFLICT,
+        /* message= */ "A lecture already exists for this video.");
+  }
+
+  @Test
+  public void doPost_exportedLecture_createsItWithAllRecords() throws Exception {
+    // Exports a lecture, deletes it, then imports it again.
+    Key lectureKey = datastore.put(LectureUtil.createEntity("Lecture", LINK, VIDEO_ID));
+    Entity lineEntity = TranscriptLineUtil.createEntity(lectureKey, "en", "Line", 0, 1000, 1000);
+    datastore.put(lineEntity);
+    Entity rootEntity = CommentUtil.createRootEntity(lectureKey, /* timestampMs= */ 0,
+        Optional.of(lineEntity.getKey()), new User("test@example.com", "example.com"),
+        "Question", new Date(), Comment.Type.QUESTION_UNANSWERED);
+    datastore.put(rootEntity);
+    datastore.put(CommentUtil.createReplyEntity(lectureKey, rootEntity.getKey(), Optional.empty(),
+        new User("test@example.com", "example.com"), "Reply", new Date()));
+    datastore.put(IconFeedbackUtil.createEntity(lectureKey, 0, IconFeedback.Type.GOOD));
+    String export = export(lectureKey);
+    deleteLecture(lectureKey);
+
+    servlet.doPost(requestWithBody(export), response);
+
+    ImportedLecture imported = importedLecture();
+    assertThat(imported.transcriptLineCount()).isEqualTo(1);
+    assertThat(imported.commentCount()).isEqualTo(2);
+    assertThat(imported.iconFeedbackCount()).isEqualTo(1);
+    Key importedKey = KeyFactory.createKey(LectureUtil.KIND, imported.lectureId());
+    assertThat(importedKey).isNotEqualTo(lectureKey);
+    List<Entity> comments = datastore
+                                .prepare(new Query(CommentUtil.KIND).setFilter(new FilterPredicate(
+                                    CommentUtil.LECTURE, FilterOperator.EQUAL, importedKey)))
+                                .asList(withDefaults());
+    assertThat(comments).hasSize(2);
+    for (Entity comment : comments) {
+      if (comment.hasProperty(CommentUtil.PARENT)) {
+        // The reply points at the imported question, which points at the imported line.
+        Entity parent = datastore.get((Key) comment.getProperty(CommentUtil.PARENT));
+        Key lineKey = (Key) parent.getProperty(CommentUtil.TRANSCRIPT_LINE);
+        assertThat(datastore.get(lineKey).getProperty(TranscriptLineUtil.CONTENT))
+            .isEqualTo("Line");
+      }
+    }
+  }
+
+  @Test
+  public void doPost_invalidRecord_badRequestAfterImportingEarlierRecords() throws Exception {
+    setBody(LECTURE_RECORD + "\n"
+        + "{\"type\":\"iconFeedback\",\"timestampMs\":0,\"feedbackType\":\"GOOD\"}\n"
+        + "{\"type\":\"iconFeedback\",\"timestampMs\":0,\"feedbackType\":\"GREAT\"}\n");
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST,
+        /* message= */ "Invalid record on line 3: Invalid feedbackType."
+            + " Lecture 1 was partly imported and can be deleted.");
+    assertThat(datastore.prepare(new Query(IconFeedbackUtil.KIND)).countEntities(withDefaults()))
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void doPost_nonAsciiContent_readsBodyAsUtf8AndKeepsContent() throws Exception {
+    setBody(LECTURE_RECORD + "\n"
+        + "{\"type\":\"transcriptLine\",\"id\":1,\"language\":\"en\","
+        + "\"content\":\"Grüße 日本語\",\"startMs\":0,\"durationMs\":1000,\"endMs\":1000}\n");
+
+    servlet.doPost(request, response);
+
+    verify(request).setCharacterEncoding("UTF-8");
+    Entity lineEntity = datastore.prepare(new Query(TranscriptLineUtil.KIND)).asSingleEntity();
+    assertThat(lineEntity.getProperty(TranscriptLineUtil.CONTENT)).isEqualTo("Grüße 日本語");
+  }
+
+  @Test
+  public void doPost_lectureWithTranscriptLanguage_buildsSegmentsAndSearchIndex()
+      throws Exception {
+    Entity lectureEntity = LectureUtil.createEntity("Lecture", LINK, VIDEO_ID);
+    lectureEntity.setProperty(LectureUtil.TRANSCRIPT_LANGUAGE, "en");
+    Key lectureKey = datastore.put(lectureEntity);
+    datastore.put(TranscriptLineUtil.createEntity(lectureKey, "en", "Line", 0, 1000, 1000));
+    datastore.put(TranscriptLineUtil.createEntity(lectureKey, "fr", "Ligne", 0, 1000, 1000));
+    String export = export(lectureKey);
+    deleteLecture(lectureKey);
+
+    servlet.doPost(requestWithBody(export), response);
+
+    Key importedKey = KeyFactory.createKey(LectureUtil.KIND, importedLecture().lectureId());
+    datastore.get(TranscriptSegmentUtil.createKey(importedKey, "en"));
+    datastore.get(TranscriptSegmentUtil.createKey(importedKey, "fr"));
+    datastore.get(TranscriptIndexUtil.createKey(importedKey));
+  }
+
+  private String export(Key lectureKey) throws Exception {
+    ExportLectureServlet exportServlet = new ExportLectureServlet();
+    exportServlet.init();
+    HttpServletRequest exportRequest = mock(HttpServletRequest.class);
+    when(exportRequest.getParameter(ExportLectureServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+    HttpServletResponse exportResponse = mock(HttpServletResponse.class);
+    StringWriter exportContent = new StringWriter();
+    when(exportResponse.getWriter()).thenReturn(new PrintWriter(exportContent));
+    exportServlet.doGet(exportRequest, exportResponse);
+    return exportContent.toString();
+  }
+
+  private void deleteLecture(Key lectureKey) throws Exception {
+    DeleteLectureServlet deleteServlet = new DeleteLectureServlet();
+    deleteServlet.init();
+    deleteServlet.setRemainingMillis(() -> Long.MAX_VALUE);
+    HttpServletRequest deleteRequest = mock(HttpServletRequest.class);
+    when(deleteRequest.getParameter(DeleteLectureServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+    HttpServletResponse deleteResponse = mock(HttpServletResponse.class);
+    when(deleteResponse.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+    deleteServlet.doPost(deleteRequest, deleteResponse);
+  }
+
+  private void setBody(String body) throws Exception {
+    when(request.getReader()).thenReturn(new BufferedReader(new StringReader(body)));
+  }
+
+  private HttpServletRequest requestWithBody(String body) throws Exception {
+    setBody(body);
+    return request;
+  }
+
+  private ImportedLecture importedLecture() {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    return gson.fromJson(content.toString(), ImportedLecture.class);
+  }
+}
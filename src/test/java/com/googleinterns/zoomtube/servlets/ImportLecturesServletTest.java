@@ -0,0 +1,171 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.googleinterns.zoomtube.data.LectureImportResult;
+import com.googleinterns.zoomtube.data.LectureImportResult.Status;
+import com.googleinterns.zoomtube.transcriptParser.TimedTextClient;
+import com.googleinterns.zoomtube.transcriptParser.TimedTextStubServer;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptParser;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@RunWith(JUnit4.class)
+public final class ImportLecturesServletTest {
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private DatastoreService datastore;
+  private ImportLecturesServlet servlet;
+  private TimedTextStubServer stubServer;
+  private StringWriter content;
+
+  @Before
+  public void setUp() throws Exception {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    servlet = new ImportLecturesServlet();
+    servlet.init();
+    stubServer = TimedTextStubServer.start();
+    servlet.setTranscriptParser(new TranscriptParser(new TimedTextClient(stubServer.apiUrl())));
+    content = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(content));
+  }
+
+  @After
+  public void tearDown() {
+    stubServer.stop();
+    testServices.tearDown();
+  }
+
+  @Test
+  public void doPost_newLectures_createsLecturesWithTranscripts() throws Exception {
+    stubServer.addTranscript("video1", "en", "Hello", "there");
+    stubServer.addTranscript("video2", "fr", "Salut");
+    setBody("[{\"name\": \"One\", \"videoUrl\": \"https://www.youtube.com/watch?v=video1\","
+        + " \"language\": \"en\"},"
+        + " {\"name\": \"Two\", \"videoUrl\": \"https://youtu.be/video2\", \"language\": \"fr\"}]");
+
+    servlet.doPost(request, response);
+
+    List<LectureImportResult> results = results();
+    assertThat(results).hasSize(2);
+    assertThat(results.get(0).status()).isEqualTo(Status.CREATED);
+    assertThat(results.get(0).transcriptLanguages()).containsExactly("en");
+    assertThat(results.get(1).transcriptLanguages()).containsExactly("fr");
+    assertThat(count(new Query(LectureUtil.KIND))).isEqualTo(2);
+    assertThat(count(new Query(TranscriptLineUtil.KIND))).isEqualTo(3);
+  }
+
+  @Test
+  public void doPost_existingAndRepeatedVideos_createsEachLectureOnce() throws Exception {
+    Key existingKey = datastore.put(LectureUtil.createEntity("Old", "link", "video1"));
+    setBody("[{\"name\": \"One\", \"videoUrl\": \"https://www.youtube.com/watch?v=video1\"},"
+        + " {\"name\": \"Two\", \"videoUrl\": \"https://youtu.be/video2\"},"
+        + " {\"name\": \"Two again\", \"videoUrl\": \"https://www.youtube.com/watch?v=video2\"}]");
+
+    servlet.doPost(request, response);
+
+    List<LectureImportResult> results = results();
+    assertThat(results.get(0).status()).isEqualTo(Status.EXISTING);
+    assertThat(results.get(0).lectureId()).isEqualTo(existingKey.getId());
+    assertThat(results.get(1).status()).isEqualTo(Status.CREATED);
+    assertThat(results.get(2).status()).isEqualTo(Status.EXISTING);
+    assertThat(results.get(2).lectureId()).isEqualTo(results.get(1).lectureId());
+    assertThat(count(new Query(LectureUtil.KIND))).isEqualTo(2);
+  }
+
+  @Test
+  public void doPost_invalidLinkOrMissingTranscript_reportsEachLecture() throws Exception {
+    setBody("[{\"name\": \"One\", \"videoUrl\": \"not a link\"},"
+        + " {\"name\": \"Two\", \"videoUrl\": \"https://youtu.be/video2\", \"language\": \"en\"}]");
+
+    servlet.doPost(request, response);
+
+    List<LectureImportResult> results = results();
+    assertThat(results.get(0).status()).isEqualTo(Status.INVALID_LINK);
+    assertThat(results.get(1).status()).isEqualTo(Status.CREATED);
+    assertThat(results.get(1).transcriptLanguages()).isEmpty();
+    assertThat(results.get(1).error()).isNotEmpty();
+  }
+
+  @Test
+  public void doPost_missingVideoUrl_badRequest() throws Exception {
+    setBody("[{\"name\": \"One\"}]");
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST,
+        /* message= */ "Each lecture needs a name and a videoUrl.");
+  }
+
+  @Test
+  public void doPost_notAnArray_badRequest() throws Exception {
+    setBody("{\"name\": \"One\"");
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST,
+        /* message= */ "Request body must be a Json array of lectures.");
+  }
+
+  private void setBody(String body) throws Exception {
+    when(request.getReader()).thenReturn(new BufferedReader(new StringReader(body)));
+  }
+
+  private List<LectureImportResult> results() {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    return gson.fromJson(
+        content.toString(), new TypeToken<List<LectureImportResult>>() {}.getType());
+  }
+
+  private int count(Query query) {
+    return datastore.prepare(query).countEntities(FetchOptions.Builder.withDefaults());
+  }
+}
@@ -0,0 +1,95 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.googleinterns.zoomtube.data.LectureSummary;
+import com.googleinterns.zoomtube.search.LectureNameIndex;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@RunWith(JUnit4.class)
+public final class LectureAutocompleteServletTest {
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private LectureNameIndex nameIndex;
+  private LectureAutocompleteServlet servlet;
+  private StringWriter content;
+
+  @Before
+  public void setUp() throws Exception {
+    testServices.setUp();
+    nameIndex = new LectureNameIndex();
+    servlet = new LectureAutocompleteServlet();
+    servlet.init();
+    servlet.setNameIndex(nameIndex);
+    content = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(content));
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void doGet_returnsMatchingLectures() throws Exception {
+    nameIndex.addLecture(1, "Introduction to Algorithms");
+    nameIndex.addLecture(2, "Biology");
+    when(request.getParameter(LectureAutocompleteServlet.PARAM_QUERY)).thenReturn("intro al");
+
+    servlet.doGet(request, response);
+
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    List<LectureSummary> lectures =
+        gson.fromJson(content.toString(), new TypeToken<List<LectureSummary>>() {}.getType());
+    assertThat(lectures).hasSize(1);
+    assertThat(lectures.get(0).key().getId()).isEqualTo(1);
+    assertThat(lectures.get(0).lectureName()).isEqualTo("Introduction to Algorithms");
+  }
+
+  @Test
+  public void doGet_missingQuery_badRequest() throws Exception {
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Missing query parameter.");
+  }
+}
@@ -0,0 +1,270 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.users.User;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.ApiConfig;
+import com.google.apphosting.api.ApiProxy.Environment;
+import com.google.apphosting.api.ApiProxy.LogRecord;
+import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptChunk;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptSegmentUtil;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Offline benchmark comparing the time for the lecture view to get what it first renders, by
+ * requesting the lecture, its transcript and its discussion one after another as the page
+ * used to, with the time for a single request to {@link LectureBootstrapServlet}.
+ *
+ * <p>Every datastore call takes an extra {@code rpcLatencyMs}, and every request an extra
+ * {@code roundTripMs}, to stand in for the network between the browser, the server and the
+ * datastore. Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.googleinterns.zoomtube.servlets.LectureBootstrapBenchmark \
+ *     -Dexec.args="[rpcLatencyMs] [roundTripMs]"
+ * </pre>
+ */
+public final class LectureBootstrapBenchmark {
+  private static final long DEFAULT_RPC_LATENCY_MS = 10;
+  private static final long DEFAULT_ROUND_TRIP_MS = 60;
+  private static final int ITERATIONS = 20;
+  private static final int SEGMENT_COUNT = 1000;
+  private static final int COMMENT_COUNT = 100;
+  private static final String LANGUAGE = "en";
+
+  public static void main(String[] args) throws Exception {
+    long rpcLatencyMs = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_RPC_LATENCY_MS;
+    long roundTripMs = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_ROUND_TRIP_MS;
+    LocalServiceTestHelper localServiceHelper =
+        new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true),
+            new LocalUserServiceTestConfig());
+    localServiceHelper.setUp();
+    try {
+      long lectureId = createLecture();
+      LectureServlet lectureServlet = new LectureServlet();
+      lectureServlet.init();
+      TranscriptServlet transcriptServlet = new TranscriptServlet();
+      transcriptServlet.init();
+      DiscussionServlet discussionServlet = new DiscussionServlet();
+      discussionServlet.init();
+      LectureBootstrapServlet bootstrapServlet = new LectureBootstrapServlet();
+      bootstrapServlet.init();
+
+      HttpServletRequest lectureRequest = mock(HttpServletRequest.class);
+      when(lectureRequest.getParameter(LectureServlet.PARAM_ID))
+          .thenReturn(Long.toString(lectureId));
+      HttpServletRequest transcriptRequest = mock(HttpServletRequest.class);
+      when(transcriptRequest.getParameter(TranscriptServlet.PARAM_ID))
+          .thenReturn(Long.toString(lectureId));
+      when(transcriptRequest.getParameter(TranscriptServlet.PARAM_GRANULARITY))
+          .thenReturn(TranscriptServlet.GRANULARITY_SEGMENTS);
+      when(transcriptRequest.getHeader("Accept")).thenReturn(TranscriptServlet.MEDIA_TYPE_COLUMNS);
+      HttpServletRequest discussionRequest = mock(HttpServletRequest.class);
+      when(discussionRequest.getParameter(DiscussionServlet.PARAM_LECTURE))
+          .thenReturn(Long.toString(lectureId));
+      HttpServletRequest bootstrapRequest = mock(HttpServletRequest.class);
+      when(bootstrapRequest.getParameter(LectureBootstrapServlet.PARAM_ID))
+          .thenReturn(Long.toString(lectureId));
+      when(bootstrapRequest.getParameter(LectureBootstrapServlet.PARAM_INCLUDE))
+          .thenReturn("lecture,transcript,discussion");
+
+      @SuppressWarnings("unchecked")
+      ApiProxy.Delegate<Environment> delegate = ApiProxy.getDelegate();
+      ApiProxy.setDelegate(new LatencyDelegate(delegate, rpcLatencyMs));
+      double waterfallMs = time(() -> {
+        request(lectureServlet::doGet, lectureRequest, roundTripMs);
+        request(transcriptServlet::doGet, transcriptRequest, roundTripMs);
+        request(discussionServlet::doGet, discussionRequest, roundTripMs);
+      });
+      double bootstrapMs =
+          time(() -> request(bootstrapServlet::doGet, bootstrapRequest, roundTripMs));
+      ApiProxy.setDelegate(delegate);
+
+      System.out.printf("%d segments, %d comments, %d ms per datastore call, %d ms per request%n",
+          SEGMENT_COUNT, COMMENT_COUNT, rpcLatencyMs, roundTripMs);
+      System.out.printf("waterfall %8.1f ms%n", waterfallMs);
+      System.out.printf("bootstrap %8.1f ms%n", bootstrapMs);
+    } finally {
+      localServiceHelper.tearDown();
+    }
+  }
+
+  /** Stores a lecture with a transcript in segments and a discussion, returning its id. */
+  private static long createLecture() throws Exception {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Entity lectureEntity = LectureUtil.createEntity("Lecture", "url", "videoId");
+    lectureEntity.setProperty(LectureUtil.TRANSCRIPT_LANGUAGE, LANGUAGE);
+    Key lectureKey = datastore.put(lectureEntity);
+
+    TranscriptChunk.Builder segments = TranscriptChunk.builder();
+    List<Long> lineIds = new ArrayList<>();
+    for (int segment = 0; segment < SEGMENT_COUNT; segment++) {
+      segments.addLine(segment + 1, segment * 5000L, 5000, "segment " + segment);
+      lineIds.add(segment + 1L);
+    }
+    datastore.put(TranscriptSegmentUtil.createEntity(lectureKey, LANGUAGE, segments.build(),
+        Collections.nCopies(SEGMENT_COUNT, 1L), lineIds));
+
+    User author = new User("test@example.com", "example.com");
+    List<Entity> commentEntities = new ArrayList<>();
+    for (int comment = 0; comment < COMMENT_COUNT; comment++) {
+      commentEntities.add(CommentUtil.createRootEntity(lectureKey, comment * 1000L,
+          Optional.empty(), author, "comment " + comment, new Date(), Comment.Type.NOTE));
+    }
+    datastore.put(commentEntities);
+    return lectureKey.getId();
+  }
+
+  /** Serves {@code request} with {@code get}, as if it took {@code roundTripMs} to send. */
+  private static void request(Get get, HttpServletRequest request, long roundTripMs) {
+    try {
+      Thread.sleep(roundTripMs);
+      HttpServletResponse response = mock(HttpServletResponse.class);
+      when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+      get.doGet(request, response);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Returns the average milliseconds {@code task} takes, after warming it up. */
+  private static double time(Runnable task) {
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+      task.run();
+    }
+    long start = System.nanoTime();
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+      task.run();
+    }
+    return (System.nanoTime() - start) / 1e6 / ITERATIONS;
+  }
+
+  /** A servlet's {@code doGet}. */
+  private interface Get {
+    void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException;
+  }
+
+  /**
+   * Delays the result of every API call by a fixed latency from when it was made, so calls
+   * made concurrently still overlap.
+   */
+  private static final class LatencyDelegate implements ApiProxy.Delegate<Environment> {
+    private final ApiProxy.Delegate<Environment> delegate;
+    private final long latencyNanos;
+
+    LatencyDelegate(ApiProxy.Delegate<Environment> delegate, long latencyMs) {
+      this.delegate = delegate;
+      this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMs);
+    }
+
+    @Override
+    public byte[] makeSyncCall(Environment environment, String packageName, String methodName,
+        byte[] request) throws ApiProxy.ApiProxyException {
+      sleepUntil(System.nanoTime() + latencyNanos);
+      return delegate.makeSyncCall(environment, packageName, methodName, request);
+    }
+
+    @Override
+    public Future<byte[]> makeAsyncCall(Environment environment, String packageName,
+        String methodName, byte[] request, ApiConfig apiConfig) {
+      long readyNanos = System.nanoTime() + latencyNanos;
+      Future<byte[]> response =
+          delegate.makeAsyncCall(environment, packageName, methodName, request, apiConfig);
+      return new Future<byte[]>() {
+        @Override
+        public byte[] get() throws InterruptedException, ExecutionException {
+          sleepUntil(readyNanos);
+          return response.get();
+        }
+
+        @Override
+        public byte[] get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+          sleepUntil(readyNanos);
+          return response.get(timeout, unit);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+          return response.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+          return response.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+          return System.nanoTime() >= readyNanos && response.isDone();
+        }
+      };
+    }
+
+    @Override
+    public void log(Environment environment, LogRecord record) {
+      delegate.log(environment, record);
+    }
+
+    @Override
+    public void flushLogs(Environment environment) {
+      delegate.flushLogs(environment);
+    }
+
+    @Override
+    public List<Thread> getRequestThreads(Environment environment) {
+      return delegate.getRequestThreads(environment);
+    }
+
+    private static void sleepUntil(long nanos) {
+      long remainingNanos = nanos - System.nanoTime();
+      if (remainingNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(remainingNanos);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,201 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.users.User;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.utils.CommentUtil;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@RunWith(JUnit4.class)
+public final class LectureBootstrapServletTest {
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+
+  private final LocalServiceTestHelper testServices = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setNoStorage(true), new LocalUserServiceTestConfig());
+  private DatastoreService datastore;
+  private LectureBootstrapServlet servlet;
+  private StringWriter content;
+  private Key lectureKey;
+
+  @Before
+  public void setUp() throws Exception {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    servlet = new LectureBootstrapServlet();
+    servlet.init();
+    content = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(content));
+    lectureKey = datastore.put(LectureUtil.createEntity("Lecture", "url", "videoId"));
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void doGet_missingId_badRequest() throws Exception {
+    servlet.doGet(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing id parameter.");
+  }
+
+  @Test
+  public void doGet_invalidInclude_badRequest() throws Exception {
+    setLectureId(lectureKey.getId());
+    when(request.getParameter(LectureBootstrapServlet.PARAM_INCLUDE))
+        .thenReturn("lecture,comments");
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid include parameter.");
+  }
+
+  @Test
+  public void doGet_lectureNotFound_notFound() throws Exception {
+    setLectureId(lectureKey.getId() + 1);
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_NOT_FOUND, "Lecture not found in database.");
+  }
+
+  @Test
+  public void doGet_repositoriesInMemory_readsThroughThem() throws Exception {
+    Repositories repositories = Repositories.inMemory();
+    Key memoryLectureKey =
+        repositories.lectures().put(LectureUtil.createEntity("In memory", "url", "videoId"));
+    repositories.transcriptLines().putAll(ImmutableList.of(
+        TranscriptLineUtil.createEntity(memoryLectureKey, "Line", 0, 1000, 1000)));
+    repositories.comments().put(CommentUtil.createRootEntity(memoryLectureKey,
+        /* timestampMs= */ 0, Optional.empty(), new User("test@example.com", "example.com"),
+        "Comment", new Date(), Comment.Type.NOTE));
+    servlet.setRepositories(repositories);
+    setLectureId(memoryLectureKey.getId());
+
+    servlet.doGet(request, response);
+
+    JsonObject bootstrap = getBootstrap();
+    assertThat(bootstrap.getAsJsonObject(LectureBootstrapServlet.SECTION_LECTURE)
+                   .get("lectureName")
+                   .getAsString())
+        .isEqualTo("In memory");
+    assertThat(bootstrap.getAsJsonObject(LectureBootstrapServlet.SECTION_TRANSCRIPT)
+                   .getAsJsonArray("contents"))
+        .hasSize(1);
+    assertThat(bootstrap.getAsJsonArray(LectureBootstrapServlet.SECTION_DISCUSSION)).hasSize(1);
+  }
+
+  @Test
+  public void doGet_returnsDefaultSections() throws Exception {
+    datastore.put(TranscriptLineUtil.createEntity(lectureKey, "First line", 0, 1000, 1000));
+    datastore.put(TranscriptLineUtil.createEntity(lectureKey, "Second line", 1000, 1000, 2000));
+    datastore.put(CommentUtil.createRootEntity(lectureKey, /* timestampMs= */ 0, Optional.empty(),
+        new User("test@example.com", "example.com"), "Comment", new Date(), Comment.Type.NOTE));
+    setLectureId(lectureKey.getId());
+
+    servlet.doGet(request, response);
+
+    JsonObject bootstrap = getBootstrap();
+    assertThat(bootstrap.keySet())
+        .containsExactly(LectureBootstrapServlet.SECTION_LECTURE,
+            LectureBootstrapServlet.SECTION_TRANSCRIPT, LectureBootstrapServlet.SECTION_DISCUSSION,
+            LectureBootstrapServlet.SECTION_AUTH);
+    assertThat(bootstrap.getAsJsonObject(LectureBootstrapServlet.SECTION_LECTURE)
+                   .get("lectureName")
+                   .getAsString())
+        .isEqualTo("Lecture");
+    assertThat(bootstrap.getAsJsonObject(LectureBootstrapServlet.SECTION_TRANSCRIPT)
+                   .getAsJsonArray("contents"))
+        .hasSize(2);
+    assertThat(bootstrap.getAsJsonArray(LectureBootstrapServlet.SECTION_DISCUSSION)).hasSize(1);
+    assertThat(bootstrap.getAsJsonObject(LectureBootstrapServlet.SECTION_AUTH)
+                   .get("loggedIn")
+                   .getAsBoolean())
+        .isFalse();
+  }
+
+  @Test
+  public void doGet_include_returnsOnlyIncludedSections() throws Exception {
+    setLectureId(lectureKey.getId());
+    when(request.getParameter(LectureBootstrapServlet.PARAM_INCLUDE))
+        .thenReturn("discussion, iconFeedback");
+
+    servlet.doGet(request, response);
+
+    JsonObject bootstrap = getBootstrap();
+    assertThat(bootstrap.keySet())
+        .containsExactly(LectureBootstrapServlet.SECTION_DISCUSSION,
+            LectureBootstrapServlet.SECTION_ICON_FEEDBACK);
+    assertThat(bootstrap.getAsJsonArray(LectureBootstrapServlet.SECTION_ICON_FEEDBACK))
+        .isEmpty();
+  }
+
+  @Test
+  public void doGet_noStoredTranscript_leavesOutTranscript() throws Exception {
+    setLectureId(lectureKey.getId());
+    when(request.getParameter(LectureBootstrapServlet.PARAM_INCLUDE))
+        .thenReturn("lecture,transcript");
+    when(request.getParameter(LectureBootstrapServlet.PARAM_LANGUAGE)).thenReturn("en");
+
+    servlet.doGet(request, response);
+
+    assertThat(getBootstrap().keySet()).containsExactly(LectureBootstrapServlet.SECTION_LECTURE);
+  }
+
+  private void setLectureId(long lectureId) {
+    when(request.getParameter(LectureBootstrapServlet.PARAM_ID))
+        .thenReturn(Long.toString(lectureId));
+  }
+
+  private JsonObject getBootstrap() {
+    return new JsonParser().parse(content.toString()).getAsJsonObject();
+  }
+}
@@ -15,22 +15,25 @@
 package com.googleinterns.zoomtube.servlets;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-import com.googleinterns.zoomtube.data.Lecture;
+import com.googleinterns.zoomtube.data.LecturePage;
+import com.googleinterns.zoomtube.data.LectureSummary;
 import com.googleinterns.zoomtube.utils.LectureUtil;
 import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.junit.After;
@@ -60,10 +63,14 @@ public final class LectureListServletTest {
   private static final String TEST_LINK = "https://www.youtube.com/watch?v=wXhTHyIgQ_U";
   private static final String TEST_ID = "wXhTHyIgQ_U";
 
+  private long nextCreatedMs = 1000;
+
   @Before
   public void setUp() throws Exception {
     testServices.setUp();
     datastoreService = DatastoreServiceFactory.getDatastoreService();
+    // The cached pages are shared by every instance of the servlet.
+    LectureListServlet.invalidateLecturePages();
     servlet = new LectureListServlet();
     servlet.init();
     content = new StringWriter();
@@ -79,21 +86,139 @@ public final class LectureListServletTest {
   public void doGet_emptyDatabase_shouldReturnNoLecture() throws Exception {
     servlet.doGet(request, response);
 
-    String json = content.toString();
-    assertThat(json).startsWith("[]");
+    LecturePage lecturePage = readLecturePage();
+    assertThat(lecturePage.lectures()).isEmpty();
+    assertThat(lecturePage.cursor()).isEmpty();
   }
 
   @Test
   public void doGet_oneLectureInDatabase_shouldReturnOneLecture() throws Exception {
-    datastoreService.put(LectureUtil.createEntity(/* lectureName= */ "", TEST_LINK, TEST_ID));
+    Entity lectureEntity = LectureUtil.createEntity(/* lectureName= */ "", TEST_LINK, TEST_ID);
+    datastoreService.put(lectureEntity);
 
     servlet.doGet(request, response);
 
-    String json = content.toString();
-    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
-    Type listType = new TypeToken<ArrayList<Lecture>>() {}.getType();
-    ArrayList<Lecture> lectures = gson.fromJson(json, listType);
+    List<LectureSummary> lectures = readLecturePage().lectures();
     assertThat(lectures).hasSize(1);
-    assertThat(lectures.get(0).videoUrl()).isEqualTo(TEST_LINK);
+    assertThat(lectures.get(0).key().getId()).isEqualTo(lectureEntity.getKey().getId());
+  }
+
+  @Test
+  public void doGet_sortByName_ignoresCase() throws Exception {
+    putLectures("b", "C", "a");
+
+    servlet.doGet(request, response);
+
+    assertThat(readLectureNames()).containsExactly("a", "b", "C").inOrder();
+  }
+
+  @Test
+  public void doGet_sortByCreated_returnsNewestFirst() throws Exception {
+    putLectures("first", "second", "third");
+    when(request.getParameter(LectureListServlet.PARAM_SORT))
+        .thenReturn(LectureListServlet.SORT_CREATED);
+
+    servlet.doGet(request, response);
+
+    assertThat(readLectureNames()).containsExactly("third", "second", "first").inOrder();
+  }
+
+  @Test
+  public void doGet_prefix_returnsLecturesStartingWithIt() throws Exception {
+    putLectures("Algebra", "algorithms", "Biology", "Al");
+    when(request.getParameter(LectureListServlet.PARAM_PREFIX)).thenReturn("alg");
+
+    servlet.doGet(request, response);
+
+    assertThat(readLectureNames()).containsExactly("Algebra", "algorithms").inOrder();
+  }
+
+  @Test
+  public void doGet_cursor_returnsNextPage() throws Exception {
+    putLectures("a", "b", "c");
+    when(request.getParameter(LectureListServlet.PARAM_LIMIT)).thenReturn("2");
+    servlet.doGet(request, response);
+    LecturePage firstPage = readLecturePage();
+    content.getBuffer().setLength(0);
+    when(request.getParameter(LectureListServlet.PARAM_CURSOR)).thenReturn(firstPage.cursor());
+
+    servlet.doGet(request, response);
+    LecturePage secondPage = readLecturePage();
+
+    assertThat(firstPage.lectures()).hasSize(2);
+    assertThat(secondPage.lectures()).hasSize(1);
+    assertThat(secondPage.lectures().get(0).lectureName()).isEqualTo("c");
+    assertThat(secondPage.cursor()).isEmpty();
+  }
+
+  @Test
+  public void doGet_lectureAddedAfterFirstPageCached_returnsItOnceInvalidated() throws Exception {
+    putLectures("a");
+    servlet.doGet(request, response);
+    content.getBuffer().setLength(0);
+    putLectures("b");
+
+    servlet.doGet(request, response);
+    List<String> cachedNames = readLectureNames();
+    content.getBuffer().setLength(0);
+    LectureListServlet.invalidateLecturePages();
+    servlet.doGet(request, response);
+
+    assertThat(cachedNames).containsExactly("a");
+    assertThat(readLectureNames()).containsExactly("a", "b").inOrder();
+  }
+
+  @Test
+  public void doGet_prefixSortedByCreated_badRequest() throws Exception {
+    when(request.getParameter(LectureListServlet.PARAM_SORT))
+        .thenReturn(LectureListServlet.SORT_CREATED);
+    when(request.getParameter(LectureListServlet.PARAM_PREFIX)).thenReturn("a");
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST,
+        /* message= */ "A prefix can only be used when sorting by name.");
+  }
+
+  @Test
+  public void doGet_invalidLimit_badRequest() throws Exception {
+    when(request.getParameter(LectureListServlet.PARAM_LIMIT)).thenReturn("0");
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Invalid limit parameter.");
+  }
+
+  @Test
+  public void doGet_invalidCursor_badRequest() throws Exception {
+    when(request.getParameter(LectureListServlet.PARAM_CURSOR)).thenReturn("not a cursor");
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Invalid cursor parameter.");
+  }
+
+  /** Puts a lecture named each of {@code lectureNames}, created a millisecond apart. */
+  private void putLectures(String... lectureNames) {
+    for (String lectureName : lectureNames) {
+      Entity lectureEntity = LectureUtil.createEntity(lectureName, TEST_LINK, TEST_ID);
+      lectureEntity.setProperty(LectureUtil.CREATED, new Date(nextCreatedMs++));
+      datastoreService.put(lectureEntity);
+    }
+  }
+
+  private LecturePage readLecturePage() {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    return gson.fromJson(content.toString(), LecturePage.class);
+  }
+
+  private List<String> readLectureNames() {
+    List<String> lectureNames = new ArrayList<>();
+    for (LectureSummary lecture : readLecturePage().lectures()) {
+      lectureNames.add(lecture.lectureName());
+    }
+    return lectureNames;
   }
 }
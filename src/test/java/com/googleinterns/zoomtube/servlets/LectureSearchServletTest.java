@@ -0,0 +1,199 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.googleinterns.zoomtube.data.LectureSearchResults;
+import com.googleinterns.zoomtube.search.GlobalTranscriptIndex;
+import com.googleinterns.zoomtube.search.TranscriptIndex;
+import com.googleinterns.zoomtube.search.TranscriptIndexStore;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@RunWith(JUnit4.class)
+public final class LectureSearchServletTest {
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private DatastoreService datastore;
+  private LectureSearchServlet servlet;
+  private StringWriter content;
+
+  @Before
+  public void setUp() throws Exception {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    servlet = new LectureSearchServlet();
+    servlet.init();
+    servlet.setGlobalIndex(new GlobalTranscriptIndex(MoreExecutors.directExecutor()));
+    content = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(content));
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void doGet_missingQuery_badRequest() throws Exception {
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Missing query parameter.");
+  }
+
+  @Test
+  public void doGet_noTranscripts_returnsNoHits() throws Exception {
+    when(request.getParameter(LectureSearchServlet.PARAM_QUERY)).thenReturn("elephants");
+
+    servlet.doGet(request, response);
+
+    LectureSearchResults results = results(content.toString());
+    assertThat(results.hits()).isEmpty();
+    assertThat(results.totalHits()).isEqualTo(0);
+  }
+
+  @Test
+  public void doGet_matchingLines_returnsHitsFromStoredTranscripts() throws Exception {
+    Key zooLecture = putLecture("Zoo", "elephants have trunks", "giraffes are tall");
+    putLecture("Farm", "cows eat grass");
+    when(request.getParameter(LectureSearchServlet.PARAM_QUERY)).thenReturn("Elephants");
+
+    servlet.doGet(request, response);
+
+    LectureSearchResults results = results(content.toString());
+    assertThat(results.totalHits()).isEqualTo(1);
+    assertThat(results.hits()).hasSize(1);
+    assertThat(results.hits().get(0).lectureKey().getId()).isEqualTo(zooLecture.getId());
+    assertThat(results.hits().get(0).lectureName()).isEqualTo("Zoo");
+    assertThat(results.hits().get(0).transcriptKey().getId()).isEqualTo(1);
+    assertThat(results.hits().get(0).startTimestampMs()).isEqualTo(0);
+    assertThat(results.hits().get(0).snippet()).isEqualTo("<mark>elephants</mark> have trunks");
+  }
+
+  @Test
+  public void doGet_offsetAndLimit_returnsPage() throws Exception {
+    putLecture("Cells", "cell one", "cell two", "cell three");
+    when(request.getParameter(LectureSearchServlet.PARAM_QUERY)).thenReturn("cell");
+    when(request.getParameter(LectureSearchServlet.PARAM_OFFSET)).thenReturn("1");
+    when(request.getParameter(LectureSearchServlet.PARAM_LIMIT)).thenReturn("1");
+
+    servlet.doGet(request, response);
+
+    LectureSearchResults results = results(content.toString());
+    assertThat(results.hits()).hasSize(1);
+    assertThat(results.totalHits()).isEqualTo(3);
+    assertThat(results.offset()).isEqualTo(1);
+  }
+
+  @Test
+  public void doGet_negativeLimit_returnsNoHits() throws Exception {
+    putLecture("Cells", "cell one", "cell two");
+    when(request.getParameter(LectureSearchServlet.PARAM_QUERY)).thenReturn("cell");
+    when(request.getParameter(LectureSearchServlet.PARAM_LIMIT)).thenReturn("-5");
+
+    servlet.doGet(request, response);
+
+    LectureSearchResults results = results(content.toString());
+    assertThat(results.hits()).isEmpty();
+    assertThat(results.totalHits()).isEqualTo(2);
+  }
+
+  @Test
+  public void doGet_hugeOffsetAndLimit_returnsNoHits() throws Exception {
+    putLecture("Cells", "cell one", "cell two");
+    when(request.getParameter(LectureSearchServlet.PARAM_QUERY)).thenReturn("cell");
+    when(request.getParameter(LectureSearchServlet.PARAM_OFFSET))
+        .thenReturn(String.valueOf(Integer.MAX_VALUE));
+    when(request.getParameter(LectureSearchServlet.PARAM_LIMIT))
+        .thenReturn(String.valueOf(Integer.MAX_VALUE));
+
+    servlet.doGet(request, response);
+
+    LectureSearchResults results = results(content.toString());
+    assertThat(results.hits()).isEmpty();
+    assertThat(results.totalHits()).isEqualTo(2);
+  }
+
+  @Test
+  public void doGet_invalidLimit_badRequest() throws Exception {
+    when(request.getParameter(LectureSearchServlet.PARAM_QUERY)).thenReturn("cell");
+    when(request.getParameter(LectureSearchServlet.PARAM_LIMIT)).thenReturn("ten");
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Invalid limit parameter.");
+  }
+
+  @Test
+  public void doGet_invalidOffset_badRequest() throws Exception {
+    when(request.getParameter(LectureSearchServlet.PARAM_QUERY)).thenReturn("cell");
+    when(request.getParameter(LectureSearchServlet.PARAM_OFFSET)).thenReturn("1.5");
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Invalid offset parameter.");
+  }
+
+  private Key putLecture(String name, String... lines) {
+    Entity lectureEntity = LectureUtil.createEntity(name, "link", "id");
+    Key lectureKey = datastore.put(lectureEntity);
+    TranscriptIndexStore.evict(lectureKey);
+    TranscriptIndex.Builder index = TranscriptIndex.builder();
+    for (int line = 0; line < lines.length; line++) {
+      index.addLine(/* lineId= */ line + 1, /* startMs= */ line * 1000, /* durationMs= */ 1000,
+          lines[line]);
+    }
+    datastore.put(TranscriptIndexUtil.createEntities(lectureKey, index.build()));
+    return lectureKey;
+  }
+
+  private static LectureSearchResults results(String json) {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    return gson.fromJson(json, LectureSearchResults.class);
+  }
+}
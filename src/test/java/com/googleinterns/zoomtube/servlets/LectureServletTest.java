@@ -15,6 +15,7 @@
 package com.googleinterns.zoomtube.servlets;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -23,6 +24,7 @@ import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -49,8 +51,9 @@ public final class LectureServletTest {
   @Mock private HttpServletRequest request;
   @Mock private HttpServletResponse response;
 
-  private final LocalServiceTestHelper testServices =
-      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private final LocalServiceTestHelper testServices = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setNoStorage(true),
+      new LocalMemcacheServiceTestConfig());
   private DatastoreService datastoreService;
   private LectureServlet servlet;
 
@@ -188,6 +191,53 @@ public final class LectureServletTest {
         HttpServletResponse.SC_NOT_FOUND, /* message= */ "Lecture not found in database.");
   }
 
+  @Test
+  public void doGet_cachedLecture_doesNotReadDatastore() throws Exception {
+    Entity lectureEntity =
+        LectureUtil.createEntity(/* lectureName= */ TEST_NAME, TEST_LINK, TEST_ID);
+    datastoreService.put(lectureEntity);
+    String lectureId = Long.toString(lectureEntity.getKey().getId());
+    when(request.getParameter(LectureUtil.ID)).thenReturn(lectureId);
+    servlet.doGet(request, response);
+    datastoreService.delete(lectureEntity.getKey());
+
+    servlet.doGet(request, response);
+
+    assertThat(content.toString()).contains(TEST_NAME);
+    assertThat(servlet.getLectureCache().stats().hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void doGet_lectureInMemcache_doesNotReadDatastore() throws Exception {
+    Entity lectureEntity =
+        LectureUtil.createEntity(/* lectureName= */ TEST_NAME, TEST_LINK, TEST_ID);
+    datastoreService.put(lectureEntity);
+    String lectureId = Long.toString(lectureEntity.getKey().getId());
+    when(request.getParameter(LectureUtil.ID)).thenReturn(lectureId);
+    servlet.doGet(request, response);
+    datastoreService.delete(lectureEntity.getKey());
+    // Another instance only shares memcache.
+    LectureServlet otherServlet = new LectureServlet();
+    otherServlet.init();
+
+    otherServlet.doGet(request, response);
+
+    assertThat(content.toString()).contains(TEST_NAME);
+    assertThat(otherServlet.getLectureCache().stats().missCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void doGet_unknownLecture_isCachedAsNotFound() throws Exception {
+    when(request.getParameter(LectureUtil.ID)).thenReturn(/* lectureId= */ "1");
+    servlet.doGet(request, response);
+
+    servlet.doGet(request, response);
+
+    verify(response, times(2)).sendError(
+        HttpServletResponse.SC_NOT_FOUND, /* message= */ "Lecture not found in database.");
+    assertThat(servlet.getLectureCache().stats().loadCount()).isEqualTo(1);
+  }
+
   @Test
   public void getVideoId_shouldFindAllIds() {
     String video1 = "http://www.youtube.com/watch?v=dQw4w9WgXcQ&a=GxdCwVVULXctT2lYDEPllDR0LRTutYfW";
@@ -233,4 +283,17 @@ public final class LectureServletTest {
     assertThat(datastoreService.prepare(new Query(LectureUtil.KIND)).countEntities()).isEqualTo(1);
     verify(response).sendRedirect("/view/?id=1");
   }
+
+  @Test
+  public void doPost_cachesLecture() throws Exception {
+    when(request.getParameter(LectureServlet.PARAM_NAME)).thenReturn(TEST_NAME);
+    when(request.getParameter(LectureServlet.PARAM_LINK)).thenReturn(TEST_LINK);
+    when(request.getParameter(LectureServlet.PARAM_ID)).thenReturn(/* lectureId= */ "1");
+
+    servlet.doPost(request, response);
+    servlet.doGet(request, response);
+
+    assertThat(content.toString()).contains(TEST_NAME);
+    assertThat(servlet.getLectureCache().stats().loadCount()).isEqualTo(0);
+  }
 }
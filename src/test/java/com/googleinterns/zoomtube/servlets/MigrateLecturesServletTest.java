@@ -0,0 +1,151 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.googleinterns.zoomtube.data.LectureMigration;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.LectureVideoUtil;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Date;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@RunWith(JUnit4.class)
+public final class MigrateLecturesServletTest {
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private DatastoreService datastore;
+  private MigrateLecturesServlet servlet;
+  private StringWriter content;
+
+  @Before
+  public void setUp() throws Exception {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    servlet = new MigrateLecturesServlet();
+    servlet.init();
+    servlet.setRemainingMillis(() -> Long.MAX_VALUE);
+    content = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(content));
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void doPost_lecturesWithoutVideoEntities_createsThem() throws Exception {
+    Entity firstLecture = createLectureEntity("first");
+    Entity secondLecture = createLectureEntity("second");
+    Entity duplicateLecture = createLectureEntity("first");
+    datastore.put(firstLecture);
+    datastore.put(secondLecture);
+    datastore.put(duplicateLecture);
+
+    servlet.doPost(request, response);
+
+    LectureMigration migration = readMigration();
+    assertThat(migration.lectureCount()).isEqualTo(3);
+    assertThat(migration.duplicateCount()).isEqualTo(1);
+    assertThat(migration.done()).isTrue();
+    assertThat(datastore.get(LectureVideoUtil.createKey("first"))
+                   .getProperty(LectureVideoUtil.LECTURE))
+        .isEqualTo(firstLecture.getKey());
+    assertThat(datastore.get(LectureVideoUtil.createKey("second"))
+                   .getProperty(LectureVideoUtil.LECTURE))
+        .isEqualTo(secondLecture.getKey());
+  }
+
+  @Test
+  public void doPost_lectureWithoutListProperties_addsThem() throws Exception {
+    Entity lectureEntity = new Entity(LectureUtil.KIND);
+    lectureEntity.setProperty(LectureUtil.NAME, "Lecture Name");
+    datastore.put(lectureEntity);
+
+    servlet.doPost(request, response);
+
+    Entity migratedEntity = datastore.get(lectureEntity.getKey());
+    assertThat(migratedEntity.getProperty(LectureUtil.SORT_NAME)).isEqualTo("lecture name");
+    assertThat(migratedEntity.getProperty(LectureUtil.CREATED)).isEqualTo(new Date(0));
+  }
+
+  @Test
+  public void doPost_runningOutOfTime_returnsCursorToContinueFrom() throws Exception {
+    for (int lecture = 0; lecture < MigrateLecturesServlet.LECTURE_BATCH_SIZE + 1; lecture++) {
+      datastore.put(createLectureEntity("video" + lecture));
+    }
+    servlet.setRemainingMillis(() -> 0);
+
+    servlet.doPost(request, response);
+    LectureMigration firstMigration = readMigration();
+    content.getBuffer().setLength(0);
+    when(request.getParameter(MigrateLecturesServlet.PARAM_CURSOR))
+        .thenReturn(firstMigration.cursor());
+    servlet.doPost(request, response);
+    LectureMigration secondMigration = readMigration();
+
+    assertThat(firstMigration.lectureCount()).isEqualTo(MigrateLecturesServlet.LECTURE_BATCH_SIZE);
+    assertThat(firstMigration.done()).isFalse();
+    assertThat(secondMigration.lectureCount()).isEqualTo(1);
+    assertThat(secondMigration.done()).isTrue();
+  }
+
+  @Test
+  public void doPost_invalidCursor_badRequest() throws Exception {
+    when(request.getParameter(MigrateLecturesServlet.PARAM_CURSOR)).thenReturn("not a cursor");
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Invalid cursor parameter.");
+  }
+
+  private static Entity createLectureEntity(String videoId) {
+    return LectureUtil.createEntity(
+        "Lecture", "https://www.youtube.com/watch?v=" + videoId, videoId);
+  }
+
+  private LectureMigration readMigration() {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    return gson.fromJson(content.toString(), LectureMigration.class);
+  }
+}
@@ -20,7 +20,11 @@ import static org.mockito.Mockito.when;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.googleinterns.zoomtube.data.CacheStats;
 import com.googleinterns.zoomtube.data.TranscriptLanguage;
+import com.googleinterns.zoomtube.transcriptParser.TimedTextClient;
+import com.googleinterns.zoomtube.transcriptParser.TimedTextStubServer;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptLanguageCache;
 import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -28,6 +32,7 @@ import java.util.ArrayList;
 import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -46,6 +51,7 @@ public final class TranscriptLanguageServletTest {
 
   private TranscriptLanguageServlet transcriptLanguageServlet;
   private StringWriter transcriptLanguages;
+  private TimedTextStubServer stubServer;
 
   @Before
   public void setUp() throws Exception {
@@ -54,6 +60,12 @@ public final class TranscriptLanguageServletTest {
     transcriptLanguages = new StringWriter();
     PrintWriter writer = new PrintWriter(transcriptLanguages);
     when(response.getWriter()).thenReturn(writer);
+    stubServer = TimedTextStubServer.start();
+  }
+
+  @After
+  public void tearDown() {
+    stubServer.stop();
   }
 
   @Test
@@ -113,6 +125,41 @@ public final class TranscriptLanguageServletTest {
     assertThat(actualTranscriptLanguages.size()).isEqualTo(1);
   }
 
+  @Test
+  public void doGet_sameVideoTwice_fetchesLanguagesOnce() throws Exception {
+    TranscriptLanguageCache transcriptLanguageCache =
+        new TranscriptLanguageCache(new TimedTextClient(stubServer.apiUrl()));
+    transcriptLanguageServlet.setTranscriptLanguageCache(transcriptLanguageCache);
+    stubServer.addTrackList("fzQ6gRAEoy0", "en", "fr");
+    when(request.getParameter(TranscriptLanguageServlet.PARAM_LINK))
+        .thenReturn("https://www.youtube.com/watch?v=fzQ6gRAEoy0");
+
+    transcriptLanguageServlet.doGet(request, response);
+    transcriptLanguageServlet.doGet(request, response);
+
+    assertThat(stubServer.requestCount()).isEqualTo(1);
+    CacheStats stats = transcriptLanguageCache.stats();
+    assertThat(stats.hitCount()).isEqualTo(1);
+    assertThat(stats.missCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void doGet_videoWithNoLanguages_cachesEmptyList() throws Exception {
+    transcriptLanguageServlet.setTranscriptLanguageCache(
+        new TranscriptLanguageCache(new TimedTextClient(stubServer.apiUrl())));
+    stubServer.addTrackList("QJO3ROT-A4E");
+    when(request.getParameter(TranscriptLanguageServlet.PARAM_LINK))
+        .thenReturn("https://www.youtube.com/watch?v=QJO3ROT-A4E");
+
+    transcriptLanguageServlet.doGet(request, response);
+    transcriptLanguageServlet.doGet(request, response);
+
+    assertThat(stubServer.requestCount()).isEqualTo(1);
+    List<TranscriptLanguage> actualTranscriptLanguages =
+        transcriptLanguages(transcriptLanguages.toString().split("\n")[1]);
+    assertThat(actualTranscriptLanguages).isEmpty();
+  }
+
   private static List<TranscriptLanguage> transcriptLanguages(String transcriptLanguagesJson) {
     Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
     Class<? extends ArrayList> transcriptLanguageClass =
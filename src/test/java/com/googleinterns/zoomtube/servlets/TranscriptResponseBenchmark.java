@@ -0,0 +1,190 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.googleinterns.zoomtube.data.TranscriptColumns;
+import com.googleinterns.zoomtube.data.TranscriptLine;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Offline benchmark comparing a transcript response as an array of {@link TranscriptLine}
+ * objects with one as {@link TranscriptColumns}.
+ *
+ * <p>Reports the size of each payload, raw and gzipped, the time to serialize and parse it,
+ * and the time to seek to random times by walking the lines against a binary search of the
+ * start column, which is how the client seeks in each format. Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.googleinterns.zoomtube.servlets.TranscriptResponseBenchmark \
+ *     -Dexec.args="[lectureHours] [payloadDirectory]"
+ * </pre>
+ *
+ * <p>If a payload directory is given, both payloads are written to it, so the client's own
+ * parsing can be timed on them in a browser.
+ */
+public final class TranscriptResponseBenchmark {
+  private static final int DEFAULT_LECTURE_HOURS = 3;
+  private static final int ITERATIONS = 50;
+  private static final int SEEKS = 10000;
+  /* Auto-generated captions are a few seconds each. */
+  private static final long LINE_DURATION_MS = 3000;
+  private static final int WORDS_PER_LINE = 8;
+  private static final long SEED = 42;
+  private static final Type LINES_TYPE = new TypeToken<List<TranscriptLine>>() {}.getType();
+
+  public static void main(String[] args) throws IOException {
+    int lectureHours = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LECTURE_HOURS;
+    LocalServiceTestHelper localServiceHelper =
+        new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+    localServiceHelper.setUp();
+    try {
+      int lineCount = (int) (lectureHours * 3600 * 1000L / LINE_DURATION_MS);
+      List<TranscriptLine> lines = createLines(lineCount);
+      TranscriptColumns.Builder columnsBuilder = TranscriptColumns.builder();
+      lines.forEach(columnsBuilder::addLine);
+      TranscriptColumns columns = columnsBuilder.build();
+      Gson gson =
+          new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+      String linesJson = gson.toJson(lines);
+      String columnsJson = gson.toJson(columns);
+
+      System.out.printf("A lecture of %d hours, %d lines%n", lectureHours, lineCount);
+      System.out.printf("%-8s %9.1f KiB  gzipped %8.1f KiB  serialize %6.2f ms  parse %6.2f ms%n",
+          "objects", linesJson.length() / 1024.0, gzippedSize(linesJson) / 1024.0,
+          time(() -> gson.toJson(lines)), time(() -> gson.fromJson(linesJson, LINES_TYPE)));
+      System.out.printf("%-8s %9.1f KiB  gzipped %8.1f KiB  serialize %6.2f ms  parse %6.2f ms%n",
+          "columns", columnsJson.length() / 1024.0, gzippedSize(columnsJson) / 1024.0,
+          time(() -> gson.toJson(columns)),
+          time(() -> gson.fromJson(columnsJson, TranscriptColumns.class)));
+      System.out.printf("%d seeks: walking %.2f ms, binary search %.2f ms%n", SEEKS,
+          time(() -> seekByWalking(lines)), time(() -> seekByBinarySearch(columns)));
+
+      if (args.length > 1) {
+        Path directory = Paths.get(args[1]);
+        Files.write(directory.resolve("objects.json"),
+            linesJson.getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("columns.json"),
+            columnsJson.getBytes(StandardCharsets.UTF_8));
+      }
+    } finally {
+      localServiceHelper.tearDown();
+    }
+  }
+
+  /** Returns the average milliseconds {@code task} takes, after warming it up. */
+  private static double time(Runnable task) {
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+      task.run();
+    }
+    long start = System.nanoTime();
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+      task.run();
+    }
+    return (System.nanoTime() - start) / 1e6 / ITERATIONS;
+  }
+
+  private static int gzippedSize(String json) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+      gzip.write(json.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.size();
+  }
+
+  /** Seeks like the client without columns, walking from the first line each time. */
+  private static void seekByWalking(List<TranscriptLine> lines) {
+    Random random = new Random(SEED);
+    long lastEndMs = lines.get(lines.size() - 1).endTimestampMs();
+    for (int seek = 0; seek < SEEKS; seek++) {
+      long timeMs = (long) (random.nextDouble() * lastEndMs);
+      int line = 0;
+      while (line < lines.size() - 1 && lines.get(line).endTimestampMs() < timeMs
+          && lines.get(line).startTimestampMs() < timeMs) {
+        line++;
+      }
+    }
+  }
+
+  /** Seeks like the client with columns, binary searching the decoded start times. */
+  private static void seekByBinarySearch(TranscriptColumns columns) {
+    long[] startsMs = new long[columns.ids().size()];
+    long startMs = 0;
+    for (int line = 0; line < startsMs.length; line++) {
+      startMs += columns.startDeltasMs().get(line);
+      startsMs[line] = startMs;
+    }
+    Random random = new Random(SEED);
+    long lastStartMs = startsMs[startsMs.length - 1];
+    for (int seek = 0; seek < SEEKS; seek++) {
+      long timeMs = (long) (random.nextDouble() * lastStartMs);
+      int low = 0;
+      int high = startsMs.length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (startsMs[middle] <= timeMs) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+    }
+  }
+
+  private static List<TranscriptLine> createLines(int lineCount) {
+    String[] words = {"the", "so", "we", "gradient", "is", "function", "here", "and", "of",
+        "matrix", "this", "right", "value", "you", "can", "see", "that", "a", "to", "loss"};
+    Random random = new Random(SEED);
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, 1);
+    List<TranscriptLine> lines = new ArrayList<>();
+    for (int line = 0; line < lineCount; line++) {
+      StringBuilder content = new StringBuilder();
+      for (int word = 0; word < WORDS_PER_LINE; word++) {
+        content.append(words[random.nextInt(words.length)]).append(' ');
+      }
+      long startMs = line * LINE_DURATION_MS;
+      lines.add(TranscriptLine.builder()
+                    .setTranscriptKey(
+                        KeyFactory.createKey(lectureKey, TranscriptLineUtil.KIND, line + 1))
+                    .setLectureKey(lectureKey)
+                    .setStartTimestampMs(startMs)
+                    .setDurationMs(LINE_DURATION_MS)
+                    .setEndTimestampMs(startMs + LINE_DURATION_MS)
+                    .setContent(content.toString().trim())
+                    .build());
+    }
+    return lines;
+  }
+}
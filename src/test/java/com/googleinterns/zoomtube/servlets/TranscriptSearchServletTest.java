@@ -0,0 +1,190 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.googleinterns.zoomtube.data.TranscriptSearchHit;
+import com.googleinterns.zoomtube.search.TranscriptIndex;
+import com.googleinterns.zoomtube.search.TranscriptIndexStore;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
+import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+@RunWith(JUnit4.class)
+public final class TranscriptSearchServletTest {
+  @Rule public final MockitoRule mockito = MockitoJUnit.rule();
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private DatastoreService datastore;
+  private TranscriptSearchServlet servlet;
+  private StringWriter content;
+
+  private static final long LECTURE_ID = 123L;
+  private static final long OTHER_LECTURE_ID = 345L;
+  private Key lectureKey;
+
+  @Before
+  public void setUp() throws Exception {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    servlet = new TranscriptSearchServlet();
+    servlet.init();
+    content = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(content));
+    lectureKey = KeyFactory.createKey(LectureUtil.KIND, LECTURE_ID);
+    TranscriptIndexStore.evict(lectureKey);
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void doGet_missingId_badRequest() throws Exception {
+    when(request.getParameter(TranscriptSearchServlet.PARAM_QUERY)).thenReturn("elephants");
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Missing id parameter.");
+  }
+
+  @Test
+  public void doGet_missingQuery_badRequest() throws Exception {
+    when(request.getParameter(TranscriptSearchServlet.PARAM_ID))
+        .thenReturn(String.valueOf(LECTURE_ID));
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Missing query parameter.");
+  }
+
+  @Test
+  public void doGet_lectureWithoutIndex_returnsNoHits() throws Exception {
+    when(request.getParameter(TranscriptSearchServlet.PARAM_ID))
+        .thenReturn(String.valueOf(OTHER_LECTURE_ID));
+    when(request.getParameter(TranscriptSearchServlet.PARAM_QUERY)).thenReturn("elephants");
+
+    servlet.doGet(request, response);
+
+    assertThat(content.toString()).startsWith("[]");
+  }
+
+  @Test
+  public void doGet_matchingLines_returnsHitsWithTimestamps() throws Exception {
+    putIndex();
+    when(request.getParameter(TranscriptSearchServlet.PARAM_ID))
+        .thenReturn(String.valueOf(LECTURE_ID));
+    when(request.getParameter(TranscriptSearchServlet.PARAM_QUERY)).thenReturn("\"long trunks\"");
+
+    servlet.doGet(request, response);
+
+    List<TranscriptSearchHit> hits = hits(content.toString());
+    assertThat(hits).hasSize(1);
+    assertThat(hits.get(0).transcriptKey().getId()).isEqualTo(3);
+    assertThat(hits.get(0).transcriptKey().getParent().getId()).isEqualTo(LECTURE_ID);
+    assertThat(hits.get(0).startTimestampMs()).isEqualTo(3000);
+    assertThat(hits.get(0).endTimestampMs()).isEqualTo(4500);
+    assertThat(hits.get(0).snippet()).isEqualTo("really <mark>long</mark> <mark>trunks</mark>");
+  }
+
+  @Test
+  public void doGet_limitParameter_limitsHits() throws Exception {
+    putIndex();
+    when(request.getParameter(TranscriptSearchServlet.PARAM_ID))
+        .thenReturn(String.valueOf(LECTURE_ID));
+    when(request.getParameter(TranscriptSearchServlet.PARAM_QUERY)).thenReturn("really");
+    when(request.getParameter(TranscriptSearchServlet.PARAM_LIMIT)).thenReturn("1");
+
+    servlet.doGet(request, response);
+
+    assertThat(hits(content.toString())).hasSize(1);
+  }
+
+  @Test
+  public void doGet_negativeLimit_returnsNoHits() throws Exception {
+    putIndex();
+    when(request.getParameter(TranscriptSearchServlet.PARAM_ID))
+        .thenReturn(String.valueOf(LECTURE_ID));
+    when(request.getParameter(TranscriptSearchServlet.PARAM_QUERY)).thenReturn("really");
+    when(request.getParameter(TranscriptSearchServlet.PARAM_LIMIT)).thenReturn("-1");
+
+    servlet.doGet(request, response);
+
+    assertThat(hits(content.toString())).isEmpty();
+  }
+
+  @Test
+  public void doGet_invalidLimit_badRequest() throws Exception {
+    when(request.getParameter(TranscriptSearchServlet.PARAM_ID))
+        .thenReturn(String.valueOf(LECTURE_ID));
+    when(request.getParameter(TranscriptSearchServlet.PARAM_QUERY)).thenReturn("really");
+    when(request.getParameter(TranscriptSearchServlet.PARAM_LIMIT)).thenReturn("many");
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Invalid limit parameter.");
+  }
+
+  private void putIndex() {
+    TranscriptIndex index =
+        TranscriptIndex.builder()
+            .addLine(/* lineId= */ 1, /* startMs= */ 0, /* durationMs= */ 1000, "elephants")
+            .addLine(/* lineId= */ 2, /* startMs= */ 1000, /* durationMs= */ 2000, "really")
+            .addLine(/* lineId= */ 3, /* startMs= */ 3000, /* durationMs= */ 1500,
+                "really long trunks")
+            .build();
+    datastore.put(TranscriptIndexUtil.createEntities(lectureKey, index));
+  }
+
+  private static List<TranscriptSearchHit> hits(String json) {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    Type listType = new TypeToken<List<TranscriptSearchHit>>() {}.getType();
+    return gson.fromJson(json, listType);
+  }
+}
@@ -30,11 +30,23 @@ import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.googleinterns.zoomtube.data.TranscriptColumns;
 import com.googleinterns.zoomtube.data.TranscriptLine;
+import com.googleinterns.zoomtube.data.TranscriptSegment;
+import com.googleinterns.zoomtube.transcriptParser.TimedTextClient;
+import com.googleinterns.zoomtube.transcriptParser.TimedTextStubServer;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptChunk;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptLanguageCache;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptParser;
+import com.googleinterns.zoomtube.transcriptParser.TranscriptStorage;
 import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptChunkUtil;
 import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.googleinterns.zoomtube.utils.TranscriptSegmentUtil;
 import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -65,6 +77,8 @@ public final class TranscriptServletTest {
   private TranscriptServlet transcriptServlet;
   private DatastoreService datastore;
   private StringWriter lectureTranscript;
+  private TimedTextStubServer stubServer;
+  private TranscriptLanguageCache transcriptLanguageCache;
 
   private static final LocalDatastoreServiceTestConfig datastoreConfig =
       (new LocalDatastoreServiceTestConfig()).setNoStorage(true);
@@ -118,6 +132,11 @@ public final class TranscriptServletTest {
     datastore = DatastoreServiceFactory.getDatastoreService();
     transcriptServlet = new TranscriptServlet();
     transcriptServlet.init();
+    stubServer = TimedTextStubServer.start();
+    transcriptServlet.setTranscriptParser(
+        new TranscriptParser(new TimedTextClient(stubServer.apiUrl())));
+    transcriptLanguageCache = new TranscriptLanguageCache(new TimedTextClient(stubServer.apiUrl()));
+    transcriptServlet.setTranscriptLanguageCache(transcriptLanguageCache);
     lectureTranscript = new StringWriter();
     PrintWriter writer = new PrintWriter(lectureTranscript);
     when(response.getWriter()).thenReturn(writer);
@@ -127,6 +146,7 @@ public final class TranscriptServletTest {
 
   @After
   public void tearDown() {
+    stubServer.stop();
     localServiceHelper.tearDown();
   }
 
@@ -187,12 +207,320 @@ public final class TranscriptServletTest {
     assertThat(actualTranscriptLines.size()).isEqualTo(expectedTranscriptLines.size());
   }
 
+  @Test
+  public void doGet_languageParameter_returnsLinesInLanguage() throws Exception {
+    putTranscriptLinesInDatastore(shortVideoTranscriptLines, lectureKeyA, "en");
+    putTranscriptLinesInDatastore(longVideoTranscriptLines, lectureKeyA, "fr");
+    when(request.getParameter(TranscriptServlet.PARAM_ID)).thenReturn(LECTURE_ID_A.toString());
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("fr");
+
+    transcriptServlet.doGet(request, response);
+
+    List<TranscriptLine> actualTranscriptLines = transcriptLines(lectureTranscript.toString());
+    assertThat(actualTranscriptLines.size()).isEqualTo(longVideoTranscriptLines.size());
+  }
+
+  @Test
+  public void doGet_noLanguageParameter_returnsLinesInLectureLanguage() throws Exception {
+    Entity lectureEntity = LectureUtil.createEntity("Lecture", "link", "videoId");
+    lectureEntity.setProperty(LectureUtil.TRANSCRIPT_LANGUAGE, "fr");
+    Key lectureKey = datastore.put(lectureEntity);
+    putTranscriptLinesInDatastore(shortVideoTranscriptLines, lectureKey, "en");
+    putTranscriptLinesInDatastore(longVideoTranscriptLines, lectureKey, "fr");
+    when(request.getParameter(TranscriptServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+
+    transcriptServlet.doGet(request, response);
+
+    List<TranscriptLine> actualTranscriptLines = transcriptLines(lectureTranscript.toString());
+    assertThat(actualTranscriptLines.size()).isEqualTo(longVideoTranscriptLines.size());
+  }
+
+  @Test
+  public void doGet_noLanguage_returnsOnlyLinesWithoutLanguage() throws Exception {
+    putTranscriptLinesInDatastore(shortVideoTranscriptLines, lectureKeyA);
+    putTranscriptLinesInDatastore(longVideoTranscriptLines, lectureKeyA, "fr");
+    when(request.getParameter(TranscriptServlet.PARAM_ID)).thenReturn(LECTURE_ID_A.toString());
+
+    transcriptServlet.doGet(request, response);
+
+    List<TranscriptLine> actualTranscriptLines = transcriptLines(lectureTranscript.toString());
+    assertThat(actualTranscriptLines.size()).isEqualTo(shortVideoTranscriptLines.size());
+  }
+
+  @Test
+  public void doGet_languageNotStored_fetchesTranscript() throws Exception {
+    Entity lectureEntity = LectureUtil.createEntity("Lecture", "link", "videoId");
+    lectureEntity.setProperty(LectureUtil.TRANSCRIPT_LANGUAGE, "en");
+    Key lectureKey = datastore.put(lectureEntity);
+    putTranscriptLinesInDatastore(shortVideoTranscriptLines, lectureKey, "en");
+    stubServer.addTrackList("videoId", "en", "fr");
+    stubServer.addTranscript("videoId", "fr", "Salut", "Bon");
+    when(request.getParameter(TranscriptServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("fr");
+
+    transcriptServlet.doGet(request, response);
+
+    List<TranscriptLine> actualTranscriptLines = transcriptLines(lectureTranscript.toString());
+    assertThat(actualTranscriptLines.size()).isEqualTo(2);
+    // The video's languages, then the transcript.
+    assertThat(stubServer.requestCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void doGet_languagesAlreadyListed_onlyFetchesTranscript() throws Exception {
+    Key lectureKey = datastore.put(LectureUtil.createEntity("Lecture", "link", "videoId"));
+    stubServer.addTrackList("videoId", "en", "fr");
+    stubServer.addTranscript("videoId", "fr", "Salut", "Bon");
+    // As listed for the lecture's link by TranscriptLanguageServlet.
+    transcriptLanguageCache.getLanguages("videoId");
+    when(request.getParameter(TranscriptServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("fr");
+
+    transcriptServlet.doGet(request, response);
+
+    assertThat(transcriptLines(lectureTranscript.toString())).hasSize(2);
+    assertThat(stubServer.requestCount()).isEqualTo(2);
+    assertThat(transcriptLanguageCache.stats().hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void doGet_languageNotInVideo_doesNotFetchTranscript() throws Exception {
+    Key lectureKey = datastore.put(LectureUtil.createEntity("Lecture", "link", "videoId"));
+    stubServer.addTrackList("videoId", "en");
+    stubServer.addTranscript("videoId", "xx", "Unlisted");
+    when(request.getParameter(TranscriptServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("xx");
+
+    transcriptServlet.doGet(request, response);
+    transcriptServlet.doGet(request, response);
+
+    // Only the video's languages are fetched, once.
+    assertThat(stubServer.requestCount()).isEqualTo(1);
+    assertThat(entitiesInDatastoreCount(lectureKey.getId())).isEqualTo(0);
+  }
+
+  @Test
+  public void doGet_languageNotAvailable_returnsNoLines() throws Exception {
+    Key lectureKey = datastore.put(LectureUtil.createEntity("Lecture", "link", "videoId"));
+    when(request.getParameter(TranscriptServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("fr");
+
+    transcriptServlet.doGet(request, response);
+
+    List<TranscriptLine> actualTranscriptLines = transcriptLines(lectureTranscript.toString());
+    assertThat(actualTranscriptLines.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void doGet_transcriptInChunks_returnsLinesInOrder() throws Exception {
+    List<Entity> lineEntities = new ArrayList<>();
+    for (int line = 0; line < 3; line++) {
+      // Spreads the lines across two chunks.
+      long startMs = line * TranscriptChunkUtil.CHUNK_DURATION_MS / 2;
+      Entity lineEntity = new Entity(
+          KeyFactory.createKey(lectureKeyA, TranscriptLineUtil.KIND, /* id= */ line + 10));
+      lineEntity.setPropertiesFrom(TranscriptLineUtil.createEntity(
+          lectureKeyA, "en", "line " + line, startMs, /* lineDurationMs= */ 1000, startMs + 1000));
+      lineEntities.add(lineEntity);
+    }
+    datastore.put(TranscriptChunkUtil.createEntities(lectureKeyA, "en", lineEntities));
+    when(request.getParameter(TranscriptServlet.PARAM_ID)).thenReturn(LECTURE_ID_A.toString());
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("en");
+
+    transcriptServlet.doGet(request, response);
+
+    List<TranscriptLine> actualTranscriptLines =
+        typedTranscriptLines(lectureTranscript.toString());
+    assertThat(actualTranscriptLines).hasSize(3);
+    for (int line = 0; line < 3; line++) {
+      assertThat(actualTranscriptLines.get(line).content()).isEqualTo("line " + line);
+      assertThat(actualTranscriptLines.get(line).transcriptKey().getId()).isEqualTo(line + 10);
+    }
+  }
+
+  @Test
+  public void doGet_languageNotStored_chunkStorage_fetchesTranscript() throws Exception {
+    TranscriptParser transcriptParser =
+        new TranscriptParser(new TimedTextClient(stubServer.apiUrl()));
+    transcriptParser.setStorage(TranscriptStorage.CHUNKS);
+    transcriptServlet.setTranscriptParser(transcriptParser);
+    Key lectureKey = datastore.put(LectureUtil.createEntity("Lecture", "link", "videoId"));
+    stubServer.addTrackList("videoId", "en", "fr");
+    stubServer.addTranscript("videoId", "fr", "Salut", "Bon");
+    when(request.getParameter(TranscriptServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("fr");
+
+    transcriptServlet.doGet(request, response);
+
+    List<TranscriptLine> actualTranscriptLines =
+        typedTranscriptLines(lectureTranscript.toString());
+    assertThat(actualTranscriptLines).hasSize(2);
+    assertThat(actualTranscriptLines.get(1).content()).isEqualTo("Bon");
+    assertThat(entitiesInDatastoreCount(lectureKey.getId())).isEqualTo(0);
+  }
+
+  @Test
+  public void doGet_segmentGranularity_returnsMergedSegments() throws Exception {
+    Key lectureKey = datastore.put(LectureUtil.createEntity("Lecture", "link", "videoId"));
+    stubServer.addTrackList("videoId", "en", "fr");
+    stubServer.addTranscript("videoId", "fr", "Salut", "tout le", "monde");
+    when(request.getParameter(TranscriptServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("fr");
+    when(request.getParameter(TranscriptServlet.PARAM_GRANULARITY))
+        .thenReturn(TranscriptServlet.GRANULARITY_SEGMENTS);
+
+    transcriptServlet.doGet(request, response);
+
+    List<TranscriptSegment> actualSegments = transcriptSegments(lectureTranscript.toString());
+    assertThat(actualSegments).hasSize(1);
+    assertThat(actualSegments.get(0).content()).isEqualTo("Salut tout le monde");
+    assertThat(actualSegments.get(0).lineIds()).hasSize(3);
+    assertThat(actualSegments.get(0).transcriptKey().getId())
+        .isEqualTo(actualSegments.get(0).lineIds().get(0));
+  }
+
+  @Test
+  public void doGet_segmentsInShards_returnsSegmentsOfEveryShard() throws Exception {
+    Key lectureKey = datastore.put(LectureUtil.createEntity("Lecture", "link", "videoId"));
+    for (int shard = 0; shard < 2; shard++) {
+      TranscriptChunk segments = TranscriptChunk.builder()
+                                     .addLine(shard + 1, shard * 10000, 5000, "part " + shard)
+                                     .build();
+      datastore.put(TranscriptSegmentUtil.createEntity(lectureKey, "en", shard,
+          /* shardCount= */ 2, segments, ImmutableList.of(1L), ImmutableList.of(shard + 1L)));
+    }
+    when(request.getParameter(TranscriptServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("en");
+    when(request.getParameter(TranscriptServlet.PARAM_GRANULARITY))
+        .thenReturn(TranscriptServlet.GRANULARITY_SEGMENTS);
+
+    transcriptServlet.doGet(request, response);
+
+    List<TranscriptSegment> actualSegments = transcriptSegments(lectureTranscript.toString());
+    assertThat(actualSegments).hasSize(2);
+    assertThat(actualSegments.get(0).content()).isEqualTo("part 0");
+    assertThat(actualSegments.get(1).content()).isEqualTo("part 1");
+  }
+
+  @Test
+  public void doGet_segmentGranularity_noStoredSegments_returnsLines() throws Exception {
+    putTranscriptLinesInDatastore(shortVideoTranscriptLines, lectureKeyA, "en");
+    when(request.getParameter(TranscriptServlet.PARAM_ID)).thenReturn(LECTURE_ID_A.toString());
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("en");
+    when(request.getParameter(TranscriptServlet.PARAM_GRANULARITY))
+        .thenReturn(TranscriptServlet.GRANULARITY_SEGMENTS);
+
+    transcriptServlet.doGet(request, response);
+
+    List<TranscriptLine> actualTranscriptLines =
+        typedTranscriptLines(lectureTranscript.toString());
+    assertThat(actualTranscriptLines).hasSize(shortVideoTranscriptLines.size());
+  }
+
+  @Test
+  public void doGet_invalidGranularity_badRequest() throws Exception {
+    when(request.getParameter(TranscriptServlet.PARAM_ID)).thenReturn(LECTURE_ID_A.toString());
+    when(request.getParameter(TranscriptServlet.PARAM_GRANULARITY)).thenReturn("words");
+
+    transcriptServlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Invalid granularity parameter.");
+  }
+
+  @Test
+  public void doGet_columnsFormat_transcriptInChunks_returnsColumns() throws Exception {
+    List<Entity> lineEntities = new ArrayList<>();
+    for (int line = 0; line < 3; line++) {
+      long startMs = line * TranscriptChunkUtil.CHUNK_DURATION_MS / 2;
+      Entity lineEntity = new Entity(
+          KeyFactory.createKey(lectureKeyA, TranscriptLineUtil.KIND, /* id= */ line + 10));
+      lineEntity.setPropertiesFrom(TranscriptLineUtil.createEntity(
+          lectureKeyA, "en", "line " + line, startMs, /* lineDurationMs= */ 1000, startMs + 1000));
+      lineEntities.add(lineEntity);
+    }
+    datastore.put(TranscriptChunkUtil.createEntities(lectureKeyA, "en", lineEntities));
+    when(request.getParameter(TranscriptServlet.PARAM_ID)).thenReturn(LECTURE_ID_A.toString());
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("en");
+    when(request.getParameter(TranscriptServlet.PARAM_FORMAT))
+        .thenReturn(TranscriptServlet.FORMAT_COLUMNS);
+
+    transcriptServlet.doGet(request, response);
+
+    TranscriptColumns columns = transcriptColumns(lectureTranscript.toString());
+    long halfChunkMs = TranscriptChunkUtil.CHUNK_DURATION_MS / 2;
+    assertThat(columns.ids()).containsExactly(10L, 11L, 12L).inOrder();
+    assertThat(columns.startDeltasMs()).containsExactly(0L, halfChunkMs, halfChunkMs).inOrder();
+    assertThat(columns.durationsMs()).containsExactly(1000L, 1000L, 1000L);
+    assertThat(columns.contents()).containsExactly("line 0", "line 1", "line 2").inOrder();
+    assertThat(columns.lineCounts()).isEmpty();
+    verify(response).setContentType(TranscriptServlet.MEDIA_TYPE_COLUMNS);
+  }
+
+  @Test
+  public void doGet_acceptsColumns_segmentGranularity_returnsSegmentColumns()
+      throws Exception {
+    Key lectureKey = datastore.put(LectureUtil.createEntity("Lecture", "link", "videoId"));
+    stubServer.addTrackList("videoId", "en", "fr");
+    stubServer.addTranscript("videoId", "fr", "Salut", "tout le", "monde");
+    when(request.getParameter(TranscriptServlet.PARAM_ID))
+        .thenReturn(String.valueOf(lectureKey.getId()));
+    when(request.getParameter(TranscriptServlet.PARAM_LANGUAGE)).thenReturn("fr");
+    when(request.getParameter(TranscriptServlet.PARAM_GRANULARITY))
+        .thenReturn(TranscriptServlet.GRANULARITY_SEGMENTS);
+    when(request.getHeader("Accept"))
+        .thenReturn(TranscriptServlet.MEDIA_TYPE_COLUMNS + ", application/json;q=0.5");
+
+    transcriptServlet.doGet(request, response);
+
+    TranscriptColumns columns = transcriptColumns(lectureTranscript.toString());
+    assertThat(columns.contents()).containsExactly("Salut tout le monde");
+    assertThat(columns.lineCounts()).containsExactly(3);
+    assertThat(columns.lineIds()).hasSize(3);
+    assertThat(columns.ids()).containsExactly(columns.lineIds().get(0));
+  }
+
+  @Test
+  public void doGet_invalidFormat_badRequest() throws Exception {
+    when(request.getParameter(TranscriptServlet.PARAM_ID)).thenReturn(LECTURE_ID_A.toString());
+    when(request.getParameter(TranscriptServlet.PARAM_FORMAT)).thenReturn("xml");
+
+    transcriptServlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST, /* message= */ "Invalid format parameter.");
+  }
+
   private static List<TranscriptLine> transcriptLines(String transcriptLinesJson) {
     Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
     return (ArrayList<TranscriptLine>) gson.fromJson(
         transcriptLinesJson, (new ArrayList<List<TranscriptLine>>().getClass()));
   }
 
+  private static List<TranscriptLine> typedTranscriptLines(String transcriptLinesJson) {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    return gson.fromJson(transcriptLinesJson, new TypeToken<List<TranscriptLine>>() {}.getType());
+  }
+
+  private static List<TranscriptSegment> transcriptSegments(String transcriptSegmentsJson) {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    return gson.fromJson(
+        transcriptSegmentsJson, new TypeToken<List<TranscriptSegment>>() {}.getType());
+  }
+
+  private static TranscriptColumns transcriptColumns(String transcriptColumnsJson) {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(GenerateTypeAdapter.FACTORY).create();
+    return gson.fromJson(transcriptColumnsJson, TranscriptColumns.class);
+  }
+
   private void putTranscriptLinesInDatastore(List<TranscriptLine> transcriptLines, Key lectureKey) {
     for (int i = 0; i < transcriptLines.size(); i++) {
       Entity lineEntity = TranscriptLineUtil.createEntity(lectureKey, "test content",
@@ -201,6 +529,15 @@ public final class TranscriptServletTest {
     }
   }
 
+  private void putTranscriptLinesInDatastore(
+      List<TranscriptLine> transcriptLines, Key lectureKey, String language) {
+    for (int i = 0; i < transcriptLines.size(); i++) {
+      Entity lineEntity = TranscriptLineUtil.createEntity(lectureKey, language, "test content",
+          /* start= */ 0, /* duration= */ 0, /* end= */ 0);
+      datastore.put(lineEntity);
+    }
+  }
+
   private int entitiesInDatastoreCount(long lectureId) {
     // A limit of 100 for the maximum number of entities counted is used because
     // we can assume that for this test datastore, there won't be more than 100 entities
@@ -0,0 +1,145 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.tracing;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.googleinterns.zoomtube.data.RequestTrace;
+import com.googleinterns.zoomtube.data.TraceSpan;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.FilterConfig;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class TracingFilterTest {
+  private TracingFilter filter;
+  private HttpServletRequest request;
+  private HttpServletResponse response;
+
+  @Before
+  public void setUp() {
+    filter = new TracingFilter();
+    filter.init(mock(FilterConfig.class));
+    request = mock(HttpServletRequest.class);
+    when(request.getMethod()).thenReturn("POST");
+    when(request.getRequestURI()).thenReturn("/lecture");
+    response = mock(HttpServletResponse.class);
+  }
+
+  @Test
+  public void doFilter_recordsSpanTree() throws Exception {
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {
+      try (Span fetch = Tracer.startSpan("fetch")) {
+        try (Span parse = Tracer.startSpan("parse")) {
+        }
+      }
+      long now = System.nanoTime();
+      Tracer.recordSpan("datastore.put", now, now);
+    });
+
+    TraceSpan root = TracingFilter.recentTraces().get(0).root();
+    assertThat(root.name()).isEqualTo("POST /lecture");
+    assertThat(root.children()).hasSize(2);
+    assertThat(root.children().get(0).name()).isEqualTo("fetch");
+    assertThat(root.children().get(0).children().get(0).name()).isEqualTo("parse");
+    assertThat(root.children().get(1).name()).isEqualTo("datastore.put");
+    assertThat(root.children().get(1).durationMs()).isEqualTo(0.0);
+  }
+
+  @Test
+  public void doFilter_cloudTraceContext_isRequestId() throws Exception {
+    when(request.getHeader("X-Cloud-Trace-Context")).thenReturn("105445aa7843bc8bf206b1200/1;o=1");
+    AtomicReference<String> requestId = new AtomicReference<>();
+
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {
+      requestId.set(Tracer.currentRequestId().get());
+    });
+
+    assertThat(requestId.get()).isEqualTo("105445aa7843bc8bf206b1200");
+    verify(response).setHeader(TracingFilter.HEADER_REQUEST_ID, "105445aa7843bc8bf206b1200");
+    assertThat(TracingFilter.recentTraces().get(0).requestId())
+        .isEqualTo("105445aa7843bc8bf206b1200");
+  }
+
+  @Test
+  public void doFilter_propagatedTask_recordsSpansUnderCaller() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {
+      try (Span store = Tracer.startSpan("store")) {
+        executor.submit(Tracer.propagate(() -> {
+          try (Span fetch = Tracer.startSpan("fetch")) {
+            return null;
+          }
+        })).get();
+      } catch (Exception e) {
+        throw new AssertionError(e);
+      }
+    });
+    executor.shutdown();
+
+    TraceSpan store = TracingFilter.recentTraces().get(0).root().children().get(0);
+    assertThat(store.children()).hasSize(1);
+    assertThat(store.children().get(0).name()).isEqualTo("fetch");
+    assertThat(store.children().get(0).thread()).isNotEqualTo(store.thread());
+  }
+
+  @Test
+  public void startSpan_outsideRequest_recordsNothing() {
+    try (Span span = Tracer.startSpan("untraced")) {
+      assertThat(Tracer.currentRequestId().isPresent()).isFalse();
+    }
+  }
+
+  @Test
+  public void doFilter_afterRequest_spansAreNoLongerRecorded() throws Exception {
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {});
+
+    assertThat(Tracer.currentRequestId().isPresent()).isFalse();
+  }
+
+  @Test
+  public void recentTraces_keepsTheMostRecent() throws Exception {
+    for (int request = 0; request < TracingFilter.RECENT_TRACE_COUNT + 5; request++) {
+      filter.doFilter(this.request, response, (filterRequest, filterResponse) -> {});
+    }
+
+    assertThat(TracingFilter.recentTraces()).hasSize(TracingFilter.RECENT_TRACE_COUNT);
+  }
+
+  @Test
+  public void toRequestTrace_tooManySpans_countsDropped() throws Exception {
+    filter.doFilter(request, response, (filterRequest, filterResponse) -> {
+      for (int span = 0; span < 1005; span++) {
+        Tracer.startSpan("datastore.get").close();
+      }
+    });
+
+    RequestTrace trace = TracingFilter.recentTraces().get(0);
+    // The span of the request is one of the spans kept.
+    assertThat(trace.root().children()).hasSize(999);
+    assertThat(trace.droppedSpanCount()).isEqualTo(6);
+  }
+}
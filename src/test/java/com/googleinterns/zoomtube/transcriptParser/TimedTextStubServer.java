@@ -0,0 +1,180 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.transcriptParser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+
+/**
+ * A local stand-in for the Timedtext API, so transcript fetching can be tested without
+ * network access.
+ */
+public final class TimedTextStubServer {
+  private static final String PATH = "/timedtext";
+  private static final String PARAM_LANG = "lang";
+  private static final String PARAM_VIDEO = "v";
+  private static final String PARAM_TYPE = "type";
+  private static final String TYPE_LIST = "list";
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final Map<String, String> transcripts = new ConcurrentHashMap<>();
+  private final Map<String, String> trackLists = new ConcurrentHashMap<>();
+  private final AtomicInteger requestCount = new AtomicInteger();
+  private final AtomicInteger inFlightRequests = new AtomicInteger();
+  private final AtomicInteger maxInFlightRequests = new AtomicInteger();
+  private final AtomicInteger remainingFailures = new AtomicInteger();
+  private volatile int failureStatus;
+  private volatile long responseDelayMs = 0;
+
+  /** Starts a server on a free local port. */
+  public static TimedTextStubServer start() throws IOException {
+    return new TimedTextStubServer();
+  }
+
+  private TimedTextStubServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(PATH, this::handle);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /** Returns the url to fetch transcripts from instead of the Timedtext API. */
+  public String apiUrl() {
+    return "http://localhost:" + server.getAddress().getPort() + PATH;
+  }
+
+  /**
+   * Serves a transcript for {@code videoId} in {@code language} with a line for each of
+   * {@code lines}, one second apart.
+   */
+  public void addTranscript(String videoId, String language, String... lines) {
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\" ?>");
+    xml.append("<transcript>");
+    for (int line = 0; line < lines.length; line++) {
+      xml.append("<text start=\"")
+          .append(line)
+          .append("\" dur=\"1\">")
+          .append(lines[line])
+          .append("</text>");
+    }
+    transcripts.put(transcriptId(videoId, language), xml.append("</transcript>").toString());
+  }
+
+  /**
+   * Serves a list of the transcript languages of {@code videoId} with a track for each of
+   * {@code languageCodes}.
+   */
+  public void addTrackList(String videoId, String... languageCodes) {
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\" ?>");
+    xml.append("<transcript_list docid=\"0\">");
+    for (String languageCode : languageCodes) {
+      xml.append("<track id=\"0\" name=\"\" lang_code=\"")
+          .append(languageCode)
+          .append("\" lang_original=\"")
+          .append(languageCode)
+          .append("\" lang_translated=\"")
+          .append(languageCode)
+          .append("\"/>");
+    }
+    trackLists.put(videoId, xml.append("</transcript_list>").toString());
+  }
+
+  /** Delays every response by {@code delayMs}, so that concurrent fetches overlap. */
+  public void setResponseDelayMs(long delayMs) {
+    responseDelayMs = delayMs;
+  }
+
+  /** Responds to the next {@code count} requests with {@code status}. */
+  public void failNextRequests(int count, int status) {
+    failureStatus = status;
+    remainingFailures.set(count);
+  }
+
+  /** Returns the number of requests served so far. */
+  public int requestCount() {
+    return requestCount.get();
+  }
+
+  /** Returns the largest number of requests that were being served at once. */
+  public int maxInFlightRequests() {
+    return maxInFlightRequests.get();
+  }
+
+  public void stop() {
+    server.stop(/* delay= */ 0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requestCount.incrementAndGet();
+    maxInFlightRequests.accumulateAndGet(inFlightRequests.incrementAndGet(), Math::max);
+    try {
+      Thread.sleep(responseDelayMs);
+      if (remainingFailures.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+        respond(exchange, failureStatus, "Failed on purpose.");
+        return;
+      }
+      Map<String, String> params = new HashMap<>();
+      for (NameValuePair param :
+          URLEncodedUtils.parse(exchange.getRequestURI(), StandardCharsets.UTF_8.name())) {
+        params.put(param.getName(), param.getValue());
+      }
+      String transcript = TYPE_LIST.equals(params.get(PARAM_TYPE))
+          ? trackLists.get(params.get(PARAM_VIDEO))
+          : transcripts.get(transcriptId(params.get(PARAM_VIDEO), params.get(PARAM_LANG)));
+      if (transcript == null) {
+        respond(exchange, /* status= */ 404, "Not found.");
+        return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+      respond(exchange, /* status= */ 200, transcript);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      inFlightRequests.decrementAndGet();
+      exchange.close();
+    }
+  }
+
+  /**
+   * Responds with a body even for errors, because the server closes the connection after a
+   * response without one.
+   */
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, bodyBytes.length);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(bodyBytes);
+    }
+  }
+
+  private static String transcriptId(String videoId, String language) {
+    return videoId + "/" + language;
+  }
+}
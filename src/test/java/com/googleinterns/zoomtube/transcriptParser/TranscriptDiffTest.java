@@ -0,0 +1,100 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.transcriptParser;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class TranscriptDiffTest {
+  @Test
+  public void compute_sameLines_nothingToWrite() {
+    List<TranscriptDiff.Line> lines = lines("a", "b", "c");
+
+    TranscriptDiff diff = TranscriptDiff.compute(lines, lines("a", "b", "c"));
+
+    assertThat(diff.isEmpty()).isTrue();
+    assertThat(diff.unchangedLines).containsExactly(0, 0, 1, 1, 2, 2);
+  }
+
+  @Test
+  public void compute_insertedLine_isInserted() {
+    TranscriptDiff diff = TranscriptDiff.compute(lines("a", "b", "c"), lines("a", "b", "x", "c"));
+
+    assertThat(diff.insertedLines).containsExactly(2);
+    assertThat(diff.changedLines).isEmpty();
+    assertThat(diff.removedLines).isEmpty();
+    assertThat(diff.unchangedLines).containsExactly(0, 0, 1, 1, 2, 3);
+  }
+
+  @Test
+  public void compute_removedLine_isRemoved() {
+    TranscriptDiff diff = TranscriptDiff.compute(lines("a", "b", "c"), lines("a", "c"));
+
+    assertThat(diff.removedLines).containsExactly(1);
+    assertThat(diff.insertedLines).isEmpty();
+    assertThat(diff.unchangedLines).containsExactly(0, 0, 2, 1);
+  }
+
+  @Test
+  public void compute_replacedLines_areChangedInPlace() {
+    TranscriptDiff diff =
+        TranscriptDiff.compute(lines("a", "b", "c", "d"), lines("a", "x", "y", "z", "d"));
+
+    assertThat(diff.changedLines).containsExactly(1, 1, 2, 2).inOrder();
+    assertThat(diff.insertedLines).containsExactly(3);
+    assertThat(diff.removedLines).isEmpty();
+  }
+
+  @Test
+  public void compute_emptyStoredTranscript_insertsEveryLine() {
+    TranscriptDiff diff = TranscriptDiff.compute(ImmutableList.of(), lines("a", "b"));
+
+    assertThat(diff.insertedLines).containsExactly(0, 1).inOrder();
+  }
+
+  @Test
+  public void compute_manyEdits_comparesByPosition() {
+    List<TranscriptDiff.Line> storedLines = new ArrayList<>();
+    List<TranscriptDiff.Line> fetchedLines = new ArrayList<>();
+    for (int line = 0; line < 3000; line++) {
+      storedLines.add(TranscriptDiff.Line.create(line, 1, "stored " + line));
+      fetchedLines.add(TranscriptDiff.Line.create(line, 1, "fetched " + line));
+    }
+    fetchedLines.set(7, storedLines.get(7));
+
+    TranscriptDiff diff = TranscriptDiff.compute(storedLines, fetchedLines);
+
+    assertThat(diff.changedLines).hasSize(2999);
+    assertThat(diff.changedLines.get(8)).isEqualTo(8);
+    assertThat(diff.unchangedLines).isEqualTo(ImmutableMap.of(7, 7));
+  }
+
+  /** Returns a line for each of {@code contents}, all with the same timing. */
+  private static List<TranscriptDiff.Line> lines(String... contents) {
+    List<TranscriptDiff.Line> lines = new ArrayList<>();
+    for (String content : contents) {
+      lines.add(TranscriptDiff.Line.create(/* startMs= */ 0, /* durationMs= */ 1000, content));
+    }
+    return lines;
+  }
+}
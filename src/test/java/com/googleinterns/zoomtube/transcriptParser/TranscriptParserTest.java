@@ -25,20 +25,34 @@ import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
 import com.google.appengine.api.datastore.Query.Filter;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.googleinterns.zoomtube.data.TranscriptLine;
+import com.googleinterns.zoomtube.data.TranscriptResync;
+import com.googleinterns.zoomtube.data.TranscriptSegment;
+import com.googleinterns.zoomtube.repository.Repositories;
+import com.googleinterns.zoomtube.repository.TranscriptLineRepository;
+import com.googleinterns.zoomtube.search.TranscriptIndex;
 import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptChunkUtil;
+import com.googleinterns.zoomtube.utils.TranscriptIndexUtil;
 import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.googleinterns.zoomtube.utils.TranscriptSegmentUtil;
 import com.ryanharter.auto.value.gson.GenerateTypeAdapter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -96,6 +110,8 @@ public final class TranscriptParserTest {
 
   private static List<TranscriptLine> shortVideoTranscriptLines;
   private static List<TranscriptLine> longVideoTranscriptLines;
+  private TimedTextStubServer stubServer;
+  private TranscriptParser stubParser;
 
   @BeforeClass
   public static void createTranscriptLineLists() {
@@ -107,13 +123,248 @@ public final class TranscriptParserTest {
   public void setUp() throws Exception {
     localServiceHelper.setUp();
     datastore = DatastoreServiceFactory.getDatastoreService();
+    stubServer = TimedTextStubServer.start();
+    stubParser = new TranscriptParser(new TimedTextClient(stubServer.apiUrl()));
   }
 
   @After
   public void tearDown() {
+    stubServer.stop();
     localServiceHelper.tearDown();
   }
 
+  @Test
+  public void parseAndStoreTranscripts_repositoriesInMemory_storesInMemory() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay");
+    TranscriptLineRepository transcriptLines = Repositories.inMemory().transcriptLines();
+    TranscriptParser parser =
+        new TranscriptParser(new TimedTextClient(stubServer.apiUrl()), transcriptLines);
+
+    parser.parseAndStoreTranscripts(SHORT_VIDEO_ID, lectureKey, ImmutableList.of("en"));
+
+    assertThat(transcriptLines.getLines(lectureKey, Optional.of("en"))).hasSize(2);
+    assertThat(transcriptLines.getSegments(lectureKey, "en")).isNotEmpty();
+    assertThat(entitiesInDatastoreCount(lectureKey, "en")).isEqualTo(0);
+  }
+
+  @Test
+  public void parseAndStoreTranscripts_storesEachLanguage() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay");
+    stubServer.addTranscript(SHORT_VIDEO_ID, "fr", "Salut", "D'accord", "Bon");
+
+    ImmutableList<String> storedLanguages = stubParser.parseAndStoreTranscripts(
+        SHORT_VIDEO_ID, lectureKey, ImmutableList.of("en", "fr"));
+
+    assertThat(storedLanguages).containsExactly("en", "fr").inOrder();
+    assertThat(entitiesInDatastoreCount(lectureKey, "en")).isEqualTo(2);
+    assertThat(entitiesInDatastoreCount(lectureKey, "fr")).isEqualTo(3);
+  }
+
+  @Test
+  public void parseAndStoreTranscripts_fetchesLanguagesConcurrently() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi");
+    stubServer.addTranscript(SHORT_VIDEO_ID, "fr", "Salut");
+    stubServer.addTranscript(SHORT_VIDEO_ID, "de", "Hallo");
+    stubServer.setResponseDelayMs(200);
+
+    stubParser.parseAndStoreTranscripts(
+        SHORT_VIDEO_ID, lectureKey, ImmutableList.of("en", "fr", "de"));
+
+    assertThat(stubServer.requestCount()).isEqualTo(3);
+    assertThat(stubServer.maxInFlightRequests()).isGreaterThan(1);
+  }
+
+  @Test
+  public void parseAndStoreTranscripts_missingLanguage_storesOthers() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "fr", "Salut");
+
+    ImmutableList<String> storedLanguages = stubParser.parseAndStoreTranscripts(
+        SHORT_VIDEO_ID, lectureKey, ImmutableList.of("en", "fr"));
+
+    assertThat(storedLanguages).containsExactly("fr");
+    assertThat(entitiesInDatastoreCount(lectureKey, "fr")).isEqualTo(1);
+  }
+
+  @Test
+  public void parseAndStoreTranscripts_noLanguageAvailable_throwsException() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+
+    try {
+      stubParser.parseAndStoreTranscripts(SHORT_VIDEO_ID, lectureKey, ImmutableList.of("en"));
+      fail();
+    } catch (IOException e) {
+    }
+  }
+
+  @Test
+  public void parseAndStoreTranscript_sameLanguageTwice_replacesLines() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay");
+    stubServer.addTranscript(SHORT_VIDEO_ID, "fr", "Salut");
+    stubParser.parseAndStoreTranscript(SHORT_VIDEO_ID, lectureKey, "en");
+    stubParser.parseAndStoreAdditionalTranscript(SHORT_VIDEO_ID, lectureKey, "fr");
+
+    stubParser.parseAndStoreTranscript(SHORT_VIDEO_ID, lectureKey, "en");
+
+    assertThat(entitiesInDatastoreCount(lectureKey, "en")).isEqualTo(2);
+    assertThat(entitiesInDatastoreCount(lectureKey, "fr")).isEqualTo(1);
+  }
+
+  @Test
+  public void resyncTranscript_correctedAndAddedLines_keepsKeysOfStoredLines() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okey", "Bye");
+    stubParser.parseAndStoreTranscript(SHORT_VIDEO_ID, lectureKey, "en");
+    Map<String, Key> storedKeys = lineKeysByContent(lectureKey, "en");
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay", "Bye", "Thanks");
+
+    TranscriptResync resync =
+        stubParser.resyncTranscript(SHORT_VIDEO_ID, lectureKey, "en",
+            /* indexForSearch= */ true, /* unlabeledLinesInLanguage= */ true);
+
+    assertThat(resync).isEqualTo(TranscriptResync.create(/* insertedCount= */ 1,
+        /* changedCount= */ 1, /* removedCount= */ 0, /* unchangedCount= */ 2));
+    Map<String, Key> resyncedKeys = lineKeysByContent(lectureKey, "en");
+    assertThat(resyncedKeys).hasSize(4);
+    assertThat(resyncedKeys.get("Hi")).isEqualTo(storedKeys.get("Hi"));
+    assertThat(resyncedKeys.get("Okay")).isEqualTo(storedKeys.get("Okey"));
+    assertThat(resyncedKeys.get("Bye")).isEqualTo(storedKeys.get("Bye"));
+  }
+
+  @Test
+  public void resyncTranscript_removedLine_deletesOnlyThatLine() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay", "Bye");
+    stubParser.parseAndStoreTranscript(SHORT_VIDEO_ID, lectureKey, "en");
+    Map<String, Key> storedKeys = lineKeysByContent(lectureKey, "en");
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay");
+
+    TranscriptResync resync =
+        stubParser.resyncTranscript(SHORT_VIDEO_ID, lectureKey, "en",
+            /* indexForSearch= */ true, /* unlabeledLinesInLanguage= */ true);
+
+    assertThat(resync.removedCount()).isEqualTo(1);
+    assertThat(lineKeysByContent(lectureKey, "en"))
+        .containsExactly("Hi", storedKeys.get("Hi"), "Okay", storedKeys.get("Okay"));
+  }
+
+  @Test
+  public void resyncTranscript_unchangedTranscript_writesNothing() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay");
+    stubParser.parseAndStoreTranscript(SHORT_VIDEO_ID, lectureKey, "en");
+
+    TranscriptResync resync =
+        stubParser.resyncTranscript(SHORT_VIDEO_ID, lectureKey, "en",
+            /* indexForSearch= */ true, /* unlabeledLinesInLanguage= */ true);
+
+    assertThat(resync).isEqualTo(TranscriptResync.create(/* insertedCount= */ 0,
+        /* changedCount= */ 0, /* removedCount= */ 0, /* unchangedCount= */ 2));
+  }
+
+  @Test
+  public void resyncTranscript_unlabeledLines_givesThemTheLanguage() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    Key hiKey = datastore.put(TranscriptLineUtil.createEntity(lectureKey, "Hi", 0, 1000, 1000));
+    datastore.put(TranscriptLineUtil.createEntity(lectureKey, "Okey", 1000, 1000, 2000));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay");
+
+    TranscriptResync resync = stubParser.resyncTranscript(SHORT_VIDEO_ID, lectureKey, "en",
+        /* indexForSearch= */ true, /* unlabeledLinesInLanguage= */ true);
+
+    assertThat(resync).isEqualTo(TranscriptResync.create(/* insertedCount= */ 0,
+        /* changedCount= */ 1, /* removedCount= */ 0, /* unchangedCount= */ 1));
+    assertThat(entitiesInDatastoreCount(lectureKey)).isEqualTo(2);
+    assertThat(lineKeysByContent(lectureKey, "en")).containsEntry("Hi", hiKey);
+  }
+
+  @Test
+  public void resyncTranscript_unlabeledLinesInOtherLanguage_leavesThem() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    datastore.put(TranscriptLineUtil.createEntity(lectureKey, "Hi", 0, 1000, 1000));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "fr", "Salut");
+
+    stubParser.resyncTranscript(SHORT_VIDEO_ID, lectureKey, "fr",
+        /* indexForSearch= */ false, /* unlabeledLinesInLanguage= */ false);
+
+    assertThat(entitiesInDatastoreCount(lectureKey)).isEqualTo(2);
+    assertThat(lineKeysByContent(lectureKey, "fr")).containsKey("Salut");
+  }
+
+  @Test
+  public void resyncTranscript_correctedLine_updatesSegments() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okey", "Bye");
+    stubParser.parseAndStoreTranscript(SHORT_VIDEO_ID, lectureKey, "en");
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay", "Bye");
+
+    stubParser.resyncTranscript(SHORT_VIDEO_ID, lectureKey, "en",
+        /* indexForSearch= */ true, /* unlabeledLinesInLanguage= */ true);
+
+    List<TranscriptSegment> segments = TranscriptSegmentUtil.createTranscriptSegments(
+        datastore.get(TranscriptSegmentUtil.createKey(lectureKey, "en")));
+    assertThat(segments).hasSize(1);
+    assertThat(segments.get(0).content()).isEqualTo("Hi Okay Bye");
+    assertThat(segments.get(0).lineIds()).hasSize(3);
+  }
+
+  @Test
+  public void parseAndStoreTranscript_chunkStorage_storesChunksInsteadOfLines() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay");
+    stubParser.setStorage(TranscriptStorage.CHUNKS);
+
+    stubParser.parseAndStoreTranscript(SHORT_VIDEO_ID, lectureKey, "en");
+
+    assertThat(entitiesInDatastoreCount(lectureKey)).isEqualTo(0);
+    Map<String, Key> chunkLineKeys = chunkLineKeysByContent(lectureKey);
+    assertThat(chunkLineKeys.keySet()).containsExactly("Hi", "Okay");
+    TranscriptIndex index = TranscriptIndexUtil.createTranscriptIndex(
+        datastore.get(TranscriptIndexUtil.createKey(lectureKey)), ImmutableMap.of());
+    assertThat(index.lineId(0)).isEqualTo(chunkLineKeys.get("Hi").getId());
+    assertThat(index.lineId(1)).isEqualTo(chunkLineKeys.get("Okay").getId());
+  }
+
+  @Test
+  public void resyncTranscript_chunkStorage_keepsLineIds() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okey", "Bye");
+    stubParser.setStorage(TranscriptStorage.CHUNKS);
+    stubParser.parseAndStoreTranscript(SHORT_VIDEO_ID, lectureKey, "en");
+    Map<String, Key> storedKeys = chunkLineKeysByContent(lectureKey);
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay", "Bye", "Thanks");
+
+    stubParser.resyncTranscript(SHORT_VIDEO_ID, lectureKey, "en",
+        /* indexForSearch= */ true, /* unlabeledLinesInLanguage= */ true);
+
+    Map<String, Key> resyncedKeys = chunkLineKeysByContent(lectureKey);
+    assertThat(resyncedKeys).hasSize(4);
+    assertThat(resyncedKeys.get("Hi")).isEqualTo(storedKeys.get("Hi"));
+    assertThat(resyncedKeys.get("Okay")).isEqualTo(storedKeys.get("Okey"));
+    assertThat(entitiesInDatastoreCount(lectureKey)).isEqualTo(0);
+  }
+
+  @Test
+  public void moveTranscriptLinesToChunks_keepsLineIds() throws Exception {
+    Key lectureKey = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
+    stubServer.addTranscript(SHORT_VIDEO_ID, "en", "Hi", "Okay");
+    stubServer.addTranscript(SHORT_VIDEO_ID, "fr", "Salut");
+    stubParser.parseAndStoreTranscript(SHORT_VIDEO_ID, lectureKey, "en");
+    stubParser.parseAndStoreAdditionalTranscript(SHORT_VIDEO_ID, lectureKey, "fr");
+    Map<String, Key> lineKeys = lineKeysByContent(lectureKey, "en");
+    lineKeys.putAll(lineKeysByContent(lectureKey, "fr"));
+
+    int movedCount = stubParser.moveTranscriptLinesToChunks(lectureKey);
+
+    assertThat(movedCount).isEqualTo(3);
+    assertThat(entitiesInDatastoreCount(lectureKey)).isEqualTo(0);
+    assertThat(chunkLineKeysByContent(lectureKey)).isEqualTo(lineKeys);
+  }
+
   @Test
   public void parseAndStoreTranscript_persistDataInDatastoreForShortVideo() throws Exception {
     Key lectureKeyB = KeyFactory.createKey(LectureUtil.KIND, Long.parseLong(LECTURE_ID_B));
@@ -205,6 +456,37 @@ public final class TranscriptParserTest {
         .countEntities(withLimit(100));
   }
 
+  private int entitiesInDatastoreCount(Key lectureKey, String language) {
+    Filter languageFilter =
+        new FilterPredicate(TranscriptLineUtil.LANGUAGE, FilterOperator.EQUAL, language);
+    Query query = filteredQueryOfTranscriptLinesByLectureId(lectureKey);
+    query.setFilter(CompositeFilterOperator.and(query.getFilter(), languageFilter));
+    return datastore.prepare(query).countEntities(withLimit(100));
+  }
+
+  private Map<String, Key> lineKeysByContent(Key lectureKey, String language) {
+    Map<String, Key> lineKeys = new HashMap<>();
+    Query query = new Query(TranscriptLineUtil.KIND).setAncestor(lectureKey).setFilter(
+        new FilterPredicate(TranscriptLineUtil.LANGUAGE, FilterOperator.EQUAL, language));
+    for (Entity lineEntity : datastore.prepare(query).asIterable()) {
+      String content = (String) lineEntity.getProperty(TranscriptLineUtil.CONTENT);
+      lineKeys.put(content, lineEntity.getKey());
+    }
+    return lineKeys;
+  }
+
+  private Map<String, Key> chunkLineKeysByContent(Key lectureKey) throws IOException {
+    Map<String, Key> lineKeys = new HashMap<>();
+    Query query = new Query(TranscriptChunkUtil.KIND).setAncestor(lectureKey);
+    for (Entity chunkEntity : datastore.prepare(query).asIterable()) {
+      for (Entity lineEntity : TranscriptChunkUtil.createLineEntities(chunkEntity)) {
+        String content = (String) lineEntity.getProperty(TranscriptLineUtil.CONTENT);
+        lineKeys.put(content, lineEntity.getKey());
+      }
+    }
+    return lineKeys;
+  }
+
   private Query filteredQueryOfTranscriptLinesByLectureId(Key lectureKey) {
     Filter lectureKeyFilter =
         new FilterPredicate(TranscriptLineUtil.LECTURE, FilterOperator.EQUAL, lectureKey);
@@ -0,0 +1,169 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.transcriptParser;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.googleinterns.zoomtube.data.TranscriptSegment;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import com.googleinterns.zoomtube.utils.TranscriptSegmentUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class TranscriptSegmenterTest {
+  private final LocalServiceTestHelper localServiceHelper =
+      new LocalServiceTestHelper((new LocalDatastoreServiceTestConfig()).setNoStorage(true));
+  private static final long LECTURE_ID = 1234;
+  private Key lectureKey;
+  private List<Entity> lineEntities;
+
+  @Before
+  public void setUp() {
+    localServiceHelper.setUp();
+    lectureKey = KeyFactory.createKey(LectureUtil.KIND, LECTURE_ID);
+    lineEntities = new ArrayList<>();
+  }
+
+  @After
+  public void tearDown() {
+    localServiceHelper.tearDown();
+  }
+
+  @Test
+  public void segment_fragmentsWithoutPause_mergedIntoOneSegment() {
+    addLine(/* startMs= */ 0, /* durationMs= */ 1000, "so what we");
+    addLine(/* startMs= */ 1000, /* durationMs= */ 1000, "are going to");
+    addLine(/* startMs= */ 2000, /* durationMs= */ 1000, "do today");
+
+    List<List<Entity>> segments = TranscriptSegmenter.segment(lineEntities);
+
+    assertThat(segments).containsExactly(lineEntities);
+  }
+
+  @Test
+  public void segment_pauseBetweenLines_splitsSegment() {
+    addLine(/* startMs= */ 0, /* durationMs= */ 1000, "so what we");
+    addLine(/* startMs= */ 1000 + TranscriptSegmenter.PAUSE_MS, /* durationMs= */ 1000, "okay");
+
+    List<List<Entity>> segments = TranscriptSegmenter.segment(lineEntities);
+
+    assertThat(segments).hasSize(2);
+  }
+
+  @Test
+  public void segment_sentenceEnd_splitsOnlyLongEnoughSegment() {
+    addLine(/* startMs= */ 0, /* durationMs= */ 1000, "Hi.");
+    addLine(/* startMs= */ 1000, TranscriptSegmenter.MIN_SEGMENT_MS, "Today is about trees.");
+    addLine(/* startMs= */ 1000 + TranscriptSegmenter.MIN_SEGMENT_MS, /* durationMs= */ 1000,
+        "First,");
+
+    List<List<Entity>> segments = TranscriptSegmenter.segment(lineEntities);
+
+    assertThat(segments)
+        .containsExactly(lineEntities.subList(0, 2), lineEntities.subList(2, 3))
+        .inOrder();
+  }
+
+  @Test
+  public void segment_noPunctuation_splitsAtMaxLength() {
+    long lineCount = 2 * TranscriptSegmenter.MAX_SEGMENT_MS / 1000;
+    for (int line = 0; line < lineCount; line++) {
+      addLine(/* startMs= */ line * 1000, /* durationMs= */ 1000, "and then");
+    }
+
+    List<List<Entity>> segments = TranscriptSegmenter.segment(lineEntities);
+
+    assertThat(segments).hasSize(2);
+    assertThat(segments.get(0)).hasSize((int) lineCount / 2);
+  }
+
+  @Test
+  public void createSegmentsEntity_storesSegmentsWithTheirLines() throws Exception {
+    addLine(/* startMs= */ 0, /* durationMs= */ 1500, " so what we ");
+    addLine(/* startMs= */ 1000, /* durationMs= */ 1500, "are doing");
+    addLine(/* startMs= */ 10000, /* durationMs= */ 1000, "okay");
+
+    List<Entity> segmentsEntities =
+        TranscriptSegmenter.createSegmentsEntities(lectureKey, "en", lineEntities);
+    ImmutableList<TranscriptSegment> segments =
+        TranscriptSegmentUtil.createTranscriptSegments(segmentsEntities);
+
+    assertThat(segmentsEntities).hasSize(1);
+    assertThat(segmentsEntities.get(0).getKey())
+        .isEqualTo(TranscriptSegmentUtil.createKey(lectureKey, "en"));
+    assertThat(segments).hasSize(2);
+    TranscriptSegment firstSegment = segments.get(0);
+    assertThat(firstSegment.content()).isEqualTo("so what we are doing");
+    assertThat(firstSegment.startTimestampMs()).isEqualTo(0);
+    assertThat(firstSegment.endTimestampMs()).isEqualTo(2500);
+    assertThat(firstSegment.transcriptKey()).isEqualTo(lineEntities.get(0).getKey());
+    assertThat(firstSegment.lineIds()).containsExactly(1L, 2L).inOrder();
+    assertThat(segments.get(1).lineIds()).containsExactly(3L);
+  }
+
+  @Test
+  public void createSegmentsEntities_longTranscript_splitsIntoShards() throws Exception {
+    String content = Strings.repeat("word ", 200) + "end.";
+    int lineCount = 2000;
+    for (int line = 0; line < lineCount; line++) {
+      // A pause after every line makes it a segment of its own.
+      addLine(/* startMs= */ line * 5000, /* durationMs= */ 1000, content);
+    }
+
+    List<Entity> segmentsEntities =
+        TranscriptSegmenter.createSegmentsEntities(lectureKey, "en", lineEntities);
+
+    assertThat(segmentsEntities.size()).isGreaterThan(1);
+    assertThat(TranscriptSegmentUtil.getOtherShardKeys(segmentsEntities.get(0)))
+        .containsExactlyElementsIn(segmentsEntities.subList(1, segmentsEntities.size())
+                                       .stream()
+                                       .map(Entity::getKey)
+                                       .collect(Collectors.toList()))
+        .inOrder();
+    for (Entity segmentsEntity : segmentsEntities) {
+      Blob data = (Blob) segmentsEntity.getProperty(TranscriptSegmentUtil.DATA);
+      assertThat(data.getBytes().length).isAtMost(TranscriptSegmenter.MAX_SHARD_BYTES);
+    }
+    ImmutableList<TranscriptSegment> segments =
+        TranscriptSegmentUtil.createTranscriptSegments(segmentsEntities);
+    assertThat(segments).hasSize(lineCount);
+    assertThat(segments.get(lineCount - 1).lineIds()).containsExactly((long) lineCount);
+  }
+
+  /** Adds a line, with the next id, to the end of {@code lineEntities}. */
+  private void addLine(long startMs, long durationMs, String content) {
+    Entity lineEntity = new Entity(
+        KeyFactory.createKey(lectureKey, TranscriptLineUtil.KIND, lineEntities.size() + 1));
+    lineEntity.setPropertiesFrom(TranscriptLineUtil.createEntity(
+        lectureKey, "en", content, startMs, durationMs, startMs + durationMs));
+    lineEntities.add(lineEntity);
+  }
+}
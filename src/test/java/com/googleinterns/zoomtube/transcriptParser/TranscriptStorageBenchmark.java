@@ -0,0 +1,213 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.transcriptParser;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityTranslator;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.googleinterns.zoomtube.utils.LectureUtil;
+import com.googleinterns.zoomtube.utils.TranscriptChunkUtil;
+import com.googleinterns.zoomtube.utils.TranscriptLineUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Offline benchmark comparing a transcript stored as an entity per line with one stored in
+ * {@link TranscriptChunk} entities, on the local datastore.
+ *
+ * <p>Reports the time to write and read a lecture, the number of entities, their serialized
+ * size and an estimate of the index rows written, which is what datastore bills writes by.
+ * Latencies on the local datastore only show relative cost. Run with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.googleinterns.zoomtube.transcriptParser.TranscriptStorageBenchmark \
+ *     -Dexec.args="[lectureHours] [lectures]"
+ * </pre>
+ */
+public final class TranscriptStorageBenchmark {
+  private static final int DEFAULT_LECTURE_HOURS = 3;
+  private static final int DEFAULT_LECTURES = 5;
+  /* Auto-generated captions are a few seconds each. */
+  private static final long LINE_DURATION_MS = 3000;
+  private static final int WORDS_PER_LINE = 8;
+  private static final String LANGUAGE = "en";
+  private static final long SEED = 42;
+
+  public static void main(String[] args) throws IOException {
+    int lectureHours = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LECTURE_HOURS;
+    int lectures = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LECTURES;
+    LocalServiceTestHelper localServiceHelper =
+        new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+    localServiceHelper.setUp();
+    try {
+      DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+      int lineCount = (int) (lectureHours * 3600 * 1000L / LINE_DURATION_MS);
+      System.out.printf("%d lectures of %d hours, %d lines each%n", lectures, lectureHours,
+          lineCount);
+      // The first lecture of each mode warms up the JIT and isn't measured.
+      run(datastore, "lines", lectures, lineCount, TranscriptStorageBenchmark::writeLines,
+          TranscriptStorageBenchmark::readLines);
+      run(datastore, "chunks", lectures, lineCount, TranscriptStorageBenchmark::writeChunks,
+          TranscriptStorageBenchmark::readChunks);
+    } finally {
+      localServiceHelper.tearDown();
+    }
+  }
+
+  private static void run(DatastoreService datastore, String name, int lectures, int lineCount,
+      Writer writer, Reader reader) throws IOException {
+    Random random = new Random(SEED);
+    long writeNanos = 0;
+    long readNanos = 0;
+    List<Entity> lastWrite = null;
+    for (int lecture = 0; lecture <= lectures; lecture++) {
+      Key lectureKey = datastore.put(LectureUtil.createEntity("Lecture", "link", "video"));
+      List<Entity> lineEntities = createLineEntities(random, lectureKey, lineCount);
+
+      long writeStart = System.nanoTime();
+      List<Entity> written = writer.write(datastore, lectureKey, lineEntities);
+      long readStart = System.nanoTime();
+      int readCount = reader.read(datastore, lectureKey);
+      long readEnd = System.nanoTime();
+      if (readCount != lineCount) {
+        throw new IllegalStateException("Read " + readCount + " of " + lineCount + " lines");
+      }
+      if (lecture > 0) {
+        writeNanos += readStart - writeStart;
+        readNanos += readEnd - readStart;
+      }
+      lastWrite = written;
+    }
+
+    long bytes = 0;
+    long indexRows = 0;
+    for (Entity entity : lastWrite) {
+      bytes += EntityTranslator.convertToPb(entity).toByteArray().length;
+      indexRows += estimateIndexRows(entity);
+    }
+    System.out.printf("%-7s write %7.1f ms  read %7.1f ms  %5d entities  %8.1f KiB  "
+            + "~%6d index rows%n",
+        name, writeNanos / 1e6 / lectures, readNanos / 1e6 / lectures, lastWrite.size(),
+        bytes / 1024.0, indexRows);
+  }
+
+  /**
+   * Returns the number of index rows written for {@code entity} by the built-in indexes: one
+   * for its kind, and an ascending and a descending row for each indexed property.
+   */
+  private static long estimateIndexRows(Entity entity) {
+    long indexRows = 1;
+    for (String property : entity.getProperties().keySet()) {
+      if (!entity.isUnindexedProperty(property)) {
+        indexRows += 2;
+      }
+    }
+    return indexRows;
+  }
+
+  private static List<Entity> writeLines(
+      DatastoreService datastore, Key lectureKey, List<Entity> lineEntities) {
+    datastore.put(lineEntities);
+    return lineEntities;
+  }
+
+  private static List<Entity> writeChunks(
+      DatastoreService datastore, Key lectureKey, List<Entity> lineEntities) {
+    Iterator<Key> lineKeys =
+        datastore.allocateIds(lectureKey, TranscriptLineUtil.KIND, lineEntities.size())
+            .iterator();
+    List<Entity> keyedLineEntities = new ArrayList<>();
+    for (Entity lineEntity : lineEntities) {
+      Entity keyedLineEntity = new Entity(lineKeys.next());
+      keyedLineEntity.setPropertiesFrom(lineEntity);
+      keyedLineEntities.add(keyedLineEntity);
+    }
+    List<Entity> chunkEntities =
+        TranscriptChunkUtil.createEntities(lectureKey, LANGUAGE, keyedLineEntities);
+    datastore.put(chunkEntities);
+    return chunkEntities;
+  }
+
+  /** Reads a transcript the way {@code TranscriptServlet} reads line entities. */
+  private static int readLines(DatastoreService datastore, Key lectureKey) {
+    Query query =
+        new Query(TranscriptLineUtil.KIND)
+            .setFilter(
+                new FilterPredicate(TranscriptLineUtil.LECTURE, FilterOperator.EQUAL, lectureKey))
+            .addSort(TranscriptLineUtil.START_TIMESTAMP_MS, SortDirection.ASCENDING);
+    int lineCount = 0;
+    for (Entity lineEntity : datastore.prepare(query).asIterable()) {
+      TranscriptLineUtil.createTranscriptLine(lineEntity);
+      lineCount++;
+    }
+    return lineCount;
+  }
+
+  /** Reads a transcript the way {@code TranscriptServlet} reads chunks. */
+  private static int readChunks(DatastoreService datastore, Key lectureKey) throws IOException {
+    Query query =
+        new Query(TranscriptChunkUtil.KIND)
+            .setAncestor(lectureKey)
+            .setFilter(
+                new FilterPredicate(TranscriptChunkUtil.LANGUAGE, FilterOperator.EQUAL, LANGUAGE));
+    int lineCount = 0;
+    for (Entity chunkEntity : datastore.prepare(query).asIterable()) {
+      for (Entity lineEntity : TranscriptChunkUtil.createLineEntities(chunkEntity)) {
+        TranscriptLineUtil.createTranscriptLine(lineEntity);
+        lineCount++;
+      }
+    }
+    return lineCount;
+  }
+
+  private static List<Entity> createLineEntities(Random random, Key lectureKey, int lineCount) {
+    String[] words = {"the", "so", "we", "gradient", "is", "function", "here", "and", "of",
+        "matrix", "this", "right", "value", "you", "can", "see", "that", "a", "to", "loss"};
+    List<Entity> lineEntities = new ArrayList<>();
+    for (int line = 0; line < lineCount; line++) {
+      StringBuilder content = new StringBuilder();
+      for (int word = 0; word < WORDS_PER_LINE; word++) {
+        content.append(words[random.nextInt(words.length)]).append(' ');
+      }
+      long startMs = line * LINE_DURATION_MS;
+      lineEntities.add(TranscriptLineUtil.createEntity(lectureKey, LANGUAGE,
+          content.toString().trim(), startMs, LINE_DURATION_MS, startMs + LINE_DURATION_MS));
+    }
+    return lineEntities;
+  }
+
+  private interface Writer {
+    List<Entity> write(DatastoreService datastore, Key lectureKey, List<Entity> lineEntities);
+  }
+
+  private interface Reader {
+    int read(DatastoreService datastore, Key lectureKey) throws IOException;
+  }
+
+  private TranscriptStorageBenchmark() {}
+}
@@ -0,0 +1,133 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class LectureIdentityTest {
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private DatastoreService datastore;
+  private LectureIdentity lectureIdentity;
+
+  @Before
+  public void setUp() {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    lectureIdentity = new LectureIdentity(datastore);
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void putIfAbsent_newVideo_putsLectureAndVideo() throws Exception {
+    Entity lectureEntity = createLectureEntity("video");
+
+    Map<String, Entity> existingLectures =
+        lectureIdentity.putIfAbsent(ImmutableList.of(lectureEntity));
+
+    assertThat(existingLectures).isEmpty();
+    assertThat(lectureEntity.getKey().isComplete()).isTrue();
+    Entity videoEntity = datastore.get(LectureVideoUtil.createKey("video"));
+    assertThat(videoEntity.getProperty(LectureVideoUtil.LECTURE))
+        .isEqualTo(lectureEntity.getKey());
+  }
+
+  @Test
+  public void putIfAbsent_existingVideo_returnsExistingLecture() {
+    Entity lectureEntity = createLectureEntity("video");
+    lectureIdentity.putIfAbsent(ImmutableList.of(lectureEntity));
+
+    Map<String, Entity> existingLectures =
+        lectureIdentity.putIfAbsent(ImmutableList.of(createLectureEntity("video")));
+
+    assertThat(existingLectures.get("video").getKey()).isEqualTo(lectureEntity.getKey());
+    assertThat(countLectures()).isEqualTo(1);
+  }
+
+  @Test
+  public void putIfAbsent_lectureWithoutVideoEntity_adoptsLecture() throws Exception {
+    Entity lectureEntity = createLectureEntity("video");
+    datastore.put(lectureEntity);
+
+    Map<String, Entity> existingLectures =
+        lectureIdentity.putIfAbsent(ImmutableList.of(createLectureEntity("video")));
+
+    assertThat(existingLectures.get("video").getKey()).isEqualTo(lectureEntity.getKey());
+    assertThat(countLectures()).isEqualTo(1);
+    Entity videoEntity = datastore.get(LectureVideoUtil.createKey("video"));
+    assertThat(videoEntity.getProperty(LectureVideoUtil.LECTURE))
+        .isEqualTo(lectureEntity.getKey());
+  }
+
+  @Test
+  public void putIfAbsent_moreLecturesThanTransactionAllows_putsEveryLecture() {
+    List<Entity> lectureEntities = new ArrayList<>();
+    for (int lecture = 0; lecture < LectureIdentity.TRANSACTION_BATCH_SIZE * 3; lecture++) {
+      lectureEntities.add(createLectureEntity("video" + lecture));
+    }
+    lectureIdentity.putIfAbsent(ImmutableList.of(lectureEntities.get(0)));
+
+    Map<String, Entity> existingLectures = lectureIdentity.putIfAbsent(lectureEntities);
+
+    assertThat(existingLectures.keySet()).containsExactly("video0");
+    assertThat(countLectures()).isEqualTo(lectureEntities.size());
+  }
+
+  @Test
+  public void adopt_sameVideoTwice_keepsFirstLecture() throws Exception {
+    Entity firstLecture = createLectureEntity("video");
+    Entity secondLecture = createLectureEntity("video");
+    datastore.put(ImmutableList.of(firstLecture, secondLecture));
+
+    int duplicateCount = lectureIdentity.adopt(ImmutableList.of(firstLecture, secondLecture));
+
+    assertThat(duplicateCount).isEqualTo(1);
+    Entity videoEntity = datastore.get(LectureVideoUtil.createKey("video"));
+    assertThat(videoEntity.getProperty(LectureVideoUtil.LECTURE))
+        .isEqualTo(firstLecture.getKey());
+  }
+
+  private static Entity createLectureEntity(String videoId) {
+    return LectureUtil.createEntity(
+        "Lecture", "https://www.youtube.com/watch?v=" + videoId, videoId);
+  }
+
+  private int countLectures() {
+    return datastore.prepare(new Query(LectureUtil.KIND))
+        .countEntities(FetchOptions.Builder.withDefaults());
+  }
+}
@@ -0,0 +1,447 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.utils;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.users.User;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.googleinterns.zoomtube.data.Comment;
+import com.googleinterns.zoomtube.data.IconFeedback;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Fills a datastore with synthetic lectures for performance tests and benchmarks: their
+ * transcripts, discussions with reply chains, and icon feedback. How much of each there is
+ * comes from {@link Distribution}s, and everything generated is decided by the seed, so the
+ * same settings give the same data.
+ *
+ * <p>Comments land anywhere in a lecture and half of them are on a transcript line. Icon
+ * feedback bunches up around a few moments of each lecture, the way clicks do when part of
+ * it is hard to follow. To write a local datastore the dev server can load, run:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.googleinterns.zoomtube.utils.SyntheticLectureGenerator \
+ *     -Dexec.args="[many|large] [seed] [local_db.bin]"
+ * </pre>
+ */
+public final class SyntheticLectureGenerator {
+  /* Datastore writes at most this many entities in one call. */
+  private static final int BATCH_SIZE = 500;
+  private static final String LANGUAGE = "en";
+  private static final long MIN_LINE_DURATION_MS = 1000;
+  private static final long MAX_LINE_DURATION_MS = 6000;
+  private static final int MIN_WORDS = 4;
+  private static final int MAX_WORDS = 16;
+  private static final double TRANSCRIPT_LINE_CHANCE = 0.5;
+  private static final int HOT_SPOT_COUNT = 5;
+  private static final double HOT_SPOT_CHANCE = 0.7;
+  private static final long HOT_SPOT_SPREAD_MS = 30_000;
+  /* Lectures and comments are created over the year before this time. */
+  private static final long LATEST_CREATED_MS = 1_600_000_000_000L;
+  private static final long CREATED_SPREAD_MS = 365L * 24 * 60 * 60 * 1000;
+  private static final String[] WORDS = {"the", "a", "of", "and", "to", "in", "is", "that",
+      "we", "this", "function", "value", "proof", "graph", "matrix", "vector", "memory",
+      "thread", "lecture", "example", "because", "so", "then", "why", "how", "question",
+      "answer", "slide", "equation", "result", "time", "space", "order", "set", "tree"};
+
+  /** Draws a non-negative count from {@code random}. */
+  public interface Distribution {
+    long sample(Random random);
+
+    /** Returns a distribution that is always {@code value}. */
+    static Distribution constant(long value) {
+      return random -> value;
+    }
+
+    /** Returns a distribution from {@code min} to {@code max}, inclusive, all equally likely. */
+    static Distribution uniform(long min, long max) {
+      return random -> min + (long) (random.nextDouble() * (max - min + 1));
+    }
+
+    /**
+     * Returns a long-tailed distribution with {@code mean}, where most samples are small and a
+     * few are many times the mean, like the activity on most lectures next to a popular one.
+     */
+    static Distribution exponential(double mean) {
+      return random -> (long) (-mean * Math.log(1 - random.nextDouble()));
+    }
+  }
+
+  private final long seed;
+  private final int lectureCount;
+  private final Distribution transcriptLines;
+  private final Distribution comments;
+  private final double replyChance;
+  private final double chainChance;
+  private final Distribution iconFeedback;
+  private final int authorCount;
+
+  private SyntheticLectureGenerator(Builder builder) {
+    this.seed = builder.seed;
+    this.lectureCount = builder.lectureCount;
+    this.transcriptLines = builder.transcriptLines;
+    this.comments = builder.comments;
+    this.replyChance = builder.replyChance;
+    this.chainChance = builder.chainChance;
+    this.iconFeedback = builder.iconFeedback;
+    this.authorCount = builder.authorCount;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Returns settings for thousands of lectures of ordinary size. */
+  public static Builder manyLectures() {
+    return builder()
+        .setLectureCount(2000)
+        .setTranscriptLines(Distribution.uniform(300, 1500))
+        .setComments(Distribution.exponential(40))
+        .setIconFeedback(Distribution.exponential(500));
+  }
+
+  /**
+   * Returns settings for one very large lecture: 50k transcript lines, 100k comments with
+   * long reply chains and a million icon feedback clicks.
+   */
+  public static Builder largeLecture() {
+    return builder()
+        .setLectureCount(1)
+        .setTranscriptLines(Distribution.constant(50_000))
+        .setComments(Distribution.constant(100_000))
+        .setChainChance(0.8)
+        .setIconFeedback(Distribution.constant(1_000_000));
+  }
+
+  /**
+   * Stores the lectures, and everything that belongs to them, in {@code datastore}. Returns
+   * the keys of the lectures.
+   */
+  public List<Key> generate(DatastoreService datastore) {
+    Random random = new Random(seed);
+    List<Key> lectureKeys = new ArrayList<>();
+    for (int lecture = 0; lecture < lectureCount; lecture++) {
+      lectureKeys.add(generateLecture(datastore, random, lecture));
+    }
+    return lectureKeys;
+  }
+
+  private Key generateLecture(DatastoreService datastore, Random random, int lecture) {
+    String videoId = "synthetic" + lecture;
+    Entity lectureEntity = LectureUtil.createEntity(createText(random, 2, 6),
+        "https://www.youtube.com/watch?v=" + videoId, videoId);
+    lectureEntity.setProperty(LectureUtil.CREATED, createDate(random));
+    lectureEntity.setProperty(LectureUtil.TRANSCRIPT_LANGUAGE, LANGUAGE);
+    Key lectureKey = datastore.put(lectureEntity);
+
+    Transcript transcript = generateTranscript(datastore, random, lectureKey);
+    generateComments(datastore, random, lectureKey, transcript);
+    generateIconFeedback(datastore, random, lectureKey, transcript.durationMs());
+    return lectureKey;
+  }
+
+  private Transcript generateTranscript(
+      DatastoreService datastore, Random random, Key lectureKey) {
+    int lineCount = (int) transcriptLines.sample(random);
+    long[] lineStartsMs = new long[lineCount];
+    long[] lineEndsMs = new long[lineCount];
+    BatchWriter lineWriter = new BatchWriter(datastore, true);
+    long startMs = 0;
+    for (int line = 0; line < lineCount; line++) {
+      long durationMs = MIN_LINE_DURATION_MS
+          + (long) (random.nextDouble() * (MAX_LINE_DURATION_MS - MIN_LINE_DURATION_MS));
+      lineStartsMs[line] = startMs;
+      lineEndsMs[line] = startMs + durationMs;
+      lineWriter.add(TranscriptLineUtil.createEntity(lectureKey, LANGUAGE,
+          createText(random, MIN_WORDS, MAX_WORDS), startMs, durationMs, startMs + durationMs));
+      startMs += durationMs;
+    }
+    return new Transcript(lineStartsMs, lineEndsMs, lineWriter.finish());
+  }
+
+  /**
+   * Stores the discussion of the lecture with {@code lectureKey}. Each comment after the
+   * first is a reply with {@link Builder#setReplyChance}, to the comment just before it with
+   * {@link Builder#setChainChance} or else to any earlier one, which makes chains of replies
+   * as deep as those chances allow.
+   */
+  private void generateComments(
+      DatastoreService datastore, Random random, Key lectureKey, Transcript transcript) {
+    int commentCount = (int) comments.sample(random);
+    if (commentCount == 0) {
+      return;
+    }
+    // Replies need their parent's key before the parent is written.
+    List<Key> commentKeys = new ArrayList<>();
+    KeyRange keyRange = datastore.allocateIds(CommentUtil.KIND, commentCount);
+    keyRange.forEach(commentKeys::add);
+
+    BatchWriter commentWriter = new BatchWriter(datastore, false);
+    for (int comment = 0; comment < commentCount; comment++) {
+      long timestampMs = sampleTimestamp(random, transcript.durationMs());
+      Optional<Key> transcriptLineKey = random.nextDouble() < TRANSCRIPT_LINE_CHANCE
+          ? transcript.lineKeyAt(timestampMs)
+          : Optional.empty();
+      User author = createAuthor(random);
+      String content = createText(random, MIN_WORDS, 3 * MAX_WORDS);
+      Date created = createDate(random);
+
+      final Entity properties;
+      if (comment > 0 && random.nextDouble() < replyChance) {
+        int parent = random.nextDouble() < chainChance ? comment - 1 : random.nextInt(comment);
+        properties = CommentUtil.createReplyEntity(lectureKey, commentKeys.get(parent),
+            transcriptLineKey, author, content, created);
+      } else {
+        properties = CommentUtil.createRootEntity(lectureKey, timestampMs, transcriptLineKey,
+            author, content, created, sampleRootType(random));
+      }
+      Entity commentEntity = new Entity(commentKeys.get(comment));
+      commentEntity.setPropertiesFrom(properties);
+      commentWriter.add(commentEntity);
+    }
+    commentWriter.finish();
+  }
+
+  /**
+   * Stores the icon feedback of the lecture with {@code lectureKey}, which is
+   * {@code durationMs} long. It is never held in memory all at once.
+   */
+  private void generateIconFeedback(
+      DatastoreService datastore, Random random, Key lectureKey, long durationMs) {
+    long clickCount = iconFeedback.sample(random);
+    long[] hotSpotsMs = new long[HOT_SPOT_COUNT];
+    for (int hotSpot = 0; hotSpot < HOT_SPOT_COUNT; hotSpot++) {
+      hotSpotsMs[hotSpot] = sampleTimestamp(random, durationMs);
+    }
+    IconFeedback.Type[] types = IconFeedback.Type.values();
+    BatchWriter feedbackWriter = new BatchWriter(datastore, false);
+    for (long click = 0; click < clickCount; click++) {
+      long timestampMs = sampleTimestamp(random, durationMs);
+      if (random.nextDouble() < HOT_SPOT_CHANCE) {
+        long hotSpotMs = hotSpotsMs[random.nextInt(HOT_SPOT_COUNT)];
+        timestampMs = (long) (hotSpotMs + random.nextGaussian() * HOT_SPOT_SPREAD_MS);
+        timestampMs = Math.max(0, Math.min(durationMs, timestampMs));
+      }
+      feedbackWriter.add(IconFeedbackUtil.createEntity(
+          lectureKey, timestampMs, types[random.nextInt(types.length)]));
+    }
+    feedbackWriter.finish();
+  }
+
+  private static long sampleTimestamp(Random random, long durationMs) {
+    return (long) (random.nextDouble() * durationMs);
+  }
+
+  private static Comment.Type sampleRootType(Random random) {
+    double type = random.nextDouble();
+    if (type < 0.5) {
+      return Comment.Type.NOTE;
+    }
+    return type < 0.8 ? Comment.Type.QUESTION_UNANSWERED : Comment.Type.QUESTION_ANSWERED;
+  }
+
+  private User createAuthor(Random random) {
+    int author = random.nextInt(authorCount);
+    return new User("viewer" + author + "@example.com", "example.com");
+  }
+
+  private static Date createDate(Random random) {
+    return new Date(LATEST_CREATED_MS - (long) (random.nextDouble() * CREATED_SPREAD_MS));
+  }
+
+  /** Returns {@code minWords} to {@code maxWords} words. */
+  private static String createText(Random random, int minWords, int maxWords) {
+    int wordCount = minWords + random.nextInt(maxWords - minWords + 1);
+    StringBuilder text = new StringBuilder();
+    for (int word = 0; word < wordCount; word++) {
+      if (word > 0) {
+        text.append(' ');
+      }
+      text.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return text.toString();
+  }
+
+  /** The stored lines of a transcript, in the order they are shown. */
+  private static final class Transcript {
+    private final long[] lineStartsMs;
+    private final long[] lineEndsMs;
+    private final List<Key> lineKeys;
+
+    Transcript(long[] lineStartsMs, long[] lineEndsMs, List<Key> lineKeys) {
+      this.lineStartsMs = lineStartsMs;
+      this.lineEndsMs = lineEndsMs;
+      this.lineKeys = lineKeys;
+    }
+
+    long durationMs() {
+      return lineEndsMs.length == 0 ? 0 : lineEndsMs[lineEndsMs.length - 1];
+    }
+
+    /** Returns the key of the line shown at {@code timestampMs}, if there is one. */
+    Optional<Key> lineKeyAt(long timestampMs) {
+      int line = Arrays.binarySearch(lineStartsMs, timestampMs);
+      if (line < 0) {
+        // The line that starts before the timestamp.
+        line = -line - 2;
+      }
+      if (line < 0 || timestampMs >= lineEndsMs[line]) {
+        return Optional.empty();
+      }
+      return Optional.of(lineKeys.get(line));
+    }
+  }
+
+  /** Writes entities to datastore as many at a time as it can. */
+  private static final class BatchWriter {
+    private final DatastoreService datastore;
+    private final boolean keepKeys;
+    private final List<Entity> batch = new ArrayList<>(BATCH_SIZE);
+    private final List<Key> keys = new ArrayList<>();
+
+    /**
+     * Creates a writer to {@code datastore} that keeps the keys of what it writes if
+     * {@code keepKeys} is set, and otherwise holds no more than a batch in memory.
+     */
+    BatchWriter(DatastoreService datastore, boolean keepKeys) {
+      this.datastore = datastore;
+      this.keepKeys = keepKeys;
+    }
+
+    void add(Entity entity) {
+      batch.add(entity);
+      if (batch.size() == BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    /**
+     * Writes what is left, returning the keys of the entities in the order they were added if
+     * they were kept.
+     */
+    List<Key> finish() {
+      flush();
+      return keys;
+    }
+
+    private void flush() {
+      if (!batch.isEmpty()) {
+        List<Key> batchKeys = datastore.put(batch);
+        if (keepKeys) {
+          keys.addAll(batchKeys);
+        }
+        batch.clear();
+      }
+    }
+  }
+
+  public static final class Builder {
+    private long seed = 0;
+    private int lectureCount = 1;
+    private Distribution transcriptLines = Distribution.constant(100);
+    private Distribution comments = Distribution.constant(10);
+    private double replyChance = 0.5;
+    private double chainChance = 0.3;
+    private Distribution iconFeedback = Distribution.constant(100);
+    private int authorCount = 1000;
+
+    private Builder() {}
+
+    /** Sets the seed that decides everything generated. */
+    public Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public Builder setLectureCount(int lectureCount) {
+      this.lectureCount = lectureCount;
+      return this;
+    }
+
+    /** Sets the distribution of the number of lines in each lecture's transcript. */
+    public Builder setTranscriptLines(Distribution transcriptLines) {
+      this.transcriptLines = transcriptLines;
+      return this;
+    }
+
+    /** Sets the distribution of the number of comments, replies included, on each lecture. */
+    public Builder setComments(Distribution comments) {
+      this.comments = comments;
+      return this;
+    }
+
+    /** Sets the chance that a comment, other than the first, is a reply. */
+    public Builder setReplyChance(double replyChance) {
+      this.replyChance = replyChance;
+      return this;
+    }
+
+    /** Sets the chance that a reply is to the comment just before it, continuing a chain. */
+    public Builder setChainChance(double chainChance) {
+      this.chainChance = chainChance;
+      return this;
+    }
+
+    /** Sets the distribution of the number of icon feedback clicks on each lecture. */
+    public Builder setIconFeedback(Distribution iconFeedback) {
+      this.iconFeedback = iconFeedback;
+      return this;
+    }
+
+    /** Sets how many different people write the comments. */
+    public Builder setAuthorCount(int authorCount) {
+      this.authorCount = authorCount;
+      return this;
+    }
+
+    public SyntheticLectureGenerator build() {
+      return new SyntheticLectureGenerator(this);
+    }
+  }
+
+  public static void main(String[] args) {
+    Builder builder = args.length > 0 && args[0].equals("large") ? largeLecture() : manyLectures();
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+    LocalDatastoreServiceTestConfig datastoreConfig = new LocalDatastoreServiceTestConfig();
+    if (args.length > 2) {
+      datastoreConfig.setNoStorage(false).setBackingStoreLocation(args[2]);
+    } else {
+      datastoreConfig.setNoStorage(true);
+    }
+    LocalServiceTestHelper localServiceHelper = new LocalServiceTestHelper(datastoreConfig);
+    localServiceHelper.setUp();
+    try {
+      long start = System.nanoTime();
+      List<Key> lectureKeys = builder.setSeed(seed).build().generate(
+          DatastoreServiceFactory.getDatastoreService());
+      System.out.printf("%d lectures generated in %.1f s%n", lectureKeys.size(),
+          (System.nanoTime() - start) / 1e9);
+    } finally {
+      // Writes the backing store, if there is one.
+      localServiceHelper.tearDown();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.googleinterns.zoomtube.utils.SyntheticLectureGenerator.Distribution;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class SyntheticLectureGeneratorTest {
+  private final LocalServiceTestHelper testServices =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    testServices.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    testServices.tearDown();
+  }
+
+  @Test
+  public void generate_storesCountsFromDistributions() {
+    List<Key> lectureKeys = SyntheticLectureGenerator.builder()
+                                .setLectureCount(2)
+                                .setTranscriptLines(Distribution.constant(20))
+                                .setComments(Distribution.constant(30))
+                                .setIconFeedback(Distribution.constant(600))
+                                .build()
+                                .generate(datastore);
+
+    assertThat(lectureKeys).hasSize(2);
+    assertThat(count(LectureUtil.KIND)).isEqualTo(2);
+    assertThat(count(TranscriptLineUtil.KIND)).isEqualTo(40);
+    assertThat(count(CommentUtil.KIND)).isEqualTo(60);
+    assertThat(count(IconFeedbackUtil.KIND)).isEqualTo(1200);
+  }
+
+  @Test
+  public void generate_repliesAreToStoredComments() {
+    SyntheticLectureGenerator.builder()
+        .setComments(Distribution.constant(200))
+        .setReplyChance(0.9)
+        .build()
+        .generate(datastore);
+
+    List<Entity> commentEntities = getAll(CommentUtil.KIND);
+    List<Key> commentKeys =
+        commentEntities.stream().map(Entity::getKey).collect(Collectors.toList());
+    for (Entity commentEntity : commentEntities) {
+      if (commentEntity.hasProperty(CommentUtil.PARENT)) {
+        assertThat(commentKeys).contains(commentEntity.getProperty(CommentUtil.PARENT));
+      }
+    }
+  }
+
+  @Test
+  public void generate_sameSeed_generatesSameData() {
+    SyntheticLectureGenerator generator = SyntheticLectureGenerator.builder().setSeed(42).build();
+
+    generator.generate(datastore);
+    List<Object> firstLines = getContents(TranscriptLineUtil.KIND, TranscriptLineUtil.CONTENT);
+    List<Object> firstComments = getContents(CommentUtil.KIND, CommentUtil.CONTENT);
+    testServices.tearDown();
+    testServices.setUp();
+    generator.generate(DatastoreServiceFactory.getDatastoreService());
+
+    assertThat(getContents(TranscriptLineUtil.KIND, TranscriptLineUtil.CONTENT))
+        .containsExactlyElementsIn(firstLines)
+        .inOrder();
+    assertThat(getContents(CommentUtil.KIND, CommentUtil.CONTENT))
+        .containsExactlyElementsIn(firstComments)
+        .inOrder();
+  }
+
+  private int count(String kind) {
+    return DatastoreServiceFactory.getDatastoreService().prepare(new Query(kind)).countEntities(
+        FetchOptions.Builder.withDefaults());
+  }
+
+  private List<Entity> getAll(String kind) {
+    return DatastoreServiceFactory.getDatastoreService()
+        .prepare(new Query(kind).addSort(Entity.KEY_RESERVED_PROPERTY, SortDirection.ASCENDING))
+        .asList(FetchOptions.Builder.withDefaults());
+  }
+
+  private List<Object> getContents(String kind, String contentProperty) {
+    return getAll(kind)
+        .stream()
+        .map(entity -> entity.getProperty(contentProperty))
+        .collect(Collectors.toList());
+  }
+}
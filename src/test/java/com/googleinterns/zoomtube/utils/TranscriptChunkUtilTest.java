@@ -0,0 +1,97 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class TranscriptChunkUtilTest {
+  private final LocalServiceTestHelper localServiceHelper =
+      new LocalServiceTestHelper((new LocalDatastoreServiceTestConfig()).setNoStorage(true));
+  private static final long LECTURE_ID = 1234;
+  private Key lectureKey;
+
+  @Before
+  public void setUp() {
+    localServiceHelper.setUp();
+    lectureKey = KeyFactory.createKey(LectureUtil.KIND, LECTURE_ID);
+  }
+
+  @After
+  public void tearDown() {
+    localServiceHelper.tearDown();
+  }
+
+  @Test
+  public void createEntities_groupsLinesByChunkDuration() throws Exception {
+    List<Entity> lineEntities = createLineEntities(/* lineCount= */ 5,
+        /* lineSpacingMs= */ TranscriptChunkUtil.CHUNK_DURATION_MS / 2);
+
+    List<Entity> chunkEntities =
+        TranscriptChunkUtil.createEntities(lectureKey, "en", lineEntities);
+
+    assertThat(chunkEntities).hasSize(3);
+    assertThat(chunkEntities.get(0).getKey())
+        .isEqualTo(TranscriptChunkUtil.createKey(lectureKey, "en", 0));
+    assertThat(chunkEntities.get(0).getProperty(TranscriptChunkUtil.LINE_COUNT)).isEqualTo(2);
+    assertThat(chunkEntities.get(2).getProperty(TranscriptChunkUtil.LINE_COUNT)).isEqualTo(1);
+  }
+
+  @Test
+  public void createLineEntities_returnsStoredLinesWithKeys() throws Exception {
+    List<Entity> lineEntities = createLineEntities(/* lineCount= */ 50, /* lineSpacingMs= */ 2500);
+
+    List<Entity> decodedLineEntities = new ArrayList<>();
+    for (Entity chunkEntity :
+        TranscriptChunkUtil.createEntities(lectureKey, "en", lineEntities)) {
+      decodedLineEntities.addAll(TranscriptChunkUtil.createLineEntities(chunkEntity));
+    }
+
+    assertThat(decodedLineEntities).hasSize(lineEntities.size());
+    for (int line = 0; line < lineEntities.size(); line++) {
+      Entity expected = lineEntities.get(line);
+      Entity actual = decodedLineEntities.get(line);
+      assertThat(actual.getKey()).isEqualTo(expected.getKey());
+      assertThat(actual.getProperties()).isEqualTo(expected.getProperties());
+    }
+  }
+
+  /** Returns line entities with complete keys, {@code lineSpacingMs} apart. */
+  private List<Entity> createLineEntities(int lineCount, long lineSpacingMs) {
+    List<Entity> lineEntities = new ArrayList<>();
+    for (int line = 0; line < lineCount; line++) {
+      long startMs = line * lineSpacingMs;
+      Entity lineEntity =
+          new Entity(KeyFactory.createKey(lectureKey, TranscriptLineUtil.KIND, line + 1));
+      lineEntity.setPropertiesFrom(TranscriptLineUtil.createEntity(lectureKey, "en",
+          "line " + line, startMs, /* lineDurationMs= */ 2000, startMs + 2000));
+      lineEntities.add(lineEntity);
+    }
+    return lineEntities;
+  }
+}
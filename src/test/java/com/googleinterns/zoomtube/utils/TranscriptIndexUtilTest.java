@@ -0,0 +1,117 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googleinterns.zoomtube.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableMap;
+import com.googleinterns.zoomtube.search.TranscriptIndex;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class TranscriptIndexUtilTest {
+  private final LocalServiceTestHelper localServiceHelper =
+      new LocalServiceTestHelper((new LocalDatastoreServiceTestConfig()).setNoStorage(true));
+  private static final long LECTURE_ID = 1234;
+  /* Enough lines of random words for an index of several shards. */
+  private static final int LONG_TRANSCRIPT_LINES = 5000;
+  private DatastoreService datastore;
+  private Key lectureKey;
+
+  @Before
+  public void setUp() {
+    localServiceHelper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    lectureKey = KeyFactory.createKey(LectureUtil.KIND, LECTURE_ID);
+  }
+
+  @After
+  public void tearDown() {
+    localServiceHelper.tearDown();
+  }
+
+  @Test
+  public void createEntities_smallIndex_storesOneEntity() throws Exception {
+    TranscriptIndex index = TranscriptIndex.builder().addLine(1, 0, 1000, "hello").build();
+
+    List<Entity> indexEntities = TranscriptIndexUtil.createEntities(lectureKey, index);
+
+    assertThat(indexEntities).hasSize(1);
+    assertThat(indexEntities.get(0).getKey()).isEqualTo(TranscriptIndexUtil.createKey(lectureKey));
+    assertThat(TranscriptIndexUtil.getOtherShardKeys(indexEntities.get(0))).isEmpty();
+    TranscriptIndex storedIndex =
+        TranscriptIndexUtil.createTranscriptIndex(indexEntities.get(0), ImmutableMap.of());
+    assertThat(storedIndex.lineContent(0)).isEqualTo("hello");
+  }
+
+  @Test
+  public void createEntities_longTranscript_splitsIntoShardsThatReadBack() throws Exception {
+    TranscriptIndex index = createLongIndex();
+
+    List<Entity> indexEntities = TranscriptIndexUtil.createEntities(lectureKey, index);
+    datastore.put(indexEntities);
+
+    assertThat(indexEntities.size()).isGreaterThan(1);
+    for (Entity indexEntity : indexEntities) {
+      Blob data = (Blob) indexEntity.getProperty(TranscriptIndexUtil.DATA);
+      assertThat(data.getBytes().length).isAtMost(TranscriptIndexUtil.MAX_SHARD_BYTES);
+    }
+    Entity firstShardEntity = datastore.get(TranscriptIndexUtil.createKey(lectureKey));
+    Map<Key, Entity> otherShardEntities =
+        datastore.get(TranscriptIndexUtil.getOtherShardKeys(firstShardEntity));
+    TranscriptIndex storedIndex =
+        TranscriptIndexUtil.createTranscriptIndex(firstShardEntity, otherShardEntities);
+    assertThat(storedIndex.lineCount()).isEqualTo(LONG_TRANSCRIPT_LINES);
+    assertThat(storedIndex.lineContent(LONG_TRANSCRIPT_LINES - 1))
+        .isEqualTo(index.lineContent(LONG_TRANSCRIPT_LINES - 1));
+  }
+
+  @Test(expected = IOException.class)
+  public void createTranscriptIndex_missingShard_throwsIOException() throws Exception {
+    List<Entity> indexEntities = TranscriptIndexUtil.createEntities(lectureKey, createLongIndex());
+
+    TranscriptIndexUtil.createTranscriptIndex(indexEntities.get(0), ImmutableMap.of());
+  }
+
+  /** Returns the index of a long transcript of random words, which doesn't fit one shard. */
+  private static TranscriptIndex createLongIndex() {
+    Random random = new Random(/* seed= */ 42);
+    TranscriptIndex.Builder indexBuilder = TranscriptIndex.builder();
+    for (int line = 0; line < LONG_TRANSCRIPT_LINES; line++) {
+      StringBuilder content = new StringBuilder();
+      for (int word = 0; word < 30; word++) {
+        content.append(Long.toString(random.nextLong() & Long.MAX_VALUE, 36)).append(' ');
+      }
+      indexBuilder.addLine(line + 1, line * 1000L, 1000, content.toString().trim());
+    }
+    return indexBuilder.build();
+  }
+}